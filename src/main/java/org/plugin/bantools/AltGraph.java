@@ -0,0 +1,406 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Accounts linked through shared IPs and UUIDs
+ * Every login observes a name/UUID/IP triple. Names, UUIDs and IPs are nodes of an incremental
+ * union-find (union by rank, path halving), so accounts that ever shared an address end up in one
+ * cluster. Each root keeps the banned names of its cluster, so a login check is one find plus a
+ * look at a usually empty list. Only observations that merge clusters are appended to the store;
+ * repeat logins from known addresses cost nothing on disk.
+ */
+public class AltGraph {
+    private static final byte KIND_NAME = 0;
+    private static final byte KIND_UUID = 1;
+    private static final byte KIND_IP = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Path storeFile;
+    private final TaskExecutor tasks;
+    private final Logger logger;
+
+    private final ConcurrentLinkedQueue<byte[]> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Node state, guarded by this
+    private final NodeTable nodes = new NodeTable();
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private byte[] rank = new byte[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int nodeCount;
+    private final Map<Integer, int[]> bannedByRoot = new HashMap<>();
+    private final BitSet banned = new BitSet();
+
+    public AltGraph(Path storeFile, TaskExecutor tasks, Logger logger) {
+        this.storeFile = storeFile;
+        this.tasks = tasks;
+        this.logger = logger;
+        load();
+    }
+
+    /**
+     * Record that a name logged in with a UUID from an IP
+     */
+    public void observe(String name, String uuid, String ip) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        if (link(name, uuid, ip)) {
+            pendingWrites.add(encode(name, uuid, ip));
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Mark or unmark a name as banned
+     */
+    public synchronized void setBanned(String name, boolean isBanned) {
+        int node = isBanned ? node(KIND_NAME, name) : lookup(KIND_NAME, name);
+        if (node < 0 || banned.get(node) == isBanned) {
+            return;
+        }
+        banned.set(node, isBanned);
+        int root = find(node);
+        int[] members = bannedByRoot.get(root);
+        if (isBanned) {
+            bannedByRoot.put(root, append(members, node));
+        } else if (members != null) {
+            int[] remaining = remove(members, node);
+            if (remaining.length == 0) {
+                bannedByRoot.remove(root);
+            } else {
+                bannedByRoot.put(root, remaining);
+            }
+        }
+    }
+
+    /**
+     * Find another banned name in the same cluster as a name
+     * @param stillBanned checks a candidate against the live ban state (bans can expire unnoticed)
+     * @return the linked banned name, or null if the cluster has none
+     */
+    public synchronized String findLinkedBan(String name, Predicate<String> stillBanned) {
+        int node = lookup(KIND_NAME, name);
+        if (node < 0) {
+            return null;
+        }
+        int[] members = bannedByRoot.get(find(node));
+        if (members == null) {
+            return null;
+        }
+        for (int member : members) {
+            if (member != node && stillBanned.test(names[member])) {
+                return names[member];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of names, UUIDs and IPs known to the graph
+     */
+    public synchronized int size() {
+        return nodeCount;
+    }
+
+    /**
+     * Write pending observations on the calling thread
+     */
+    public void close() {
+        flush();
+    }
+
+    private synchronized boolean link(String name, String uuid, String ip) {
+        int nameNode = node(KIND_NAME, name);
+        boolean merged = false;
+        if (uuid != null && !uuid.isEmpty()) {
+            merged |= union(nameNode, node(KIND_UUID, uuid));
+        }
+        if (ip != null && !ip.isEmpty()) {
+            merged |= union(nameNode, node(KIND_IP, ip));
+        }
+        return merged;
+    }
+
+    private int find(int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (rank[rootA] < rank[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        if (rank[rootA] == rank[rootB]) {
+            rank[rootA]++;
+        }
+        int[] absorbed = bannedByRoot.remove(rootB);
+        if (absorbed != null) {
+            int[] existing = bannedByRoot.get(rootA);
+            bannedByRoot.put(rootA, existing == null ? absorbed : concat(existing, absorbed));
+        }
+        return true;
+    }
+
+    private int lookup(byte kind, String value) {
+        return nodes.get(key(kind, value));
+    }
+
+    private int node(byte kind, String value) {
+        long key = key(kind, value);
+        int node = nodes.get(key);
+        if (node >= 0) {
+            return node;
+        }
+        node = nodeCount++;
+        if (node == parent.length) {
+            int capacity = parent.length * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            rank = Arrays.copyOf(rank, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        parent[node] = node;
+        if (kind == KIND_NAME) {
+            names[node] = value;
+        }
+        nodes.put(key, node);
+        return node;
+    }
+
+    /**
+     * 64-bit FNV-1a over the kind and the case-folded value; collisions are negligible at this size
+     */
+    private static long key(byte kind, String value) {
+        long hash = 0xcbf29ce484222325L;
+        hash ^= kind;
+        hash *= 0x100000001b3L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= Character.toLowerCase(value.charAt(i));
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void load() {
+        if (!Files.exists(storeFile)) {
+            return;
+        }
+        long started = System.nanoTime();
+        int records = 0;
+        long complete = 0;
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(storeFile), 1 << 16));
+             DataInputStream in = new DataInputStream(counter)) {
+            try {
+                while (true) {
+                    link(in.readUTF(), emptyToNull(in.readUTF()), emptyToNull(in.readUTF()));
+                    records++;
+                    complete = counter.count;
+                }
+            } catch (EOFException e) {
+                if (counter.count > complete) {
+                    // A crash mid-append left a partial record; drop it so later appends stay readable
+                    logger.warn("Alt store ends with a partial record, truncating to " + complete + " bytes");
+                    truncate(complete);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to load alt store " + storeFile, e);
+        }
+        logger.info("Loaded " + records + " alt observations (" + nodeCount + " nodes) in "
+                + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    private void truncate(long length) {
+        try (FileChannel channel = FileChannel.open(storeFile, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        } catch (IOException e) {
+            logger.error("Failed to truncate alt store " + storeFile, e);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                tasks.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // Observations stay queued and go out with the next flush
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        synchronized (pendingWrites) {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            byte[] record;
+            while ((record = pendingWrites.poll()) != null) {
+                batch.write(record, 0, record.length);
+            }
+            if (batch.size() == 0) {
+                return;
+            }
+            try {
+                Files.createDirectories(storeFile.getParent());
+                Files.write(storeFile, batch.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                logger.error("Failed to append to alt store " + storeFile, e);
+            }
+        }
+    }
+
+    private static byte[] encode(String name, String uuid, String ip) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(name);
+            out.writeUTF(uuid == null ? "" : uuid);
+            out.writeUTF(ip == null ? "" : ip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static int[] append(int[] members, int node) {
+        if (members == null) {
+            return new int[]{node};
+        }
+        int[] grown = Arrays.copyOf(members, members.length + 1);
+        grown[members.length] = node;
+        return grown;
+    }
+
+    private static int[] remove(int[] members, int node) {
+        int[] remaining = new int[members.length];
+        int count = 0;
+        for (int member : members) {
+            if (member != node) {
+                remaining[count++] = member;
+            }
+        }
+        return Arrays.copyOf(remaining, count);
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] merged = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, merged, first.length, second.length);
+        return merged;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Open-addressing map from node key hash to node id, avoiding a boxed entry per node
+     */
+    private static final class NodeTable {
+        private long[] keys = new long[INITIAL_CAPACITY * 2];
+        private int[] values = new int[INITIAL_CAPACITY * 2];
+        private int size;
+
+        int get(long key) {
+            key = nonZero(key);
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                if (keys[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            insert(nonZero(key), value);
+            size++;
+        }
+
+        private void insert(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        // Zero marks an empty slot
+        private static long nonZero(long key) {
+            return key == 0 ? 1 : key;
+        }
+
+        private static int mix(long key) {
+            return (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Append-only audit log of every punishment action
+ * Records are queued by the caller and written in batches on the task executor to rolling
+ * segment files (audit-NNNNNN.log). Next to every segment a sparse index file lists, per
+ * player, the byte offsets of that player's records, so a history lookup seeks straight to
+ * the relevant lines instead of scanning the log.
+ */
+public class AuditLog {
+    private static final long SEGMENT_SIZE = 8L * 1024 * 1024;
+    private static final int MAX_BATCH = 512;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final Path directory;
+    private final TaskExecutor tasks;
+    private final Logger logger;
+
+    private final ConcurrentLinkedQueue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Per-player record positions: segment id in the high bits, byte offset in the low bits
+    private final Map<PlayerName, long[]> positions = new ConcurrentHashMap<>();
+
+    // Writer state, guarded by this
+    private int segmentId;
+    private long segmentSize;
+
+    public AuditLog(Path directory, TaskExecutor tasks, Logger logger) {
+        this.directory = directory;
+        this.tasks = tasks;
+        this.logger = logger;
+        try {
+            Files.createDirectories(directory);
+            loadIndexes();
+        } catch (IOException e) {
+            logger.error("Failed to open audit log in " + directory, e);
+        }
+    }
+
+    /**
+     * Queue a record; it is written asynchronously with other pending records
+     */
+    public void record(AuditRecord record) {
+        queue.add(record);
+        scheduleFlush();
+    }
+
+    /**
+     * Read a player's records, newest first, touching only the indexed offsets
+     */
+    public List<AuditRecord> history(String playerName, int limit) {
+        // Make sure records queued just before the lookup are visible
+        flush();
+
+        PlayerName name = PlayerName.lookup(playerName);
+        long[] playerPositions = name == null ? null : positions.get(name);
+        if (playerPositions == null) {
+            return Collections.emptyList();
+        }
+
+        List<AuditRecord> records = new ArrayList<>();
+        for (int i = playerPositions.length - 1; i >= 0 && records.size() < limit; i--) {
+            try {
+                records.add(readRecord(playerPositions[i]));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Skipping unreadable audit record for " + playerName + ": " + e.getMessage());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Write everything still queued on the calling thread
+     */
+    public void close() {
+        flush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                tasks.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // Records stay queued and go out with the next flush
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private synchronized void flush() {
+        while (!queue.isEmpty()) {
+            List<AuditRecord> batch = new ArrayList<>();
+            AuditRecord next;
+            while (batch.size() < MAX_BATCH && (next = queue.poll()) != null) {
+                batch.add(next);
+            }
+            try {
+                writeBatch(batch);
+            } catch (IOException e) {
+                logger.error("Failed to write " + batch.size() + " audit records", e);
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(List<AuditRecord> batch) throws IOException {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        StringBuilder index = new StringBuilder();
+        List<Map.Entry<PlayerName, Long>> added = new ArrayList<>();
+
+        for (AuditRecord record : batch) {
+            byte[] line = (record.toLine() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (segmentSize + log.size() > 0 && segmentSize + log.size() + line.length > SEGMENT_SIZE) {
+                // Roll over: write what we have to the current segment and start a new one
+                appendToSegment(log.toByteArray(), index.toString());
+                publish(added);
+                log.reset();
+                index.setLength(0);
+                added.clear();
+                segmentId++;
+                segmentSize = 0;
+            }
+            long offset = segmentSize + log.size();
+            log.write(line, 0, line.length);
+            if (record.getName() != null) {
+                index.append(record.getName()).append('\t').append(offset).append('\n');
+                added.add(new AbstractMap.SimpleEntry<>(PlayerName.of(record.getName()), position(segmentId, offset)));
+            }
+        }
+        appendToSegment(log.toByteArray(), index.toString());
+        publish(added);
+    }
+
+    private void appendToSegment(byte[] log, String index) throws IOException {
+        if (log.length == 0) {
+            return;
+        }
+        Files.write(segmentLog(segmentId), log, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        Files.write(segmentIndex(segmentId), index.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        segmentSize += log.length;
+    }
+
+    private void publish(List<Map.Entry<PlayerName, Long>> added) {
+        for (Map.Entry<PlayerName, Long> entry : added) {
+            positions.merge(entry.getKey(), new long[]{entry.getValue()}, AuditLog::concat);
+        }
+    }
+
+    private AuditRecord readRecord(long position) throws IOException {
+        int segment = (int) (position >>> OFFSET_BITS);
+        long offset = position & OFFSET_MASK;
+        try (FileChannel channel = FileChannel.open(segmentLog(segment), StandardOpenOption.READ)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            long readPosition = offset;
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, readPosition);
+                if (read <= 0) {
+                    break;
+                }
+                int end = -1;
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        end = i;
+                        break;
+                    }
+                }
+                line.write(buffer.array(), 0, end >= 0 ? end : read);
+                if (end >= 0) {
+                    break;
+                }
+                readPosition += read;
+            }
+            return AuditRecord.fromLine(new String(line.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Load the per-segment index files; a segment whose index is behind its log (for example
+     * after a crash between the two writes) has only its unindexed tail rescanned
+     */
+    private void loadIndexes() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(file -> file.startsWith("audit-") && file.endsWith(".log"))
+                    .forEach(file -> segments.add(Integer.parseInt(file.substring(6, file.length() - 4))));
+        }
+        Collections.sort(segments);
+
+        for (int segment : segments) {
+            long indexedEnd = loadSegmentIndex(segment);
+            long size = Files.size(segmentLog(segment));
+            if (indexedEnd < size) {
+                rescanTail(segment, indexedEnd);
+            }
+            segmentId = segment;
+            segmentSize = size;
+        }
+        if (!segments.isEmpty() && segmentSize >= SEGMENT_SIZE) {
+            segmentId++;
+            segmentSize = 0;
+        }
+        logger.info("Audit log opened: " + segments.size() + " segments, " + positions.size() + " players indexed");
+    }
+
+    private long loadSegmentIndex(int segment) throws IOException {
+        Path indexFile = segmentIndex(segment);
+        long lastOffset = -1;
+        if (Files.exists(indexFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.lastIndexOf('\t');
+                    if (tab <= 0) {
+                        continue;
+                    }
+                    long offset = Long.parseLong(line.substring(tab + 1));
+                    positions.merge(PlayerName.of(line.substring(0, tab)),
+                            new long[]{position(segment, offset)}, AuditLog::concat);
+                    lastOffset = Math.max(lastOffset, offset);
+                }
+            }
+        }
+        if (lastOffset < 0) {
+            return 0;
+        }
+        // The indexed part ends after the line starting at the last indexed offset
+        return lastOffset + readLineLength(segment, lastOffset);
+    }
+
+    private long readLineLength(int segment, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentLog(segment), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            long position = offset;
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    return position - offset;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        return position + i + 1 - offset;
+                    }
+                }
+                position += read;
+            }
+        }
+    }
+
+    private void rescanTail(int segment, long from) throws IOException {
+        byte[] content = Files.readAllBytes(segmentLog(segment));
+        StringBuilder index = new StringBuilder();
+        int start = (int) from;
+        for (int i = start; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            String line = new String(content, start, i - start, StandardCharsets.UTF_8);
+            try {
+                AuditRecord record = AuditRecord.fromLine(line);
+                if (record.getName() != null) {
+                    index.append(record.getName()).append('\t').append(start).append('\n');
+                    positions.merge(PlayerName.of(record.getName()),
+                            new long[]{position(segment, start)}, AuditLog::concat);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Skipping malformed audit record in segment " + segment + " at offset " + start);
+            }
+            start = i + 1;
+        }
+        Files.write(segmentIndex(segment), index.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentLog(int segment) {
+        return directory.resolve(String.format("audit-%06d.log", segment));
+    }
+
+    private Path segmentIndex(int segment) {
+        return directory.resolve(String.format("audit-%06d.idx", segment));
+    }
+
+    private static long position(int segment, long offset) {
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+
+    private static long[] concat(long[] existing, long[] added) {
+        long[] merged = Arrays.copyOf(existing, existing.length + added.length);
+        System.arraycopy(added, 0, merged, existing.length, added.length);
+        return merged;
+    }
+}
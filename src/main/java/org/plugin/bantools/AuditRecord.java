@@ -0,0 +1,129 @@
+package org.plugin.bantools;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One entry of the append-only audit log
+ * Stored as a single tab-separated line; tabs, newlines and backslashes in values are escaped.
+ */
+public class AuditRecord {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm").withZone(ZoneId.systemDefault());
+
+    public enum Action { BAN, UNBAN, FAKEBAN, UNFAKEBAN, KICK, BACKFILL, RANGE_BAN, RANGE_UNBAN, MUTE, UNMUTE }
+
+    private final long timestamp;
+    private final Action action;
+    private final String actor;
+    private final String name;
+    private final String uuid;
+    private final String ip;
+    private final String reason;
+    private final Long endTime;
+
+    public AuditRecord(long timestamp, Action action, String actor, String name,
+                       String uuid, String ip, String reason, Long endTime) {
+        this.timestamp = timestamp;
+        this.action = action;
+        this.actor = actor;
+        this.name = name;
+        this.uuid = uuid;
+        this.ip = ip;
+        this.reason = reason;
+        this.endTime = endTime;
+    }
+
+    public static AuditRecord now(Action action, String actor, String name,
+                                  String uuid, String ip, String reason, Long endTime) {
+        return new AuditRecord(System.currentTimeMillis(), action, actor, name, uuid, ip, reason, endTime);
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public Action getAction() { return action; }
+    public String getActor() { return actor; }
+    public String getName() { return name; }
+    public String getUuid() { return uuid; }
+    public String getIp() { return ip; }
+    public String getReason() { return reason; }
+    public Long getEndTime() { return endTime; }
+
+    /**
+     * Format the record for command output
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        text.append('[').append(TIME_FORMAT.format(Instant.ofEpochMilli(timestamp))).append("] ")
+                .append(action).append(" by ").append(actor == null ? "unknown" : actor);
+        if (reason != null && !reason.isEmpty()) {
+            text.append(": ").append(reason);
+        }
+        if (endTime != null) {
+            text.append(" (until ").append(TIME_FORMAT.format(Instant.ofEpochMilli(endTime))).append(')');
+        }
+        return text.toString();
+    }
+
+    String toLine() {
+        return timestamp + "\t" + action.name() + "\t" + escape(actor) + "\t" + escape(name) + "\t"
+                + escape(uuid) + "\t" + escape(ip) + "\t" + escape(reason) + "\t"
+                + (endTime == null ? "" : endTime.toString());
+    }
+
+    static AuditRecord fromLine(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 8) {
+            throw new IllegalArgumentException("Malformed audit record: " + line);
+        }
+        return new AuditRecord(
+                Long.parseLong(fields[0]),
+                Action.valueOf(fields[1]),
+                unescape(fields[2]),
+                unescape(fields[3]),
+                unescape(fields[4]),
+                unescape(fields[5]),
+                unescape(fields[6]),
+                fields[7].isEmpty() ? null : Long.parseLong(fields[7]));
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': unescaped.append('\t'); break;
+                    case 'n': unescaped.append('\n'); break;
+                    case 'r': unescaped.append('\r'); break;
+                    default: unescaped.append(next);
+                }
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
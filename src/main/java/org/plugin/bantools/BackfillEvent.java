@@ -0,0 +1,10 @@
+package org.plugin.bantools;
+
+/**
+ * A ban issued by name learned the UUID and IP of the player on their first login attempt
+ */
+public final class BackfillEvent extends BanChangeEvent {
+    public BackfillEvent(String playerName, String uuid, String ip) {
+        super("System", playerName, uuid, ip);
+    }
+}
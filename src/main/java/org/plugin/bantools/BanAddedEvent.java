@@ -0,0 +1,30 @@
+package org.plugin.bantools;
+
+/**
+ * A ban or temporary ban took effect
+ */
+public final class BanAddedEvent extends BanChangeEvent {
+    private final String reason;
+    private final Long endTime;
+    private final boolean fakeBan;
+
+    public BanAddedEvent(String actor, String playerName, String uuid, String ip, String reason,
+                         Long endTime, boolean fakeBan) {
+        super(actor, playerName, uuid, ip);
+        this.reason = reason;
+        this.endTime = endTime;
+        this.fakeBan = fakeBan;
+    }
+
+    static BanAddedEvent of(String actor, Punishment entry) {
+        return new BanAddedEvent(actor, entry.getName(), entry.getUuid(), entry.getIp(), entry.getReason(),
+                entry.getExpiresAt(), entry.getType() == Punishment.Type.FAKEBAN);
+    }
+
+    public String getReason() { return reason; }
+    /** End time in epoch milliseconds, or null for a permanent ban */
+    public Long getEndTime() { return endTime; }
+    public boolean isPermanent() { return endTime == null; }
+    /** True for a temporary ban issued with /bt fakeban */
+    public boolean isFakeBan() { return fakeBan; }
+}
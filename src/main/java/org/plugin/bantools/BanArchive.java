@@ -0,0 +1,162 @@
+package org.plugin.bantools;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only archive of bans, temporary bans and mutes that are no longer in effect
+ * Each compaction writes one immutable gzip segment (archive-NNNNNN.gz) of "kind TAB name TAB data"
+ * lines plus a small plain-text sidecar listing the folded names it contains. The sidecars are read
+ * once and kept in memory as a map from name to segments, so a lookup only decompresses the segments
+ * that contain the requested name and reads nothing for a name that was never archived.
+ */
+public class BanArchive {
+    public static final String KIND_BAN = "ban";
+    public static final String KIND_FAKEBAN = "fakeban";
+    public static final String KIND_MUTE = "mute";
+
+    private final Path directory;
+    // Folded names to the segments holding their records, oldest first; loaded on first use
+    private Map<String, int[]> segmentsByName;
+    private int lastSegment;
+
+    /**
+     * One archived record; data is the entry rendered as single-line JSON
+     */
+    public static class Archived {
+        private final String kind;
+        private final String name;
+        private final String data;
+
+        public Archived(String kind, String name, String data) {
+            this.kind = kind;
+            this.name = name;
+            this.data = data;
+        }
+
+        public String getKind() { return kind; }
+        public String getName() { return name; }
+        public String getData() { return data; }
+    }
+
+    public BanArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Write records as a new segment
+     * The segment is complete on disk before this returns; the sidecar is written last, so a
+     * crash leaves either a whole segment or one that lookups ignore.
+     */
+    public synchronized void append(List<Archived> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Map<String, int[]> index = index();
+        int segment = lastSegment + 1;
+
+        Path data = segmentData(segment);
+        Path temp = data.resolveSibling(data.getFileName() + ".tmp");
+        Set<String> names = new TreeSet<>();
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8)) {
+            for (Archived record : records) {
+                out.write(record.kind + "\t" + record.name + "\t" + record.data + "\n");
+                names.add(record.name.toLowerCase(Locale.ROOT));
+            }
+        }
+        Files.move(temp, data, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        lastSegment = segment;
+        Files.write(segmentNames(segment), String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+        for (String name : names) {
+            addSegment(index, name, segment);
+        }
+    }
+
+    /**
+     * Read every archived record of a player, oldest segment first
+     */
+    public List<Archived> find(String name) throws IOException {
+        int[] segments;
+        synchronized (this) {
+            segments = index().get(name.toLowerCase(Locale.ROOT));
+        }
+        List<Archived> found = new ArrayList<>();
+        if (segments == null) {
+            return found;
+        }
+        for (int segment : segments) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(segmentData(segment))), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length == 3 && fields[1].equalsIgnoreCase(name)) {
+                        found.add(new Archived(fields[0], fields[1], fields[2]));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The name index, read from the sidecars of every segment the first time it is needed
+     * A segment without a sidecar was cut short by a crash and is ignored, as before.
+     */
+    private Map<String, int[]> index() throws IOException {
+        if (segmentsByName == null) {
+            Map<String, int[]> index = new HashMap<>();
+            List<Integer> segments = segments();
+            Collections.sort(segments);
+            for (int segment : segments) {
+                lastSegment = Math.max(lastSegment, segment);
+                Path names = segmentNames(segment);
+                if (Files.exists(names)) {
+                    for (String name : Files.readAllLines(names, StandardCharsets.UTF_8)) {
+                        addSegment(index, name, segment);
+                    }
+                }
+            }
+            segmentsByName = index;
+        }
+        return segmentsByName;
+    }
+
+    private static void addSegment(Map<String, int[]> index, String name, int segment) {
+        int[] segments = index.get(name);
+        if (segments == null) {
+            index.put(name, new int[]{segment});
+        } else {
+            int[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = segment;
+            index.put(name, grown);
+        }
+    }
+
+    private List<Integer> segments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(file -> file.startsWith("archive-") && file.endsWith(".gz"))
+                    .forEach(file -> segments.add(Integer.parseInt(file.substring(8, file.length() - 3))));
+        }
+        return segments;
+    }
+
+    private Path segmentData(int segment) {
+        return directory.resolve(String.format("archive-%06d.gz", segment));
+    }
+
+    private Path segmentNames(int segment) {
+        return directory.resolve(String.format("archive-%06d.names", segment));
+    }
+}
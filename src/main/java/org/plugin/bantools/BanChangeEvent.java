@@ -0,0 +1,29 @@
+package org.plugin.bantools;
+
+/**
+ * Base of the ban change events BanTools fires through Velocity's event manager
+ * Events are fired asynchronously once the change is saved, so subscribers never delay it.
+ * Bulk changes (reloads, expiry sweeps) arrive together as one {@link BanEventBatch}.
+ */
+public abstract class BanChangeEvent {
+    private final long timestamp = System.currentTimeMillis();
+    private final String actor;
+    private final String playerName;
+    private final String uuid;
+    private final String ip;
+
+    protected BanChangeEvent(String actor, String playerName, String uuid, String ip) {
+        this.actor = actor;
+        this.playerName = playerName;
+        this.uuid = uuid;
+        this.ip = ip;
+    }
+
+    public long getTimestamp() { return timestamp; }
+    /** Staff member who made the change, or "System" / "Config reload" */
+    public String getActor() { return actor; }
+    public String getPlayerName() { return playerName; }
+    /** May be null for bans of players who have not joined yet */
+    public String getUuid() { return uuid; }
+    public String getIp() { return ip; }
+}
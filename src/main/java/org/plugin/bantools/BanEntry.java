@@ -1,44 +1,25 @@
 package org.plugin.bantools;
 
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 
-public class BanEntry {
-    private String name;
-    private String uuid;
-    private String ip;
-    private String reason;
-    private long startTime;
-    private Long endTime;
-    private boolean state = true;
-
-    // Getters and Setters
-    public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
-
-    public String getUuid() { return uuid; }
-    public void setUuid(String uuid) { this.uuid = uuid; }
-
-    public String getIp() { return ip; }
-    public void setIp(String ip) { this.ip = ip; }
-
-    public String getReason() { return reason; }
-    public void setReason(String reason) { this.reason = reason; }
-
-    public long getStartTime() { return startTime; }
-    public void setStartTime(long startTime) { this.startTime = startTime; }
-
-    public Long getEndTime() { return endTime; }
-    public void setEndTime(Long endTime) { this.endTime = endTime; }
+/**
+ * Ban record
+ * A ban without an end time is permanent; see {@link Punishment} for the stored fields.
+ */
+public class BanEntry extends Punishment {
+    @Override
+    public Type getType() {
+        return isPermanent() ? Type.BAN : Type.TEMP_BAN;
+    }
 
-    public boolean getState() { return state; }
-    public void setState(boolean state) { this.state = state; }
+    public Long getEndTime() { return getExpiresAt(); }
+    public void setEndTime(Long endTime) { setEndTimeMillis(endTime == null ? PERMANENT : endTime); }
 
-    public boolean isPermanent() { return endTime == null; }
     public String getEndTimeFormatted() {
         if (isPermanent()) return "Permanently banned";
-        return DateTimeFormatter.ofPattern("yyyy/MM/dd")
-                .format(Instant.ofEpochMilli(endTime));
+        return DateTimeFormatter.ofPattern("yyyy/MM/dd").withZone(ZoneId.systemDefault())
+                .format(Instant.ofEpochMilli(endTimeMillis()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package org.plugin.bantools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes made together by one bulk operation, such as a config reload or an expiry sweep
+ * The events inside are not fired individually.
+ */
+public final class BanEventBatch {
+    private final List<BanChangeEvent> events;
+
+    public BanEventBatch(List<? extends BanChangeEvent> events) {
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    /** Events in the order the changes were applied */
+    public List<BanChangeEvent> getEvents() { return events; }
+}
@@ -0,0 +1,120 @@
+package org.plugin.bantools;
+
+import com.velocitypowered.api.event.EventManager;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fires ban change events for other plugins without making the change wait for subscribers
+ * Events are queued by the caller and handed to Velocity's event manager from the task executor,
+ * like audit records. At most MAX_IN_FLIGHT events are waiting on subscribers at a time; beyond
+ * that they stay queued, and once MAX_QUEUED are queued new events are dropped and counted.
+ */
+public class BanEventPublisher {
+    private static final int MAX_QUEUED = 65536;
+    private static final int MAX_IN_FLIGHT = 1024;
+
+    private final EventManager eventManager;
+    private final TaskExecutor tasks;
+    private final Logger logger;
+
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public BanEventPublisher(EventManager eventManager, TaskExecutor tasks, Logger logger) {
+        this.eventManager = eventManager;
+        this.tasks = tasks;
+        this.logger = logger;
+    }
+
+    public void publish(BanChangeEvent event) {
+        enqueue(event);
+    }
+
+    /**
+     * Publish the changes of one bulk operation, as a single {@link BanEventBatch} if there are several
+     */
+    public void publishAll(List<? extends BanChangeEvent> events) {
+        if (events.size() == 1) {
+            enqueue(events.get(0));
+        } else if (!events.isEmpty()) {
+            enqueue(new BanEventBatch(events));
+        }
+    }
+
+    private void enqueue(Object event) {
+        if (queued.incrementAndGet() > MAX_QUEUED) {
+            queued.decrementAndGet();
+            dropped.increment();
+            if (dropped.sum() == 1) {
+                logger.warn("Ban event queue is full, dropping events until subscribers catch up");
+            }
+            return;
+        }
+        queue.add(event);
+        scheduleDispatch();
+    }
+
+    private void scheduleDispatch() {
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            try {
+                tasks.execute(() -> {
+                    dispatchScheduled.set(false);
+                    dispatch();
+                });
+            } catch (RejectedExecutionException e) {
+                // Events stay queued and go out with the next dispatch
+                dispatchScheduled.set(false);
+            }
+        }
+    }
+
+    private synchronized void dispatch() {
+        Object event;
+        while (inFlight.get() < MAX_IN_FLIGHT && (event = queue.poll()) != null) {
+            queued.decrementAndGet();
+            inFlight.incrementAndGet();
+            CompletableFuture<?> delivered;
+            try {
+                delivered = eventManager.fire(event);
+            } catch (RuntimeException e) {
+                delivered = CompletableFuture.failedFuture(e);
+            }
+            Object firedEvent = event;
+            delivered.whenComplete((result, error) -> {
+                inFlight.decrementAndGet();
+                fired.increment();
+                if (error != null) {
+                    failed.increment();
+                    logger.warn("Failed to deliver " + firedEvent.getClass().getSimpleName(), error);
+                }
+                if (!queue.isEmpty()) {
+                    scheduleDispatch();
+                }
+            });
+        }
+    }
+
+    /**
+     * Queue depth and delivery counters, for /bt status
+     */
+    public String getStatus() {
+        return queued.get() + " queued, " + inFlight.get() + " in flight, " + fired.sum() + " fired, "
+                + failed.sum() + " failed, " + dropped.sum() + " dropped";
+    }
+
+    public int getQueued() { return queued.get(); }
+    public int getInFlight() { return inFlight.get(); }
+}
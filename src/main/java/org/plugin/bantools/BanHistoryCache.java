@@ -0,0 +1,118 @@
+package org.plugin.bantools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Size-bounded LRU cache of past (revoked or expired) bans, keyed by canonical player name and,
+ * when it is known, by UUID
+ * Answers are looked up in the configuration's inactive entries and then in the archive, which
+ * reads disk. "No record" answers are cached too, so repeated lookups of players who were never
+ * banned do not touch the disk either.
+ * Every change to a ban entry must {@link #invalidate} its name and UUID. A load that overlapped
+ * any invalidation is returned but not cached, so a stale read is never stored.
+ */
+class BanHistoryCache {
+    // Cached "no record" answer
+    private static final BanEntry NONE = new BanEntry();
+
+    // Keyed by PlayerName or UUID
+    private final LinkedHashMap<Object, BanEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    BanHistoryCache(int capacity) {
+        configure(capacity);
+    }
+
+    /**
+     * Change the number of cached names and UUIDs; 0 disables the cache
+     */
+    synchronized void configure(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        trim();
+    }
+
+    /**
+     * Find a player's latest inactive ban, loading it on a miss
+     * A ban found by name is cached under the name, one found by UUID under the UUID. The loader runs
+     * without the lock held, so a slow archive read does not block other lookups.
+     * @param uuid the player's UUID, or null if unknown
+     * @param loader finds the ban by name and UUID, returning null if there is none
+     * @return the ban, or null if the player has no inactive ban on record
+     */
+    BanEntry get(PlayerName name, UUID uuid, BiFunction<String, UUID, BanEntry> loader) {
+        long started;
+        synchronized (this) {
+            BanEntry cached = entries.get(name);
+            if (cached == NONE && uuid != null) {
+                // Without a record under the name, the answer is the one found by UUID
+                cached = entries.get(uuid);
+            }
+            if (cached != null) {
+                hits++;
+                return cached == NONE ? null : cached;
+            }
+            misses++;
+            started = generation;
+        }
+        BanEntry loaded = loader.apply(name.getName(), uuid);
+        synchronized (this) {
+            if (generation == started && capacity > 0) {
+                boolean byName = loaded != null && name.matches(loaded.getName());
+                entries.put(name, byName ? loaded : NONE);
+                if (uuid != null && !byName) {
+                    entries.put(uuid, loaded == null ? NONE : loaded);
+                }
+                trim();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Forget what is cached for a name, after its ban entry was written, revoked or reloaded
+     */
+    synchronized void invalidate(PlayerName name) {
+        entries.remove(name);
+        generation++;
+    }
+
+    /**
+     * Forget what is cached for the name and UUID of a ban entry that changed
+     */
+    synchronized void invalidate(Punishment entry) {
+        entries.remove(PlayerName.of(entry.getName()));
+        if (entry.hasPackedUuid()) {
+            entries.remove(new UUID(entry.uuidMost(), entry.uuidLeast()));
+        }
+        generation++;
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+    }
+
+    synchronized String getStatus() {
+        if (capacity == 0) {
+            return "disabled";
+        }
+        long total = hits + misses;
+        return String.format("%d/%d names and UUIDs, %d hits / %d misses (%.1f%% hit ratio), %d evictions",
+                entries.size(), capacity, hits, misses, total == 0 ? 0.0 : hits * 100.0 / total, evictions);
+    }
+
+    private void trim() {
+        while (entries.size() > capacity) {
+            Map.Entry<Object, BanEntry> eldest = entries.entrySet().iterator().next();
+            entries.remove(eldest.getKey());
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package org.plugin.bantools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compact lookup-only image of the active bans
+ * Written shortly after bans change and on shutdown, and memory-mapped at startup so logins can be
+ * checked before the full configuration has been parsed. The image only stores 64-bit
+ * hashes of names, UUIDs and IPs plus a small record per entry (kind, end time, reason).
+ *
+ * Layout (big-endian):
+ *   header   magic, version, created_at, record count, name/uuid/ip key counts
+ *   keys     three sections of (hash long, record int), each sorted by hash
+ *   records  (kind byte, end_time long, reason offset int, reason length int)
+ *   strings  UTF-8 reason bytes
+ */
+public class BanIndexImage {
+    private static final int MAGIC = 0x42544958; // "BTIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 4;
+    private static final int KEY_SIZE = 8 + 4;
+    private static final int RECORD_SIZE = 1 + 8 + 4 + 4;
+
+    private static final byte KIND_BAN = 0;
+    private static final byte KIND_FAKEBAN = 1;
+    private static final long PERMANENT = -1L;
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int nameCount;
+    private final int uuidCount;
+    private final int ipCount;
+    private final int nameOffset;
+    private final int uuidOffset;
+    private final int ipOffset;
+    private final int recordOffset;
+    private final int stringOffset;
+
+    private BanIndexImage(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a BanTools index image");
+        }
+        this.recordCount = buffer.getInt(16);
+        this.nameCount = buffer.getInt(20);
+        this.uuidCount = buffer.getInt(24);
+        this.ipCount = buffer.getInt(28);
+        this.nameOffset = HEADER_SIZE;
+        this.uuidOffset = nameOffset + nameCount * KEY_SIZE;
+        this.ipOffset = uuidOffset + uuidCount * KEY_SIZE;
+        this.recordOffset = ipOffset + ipCount * KEY_SIZE;
+        this.stringOffset = recordOffset + recordCount * RECORD_SIZE;
+        if (stringOffset > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated BanTools index image");
+        }
+    }
+
+    /**
+     * Map an existing image
+     * @return the image, or null when the file is missing or unreadable
+     */
+    public static BanIndexImage open(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BanIndexImage(mapped);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable ban index image " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write an image of the entries active at a time, replacing the previous one atomically
+     * Keys and records are collected into primitive arrays sized by the given collections.
+     */
+    public static void write(Path path, Collection<BanEntry> bans, Collection<FakeBanEntry> fakeBans, long now)
+            throws IOException {
+        int capacity = bans.size() + fakeBans.size();
+        Keys names = new Keys(capacity);
+        Keys uuids = new Keys(capacity);
+        Keys ips = new Keys(capacity);
+        byte[] kinds = new byte[capacity];
+        long[] endTimes = new long[capacity];
+        byte[][] reasons = new byte[capacity][];
+        int records = 0;
+        int stringsSize = 0;
+
+        for (BanEntry entry : bans) {
+            if (records == capacity || !entry.isActiveAt(now)) {
+                continue;
+            }
+            addKeys(records, entry.getName(), entry.getUuid(), entry.getIp(), names, uuids, ips);
+            kinds[records] = KIND_BAN;
+            endTimes[records] = entry.isPermanent() ? PERMANENT : entry.getEndTime();
+            reasons[records] = reasonBytes(entry.getReason());
+            stringsSize += reasons[records++].length;
+        }
+        for (FakeBanEntry entry : fakeBans) {
+            if (records == capacity || !entry.isActiveAt(now)) {
+                continue;
+            }
+            addKeys(records, entry.getName(), entry.getUuid(), entry.getIp(), names, uuids, ips);
+            kinds[records] = KIND_FAKEBAN;
+            endTimes[records] = entry.getEndTime();
+            reasons[records] = reasonBytes(entry.getReason());
+            stringsSize += reasons[records++].length;
+        }
+
+        names.sort();
+        uuids.sort();
+        ips.sort();
+
+        int size = HEADER_SIZE + (names.size + uuids.size + ips.size) * KEY_SIZE + records * RECORD_SIZE + stringsSize;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis())
+                .putInt(records).putInt(names.size).putInt(uuids.size).putInt(ips.size);
+        names.put(out);
+        uuids.put(out);
+        ips.put(out);
+
+        int stringPosition = 0;
+        for (int i = 0; i < records; i++) {
+            out.put(kinds[i]).putLong(endTimes[i]).putInt(stringPosition).putInt(reasons[i].length);
+            stringPosition += reasons[i].length;
+        }
+        for (int i = 0; i < records; i++) {
+            out.put(reasons[i]);
+        }
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Find the kick message for a login, or null if nothing in the image matches
+     * A 64-bit hash collision can only cause a false deny while the image is in use at startup.
+     */
+    public String findBanMessage(String uuid, String ip, String username) {
+        long now = System.currentTimeMillis();
+        String message = find(nameOffset, nameCount, nameHash(username), now);
+        if (message == null && uuid != null) {
+            message = find(uuidOffset, uuidCount, hash(uuid.toLowerCase(Locale.ROOT)), now);
+        }
+        if (message == null && ip != null) {
+            message = find(ipOffset, ipCount, hash(ip), now);
+        }
+        return message;
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    private String find(int offset, int count, long hash, long now) {
+        // Lower-bound binary search, then walk the run of equal hashes (e.g. several bans on one IP)
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(offset + middle * KEY_SIZE) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < count && buffer.getLong(offset + i * KEY_SIZE) == hash; i++) {
+            String message = messageFor(buffer.getInt(offset + i * KEY_SIZE + 8), now);
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private String messageFor(int record, long now) {
+        if (record < 0 || record >= recordCount) {
+            return null;
+        }
+        int position = recordOffset + record * RECORD_SIZE;
+        byte kind = buffer.get(position);
+        long endTime = buffer.getLong(position + 1);
+        if (endTime != PERMANENT && endTime < now) {
+            return null;
+        }
+        String reason = readReason(buffer.getInt(position + 9), buffer.getInt(position + 13));
+
+        if (kind == KIND_FAKEBAN) {
+            FakeBanEntry entry = new FakeBanEntry();
+            entry.setReason(reason);
+            entry.setEndTime(endTime);
+            return BanManager.formatMessage(entry);
+        }
+        BanEntry entry = new BanEntry();
+        entry.setReason(reason);
+        entry.setEndTime(endTime == PERMANENT ? null : endTime);
+        return BanManager.formatMessage(entry);
+    }
+
+    private String readReason(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(stringOffset + offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void addKeys(int record, String name, String uuid, String ip, Keys names, Keys uuids, Keys ips) {
+        if (name != null) {
+            names.add(nameHash(name), record);
+        }
+        if (uuid != null && !uuid.isEmpty()) {
+            uuids.add(hash(uuid.toLowerCase(Locale.ROOT)), record);
+        }
+        if (ip != null && !ip.isEmpty()) {
+            ips.add(hash(ip), record);
+        }
+    }
+
+    /**
+     * One key section being built: hashes and the records they point to, in parallel arrays
+     */
+    private static final class Keys {
+        private long[] hashes;
+        private int[] records;
+        private int size;
+
+        Keys(int capacity) {
+            hashes = new long[capacity];
+            records = new int[capacity];
+        }
+
+        void add(long hash, int record) {
+            hashes[size] = hash;
+            records[size++] = record;
+        }
+
+        /**
+         * Sort by hash with a bottom-up merge sort; equal hashes keep their record order
+         */
+        void sort() {
+            long[] hashBuffer = new long[size];
+            int[] recordBuffer = new int[size];
+            for (int width = 1; width < size; width <<= 1) {
+                for (int low = 0; low < size; low += width << 1) {
+                    int middle = Math.min(low + width, size);
+                    int high = Math.min(low + (width << 1), size);
+                    int left = low;
+                    int right = middle;
+                    for (int i = low; i < high; i++) {
+                        if (left < middle && (right >= high || hashes[left] <= hashes[right])) {
+                            hashBuffer[i] = hashes[left];
+                            recordBuffer[i] = records[left++];
+                        } else {
+                            hashBuffer[i] = hashes[right];
+                            recordBuffer[i] = records[right++];
+                        }
+                    }
+                }
+                long[] sortedHashes = hashBuffer;
+                hashBuffer = hashes;
+                hashes = sortedHashes;
+                int[] sortedRecords = recordBuffer;
+                recordBuffer = records;
+                records = sortedRecords;
+            }
+        }
+
+        void put(ByteBuffer out) {
+            for (int i = 0; i < size; i++) {
+                out.putLong(hashes[i]).putInt(records[i]);
+            }
+        }
+    }
+
+    private static byte[] reasonBytes(String reason) {
+        return reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Case-insensitive FNV-1a hash of a player name, without allocating a lower-case copy
+     */
+    private static long nameHash(String name) {
+        if (name == null) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= Character.toLowerCase(name.charAt(i));
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
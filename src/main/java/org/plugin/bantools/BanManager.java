@@ -3,29 +3,122 @@ package org.plugin.bantools;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 import org.slf4j.Logger;
 
+import java.net.InetAddress;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class BanManager {
+    // Longest a ban change can be missing from the startup index image
+    private static final long INDEX_IMAGE_DELAY_SECONDS = 5;
+
     private final ProxyServer server;
     private final Logger logger;
     private final ConfigManager configManager;
     private final WhitelistManager whitelistManager;
+    private final TaskExecutor tasks;
+    private final AuditLog auditLog;
+    private final AltGraph altGraph;
+    private final GeoLookup geoLookup;
+    private final Blocklists blocklists;
+    private final LoginDecisionCache decisions;
+    private final BanEventPublisher events;
     private FakeBanManager fakeBanManager; // Delayed initialization to avoid circular dependencies.
-    private final Map<String, BanEntry> banEntries = new HashMap<>();
+    private MuteManager muteManager;
+    private final PunishmentIndex punishments;
+    private final EntryIndex<BanEntry> banEntries;
+    private final SlotUpdater<BanEntry> banSlot;
+    private final BanSearchIndex searchIndex = new BanSearchIndex();
+    private final BanHistoryCache history;
+    private ScheduledFuture<?> compactionTask;
+    private ScheduledFuture<?> indexImageTask;
 
     public BanManager(ProxyServer server, Logger logger, ConfigManager configManager,
-                     WhitelistManager whitelistManager) {
+                     WhitelistManager whitelistManager, TaskExecutor tasks, AuditLog auditLog,
+                     AltGraph altGraph, GeoLookup geoLookup, Blocklists blocklists, BanEventPublisher events,
+                     PunishmentIndex punishments) {
         this.server = server;
         this.logger = logger;
         this.configManager = configManager;
         this.whitelistManager = whitelistManager;
+        this.tasks = tasks;
+        this.auditLog = auditLog;
+        this.altGraph = altGraph;
+        this.geoLookup = geoLookup;
+        this.blocklists = blocklists;
+        this.events = events;
+        this.punishments = punishments;
+        this.banEntries = punishments.slot(PunishmentIndex.SLOT_BANS);
+        this.banSlot = new SlotUpdater<BanEntry>(banEntries, configManager, false) {
+            @Override
+            void touched(String key, BanEntry entry) {
+                history.invalidate(PlayerName.of(key));
+                if (entry != null) {
+                    history.invalidate(entry);
+                }
+            }
+
+            @Override
+            void indexed(PlayerName name, BanEntry entry) {
+                searchIndex.put(name, entry);
+                altGraph.setBanned(name.getName(), true);
+            }
+
+            @Override
+            void removed(PlayerName name, BanEntry entry) {
+                searchIndex.remove(name);
+                altGraph.setBanned(entry.getName(), false);
+                history.invalidate(entry);
+            }
+        };
+        this.decisions = new LoginDecisionCache(configManager.getLoginCacheSize(), configManager.getLoginCacheTtlMillis());
+        this.history = new BanHistoryCache(configManager.getHistoryCacheSize());
         loadBans();
+        startCompactionTask();
+        // Saves only mark the index image stale; it is rewritten here, outside the writer lock
+        indexImageTask = tasks.scheduleAtFixedRate(() -> tasks.execute(configManager::flushIndexImage),
+                INDEX_IMAGE_DELAY_SECONDS, INDEX_IMAGE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start the hourly job that moves revoked and expired entries to the archive
+     * Expired bans are dropped from memory first. Followers do not compact: they receive the
+     * leader's removals through replication.
+     */
+    private void startCompactionTask() {
+        if (configManager.getReplicationRole().equals("follower")) {
+            return;
+        }
+        compactionTask = tasks.scheduleAtFixedRate(() -> tasks.execute(() -> {
+            banSlot.expire(System.currentTimeMillis());
+            configManager.compact().whenComplete((archived, error) -> {
+                if (error != null) {
+                    logger.error("Failed to archive revoked or expired ban entries", error);
+                } else if (archived > 0) {
+                    logger.info("Archived " + archived + " revoked or expired ban entries");
+                }
+            });
+        }), 5, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop the periodic compaction; the shared executor is drained by the plugin
+     */
+    public void shutdown() {
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+        }
+        indexImageTask.cancel(false);
+        geoLookup.shutdown();
+        blocklists.shutdown();
     }
 
     /**
@@ -35,12 +128,19 @@ public class BanManager {
         this.fakeBanManager = fakeBanManager;
     }
 
+    /**
+     * Set the MuteManager, so reloads and replicated changes reach the mutes as well
+     */
+    public void setMuteManager(MuteManager muteManager) {
+        this.muteManager = muteManager;
+    }
+
     /**
      * Get a list of all banned player names
      */
     public List<String> getBannedPlayers() {
         return banEntries.values().stream()
-                .filter(entry -> entry.getState() && !isExpired(entry))
+                .filter(this::isActive)
                 .map(BanEntry::getName)
                 .collect(Collectors.toList());
     }
@@ -55,96 +155,428 @@ public class BanManager {
     }
 
     public void loadBans() {
-        banEntries.clear();
+        FlightEvents.Reload flight = new FlightEvents.Reload();
+        flight.begin();
         Map<String, BanEntry> allBans = configManager.getBans();
 
+        // Replace entries in place instead of clear-then-refill so logins never see an empty index
+        Set<PlayerName> active = new HashSet<>();
         allBans.forEach((key, entry) -> {
-            if (entry.getState() && !isExpired(entry)) {
-                banEntries.put(key, entry);
+            if (isActive(entry)) {
+                banSlot.apply(key, entry);
+                active.add(PlayerName.of(key));
             }
         });
+        for (PlayerName name : banEntries.names()) {
+            if (!active.contains(name)) {
+                altGraph.setBanned(name.getName(), false);
+            }
+        }
+        banEntries.retainAll(active);
+        searchIndex.retainAll(active);
+        history.invalidateAll();
+        configManager.bumpStateEpoch();
+        flight.end();
+        if (flight.shouldCommit()) {
+            flight.kind = "load";
+            flight.entries = banEntries.size();
+            flight.bans = allBans.size();
+            flight.commit();
+        }
         logger.info("Loaded " + banEntries.size() + " valid ban entries");
     }
 
-    public boolean isBanned(String uuid, String ip, String username) {
-        // Check normal bans
-        boolean normalBan = banEntries.values().stream()
-                .filter(entry -> !isExpired(entry))
-                .anyMatch(entry -> {
-                    // Prefer checking player name (most reliable identifier)
-                    if (entry.getName().equalsIgnoreCase(username)) {
-                        // If it's an offline ban (UUID or IP is null), update info
-                        if ((entry.getUuid() == null || entry.getIp() == null) &&
-                            uuid != null && !uuid.isEmpty() && ip != null && !ip.isEmpty()) {
-                            updateBanEntryInfo(entry, uuid, ip);
-                        }
-                        return true;
+    /**
+     * Reload the configuration file and apply only the changed entries
+     * Also refreshes temporary bans, mutes and, when settings changed, the whitelist
+     */
+    public CompletableFuture<ConfigDiff> reload() {
+        FlightEvents.Reload flight = new FlightEvents.Reload();
+        flight.begin();
+        return configManager.reloadAsync(tasks).thenApply(diff -> {
+            if (!diff.isUnchanged()) {
+                applyBanDiff(diff.getBans(), ConfigDiff.RELOAD_ACTOR);
+                if (fakeBanManager != null) {
+                    fakeBanManager.applyFakeBanDiff(diff.getFakeBans(), ConfigDiff.RELOAD_ACTOR);
+                }
+                if (muteManager != null) {
+                    muteManager.applyMuteDiff(diff.getMutes());
+                }
+                if (diff.isSettingsChanged()) {
+                    whitelistManager.loadWhitelist();
+                    if (muteManager != null) {
+                        muteManager.refreshSettings();
                     }
-                    // Only match when UUID and IP are non-null and non-empty
-                    return (entry.getUuid() != null && entry.getUuid().equals(uuid)) ||
-                           (entry.getIp() != null && entry.getIp().equals(ip));
-                });
+                    geoLookup.refresh();
+                    blocklists.refresh();
+                    decisions.configure(configManager.getLoginCacheSize(), configManager.getLoginCacheTtlMillis());
+                    history.configure(configManager.getHistoryCacheSize());
+                }
+                logger.info(diff.summary());
+            }
+            flight.end();
+            if (flight.shouldCommit()) {
+                flight.kind = "reload";
+                flight.entries = banEntries.size();
+                flight.bans = diff.getBans().getAdded().size() + diff.getBans().getChanged().size()
+                        + diff.getBans().getRemoved().size();
+                flight.fakeBans = diff.getFakeBans().getAdded().size() + diff.getFakeBans().getChanged().size()
+                        + diff.getFakeBans().getRemoved().size();
+                flight.mutes = diff.getMutes().getAdded().size() + diff.getMutes().getChanged().size()
+                        + diff.getMutes().getRemoved().size();
+                flight.settings = diff.isSettingsChanged();
+                flight.commit();
+            }
+            return diff;
+        });
+    }
+
+    /**
+     * Apply ban changes received from the replication leader, or forwarded to this leader by a follower
+     * Players on this proxy whose ban became active are disconnected.
+     */
+    public void applyReplicated(ConfigDiff diff) {
+        List<BanEntry> banned = applyBanDiff(diff.getBans(), ConfigDiff.REPLICATION_ACTOR);
+        if (!banned.isEmpty()) {
+            FlightEvents.KickBatch flight = new FlightEvents.KickBatch();
+            flight.begin();
+            int disconnected = 0;
+            for (BanEntry entry : banned) {
+                if (disconnect(entry.getName(), entry.getReason()) != null) {
+                    disconnected++;
+                }
+            }
+            flight.finish("replication", banned.size(), disconnected);
+        }
+        if (fakeBanManager != null) {
+            fakeBanManager.applyReplicatedDiff(diff.getFakeBans());
+        }
+        if (muteManager != null) {
+            muteManager.applyMuteDiff(diff.getMutes());
+        }
+    }
 
-        // Check temporary bans
-        boolean fakeBan = fakeBanManager != null && fakeBanManager.isFakeBanned(uuid, ip, username);
+    /**
+     * @return the entries that became active
+     */
+    private List<BanEntry> applyBanDiff(ConfigDiff.MapDiff<BanEntry> diff, String actor) {
+        // The reload publishes the changed entries as one batch
+        List<BanChangeEvent> changes = new ArrayList<>();
+        List<BanEntry> banned = banSlot.applyDiff(diff, actor, changes);
+        events.publishAll(changes);
+        return banned;
+    }
 
-        return normalBan || fakeBan;
+    /**
+     * Get one page of active bans matching a query, newest first
+     * @throws IllegalArgumentException if the query cursor is malformed
+     */
+    public BanPage searchBans(BanQuery query) {
+        return searchIndex.search(query, this::isActive);
     }
 
-    private void updateBanEntryInfo(BanEntry entry, String uuid, String ip) {
-        try {
-            entry.setUuid(uuid);
-            entry.setIp(ip);
-            configManager.updateBanEntry(entry);
-            logger.info("Updated ban info for player " + entry.getName());
-        } catch (Exception e) {
-            logger.error("Failed to update ban info", e);
+    public boolean isBanned(String uuid, String ip, String username) {
+        return findLoginPunishment(uuid, ip, username) != null;
+    }
+
+    /**
+     * Find the punishment that denies a login, of whatever type, with one lookup
+     * Name first (most reliable identifier), then UUID, then IP.
+     */
+    private Punishment findLoginPunishment(String uuid, String ip, String username) {
+        Punishment entry = findActivePunishment(uuid, ip, username);
+
+        // If it's an offline ban matched by name (UUID or IP is null), update info
+        if (entry instanceof BanEntry && entry == banEntries.getByName(username) &&
+            (entry.getUuid() == null || entry.getIp() == null) &&
+            uuid != null && !uuid.isEmpty() && ip != null && !ip.isEmpty()) {
+            updateBanEntryInfo((BanEntry) entry, uuid, ip);
         }
+        return entry;
     }
 
-    public String getBanMessage(String uuid, String ip, String username) {
-        // Check normal bans
-        BanEntry entry = findBanEntry(uuid, ip, username);
-        if (entry != null) {
-            String reason = entry.getReason();
-            if (entry.isPermanent()) {
-                return "§cYou have been permanently banned!\nReason: " + reason;
-            } else {
-                return String.format("§cYou are banned until %s\nReason: %s",
-                        entry.getEndTimeFormatted(),
-                        reason);
+    /**
+     * Decide a login against bans, temporary bans, range bans and blocklists
+     * A decision for the same UUID, IP and name is reused for a short time while nothing it depends
+     * on has changed; the epoch is read before deciding, so a concurrent ban always invalidates it.
+     * Linked-account checks are not part of the decision and must still be run for allowed logins.
+     * @return the disconnect message, or null if the login is allowed
+     */
+    public Component checkLogin(String uuid, String ip, String username, InetAddress address) {
+        return checkLogin(uuid, ip, username, address, null);
+    }
+
+    /**
+     * @param flight if not null, receives the lookup path that decided the login
+     */
+    Component checkLogin(String uuid, String ip, String username, InetAddress address,
+                         FlightEvents.LoginDecision flight) {
+        long epoch = configManager.getStateEpoch();
+        LoginDecisionCache.Decision cached = decisions.get(uuid, ip, username, epoch);
+        if (cached != null) {
+            setPath(flight, FlightEvents.PATH_CACHE);
+            return cached.getMessage();
+        }
+
+        String message = null;
+        String path = FlightEvents.PATH_ALLOWED;
+        Punishment punishment = findLoginPunishment(uuid, ip, username);
+        if (punishment != null) {
+            message = formatMessage(punishment);
+            path = FlightEvents.PATH_BAN;
+        }
+        if (message == null) {
+            message = checkRangeBan(uuid, username, address);
+            path = message == null ? path : FlightEvents.PATH_RANGE_BAN;
+        }
+        if (message == null) {
+            message = checkBlocklists(uuid, username, address);
+            path = message == null ? FlightEvents.PATH_ALLOWED : FlightEvents.PATH_BLOCKLIST;
+        }
+        setPath(flight, path);
+        Component component = message == null ? null : Component.text(message);
+        decisions.put(uuid, ip, username, epoch, component);
+        return component;
+    }
+
+    private static void setPath(FlightEvents.LoginDecision flight, String path) {
+        if (flight != null) {
+            flight.path = path;
+        }
+    }
+
+    public String getLoginCacheStatus() {
+        return decisions.getStatus();
+    }
+
+    public String getHistoryCacheStatus() {
+        return history.getStatus();
+    }
+
+    public String getEventStatus() {
+        return events.getStatus();
+    }
+
+    /**
+     * Record the name, UUID and IP of a login in the alt graph
+     */
+    public void recordLogin(String uuid, String ip, String username) {
+        altGraph.observe(username, uuid, ip);
+
+        // Bind protected names to their UUID the first time they are seen, so protection survives a rename
+        if (whitelistManager.isAwaitingUuid(username)) {
+            try {
+                tasks.execute(() -> whitelistManager.addToWhitelist(username, uuid));
+            } catch (RejectedExecutionException e) {
+                logger.warn("Deferred whitelist UUID update for " + username + ": " + e.getMessage());
             }
         }
+    }
 
-        // Check temporary bans
-        if (fakeBanManager != null) {
-            FakeBanEntry fakeBanEntry = fakeBanManager.getFakeBanInfo(uuid, ip, username);
-            if (fakeBanEntry != null) {
-                return String.format("§cYou have been temporarily banned!\nReason: %s\nTime remaining: %s",
-                        fakeBanEntry.getReason(),
-                        fakeBanEntry.getRemainingTimeFormatted());
+    /**
+     * Check a login address against the ASN and country ban rules
+     * Whitelisted players are exempt, so staff behind a banned network can still join.
+     * @return the deny message, or null if no rule applies
+     */
+    public String checkRangeBan(String uuid, String username, InetAddress address) {
+        RangeBans.Rule rule = geoLookup.check(address);
+        if (rule == null || whitelistManager.isWhitelisted(uuid, username)) {
+            return null;
+        }
+        logger.info("Denied login of " + username + " (" + address.getHostAddress() + "), " + rule.describe() + " is banned");
+        String reason = rule.getReason();
+        return "§c" + configManager.getGeoDenyMessage() + (reason == null || reason.isEmpty() ? "" : "\nReason: " + reason);
+    }
+
+    /**
+     * Check a login address against the external blocklists
+     * Whitelisted players are exempt, as with range bans.
+     * @return the deny message, or null if the address is not listed
+     */
+    public String checkBlocklists(String uuid, String username, InetAddress address) {
+        String list = blocklists.check(address);
+        if (list == null || whitelistManager.isWhitelisted(uuid, username)) {
+            return null;
+        }
+        logger.info("Denied login of " + username + " (" + address.getHostAddress() + "), listed on blocklist " + list);
+        return "§c" + configManager.getBlocklistDenyMessage();
+    }
+
+    public Blocklists getBlocklists() {
+        return blocklists;
+    }
+
+    /**
+     * Describe the ASN and country of an address, for staff
+     */
+    public String describeAddress(InetAddress address) {
+        return geoLookup.describe(address);
+    }
+
+    /**
+     * Ban an ASN or a country
+     * @param input an ASN (with or without the "AS" prefix) or a two-letter country code
+     * @return completes once the rule is saved, with null on success or an error message
+     */
+    public CompletableFuture<String> banRange(String actor, GeoDatabase.Kind kind, String input, String reason) {
+        String key = RangeBans.normalizeKey(kind, input);
+        if (key == null) {
+            return CompletableFuture.completedFuture(kind == GeoDatabase.Kind.ASN
+                    ? "Invalid ASN: " + input : "Invalid country code (expected two letters): " + input);
+        }
+        if (configManager.getGeoDatabase(kind) == null) {
+            return CompletableFuture.completedFuture("No " + (kind == GeoDatabase.Kind.ASN ? "ASN" : "country")
+                    + " database is configured (geo section of config.conf)");
+        }
+        String finalReason = reason == null || reason.trim().isEmpty() ? configManager.getDefaultBanReason() : reason.trim();
+        String label = kind == GeoDatabase.Kind.ASN ? "AS" + key : "country " + key;
+        return configManager.addRangeBan(kind, key, finalReason, actor).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save range ban for " + label, error);
+                return "Failed to save the ban, check logs";
             }
+            auditLog.record(AuditRecord.now(AuditRecord.Action.RANGE_BAN, actor, label, null, null, finalReason, null));
+            logger.info("Banned " + label + ": " + finalReason);
+            return null;
+        });
+    }
+
+    /**
+     * Remove an ASN or country ban
+     * @return completes once the change is saved, with null on success or an error message
+     */
+    public CompletableFuture<String> unbanRange(String actor, GeoDatabase.Kind kind, String input) {
+        String key = RangeBans.normalizeKey(kind, input);
+        boolean exists = key != null && configManager.getRangeBans().getRules().stream()
+                .anyMatch(rule -> rule.isAsn() == (kind == GeoDatabase.Kind.ASN) && rule.getKey().equals(key));
+        if (!exists) {
+            return CompletableFuture.completedFuture("No such " + (kind == GeoDatabase.Kind.ASN ? "ASN" : "country") + " ban: " + input);
         }
+        String label = kind == GeoDatabase.Kind.ASN ? "AS" + key : "country " + key;
+        return configManager.removeRangeBan(kind, key).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to remove range ban for " + label, error);
+                return "Failed to save the change, check logs";
+            }
+            auditLog.record(AuditRecord.now(AuditRecord.Action.RANGE_UNBAN, actor, label, null, null, null, null));
+            logger.info("Removed ban of " + label);
+            return null;
+        });
+    }
 
-        return "";
+    public List<RangeBans.Rule> getRangeBans() {
+        return configManager.getRangeBans().getRules();
     }
 
-    public String banPlayer(String target, String reason, String duration) {
+    /**
+     * Apply the alt policy to a login that is not banned itself
+     * Flagged logins are logged and reported to online staff.
+     * @return the deny message, or null if the login may proceed
+     */
+    public String checkLinkedBan(String uuid, String ip, String username) {
+        String policy = configManager.getAltPolicy();
+        if (policy.equals("off") || whitelistManager.isWhitelisted(uuid, username)) {
+            return null;
+        }
+        String linked = altGraph.findLinkedBan(username, name -> {
+            BanEntry entry = banEntries.getByName(name);
+            return entry != null && isActive(entry);
+        });
+        if (linked == null) {
+            return null;
+        }
+
+        if (policy.equals("deny")) {
+            logger.info("Denied login of " + username + " (" + ip + "), linked to banned account " + linked);
+            return configManager.getAltDenyMessage();
+        }
+        logger.warn("Login of " + username + " (" + ip + ") is linked to banned account " + linked);
+        Component notice = Component.text("[BanTools] " + username + " is linked to banned account " + linked,
+                NamedTextColor.GOLD);
+        for (Player staff : server.getAllPlayers()) {
+            if (staff.hasPermission("bantools.notify.alts")) {
+                staff.sendMessage(notice);
+            }
+        }
+        return null;
+    }
+
+    private void updateBanEntryInfo(BanEntry stored, String uuid, String ip) {
+        BanEntry entry = (BanEntry) stored.copy();
+        entry.setUuid(uuid);
+        entry.setIp(ip);
+        banSlot.apply(entry.getName(), entry);
+        // The write is queued on the config writer, so the login event thread never waits for it
+        configManager.updateBanEntry(entry).whenComplete((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to update ban info for player " + entry.getName(), error);
+                return;
+            }
+            events.publish(new BackfillEvent(entry.getName(), uuid, ip));
+            auditLog.record(AuditRecord.now(AuditRecord.Action.BACKFILL, "System",
+                    entry.getName(), uuid, ip, null, null));
+            logger.info("Updated ban info for player " + entry.getName());
+        });
+    }
+
+    public String getBanMessage(String uuid, String ip, String username) {
+        Punishment entry = findActivePunishment(uuid, ip, username);
+        return entry != null ? formatMessage(entry) : "";
+    }
+
+    /**
+     * Build the disconnect message for a punishment of any type
+     */
+    static String formatMessage(Punishment entry) {
+        String reason = entry.getReason();
+        switch (entry.getType()) {
+            case FAKEBAN:
+                return String.format("§cYou have been temporarily banned!\nReason: %s\nTime remaining: %s",
+                        reason,
+                        ((FakeBanEntry) entry).getRemainingTimeFormatted());
+            case TEMP_BAN:
+                return String.format("§cYou are banned until %s\nReason: %s",
+                        ((BanEntry) entry).getEndTimeFormatted(),
+                        reason);
+            default:
+                return "§cYou have been permanently banned!\nReason: " + reason;
+        }
+    }
+
+    /**
+     * Get a player's punishment history from the audit log, newest first
+     */
+    public List<AuditRecord> getHistory(String target, int limit) {
+        return auditLog.history(target, limit);
+    }
+
+    /**
+     * Get a player's archived (revoked or expired) bans, read from disk on demand, oldest first
+     */
+    public List<BanEntry> getArchivedBans(String target) {
+        return configManager.getArchivedBans(target);
+    }
+
+    /**
+     * Ban a player
+     * @return completes once the ban is saved, with null on success or an error message
+     */
+    public CompletableFuture<String> banPlayer(String actor, String target, String reason, String duration) {
         // Input validation
         if (target == null || target.trim().isEmpty()) {
             logger.warn("Attempted to ban an empty player name");
-            return "Player name cannot be empty";
+            return CompletableFuture.completedFuture("Player name cannot be empty");
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        if (!PlayerName.isValid(target)) {
             logger.warn("Invalid player name format: " + target);
-            return "Invalid player name format";
+            return CompletableFuture.completedFuture("Invalid player name format");
         }
 
         // Whitelist protection check
-        String protectionCheck = whitelistManager.checkProtection(target);
+        String protectionCheck = whitelistManager.checkProtection(onlineUuid(target), target);
         if (protectionCheck != null) {
             logger.warn("Attempted to ban a protected player: " + target);
-            return protectionCheck;
+            return CompletableFuture.completedFuture(protectionCheck);
         }
 
         // Check if already banned
@@ -152,7 +584,7 @@ public class BanManager {
         if (existingBan != null) {
             String banInfo = formatExistingBanInfo(existingBan);
             logger.info("Attempted to ban already banned player: " + target + " - ban already exists");
-            return "Player is already banned! " + banInfo;
+            return CompletableFuture.completedFuture("Player is already banned! " + banInfo);
         }
 
         Player player = server.getPlayer(target).orElse(null);
@@ -170,6 +602,7 @@ public class BanManager {
         }
         entry.setReason(reason == null || reason.trim().isEmpty() ? configManager.getDefaultBanReason() : reason.trim());
         entry.setStartTime(System.currentTimeMillis());
+        entry.setOperator(actor);
         entry.setState(true); // Ensure ban state is active
 
         // Handle ban duration (default: permanent)
@@ -179,11 +612,19 @@ public class BanManager {
             entry.setEndTime(parseDuration(duration));
         }
 
-        configManager.addBan(entry);
-        // ConfigManager.addBan() already called loadBans(); call loadBans() here to synchronize BanManager's data
-        loadBans();
-        kickPlayer(target, entry.getReason());
-        return null; // Successfully banned, return null to indicate no error
+        return configManager.addBan(entry).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save ban for " + target, error);
+                return "Failed to save the ban, check logs";
+            }
+            banSlot.apply(entry.getName(), entry);
+            history.invalidate(entry);
+            events.publish(BanAddedEvent.of(actor, entry));
+            auditLog.record(AuditRecord.now(AuditRecord.Action.BAN, actor, entry.getName(),
+                    entry.getUuid(), entry.getIp(), entry.getReason(), entry.getEndTime()));
+            kick("ban", target, entry.getReason());
+            return null; // Successfully banned, return null to indicate no error
+        });
     }
 
     private long parseDuration(String duration) {
@@ -220,15 +661,19 @@ public class BanManager {
         }
     }
 
-    public String unbanPlayer(String target) {
+    /**
+     * Revoke a player's ban
+     * @return completes once the change is saved, with null on success or an error message
+     */
+    public CompletableFuture<String> unbanPlayer(String actor, String target) {
         // Input validation
         if (target == null || target.trim().isEmpty()) {
             logger.warn("Attempted to unban an empty player name");
-            return "Player name cannot be empty";
+            return CompletableFuture.completedFuture("Player name cannot be empty");
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        if (!PlayerName.isValid(target)) {
             logger.warn("Invalid player name format: " + target);
-            return "Invalid player name format";
+            return CompletableFuture.completedFuture("Invalid player name format");
         }
 
         // Check if an active ban record exists
@@ -238,59 +683,145 @@ public class BanManager {
             BanEntry inactiveBan = findInactiveBan(target);
             if (inactiveBan != null) {
                 logger.info("Attempted to unban player already unbanned: " + target);
-                return "Player is not banned or already unbanned!";
+                return CompletableFuture.completedFuture("Player is not banned or already unbanned!");
             } else {
                 logger.info("Attempted to unban a non-existent player: " + target);
-                return "This player has no ban record!";
+                return CompletableFuture.completedFuture("This player has no ban record!");
             }
         }
 
-        configManager.setBanState(target, false);
-        loadBans();
-        logger.info("Successfully unbanned player: " + target);
-        return null; // Successfully unbanned, return null to indicate no error
+        // Use the stored key so the state change lands on the existing record whatever case was typed
+        return configManager.setBanState(existingBan.getName(), false).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save unban for " + target, error);
+                return "Failed to save the unban, check logs";
+            }
+            banSlot.remove(existingBan.getName());
+            history.invalidate(existingBan);
+            events.publish(new BanRemovedEvent(actor, existingBan.getName(), existingBan.getUuid(), existingBan.getIp(), false));
+            auditLog.record(AuditRecord.now(AuditRecord.Action.UNBAN, actor, existingBan.getName(),
+                    existingBan.getUuid(), existingBan.getIp(), null, null));
+            logger.info("Successfully unbanned player: " + target);
+            return null; // Successfully unbanned, return null to indicate no error
+        });
+    }
+
+    /**
+     * Revoke every active ban and temporary ban an operator issued at or after a time
+     * The bans are found through the operator index and all changes are saved in one commit;
+     * afterwards only the affected entries are re-indexed and their events published as one batch.
+     * @param dryRun only find the punishments, without changing anything
+     * @return completes once the changes are saved; check {@link Rollback#getError()}
+     */
+    public CompletableFuture<Rollback> rollback(String actor, String operator, long since, boolean dryRun) {
+        long started = System.nanoTime();
+        List<BanEntry> bans = searchIndex.issuedBy(operator, since, this::isActive);
+        List<FakeBanEntry> fakeBans = fakeBanManager == null ? Collections.emptyList()
+                : fakeBanManager.getFakeBansIssuedBy(operator, since);
+        if (dryRun || (bans.isEmpty() && fakeBans.isEmpty())) {
+            return CompletableFuture.completedFuture(
+                    new Rollback(operator, since, bans, fakeBans, dryRun, System.nanoTime() - started, null));
+        }
+
+        List<ReplicationJournal.Record> records = new ArrayList<>(bans.size() + fakeBans.size());
+        for (BanEntry entry : bans) {
+            records.add(ReplicationJournal.Record.state(ReplicationJournal.SECTION_BANS, entry.getName(), false));
+        }
+        for (FakeBanEntry entry : fakeBans) {
+            records.add(ReplicationJournal.Record.state(ReplicationJournal.SECTION_FAKEBANS, entry.getName(), false));
+        }
+        return configManager.submitAll(records).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save rollback of " + operator, error);
+                return new Rollback(operator, since, bans, fakeBans, false, System.nanoTime() - started,
+                        "Failed to save the rollback, check logs");
+            }
+            ConfigDiff diff = configManager.diffOf(records);
+            applyBanDiff(diff.getBans(), actor);
+            if (fakeBanManager != null) {
+                fakeBanManager.applyFakeBanDiff(diff.getFakeBans(), actor);
+            }
+            String reason = "Rollback of " + operator;
+            for (BanEntry entry : bans) {
+                auditLog.record(AuditRecord.now(AuditRecord.Action.UNBAN, actor, entry.getName(),
+                        entry.getUuid(), entry.getIp(), reason, null));
+            }
+            for (FakeBanEntry entry : fakeBans) {
+                auditLog.record(AuditRecord.now(AuditRecord.Action.UNFAKEBAN, actor, entry.getName(),
+                        entry.getUuid(), entry.getIp(), reason, null));
+            }
+            Rollback rollback = new Rollback(operator, since, bans, fakeBans, false, System.nanoTime() - started, null);
+            logger.info(rollback.summary() + " (by " + actor + ")");
+            return rollback;
+        });
     }
 
-    public String kickPlayer(String target, String reason) {
+    public String kickPlayer(String actor, String target, String reason) {
         // Input validation
         if (target == null || target.trim().isEmpty()) {
             logger.warn("Attempted to kick an empty player name");
             return "Player name cannot be empty";
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        if (!PlayerName.isValid(target)) {
             logger.warn("Invalid player name format: " + target);
             return "Invalid player name format";
         }
 
         // Whitelist protection check
-        String protectionCheck = whitelistManager.checkProtection(target);
+        String protectionCheck = whitelistManager.checkProtection(onlineUuid(target), target);
         if (protectionCheck != null) {
             logger.warn("Attempted to kick a protected player: " + target);
             return protectionCheck;
         }
 
-        server.getAllPlayers().stream()
-                .filter(p -> p.getUsername().equalsIgnoreCase(target))
-                .forEach(p -> p.disconnect(Component.text("§c" + reason)));
+        Player player = kick("kick", target, reason);
+        auditLog.record(AuditRecord.now(AuditRecord.Action.KICK, actor, target,
+                player == null ? null : player.getUniqueId().toString(),
+                player == null ? null : player.getRemoteAddress().getAddress().getHostAddress(),
+                reason, null));
 
         logger.info("Kicked player: " + target + ", reason: " + reason);
         return null; // Successfully kicked, return null to indicate no error
     }
 
-    private BanEntry findBanEntry(String uuid, String ip, String username) {
-        return banEntries.values().stream()
-                .filter(entry -> !isExpired(entry))
-                .filter(entry ->
-                        entry.getUuid().equals(uuid) ||
-                                entry.getIp().equals(ip) ||
-                                entry.getName().equalsIgnoreCase(username)
-                )
-                .findFirst()
-                .orElse(null);
+    private String onlineUuid(String target) {
+        return server.getPlayer(target).map(player -> player.getUniqueId().toString()).orElse(null);
+    }
+
+    /**
+     * Disconnect one player, recorded as a kick batch of one
+     */
+    private Player kick(String cause, String target, String reason) {
+        FlightEvents.KickBatch flight = new FlightEvents.KickBatch();
+        flight.begin();
+        Player player = disconnect(target, reason);
+        flight.finish(cause, 1, player == null ? 0 : 1);
+        return player;
+    }
+
+    private Player disconnect(String target, String reason) {
+        // ProxyServer.getPlayer is already a case-insensitive lookup
+        Player player = server.getPlayer(target).orElse(null);
+        if (player != null) {
+            player.disconnect(Component.text("§c" + reason));
+        }
+        return player;
+    }
+
+    /**
+     * Find an active punishment of any type without the login-time side effects of {@link #isBanned},
+     * for read-only queries
+     */
+    Punishment findActivePunishment(String uuid, String ip, String username) {
+        return punishments.find(uuid, ip, username, this::isActive);
     }
 
     private boolean isExpired(BanEntry entry) {
-        return !entry.isPermanent() && entry.getEndTime() < System.currentTimeMillis();
+        return entry.hasExpired(System.currentTimeMillis());
+    }
+
+    private boolean isActive(Punishment entry) {
+        return entry.isActiveAt(System.currentTimeMillis());
     }
 
     /**
@@ -299,37 +830,21 @@ public class BanManager {
      * @return BanEntry if an active ban is found, otherwise null
      */
     private BanEntry findExistingBan(String target) {
-        // First check active bans in memory
-        for (BanEntry entry : banEntries.values()) {
-            if (entry.getName().equalsIgnoreCase(target) && !isExpired(entry)) {
-                return entry;
-            }
-        }
-
-        // Check all ban records in the config (including unbanned ones)
-        Map<String, BanEntry> allBans = configManager.getBans();
-        for (BanEntry entry : allBans.values()) {
-            if (entry.getName().equalsIgnoreCase(target) && entry.getState() && !isExpired(entry)) {
-                return entry;
-            }
-        }
-
-        return null;
+        // Every active ban is indexed, so no other record needs to be checked
+        BanEntry active = banEntries.getByName(target);
+        return active != null && !isExpired(active) ? active : null;
     }
 
     /**
-     * Find inactive (unbanned) record for a specified player
+     * Find inactive (unbanned or expired) record for a specified player
+     * Compacted bans are only kept in the archive on disk; recent lookups, including misses, are cached.
+     * An online player is also looked up by UUID, which finds a ban recorded under a former name.
      * @param target player name
      * @return BanEntry if an inactive ban record is found, otherwise null
      */
     private BanEntry findInactiveBan(String target) {
-        Map<String, BanEntry> allBans = configManager.getBans();
-        for (BanEntry entry : allBans.values()) {
-            if (entry.getName().equalsIgnoreCase(target) && !entry.getState()) {
-                return entry;
-            }
-        }
-        return null;
+        UUID uuid = server.getPlayer(target).map(Player::getUniqueId).orElse(null);
+        return history.get(PlayerName.of(target), uuid, configManager::readInactiveBan);
     }
 
     /**
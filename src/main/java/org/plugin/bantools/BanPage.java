@@ -0,0 +1,25 @@
+package org.plugin.bantools;
+
+import java.util.List;
+
+/**
+ * One page of a {@link BanQuery}
+ */
+public class BanPage {
+    private final List<BanEntry> entries;
+    private final String nextCursor;
+
+    public BanPage(List<BanEntry> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<BanEntry> getEntries() { return entries; }
+
+    /**
+     * Cursor for the following page, or null if this is the last one
+     */
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean hasNext() { return nextCursor != null; }
+}
@@ -0,0 +1,64 @@
+package org.plugin.bantools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filters and cursor for listing active bans
+ * Unset filters match everything; results are ordered newest ban first.
+ */
+public class BanQuery {
+    public static final int DEFAULT_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 50;
+
+    private final List<String> reasonTerms = new ArrayList<>();
+    private Long from;
+    private Long to;
+    private Boolean permanent;
+    private String ip;
+    private String operator;
+    private String cursor;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Words that must all appear in the ban reason (case-insensitive)
+     */
+    public List<String> getReasonTerms() { return reasonTerms; }
+    public void addReasonTerm(String term) { reasonTerms.add(term); }
+
+    /**
+     * Inclusive lower bound on the ban start time, in epoch milliseconds
+     */
+    public Long getFrom() { return from; }
+    public void setFrom(Long from) { this.from = from; }
+
+    /**
+     * Exclusive upper bound on the ban start time, in epoch milliseconds
+     */
+    public Long getTo() { return to; }
+    public void setTo(Long to) { this.to = to; }
+
+    /**
+     * true for permanent bans only, false for temporary bans only, null for both
+     */
+    public Boolean getPermanent() { return permanent; }
+    public void setPermanent(Boolean permanent) { this.permanent = permanent; }
+
+    public String getIp() { return ip; }
+    public void setIp(String ip) { this.ip = ip; }
+
+    /**
+     * Name of the admin who issued the ban
+     */
+    public String getOperator() { return operator; }
+    public void setOperator(String operator) { this.operator = operator; }
+
+    /**
+     * Opaque position returned as {@link BanPage#getNextCursor()} by the previous page
+     */
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public int getPageSize() { return pageSize; }
+    public void setPageSize(int pageSize) { this.pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize)); }
+}
@@ -0,0 +1,83 @@
+package org.plugin.bantools;
+
+import java.util.*;
+
+/**
+ * Read-only ban lookups for other plugins, obtained from {@link BanToolsPlugin#getQueryService()}
+ * Queries read the same concurrent indexes as the login check, so they take no locks and never
+ * wait for a write; results are detached {@link BanRecord} copies. As at login, a match by name
+ * wins over one by UUID or IP, and on the same key a normal ban wins over a temporary ban.
+ * <p>
+ * {@link #getVersion()} increases with every change that can affect a result. A caller that reads
+ * the version before querying may reuse its results for as long as the version is unchanged,
+ * except that a timed ban stops applying at its end time without a version change.
+ */
+public class BanQueryService {
+    private final ConfigManager configManager;
+    private final BanManager banManager;
+
+    BanQueryService(ConfigManager configManager, BanManager banManager) {
+        this.configManager = configManager;
+        this.banManager = banManager;
+    }
+
+    /**
+     * Monotonically increasing version of the ban state
+     */
+    public long getVersion() {
+        return configManager.getStateEpoch();
+    }
+
+    /**
+     * @return the active ban of a player UUID, or null if there is none
+     */
+    public BanRecord findByUuid(UUID uuid) {
+        return uuid == null ? null : find(uuid.toString(), null, null);
+    }
+
+    /**
+     * @return the active ban of an IP address, or null if there is none
+     */
+    public BanRecord findByIp(String ip) {
+        return find(null, ip, null);
+    }
+
+    /**
+     * @return the active ban of a player name (case-insensitive), or null if there is none
+     */
+    public BanRecord findByName(String playerName) {
+        return find(null, null, playerName);
+    }
+
+    public boolean isBanned(UUID uuid) {
+        return findByUuid(uuid) != null;
+    }
+
+    public boolean isIpBanned(String ip) {
+        return findByIp(ip) != null;
+    }
+
+    public boolean isNameBanned(String playerName) {
+        return findByName(playerName) != null;
+    }
+
+    /**
+     * Look up many players at once, e.g. for a periodic sweep of online players
+     * @return the active ban of every banned UUID in the collection; players without one are absent
+     */
+    public Map<UUID, BanRecord> checkAll(Collection<UUID> uuids) {
+        Map<UUID, BanRecord> banned = new HashMap<>();
+        for (UUID uuid : uuids) {
+            BanRecord record = findByUuid(uuid);
+            if (record != null) {
+                banned.put(uuid, record);
+            }
+        }
+        return banned;
+    }
+
+    private BanRecord find(String uuid, String ip, String playerName) {
+        Punishment entry = banManager.findActivePunishment(uuid, ip, playerName);
+        return entry != null ? BanRecord.of(entry) : null;
+    }
+}
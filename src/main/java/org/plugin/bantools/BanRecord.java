@@ -0,0 +1,52 @@
+package org.plugin.bantools;
+
+/**
+ * Immutable copy of an active ban or temporary ban, as returned by {@link BanQueryService}
+ * Records are detached from the ban store, so callers may keep them as long as they like.
+ */
+public final class BanRecord {
+    private final String playerName;
+    private final String uuid;
+    private final String ip;
+    private final String reason;
+    private final String operator;
+    private final long startTime;
+    private final Long endTime;
+    private final boolean fakeBan;
+
+    private BanRecord(String playerName, String uuid, String ip, String reason, String operator,
+                      long startTime, Long endTime, boolean fakeBan) {
+        this.playerName = playerName;
+        this.uuid = uuid;
+        this.ip = ip;
+        this.reason = reason;
+        this.operator = operator;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.fakeBan = fakeBan;
+    }
+
+    static BanRecord of(Punishment entry) {
+        return new BanRecord(entry.getName(), entry.getUuid(), entry.getIp(), entry.getReason(),
+                entry.getOperator(), entry.getStartTime(), entry.getExpiresAt(),
+                entry.getType() == Punishment.Type.FAKEBAN);
+    }
+
+    public String getPlayerName() { return playerName; }
+    /** May be null for bans of players who have not joined yet */
+    public String getUuid() { return uuid; }
+    public String getIp() { return ip; }
+    public String getReason() { return reason; }
+    public String getOperator() { return operator; }
+    public long getStartTime() { return startTime; }
+    /** End time in epoch milliseconds, or null for a permanent ban */
+    public Long getEndTime() { return endTime; }
+    public boolean isPermanent() { return endTime == null; }
+    /** True for a temporary ban issued with /bt fakeban */
+    public boolean isFakeBan() { return fakeBan; }
+
+    /**
+     * Check whether the ban has run out by the given time; the query version does not change when it does
+     */
+    public boolean hasExpired(long now) { return endTime != null && endTime < now; }
+}
@@ -0,0 +1,16 @@
+package org.plugin.bantools;
+
+/**
+ * A ban or temporary ban was lifted before it expired
+ */
+public final class BanRemovedEvent extends BanChangeEvent {
+    private final boolean fakeBan;
+
+    public BanRemovedEvent(String actor, String playerName, String uuid, String ip, boolean fakeBan) {
+        super(actor, playerName, uuid, ip);
+        this.fakeBan = fakeBan;
+    }
+
+    /** True for a temporary ban issued with /bt fakeban */
+    public boolean isFakeBan() { return fakeBan; }
+}
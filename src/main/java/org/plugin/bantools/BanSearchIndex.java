@@ -0,0 +1,294 @@
+package org.plugin.bantools;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Secondary indexes over active bans for listing and searching
+ * Every posting list (all bans, permanent/temporary, per reason token, per IP, per operator)
+ * is a skip list in the same newest-first order. A query walks the smallest posting list
+ * that applies from the cursor position and checks the remaining filters per entry, so a
+ * page costs a seek plus roughly the page size rather than a scan of every ban.
+ */
+class BanSearchIndex {
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    // Newest first; ties broken by folded name, a null name sorting before every name
+    private static final Comparator<Key> ORDER = (a, b) -> {
+        int byTime = Long.compare(b.startTime, a.startTime);
+        if (byTime != 0) {
+            return byTime;
+        }
+        if (a.folded == null || b.folded == null) {
+            return a.folded == null ? (b.folded == null ? 0 : -1) : 1;
+        }
+        return a.folded.compareTo(b.folded);
+    };
+
+    private static final class Key {
+        final long startTime;
+        final String folded;
+
+        Key(long startTime, String folded) {
+            this.startTime = startTime;
+            this.folded = folded;
+        }
+    }
+
+    private static final class Posting {
+        final NavigableSet<Key> keys = new ConcurrentSkipListSet<>(ORDER);
+        // ConcurrentSkipListSet.size() is a traversal, so keep the count separately
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(Key key) {
+            if (keys.add(key)) {
+                size.incrementAndGet();
+            }
+        }
+
+        boolean remove(Key key) {
+            if (keys.remove(key)) {
+                size.decrementAndGet();
+            }
+            return keys.isEmpty();
+        }
+    }
+
+    /**
+     * The indexed values of an entry, kept so removal works after the entry was edited in place
+     */
+    private static final class Indexed {
+        final BanEntry entry;
+        final Key key;
+        final Set<String> tokens;
+        final String ip;
+        final String operator;
+        final boolean permanent;
+
+        Indexed(BanEntry entry, Key key) {
+            this.entry = entry;
+            this.key = key;
+            this.tokens = tokenize(entry.getReason());
+            this.ip = emptyToNull(entry.getIp());
+            this.operator = entry.getOperator() == null ? null : entry.getOperator().toLowerCase(Locale.ROOT);
+            this.permanent = entry.isPermanent();
+        }
+    }
+
+    private final Map<String, Indexed> byName = new ConcurrentHashMap<>();
+    private final Posting all = new Posting();
+    private final Posting permanentBans = new Posting();
+    private final Posting temporaryBans = new Posting();
+    private final Map<String, Posting> byToken = new ConcurrentHashMap<>();
+    private final Map<String, Posting> byIp = new ConcurrentHashMap<>();
+    private final Map<String, Posting> byOperator = new ConcurrentHashMap<>();
+
+    synchronized void put(PlayerName name, BanEntry entry) {
+        remove(name);
+        Indexed indexed = new Indexed(entry, new Key(entry.getStartTime(), name.getFolded()));
+        byName.put(name.getFolded(), indexed);
+        all.add(indexed.key);
+        (indexed.permanent ? permanentBans : temporaryBans).add(indexed.key);
+        for (String token : indexed.tokens) {
+            link(byToken, token, indexed.key);
+        }
+        link(byIp, indexed.ip, indexed.key);
+        link(byOperator, indexed.operator, indexed.key);
+    }
+
+    synchronized void remove(PlayerName name) {
+        remove(name.getFolded());
+    }
+
+    private void remove(String folded) {
+        Indexed indexed = byName.remove(folded);
+        if (indexed == null) {
+            return;
+        }
+        all.remove(indexed.key);
+        (indexed.permanent ? permanentBans : temporaryBans).remove(indexed.key);
+        for (String token : indexed.tokens) {
+            unlink(byToken, token, indexed.key);
+        }
+        unlink(byIp, indexed.ip, indexed.key);
+        unlink(byOperator, indexed.operator, indexed.key);
+    }
+
+    synchronized void retainAll(Set<PlayerName> names) {
+        Set<String> keep = new HashSet<>();
+        for (PlayerName name : names) {
+            keep.add(name.getFolded());
+        }
+        for (String folded : new ArrayList<>(byName.keySet())) {
+            if (!keep.contains(folded)) {
+                remove(folded);
+            }
+        }
+    }
+
+    /**
+     * Answer one page of a query
+     * @param active final check against the live entry (bans can expire between reloads)
+     * @throws IllegalArgumentException if the query cursor is malformed
+     */
+    BanPage search(BanQuery query, Predicate<BanEntry> active) {
+        Set<String> terms = new HashSet<>();
+        for (String term : query.getReasonTerms()) {
+            terms.addAll(tokenize(term));
+        }
+        String ip = emptyToNull(query.getIp());
+        String operator = query.getOperator() == null ? null : query.getOperator().toLowerCase(Locale.ROOT);
+
+        // Drive the scan from the most selective posting list; a missing list means no match
+        List<Posting> candidates = new ArrayList<>();
+        candidates.add(all);
+        if (query.getPermanent() != null) {
+            candidates.add(query.getPermanent() ? permanentBans : temporaryBans);
+        }
+        if (ip != null) {
+            candidates.add(byIp.get(ip));
+        }
+        if (operator != null) {
+            candidates.add(byOperator.get(operator));
+        }
+        for (String term : terms) {
+            candidates.add(byToken.get(term));
+        }
+        if (candidates.contains(null)) {
+            return new BanPage(Collections.emptyList(), null);
+        }
+        Posting driver = Collections.min(candidates, Comparator.comparingInt(p -> p.size.get()));
+
+        // Start after the cursor, or at the upper end of the date range, whichever comes later
+        Key start = null;
+        boolean inclusive = true;
+        if (query.getTo() != null) {
+            start = new Key(query.getTo() - 1, null);
+        }
+        if (query.getCursor() != null) {
+            Key cursor = decodeCursor(query.getCursor());
+            if (start == null || ORDER.compare(cursor, start) >= 0) {
+                start = cursor;
+                inclusive = false;
+            }
+        }
+        NavigableSet<Key> view = start == null ? driver.keys : driver.keys.tailSet(start, inclusive);
+
+        List<BanEntry> page = new ArrayList<>(query.getPageSize());
+        Key last = null;
+        for (Key key : view) {
+            if (query.getFrom() != null && key.startTime < query.getFrom()) {
+                break;
+            }
+            Indexed indexed = byName.get(key.folded);
+            if (indexed == null || indexed.key != key || !matches(indexed, query, terms, ip, operator)
+                    || !active.test(indexed.entry)) {
+                continue;
+            }
+            if (page.size() == query.getPageSize()) {
+                // One more match exists, so there is a next page
+                return new BanPage(page, encodeCursor(last));
+            }
+            page.add(indexed.entry);
+            last = key;
+        }
+        return new BanPage(page, null);
+    }
+
+    /**
+     * Every active ban an operator issued at or after a time, newest first
+     * Walks only that operator's posting list and stops at the first older entry.
+     */
+    List<BanEntry> issuedBy(String operator, long since, Predicate<BanEntry> active) {
+        Posting posting = byOperator.get(operator.toLowerCase(Locale.ROOT));
+        if (posting == null) {
+            return Collections.emptyList();
+        }
+        List<BanEntry> entries = new ArrayList<>();
+        for (Key key : posting.keys) {
+            if (key.startTime < since) {
+                break;
+            }
+            Indexed indexed = byName.get(key.folded);
+            if (indexed != null && indexed.key == key && active.test(indexed.entry)) {
+                entries.add(indexed.entry);
+            }
+        }
+        return entries;
+    }
+
+    int size() {
+        return all.size.get();
+    }
+
+    private static boolean matches(Indexed indexed, BanQuery query, Set<String> terms, String ip, String operator) {
+        if (query.getPermanent() != null && indexed.permanent != query.getPermanent()) {
+            return false;
+        }
+        if (ip != null && !ip.equals(indexed.ip)) {
+            return false;
+        }
+        if (operator != null && !operator.equals(indexed.operator)) {
+            return false;
+        }
+        return indexed.tokens.containsAll(terms);
+    }
+
+    private static String encodeCursor(Key key) {
+        return key.startTime + "." + key.folded;
+    }
+
+    private static Key decodeCursor(String cursor) {
+        int dot = cursor.indexOf('.');
+        if (dot <= 0 || dot == cursor.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new Key(Long.parseLong(cursor.substring(0, dot)), cursor.substring(dot + 1).toLowerCase(Locale.ROOT));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Split text into lower-case words of letters and digits
+     */
+    static Set<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> tokens = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= MIN_TOKEN_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static void link(Map<String, Posting> index, String value, Key key) {
+        if (value != null) {
+            index.computeIfAbsent(value, v -> new Posting()).add(key);
+        }
+    }
+
+    private static void unlink(Map<String, Posting> index, String value, Key key) {
+        if (value != null) {
+            index.computeIfPresent(value, (v, posting) -> posting.remove(key) ? null : posting);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,363 @@
+package org.plugin.bantools;
+
+import com.typesafe.config.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ban, temporary ban and mute sections split over a fixed number of shard files
+ * An entry lives in the shard chosen by a stable hash of its case-folded key, so a mutation only
+ * rewrites the shards whose entries changed. Each shard file holds a "bans", a "fakebans" and a
+ * "mutes" section for its keys and is replaced atomically. Entries found in the wrong shard (hand edits
+ * or a changed shard count) are moved to the right one by the caller.
+ */
+class BanShards {
+    static final int DEFAULT_COUNT = 16;
+    static final int MAX_COUNT = 256;
+    private static final Pattern FILE_NAME = Pattern.compile("shard-(\\d{1,5})\\.conf");
+    // Shard files read at once during a load, counting the calling thread
+    private static final int MAX_PARALLEL_READS = 8;
+
+    private final Path directory;
+    private final int count;
+    private final Executor executor;
+    // On-disk state of every shard file as last accepted or written, used to skip unchanged shards on reload
+    private final Map<Integer, FileState> states = new ConcurrentHashMap<>();
+    // Shards whose file failed to parse on reload; never written until a reload parses them again
+    private final Set<Integer> quarantined = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Contents of one shard file
+     */
+    static final class Shard {
+        final int index;
+        final Map<String, ConfigValue> bans;
+        final Map<String, ConfigValue> fakeBans;
+        final Map<String, ConfigValue> mutes;
+        private final FileState state;
+
+        Shard(int index, Map<String, ConfigValue> bans, Map<String, ConfigValue> fakeBans,
+              Map<String, ConfigValue> mutes, FileState state) {
+            this.index = index;
+            this.bans = bans;
+            this.fakeBans = fakeBans;
+            this.mutes = mutes;
+            this.state = state;
+        }
+    }
+
+    private static final class FileState {
+        final long modified;
+        final long size;
+        final byte[] hash;
+
+        FileState(long modified, long size, byte[] hash) {
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    BanShards(Path directory, int count, Executor executor) {
+        this.directory = directory;
+        this.count = Math.max(1, Math.min(MAX_COUNT, count));
+        this.executor = executor;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Shard of an entry key; names differing only in case share a shard
+     * The hash is spelled out instead of relying on a library hash, so the mapping never changes.
+     */
+    int shardOf(String key) {
+        int hash = 0;
+        for (int i = 0; i < key.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(key.charAt(i));
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, count);
+    }
+
+    Path file(int shard) {
+        return directory.resolve("shard-" + shard + ".conf");
+    }
+
+    /**
+     * Read every shard file in the directory, one file per thread
+     * Files beyond the configured count are read too, so their entries can be moved.
+     * @throws IllegalStateException if a shard cannot be parsed; the file is left as it is
+     */
+    List<Shard> loadAll() throws IOException {
+        Files.createDirectories(directory);
+        List<Shard> shards = readAll(listIndexes(), this::readOrFail);
+        accept(shards);
+        return shards;
+    }
+
+    /**
+     * Read the shard files that changed on disk since they were last accepted or written
+     * Nothing is recorded until the caller {@link #accept}s the result, so a reload that fails
+     * reads the same files again next time.
+     * @param removed receives the indexes of shard files that were deleted
+     * @throws ConfigException if a changed shard cannot be parsed
+     */
+    List<Shard> loadChanged(Set<Integer> removed) throws IOException {
+        List<Integer> present = listIndexes();
+        for (Integer index : states.keySet()) {
+            if (!present.contains(index)) {
+                removed.add(index);
+            }
+        }
+        List<Integer> changed = new ArrayList<>();
+        for (int index : present) {
+            FileState state = states.get(index);
+            Path file = file(index);
+            if (state == null || state.modified != Files.getLastModifiedTime(file).toMillis()
+                    || state.size != Files.size(file)) {
+                changed.add(index);
+            }
+        }
+        return readAll(changed, this::readIfChanged);
+    }
+
+    /**
+     * Record the on-disk state of shards that were applied, and forget removed ones
+     */
+    void accept(Collection<Shard> shards) {
+        for (Shard shard : shards) {
+            if (shard.state != null) {
+                states.put(shard.index, shard.state);
+            }
+        }
+    }
+
+    void forget(Collection<Integer> removed) {
+        states.keySet().removeAll(removed);
+    }
+
+    /**
+     * Read shard files in parallel on the plugin executor
+     * The calling thread claims files like the helpers do, so the load completes even when the
+     * executor is full or the caller is one of its threads; helpers that start after every file was
+     * claimed return at once.
+     */
+    private List<Shard> readAll(List<Integer> indexes, IntFunction<Shard> reader) {
+        int total = indexes.size();
+        Shard[] read = new Shard[total];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(total);
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                try {
+                    read[i] = reader.apply(indexes.get(i));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int helpers = 1; helpers < Math.min(total, MAX_PARALLEL_READS); helpers++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        List<Shard> shards = new ArrayList<>();
+        for (Shard shard : read) {
+            if (shard != null) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+
+    private List<Integer> listIndexes() throws IOException {
+        List<Integer> indexes = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return indexes;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-*.conf")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    indexes.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Parse a shard for the initial load
+     * Loading without its entries would leave its bans unenforced and let the next save overwrite them.
+     */
+    private Shard readOrFail(int index) {
+        Path file = file(index);
+        try {
+            return parse(index, read(file));
+        } catch (ConfigException e) {
+            System.err.println("Ban shard " + file + " could not be parsed, refusing to load the ban store: "
+                    + e.getMessage());
+            throw new IllegalStateException("Unreadable ban shard " + file + "; fix or restore it and restart", e);
+        }
+    }
+
+    /**
+     * Parse a shard unless its content hash matches the accepted state (a touched but unchanged file)
+     */
+    private Shard readIfChanged(int index) {
+        Content content = read(file(index));
+        FileState previous = states.get(index);
+        if (previous != null && Arrays.equals(previous.hash, content.state.hash)) {
+            // Also the way out of quarantine when the last accepted content is restored
+            states.put(index, content.state);
+            quarantined.remove(index);
+            return null;
+        }
+        try {
+            Shard shard = parse(index, content);
+            quarantined.remove(index);
+            return shard;
+        } catch (ConfigException e) {
+            quarantined.add(index);
+            System.err.println("Ban shard " + content.file + " could not be parsed; it will not be written until a reload"
+                    + " reads it again: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private static final class Content {
+        final Path file;
+        final byte[] bytes;
+        final FileState state;
+
+        Content(Path file, byte[] bytes, FileState state) {
+            this.file = file;
+            this.bytes = bytes;
+            this.state = state;
+        }
+    }
+
+    private static Content read(Path file) {
+        try {
+            // Stat before reading: if the file is replaced in between, the next reload reads it again
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
+            byte[] bytes = Files.readAllBytes(file);
+            return new Content(file, bytes, new FileState(modified, size, ConfigManager.hash(bytes)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read ban shard " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Shard parse(int index, Content content) {
+        Config parsed = ConfigFactory.parseString(new String(content.bytes, StandardCharsets.UTF_8),
+                ConfigParseOptions.defaults().setOriginDescription(content.file.toString()));
+        return new Shard(index, section(parsed, "bans"), section(parsed, "fakebans"), section(parsed, "mutes"),
+                content.state);
+    }
+
+    private static Map<String, ConfigValue> section(Config parsed, String name) {
+        return parsed.hasPath(name) ? copyOf(parsed.getObject(name)) : new LinkedHashMap<>();
+    }
+
+    /**
+     * Copy the entries of a config object by key
+     * ConfigObject.entrySet() builds a new set hashing every value deeply, which dominates large sections.
+     */
+    static Map<String, ConfigValue> copyOf(ConfigObject object) {
+        Map<String, ConfigValue> values = new LinkedHashMap<>(Math.max(16, (int) (object.size() / 0.75f) + 1));
+        for (String key : object.keySet()) {
+            values.put(key, object.get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Atomically replace one shard file with the given entries
+     * @return the number of bytes written
+     * @throws IOException also if the shard is quarantined after a failed reload
+     */
+    int write(int shard, Map<String, ConfigValue> bans, Map<String, ConfigValue> fakeBans,
+              Map<String, ConfigValue> mutes) throws IOException {
+        if (quarantined.contains(shard)) {
+            throw new IOException("Ban shard " + file(shard) + " could not be parsed on the last reload; fix it and reload");
+        }
+        Config content = ConfigFactory.empty()
+                .withValue("bans", ConfigValueFactory.fromMap(bans))
+                .withValue("fakebans", ConfigValueFactory.fromMap(fakeBans))
+                .withValue("mutes", ConfigValueFactory.fromMap(mutes));
+        // Plain HOCON without outer braces, so entries can be appended by hand
+        byte[] bytes = content.root().render(ConfigRenderOptions.defaults()
+                .setOriginComments(false)
+                .setComments(false)
+                .setFormatted(true)
+                .setJson(false)).getBytes(StandardCharsets.UTF_8);
+
+        Files.createDirectories(directory);
+        Path file = file(shard);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, bytes);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        try {
+            states.put(shard, new FileState(Files.getLastModifiedTime(file).toMillis(), Files.size(file), ConfigManager.hash(bytes)));
+        } catch (IOException e) {
+            // Without a recorded state the shard is simply read again on the next reload
+            states.remove(shard);
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Delete shard files beyond the configured count once their entries have been moved
+     */
+    void deleteExtra() throws IOException {
+        for (int index : listIndexes()) {
+            if (index >= count) {
+                Files.deleteIfExists(file(index));
+                states.remove(index);
+            }
+        }
+    }
+}
@@ -5,23 +5,48 @@ import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
 import net.kyori.adventure.text.format.NamedTextColor;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class BanToolsCommand implements SimpleCommand {
+    private static final int HISTORY_LIMIT = 20;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
     private final BanManager banManager;
     private final ConfigManager configManager;
     private final FakeBanManager fakeBanManager;
+    private final MuteManager muteManager;
+    private final WhitelistManager whitelistManager;
     private final ProxyServer server;
+    private final TaskExecutor tasks;
+    private final Supplier<String> replicationStatus;
 
-    public BanToolsCommand(BanManager banManager, ConfigManager configManager,
-                          FakeBanManager fakeBanManager, ProxyServer server) {
+    public BanToolsCommand(BanManager banManager, ConfigManager configManager, FakeBanManager fakeBanManager,
+                          MuteManager muteManager, WhitelistManager whitelistManager, ProxyServer server,
+                          TaskExecutor tasks, Supplier<String> replicationStatus) {
         this.banManager = banManager;
         this.configManager = configManager;
         this.fakeBanManager = fakeBanManager;
+        this.muteManager = muteManager;
+        this.whitelistManager = whitelistManager;
         this.server = server;
+        this.tasks = tasks;
+        this.replicationStatus = replicationStatus;
     }
 
     @Override
@@ -34,6 +59,15 @@ public class BanToolsCommand implements SimpleCommand {
             return;
         }
 
+        // Subcommands write files and kick players, so run them off the command thread
+        try {
+            tasks.execute(() -> dispatch(args, source));
+        } catch (RejectedExecutionException e) {
+            source.sendMessage(Component.text("BanTools is busy, please try again shortly", NamedTextColor.RED));
+        }
+    }
+
+    private void dispatch(String[] args, CommandSource source) {
         switch (args[0].toLowerCase()) {
             case "ban":
                 handleBanCommand(args, source);
@@ -47,12 +81,57 @@ public class BanToolsCommand implements SimpleCommand {
             case "unfakeban":
                 handleUnFakeBanCommand(args, source);
                 break;
+            case "mute":
+            case "tempmute":
+                handleMuteCommand(args, source);
+                break;
+            case "unmute":
+                handleUnmuteCommand(args, source);
+                break;
             case "kick":
                 handleKickCommand(args, source);
                 break;
+            case "history":
+                handleHistoryCommand(args, source);
+                break;
+            case "rollback":
+                handleRollbackCommand(args, source);
+                break;
+            case "list":
+            case "search":
+                handleSearchCommand(args, source);
+                break;
+            case "whitelist":
+                handleWhitelistCommand(args, source);
+                break;
+            case "ban-asn":
+                handleRangeBanCommand(args, source, GeoDatabase.Kind.ASN);
+                break;
+            case "ban-country":
+                handleRangeBanCommand(args, source, GeoDatabase.Kind.COUNTRY);
+                break;
+            case "unban-asn":
+                handleRangeUnbanCommand(args, source, GeoDatabase.Kind.ASN);
+                break;
+            case "unban-country":
+                handleRangeUnbanCommand(args, source, GeoDatabase.Kind.COUNTRY);
+                break;
+            case "geo":
+                handleGeoCommand(args, source);
+                break;
+            case "blocklists":
+                handleBlocklistsCommand(args, source);
+                break;
             case "reload":
-                banManager.loadBans();
-                source.sendMessage(Component.text("Configuration reloaded", NamedTextColor.GREEN));
+                handleReloadCommand(source);
+                break;
+            case "status":
+                source.sendMessage(Component.text("Task executor: " + tasks.getStatus(), NamedTextColor.GOLD));
+                source.sendMessage(Component.text("Login cache: " + banManager.getLoginCacheStatus(), NamedTextColor.GOLD));
+                source.sendMessage(Component.text("Ban history cache: " + banManager.getHistoryCacheStatus(), NamedTextColor.GOLD));
+                source.sendMessage(Component.text("Ban events: " + banManager.getEventStatus(), NamedTextColor.GOLD));
+                source.sendMessage(Component.text("Ban storage: " + configManager.getStorageStatus(), NamedTextColor.GOLD));
+                source.sendMessage(Component.text("Replication: " + replicationStatus.get(), NamedTextColor.GOLD));
                 break;
             default:
                 sendHelpMessage(source);
@@ -76,14 +155,16 @@ public class BanToolsCommand implements SimpleCommand {
             duration = args[3];
         }
 
-        String result = banManager.banPlayer(target, reason, duration);
-        if (result != null) {
-            // Ban failed, show error message
-            source.sendMessage(Component.text(result, NamedTextColor.RED));
-        } else {
-            // Ban succeeded
-            source.sendMessage(Component.text("Successfully banned player: " + target, NamedTextColor.GREEN));
-        }
+        // Replies once the ban is saved
+        banManager.banPlayer(actorName(source), target, reason, duration).thenAccept(result -> {
+            if (result != null) {
+                // Ban failed, show error message
+                source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                // Ban succeeded
+                source.sendMessage(Component.text("Successfully banned player: " + target, NamedTextColor.GREEN));
+            }
+        });
     }
 
     private void handleUnbanCommand(String[] args, CommandSource source) {
@@ -98,19 +179,20 @@ public class BanToolsCommand implements SimpleCommand {
             source.sendMessage(Component.text("Player name cannot be empty", NamedTextColor.RED));
             return;
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        if (!PlayerName.isValid(target)) {
             source.sendMessage(Component.text("Invalid player name format", NamedTextColor.RED));
             return;
         }
 
-        String result = banManager.unbanPlayer(target);
-        if (result != null) {
-            // Unban failed, show error message
-            source.sendMessage(Component.text(result, NamedTextColor.RED));
-        } else {
-            // Unban successful
-            source.sendMessage(Component.text("Player unbanned: " + target, NamedTextColor.GREEN));
-        }
+        banManager.unbanPlayer(actorName(source), target).thenAccept(result -> {
+            if (result != null) {
+                // Unban failed, show error message
+                source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                // Unban successful
+                source.sendMessage(Component.text("Player unbanned: " + target, NamedTextColor.GREEN));
+            }
+        });
     }
 
     private void handleFakeBanCommand(String[] args, CommandSource source) {
@@ -125,13 +207,11 @@ public class BanToolsCommand implements SimpleCommand {
             reason = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
         }
 
-        // Get administrator name
-        String adminName = source instanceof Player ? ((Player) source).getUsername() : "Console";
-
-        String result = fakeBanManager.confirmFakeBan(adminName, target, reason);
-        if (result != null) {
-            source.sendMessage(Component.text(result, NamedTextColor.YELLOW));
-        }
+        fakeBanManager.confirmFakeBan(actorName(source), target, reason).thenAccept(result -> {
+            if (result != null) {
+                source.sendMessage(Component.text(result, NamedTextColor.YELLOW));
+            }
+        });
     }
 
     private void handleUnFakeBanCommand(String[] args, CommandSource source) {
@@ -141,14 +221,62 @@ public class BanToolsCommand implements SimpleCommand {
         }
 
         String target = args[1].trim();
-        String result = fakeBanManager.unFakeBan(target);
-        if (result != null) {
-            if (result.startsWith("Successfully") || result.startsWith("Success")) {
-                source.sendMessage(Component.text(result, NamedTextColor.GREEN));
-            } else {
+        fakeBanManager.unFakeBan(actorName(source), target).thenAccept(result -> {
+            if (result != null) {
+                if (result.startsWith("Successfully") || result.startsWith("Success")) {
+                    source.sendMessage(Component.text(result, NamedTextColor.GREEN));
+                } else {
+                    source.sendMessage(Component.text(result, NamedTextColor.RED));
+                }
+            }
+        });
+    }
+
+    private void handleMuteCommand(String[] args, CommandSource source) {
+        boolean temporary = args[0].equalsIgnoreCase("tempmute");
+        if (args.length < (temporary ? 3 : 2)) {
+            sendMuteUsage(source);
+            return;
+        }
+
+        String target = args[1].trim();
+        Long endTime = null;
+        int reasonStart = 2;
+        if (temporary) {
+            Long duration = parseDurationMillis(args[2].trim());
+            if (duration == null || duration <= 0) {
+                source.sendMessage(Component.text("Invalid duration, expected e.g. 30m, 6h or 2d: " + args[2], NamedTextColor.RED));
+                return;
+            }
+            endTime = System.currentTimeMillis() + duration;
+            reasonStart = 3;
+        }
+        String reason = args.length > reasonStart
+                ? String.join(" ", Arrays.copyOfRange(args, reasonStart, args.length)) : null;
+
+        muteManager.mute(actorName(source), target, endTime, reason).thenAccept(result -> {
+            if (result != null) {
                 source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                source.sendMessage(Component.text("Successfully muted player: " + target, NamedTextColor.GREEN));
             }
+        });
+    }
+
+    private void handleUnmuteCommand(String[] args, CommandSource source) {
+        if (args.length != 2) {
+            sendUnmuteUsage(source);
+            return;
         }
+
+        String target = args[1].trim();
+        muteManager.unmute(actorName(source), target).thenAccept(result -> {
+            if (result != null) {
+                source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                source.sendMessage(Component.text("Successfully unmuted player: " + target, NamedTextColor.GREEN));
+            }
+        });
     }
 
     private void handleKickCommand(String[] args, CommandSource source) {
@@ -164,7 +292,7 @@ public class BanToolsCommand implements SimpleCommand {
             reason = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
         }
 
-        String result = banManager.kickPlayer(target, reason);
+        String result = banManager.kickPlayer(actorName(source), target, reason);
         if (result != null) {
             // Kick failed, show error message
             source.sendMessage(Component.text(result, NamedTextColor.RED));
@@ -174,14 +302,402 @@ public class BanToolsCommand implements SimpleCommand {
         }
     }
 
+    private void handleHistoryCommand(String[] args, CommandSource source) {
+        if (args.length != 2) {
+            sendHistoryUsage(source);
+            return;
+        }
+
+        String target = args[1].trim();
+        if (!PlayerName.isValid(target)) {
+            source.sendMessage(Component.text("Invalid player name format", NamedTextColor.RED));
+            return;
+        }
+
+        List<AuditRecord> history = banManager.getHistory(target, HISTORY_LIMIT);
+        List<BanEntry> archived = banManager.getArchivedBans(target);
+        if (history.isEmpty() && archived.isEmpty()) {
+            source.sendMessage(Component.text("No recorded history for " + target, NamedTextColor.YELLOW));
+            return;
+        }
+        if (!history.isEmpty()) {
+            source.sendMessage(Component.text("History of " + target + " (latest " + history.size() + "):", NamedTextColor.GOLD));
+            for (AuditRecord record : history) {
+                source.sendMessage(Component.text(record.describe(), NamedTextColor.GRAY));
+            }
+        }
+        if (!archived.isEmpty()) {
+            source.sendMessage(Component.text("Archived bans of " + target + ":", NamedTextColor.GOLD));
+            for (BanEntry entry : archived) {
+                source.sendMessage(renderBan(entry));
+            }
+        }
+    }
+
+    private void handleRollbackCommand(String[] args, CommandSource source) {
+        boolean dryRun = args.length == 4 && args[3].equalsIgnoreCase("dry-run");
+        if (args.length != 3 && !dryRun) {
+            sendRollbackUsage(source);
+            return;
+        }
+
+        String operator = args[1].trim();
+        Long since = parseSince(args[2].trim());
+        if (since == null) {
+            source.sendMessage(Component.text("Invalid time, expected a duration such as 30m, 6h or 2d, or a date yyyy/MM/dd: "
+                    + args[2], NamedTextColor.RED));
+            return;
+        }
+
+        banManager.rollback(actorName(source), operator, since, dryRun).thenAccept(rollback -> {
+            if (rollback.getError() != null) {
+                source.sendMessage(Component.text(rollback.getError(), NamedTextColor.RED));
+                return;
+            }
+            if (rollback.getCount() == 0) {
+                source.sendMessage(Component.text("No active bans or temporary bans issued by " + operator
+                        + " in that window", NamedTextColor.YELLOW));
+                return;
+            }
+            source.sendMessage(Component.text(rollback.summary(), dryRun ? NamedTextColor.GOLD : NamedTextColor.GREEN));
+            if (dryRun) {
+                rollback.getBans().stream().limit(HISTORY_LIMIT).forEach(entry -> source.sendMessage(renderBan(entry)));
+                if (rollback.getBans().size() > HISTORY_LIMIT) {
+                    source.sendMessage(Component.text("... and " + (rollback.getBans().size() - HISTORY_LIMIT)
+                            + " more bans", NamedTextColor.GRAY));
+                }
+                if (!rollback.getFakeBans().isEmpty()) {
+                    source.sendMessage(Component.text("Temporary bans: " + rollback.getFakeBans().stream()
+                            .map(FakeBanEntry::getName).collect(Collectors.joining(", ")), NamedTextColor.GRAY));
+                }
+                String confirm = "/bt rollback " + operator + " " + args[2];
+                source.sendMessage(Component.text("[Roll back]", NamedTextColor.AQUA)
+                        .clickEvent(ClickEvent.suggestCommand(confirm))
+                        .hoverEvent(HoverEvent.showText(Component.text(confirm, NamedTextColor.GRAY))));
+            }
+        });
+    }
+
+    /**
+     * Parse the start of a rollback window: a duration back from now (30m, 6h, 2d) or a date
+     * @return epoch milliseconds, or null if the input is neither
+     */
+    private static Long parseSince(String input) {
+        String value = input.toLowerCase();
+        Long duration = parseDurationMillis(value);
+        if (duration != null) {
+            return System.currentTimeMillis() - duration;
+        }
+        try {
+            return LocalDate.parse(value, DATE_FORMAT).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a duration such as 30m, 6h or 2d
+     * @return milliseconds, or null if the input is not a duration
+     */
+    private static Long parseDurationMillis(String input) {
+        String value = input.toLowerCase();
+        if (!value.matches("\\d{1,9}[mhd]")) {
+            return null;
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        TimeUnit unit = value.endsWith("m") ? TimeUnit.MINUTES : value.endsWith("h") ? TimeUnit.HOURS : TimeUnit.DAYS;
+        return unit.toMillis(amount);
+    }
+
+    private void handleWhitelistCommand(String[] args, CommandSource source) {
+        String action = args.length >= 2 ? args[1].toLowerCase() : "";
+        if (action.equals("list") && args.length == 2) {
+            Collection<WhitelistManager.Protected> players = whitelistManager.getProtectedPlayers();
+            source.sendMessage(Component.text("Protected players (" + players.size() + ")"
+                    + (whitelistManager.isEnabled() ? ":" : ", protection disabled:"), NamedTextColor.GOLD));
+            for (WhitelistManager.Protected player : players) {
+                source.sendMessage(Component.text(player.getName()
+                        + (player.getUuid() == null ? " (UUID not seen yet)" : " (" + player.getUuid() + ")"), NamedTextColor.GRAY));
+            }
+            return;
+        }
+        if (args.length != 3 || !(action.equals("add") || action.equals("remove"))) {
+            sendWhitelistUsage(source);
+            return;
+        }
+
+        String target = args[2].trim();
+        if (!PlayerName.isValid(target)) {
+            source.sendMessage(Component.text("Invalid player name format", NamedTextColor.RED));
+            return;
+        }
+        if (action.equals("add")) {
+            String uuid = server.getPlayer(target).map(player -> player.getUniqueId().toString()).orElse(null);
+            if (whitelistManager.addToWhitelist(target, uuid)) {
+                source.sendMessage(Component.text("Player protected: " + target, NamedTextColor.GREEN));
+            } else {
+                source.sendMessage(Component.text("Player is already protected or the change could not be saved", NamedTextColor.RED));
+            }
+        } else if (whitelistManager.removeFromWhitelist(target)) {
+            source.sendMessage(Component.text("Player no longer protected: " + target, NamedTextColor.GREEN));
+        } else {
+            source.sendMessage(Component.text("Player is not protected or the change could not be saved", NamedTextColor.RED));
+        }
+    }
+
+    private void handleRangeBanCommand(String[] args, CommandSource source, GeoDatabase.Kind kind) {
+        if (args.length < 2) {
+            sendRangeBanUsage(source);
+            List<RangeBans.Rule> rules = banManager.getRangeBans().stream()
+                    .filter(rule -> rule.isAsn() == (kind == GeoDatabase.Kind.ASN))
+                    .collect(Collectors.toList());
+            source.sendMessage(Component.text((kind == GeoDatabase.Kind.ASN ? "Banned ASNs" : "Banned countries")
+                    + " (" + rules.size() + ")" + (rules.isEmpty() ? "" : ":"), NamedTextColor.GOLD));
+            for (RangeBans.Rule rule : rules) {
+                source.sendMessage(Component.text(rule.describe() + " - " + rule.getReason()
+                        + (rule.getOperator() == null ? "" : " (by " + rule.getOperator() + ")"), NamedTextColor.GRAY));
+            }
+            return;
+        }
+
+        String target = args[1];
+        String reason = args.length >= 3 ? args[2] : null;
+        banManager.banRange(actorName(source), kind, target, reason).thenAccept(result -> {
+            if (result != null) {
+                source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                source.sendMessage(Component.text("Successfully banned " + (kind == GeoDatabase.Kind.ASN ? "ASN " : "country ")
+                        + target, NamedTextColor.GREEN));
+            }
+        });
+    }
+
+    private void handleRangeUnbanCommand(String[] args, CommandSource source, GeoDatabase.Kind kind) {
+        if (args.length != 2) {
+            sendRangeBanUsage(source);
+            return;
+        }
+        String target = args[1];
+        banManager.unbanRange(actorName(source), kind, target).thenAccept(result -> {
+            if (result != null) {
+                source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                source.sendMessage(Component.text("Successfully unbanned " + (kind == GeoDatabase.Kind.ASN ? "ASN " : "country ")
+                        + target, NamedTextColor.GREEN));
+            }
+        });
+    }
+
+    private void handleGeoCommand(String[] args, CommandSource source) {
+        if (args.length != 2) {
+            sendRangeBanUsage(source);
+            return;
+        }
+        InetAddress address = resolveAddress(args[1], source);
+        if (address != null) {
+            source.sendMessage(Component.text(banManager.describeAddress(address), NamedTextColor.GOLD));
+        }
+    }
+
+    private void handleBlocklistsCommand(String[] args, CommandSource source) {
+        Blocklists blocklists = banManager.getBlocklists();
+        if (args.length == 2) {
+            InetAddress address = resolveAddress(args[1], source);
+            if (address != null) {
+                List<String> lists = blocklists.find(address);
+                source.sendMessage(Component.text(address.getHostAddress() + (lists.isEmpty() ? " is not on any blocklist"
+                        : " is listed on: " + String.join(", ", lists)), NamedTextColor.GOLD));
+            }
+            return;
+        }
+        if (args.length > 2) {
+            source.sendMessage(Component.text("Usage: /bt blocklists [player|ip]", NamedTextColor.RED));
+            return;
+        }
+
+        List<Blocklists.Stats> stats = blocklists.getStats();
+        source.sendMessage(Component.text("Blocklists (" + stats.size() + ")" + (stats.isEmpty() ? "" : ":"), NamedTextColor.GOLD));
+        for (Blocklists.Stats list : stats) {
+            source.sendMessage(Component.text(list.getName() + " (" + list.getFile() + "): " + list.getEntries()
+                    + " entries, " + list.getIntervals() + " ranges, " + list.getIpv4Addresses() + " IPv4 addresses, "
+                    + list.getHits() + " hits", NamedTextColor.GRAY));
+        }
+    }
+
+    /**
+     * Address of an online player or an IP literal, never a DNS lookup
+     * @return the address, or null after telling the source it could not be resolved
+     */
+    private InetAddress resolveAddress(String input, CommandSource source) {
+        InetAddress address = server.getPlayer(input).map(player -> player.getRemoteAddress().getAddress()).orElse(null);
+        if (address == null && GeoDatabase.isAddressLiteral(input)) {
+            try {
+                address = InetAddress.getByName(input);
+            } catch (UnknownHostException e) {
+                // Reported below
+            }
+        }
+        if (address == null) {
+            source.sendMessage(Component.text("Not an online player or IP address: " + input, NamedTextColor.RED));
+        }
+        return address;
+    }
+
+    private void handleSearchCommand(String[] args, CommandSource source) {
+        BanQuery query = new BanQuery();
+        List<String> filters = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String error = applyFilter(query, args[i]);
+            if (error != null) {
+                source.sendMessage(Component.text(error, NamedTextColor.RED));
+                sendSearchUsage(source);
+                return;
+            }
+            if (!args[i].toLowerCase().startsWith("after:")) {
+                filters.add(args[i]);
+            }
+        }
+
+        BanPage page;
+        try {
+            page = banManager.searchBans(query);
+        } catch (IllegalArgumentException e) {
+            source.sendMessage(Component.text(e.getMessage(), NamedTextColor.RED));
+            return;
+        }
+        if (page.getEntries().isEmpty()) {
+            source.sendMessage(Component.text(query.getCursor() == null ? "No matching bans" : "No more matching bans",
+                    NamedTextColor.YELLOW));
+            return;
+        }
+
+        source.sendMessage(Component.text(filters.isEmpty() ? "Active bans:" : "Active bans matching " + String.join(" ", filters) + ":",
+                NamedTextColor.GOLD));
+        for (BanEntry entry : page.getEntries()) {
+            source.sendMessage(renderBan(entry));
+        }
+        if (page.hasNext()) {
+            String next = "/bt " + args[0].toLowerCase() + " " + String.join(" ", filters)
+                    + (filters.isEmpty() ? "" : " ") + "after:" + page.getNextCursor();
+            source.sendMessage(Component.text("[Next page]", NamedTextColor.AQUA)
+                    .clickEvent(ClickEvent.runCommand(next))
+                    .hoverEvent(HoverEvent.showText(Component.text(next, NamedTextColor.GRAY))));
+        }
+    }
+
+    /**
+     * Apply one search argument to the query
+     * @return error message, or null if the argument was accepted
+     */
+    private static String applyFilter(BanQuery query, String arg) {
+        int colon = arg.indexOf(':');
+        if (colon < 0) {
+            // Bare words search the reason
+            query.addReasonTerm(arg);
+            return null;
+        }
+        String key = arg.substring(0, colon).toLowerCase();
+        String value = arg.substring(colon + 1);
+        if (value.isEmpty()) {
+            return "Missing value for " + key;
+        }
+        switch (key) {
+            case "reason":
+                query.addReasonTerm(value);
+                return null;
+            case "ip":
+                query.setIp(value);
+                return null;
+            case "by":
+                query.setOperator(value);
+                return null;
+            case "after":
+                query.setCursor(value);
+                return null;
+            case "type":
+                if (value.equalsIgnoreCase("permanent")) {
+                    query.setPermanent(true);
+                } else if (value.equalsIgnoreCase("temporary")) {
+                    query.setPermanent(false);
+                } else {
+                    return "Type must be permanent or temporary";
+                }
+                return null;
+            case "from":
+            case "to":
+                try {
+                    LocalDate date = LocalDate.parse(value, DATE_FORMAT);
+                    if (key.equals("from")) {
+                        query.setFrom(date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                    } else {
+                        // Inclusive day: bans issued before the start of the next day
+                        query.setTo(date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                    }
+                } catch (DateTimeParseException e) {
+                    return "Invalid date, expected yyyy/MM/dd: " + value;
+                }
+                return null;
+            default:
+                return "Unknown filter: " + key;
+        }
+    }
+
+    private static Component renderBan(BanEntry entry) {
+        TextComponent.Builder details = Component.text()
+                .append(Component.text("Banned: " + DATE_FORMAT.withZone(ZoneId.systemDefault())
+                        .format(Instant.ofEpochMilli(entry.getStartTime())), NamedTextColor.GRAY))
+                .append(Component.newline())
+                .append(Component.text("By: " + (entry.getOperator() == null ? "unknown" : entry.getOperator()), NamedTextColor.GRAY))
+                .append(Component.newline())
+                .append(Component.text("UUID: " + (entry.getUuid() == null ? "unknown" : entry.getUuid()), NamedTextColor.GRAY))
+                .append(Component.newline())
+                .append(Component.text("IP: " + (entry.getIp() == null ? "unknown" : entry.getIp()), NamedTextColor.GRAY));
+        return Component.text()
+                .append(Component.text(entry.getName(), NamedTextColor.WHITE))
+                .append(Component.text(" - " + entry.getReason(), NamedTextColor.GRAY))
+                .append(Component.text(entry.isPermanent() ? " (permanent)" : " (until " + entry.getEndTimeFormatted() + ")",
+                        NamedTextColor.DARK_GRAY))
+                .append(Component.text(entry.getState() ? "" : " [revoked]", NamedTextColor.DARK_GRAY))
+                .hoverEvent(HoverEvent.showText(details.build()))
+                .build();
+    }
+
+    /**
+     * Name recorded as the actor of an operation
+     */
+    private static String actorName(CommandSource source) {
+        return source instanceof Player ? ((Player) source).getUsername() : "Console";
+    }
+
+    private void handleReloadCommand(CommandSource source) {
+        source.sendMessage(Component.text("Reloading configuration...", NamedTextColor.YELLOW));
+        banManager.reload().whenComplete((diff, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                source.sendMessage(Component.text("Reload failed, live state kept: " + cause.getMessage(), NamedTextColor.RED));
+            } else {
+                source.sendMessage(Component.text(diff.summary(), NamedTextColor.GREEN));
+            }
+        });
+    }
+
     private void sendHelpMessage(CommandSource source) {
         source.sendMessage(Component.text("BanTools Usage", NamedTextColor.YELLOW));
         sendBanUsage(source);
         sendUnbanUsage(source);
         sendFakeBanUsage(source);
         sendUnFakeBanUsage(source);
+        sendMuteUsage(source);
+        sendUnmuteUsage(source);
         sendKickUsage(source);
+        sendHistoryUsage(source);
+        sendRollbackUsage(source);
+        sendSearchUsage(source);
+        sendWhitelistUsage(source);
+        sendRangeBanUsage(source);
+        source.sendMessage(Component.text("/bt blocklists [player|ip] - Show blocklist statistics or look up an address", NamedTextColor.GOLD));
         source.sendMessage(Component.text("/bt reload - Reload configuration", NamedTextColor.GOLD));
+        source.sendMessage(Component.text("/bt status - Show background task statistics", NamedTextColor.GOLD));
     }
 
     private void sendBanUsage(CommandSource source) {
@@ -200,6 +716,37 @@ public class BanToolsCommand implements SimpleCommand {
         source.sendMessage(Component.text("Remove temporary ban usage: /bt unfakeban <player>", NamedTextColor.RED));
     }
 
+    private void sendMuteUsage(CommandSource source) {
+        source.sendMessage(Component.text("Mute usage: /bt mute <player> [reason] | /bt tempmute <player> <30m|6h|2d> [reason]",
+                NamedTextColor.RED));
+    }
+
+    private void sendUnmuteUsage(CommandSource source) {
+        source.sendMessage(Component.text("Unmute usage: /bt unmute <player>", NamedTextColor.RED));
+    }
+
+    private void sendHistoryUsage(CommandSource source) {
+        source.sendMessage(Component.text("History usage: /bt history <player>", NamedTextColor.RED));
+    }
+
+    private void sendRollbackUsage(CommandSource source) {
+        source.sendMessage(Component.text("Rollback usage: /bt rollback <admin> <30m|6h|2d|yyyy/MM/dd> [dry-run]", NamedTextColor.RED));
+    }
+
+    private void sendSearchUsage(CommandSource source) {
+        source.sendMessage(Component.text("List usage: /bt list | /bt search [words] [reason:<word>] [from:<yyyy/MM/dd>] "
+                + "[to:<yyyy/MM/dd>] [type:permanent|temporary] [ip:<address>] [by:<admin>]", NamedTextColor.RED));
+    }
+
+    private void sendWhitelistUsage(CommandSource source) {
+        source.sendMessage(Component.text("Whitelist usage: /bt whitelist <add|remove> <player> | /bt whitelist list", NamedTextColor.RED));
+    }
+
+    private void sendRangeBanUsage(CommandSource source) {
+        source.sendMessage(Component.text("Range ban usage: /bt ban-asn <asn> [reason] | /bt ban-country <code> [reason] | "
+                + "/bt unban-asn <asn> | /bt unban-country <code> | /bt geo <player|ip>", NamedTextColor.RED));
+    }
+
     private void sendKickUsage(CommandSource source) {
         source.sendMessage(Component.text("Kick usage: /bt kick <player> [reason]", NamedTextColor.RED));
     }
@@ -222,9 +769,32 @@ public class BanToolsCommand implements SimpleCommand {
                 return invocation.source().hasPermission("bantools.command.fakeban");
             case "unfakeban":
                 return invocation.source().hasPermission("bantools.command.unfakeban");
+            case "mute":
+            case "tempmute":
+                return invocation.source().hasPermission("bantools.command.mute");
+            case "unmute":
+                return invocation.source().hasPermission("bantools.command.unmute");
             case "kick":
                 return invocation.source().hasPermission("bantools.command.kick");
+            case "history":
+                return invocation.source().hasPermission("bantools.command.history");
+            case "rollback":
+                return invocation.source().hasPermission("bantools.command.rollback");
+            case "list":
+            case "search":
+                return invocation.source().hasPermission("bantools.command.list");
+            case "whitelist":
+                return invocation.source().hasPermission("bantools.command.whitelist");
+            case "ban-asn":
+            case "ban-country":
+            case "unban-asn":
+            case "unban-country":
+            case "geo":
+                return invocation.source().hasPermission("bantools.command.rangeban");
+            case "blocklists":
+                return invocation.source().hasPermission("bantools.command.blocklist");
             case "reload":
+            case "status":
                 return invocation.source().hasPermission("bantools.command.reload");
             default:
                 return false;
@@ -254,12 +824,50 @@ public class BanToolsCommand implements SimpleCommand {
             if (source.hasPermission("bantools.command.unfakeban") && "unfakeban".startsWith(input)) {
                 suggestions.add("unfakeban");
             }
+            if (source.hasPermission("bantools.command.mute")) {
+                for (String command : new String[]{"mute", "tempmute"}) {
+                    if (command.startsWith(input)) {
+                        suggestions.add(command);
+                    }
+                }
+            }
+            if (source.hasPermission("bantools.command.unmute") && "unmute".startsWith(input)) {
+                suggestions.add("unmute");
+            }
             if (source.hasPermission("bantools.command.kick") && "kick".startsWith(input)) {
                 suggestions.add("kick");
             }
+            if (source.hasPermission("bantools.command.history") && "history".startsWith(input)) {
+                suggestions.add("history");
+            }
+            if (source.hasPermission("bantools.command.rollback") && "rollback".startsWith(input)) {
+                suggestions.add("rollback");
+            }
+            if (source.hasPermission("bantools.command.list") && "list".startsWith(input)) {
+                suggestions.add("list");
+            }
+            if (source.hasPermission("bantools.command.list") && "search".startsWith(input)) {
+                suggestions.add("search");
+            }
+            if (source.hasPermission("bantools.command.whitelist") && "whitelist".startsWith(input)) {
+                suggestions.add("whitelist");
+            }
+            if (source.hasPermission("bantools.command.blocklist") && "blocklists".startsWith(input)) {
+                suggestions.add("blocklists");
+            }
+            if (source.hasPermission("bantools.command.rangeban")) {
+                for (String command : new String[]{"ban-asn", "ban-country", "unban-asn", "unban-country", "geo"}) {
+                    if (command.startsWith(input)) {
+                        suggestions.add(command);
+                    }
+                }
+            }
             if (source.hasPermission("bantools.command.reload") && "reload".startsWith(input)) {
                 suggestions.add("reload");
             }
+            if (source.hasPermission("bantools.command.reload") && "status".startsWith(input)) {
+                suggestions.add("status");
+            }
 
             return suggestions;
         }
@@ -275,6 +883,17 @@ public class BanToolsCommand implements SimpleCommand {
                 return suggestPlayersForUnban(args);
             case "unfakeban":
                 return suggestPlayersForUnfakeban(args);
+            case "mute":
+            case "tempmute":
+                return suggestMute(args);
+            case "unmute":
+                return suggestPlayersForUnmute(args);
+            case "search":
+                return suggestSearchFilters(args);
+            case "whitelist":
+                return suggestWhitelist(args);
+            case "rollback":
+                return suggestRollback(args);
             default:
                 return Collections.emptyList();
         }
@@ -302,6 +921,74 @@ public class BanToolsCommand implements SimpleCommand {
         return Collections.emptyList();
     }
 
+    /**
+     * Provide online player names, and durations for tempmute, for the mute commands
+     */
+    private List<String> suggestMute(String[] args) {
+        if (args.length == 2) {
+            String input = args[1].toLowerCase();
+            return server.getAllPlayers().stream()
+                    .map(Player::getUsername)
+                    .filter(name -> name.toLowerCase().startsWith(input))
+                    .filter(name -> !banManager.isWhitelisted(name))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3 && "tempmute".equals(args[0].toLowerCase())) {
+            return Arrays.asList("30m", "1h", "6h", "1d", "7d");
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Provide actions and player names for the whitelist command
+     */
+    private List<String> suggestWhitelist(String[] args) {
+        if (args.length == 2) {
+            String input = args[1].toLowerCase();
+            return Arrays.asList("add", "remove", "list").stream()
+                    .filter(action -> action.startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3) {
+            String input = args[2].toLowerCase();
+            Collection<String> names = args[1].equalsIgnoreCase("remove") ? whitelistManager.getWhitelist()
+                    : server.getAllPlayers().stream().map(Player::getUsername).collect(Collectors.toList());
+            return names.stream()
+                    .filter(name -> name.toLowerCase().startsWith(input))
+                    .collect(Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Provide online staff names, window suggestions and the dry-run flag for the rollback command
+     */
+    private List<String> suggestRollback(String[] args) {
+        String input = args[args.length - 1].toLowerCase();
+        List<String> options;
+        if (args.length == 2) {
+            options = server.getAllPlayers().stream().map(Player::getUsername).collect(Collectors.toList());
+            options.add("Console");
+        } else if (args.length == 3) {
+            options = Arrays.asList("30m", "1h", "6h", "1d", "7d");
+        } else if (args.length == 4) {
+            options = Collections.singletonList("dry-run");
+        } else {
+            return Collections.emptyList();
+        }
+        return options.stream()
+                .filter(option -> option.toLowerCase().startsWith(input))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Provide filter prefixes for the search command
+     */
+    private List<String> suggestSearchFilters(String[] args) {
+        String input = args[args.length - 1].toLowerCase();
+        return Arrays.asList("reason:", "from:", "to:", "type:permanent", "type:temporary", "ip:", "by:").stream()
+                .filter(filter -> filter.startsWith(input))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Provide completions of banned player names for the unban command
      */
@@ -327,4 +1014,17 @@ public class BanToolsCommand implements SimpleCommand {
         }
         return Collections.emptyList();
     }
+
+    /**
+     * Provide completions of muted player names for the unmute command
+     */
+    private List<String> suggestPlayersForUnmute(String[] args) {
+        if (args.length == 2) {
+            String input = args[1].toLowerCase();
+            return muteManager.getMutedPlayers().stream()
+                    .filter(name -> name.toLowerCase().startsWith(input))
+                    .collect(Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
 }
\ No newline at end of file
@@ -5,12 +5,17 @@ import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.command.CommandMeta;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @Plugin(
         id = "bantools",
@@ -22,38 +27,204 @@ public class BanToolsPlugin {
     @Inject private ProxyServer server;
     @Inject private Logger logger;
     @Inject @DataDirectory private Path dataDirectory;
-    private ConfigManager configManager;
-    private WhitelistManager whitelistManager;
-    private BanManager banManager;
-    private FakeBanManager fakeBanManager;
+    // Assigned by the background loader when starting from an index image
+    private volatile ConfigManager configManager;
+    private volatile WhitelistManager whitelistManager;
+    private volatile BanManager banManager;
+    private volatile FakeBanManager fakeBanManager;
+    private volatile MuteManager muteManager;
+    private TaskExecutor tasks;
+    private volatile AuditLog auditLog;
+    private volatile AltGraph altGraph;
+    private volatile BanQueryService queryService;
+    // At most one of these is set, depending on replication.role
+    private volatile ReplicationLeader replicationLeader;
+    private volatile ReplicationFollower replicationFollower;
 
     @Subscribe
     public void onProxyInitialization(ProxyInitializeEvent event) {
+        long started = System.currentTimeMillis();
+        tasks = new TaskExecutor(logger);
+        exportFlightProfile();
+        BanIndexImage startupImage = BanIndexImage.open(Paths.get("plugins/BanTools/bans.idx"));
+        if (startupImage == null) {
+            // No image yet (first start or unreadable): load synchronously so no login is left unchecked
+            loadManagers();
+            server.getEventManager().register(this, new LoginListener(banManager));
+            server.getEventManager().register(this, new MuteListener(muteManager));
+            registerCommands();
+            configManager.writeIndexImage();
+        } else {
+            // Enforce bans from the image right away and load the full store in the background
+            LoginListener loginListener = new LoginListener(startupImage);
+            server.getEventManager().register(this, loginListener);
+            logger.info("Enforcing " + startupImage.size() + " bans from index image after "
+                    + (System.currentTimeMillis() - started) + " ms, loading full ban store in background");
+
+            tasks.submit(() -> {
+                loadManagers();
+                return null;
+            }).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    logger.error("Failed to load ban store, still enforcing bans from index image", error);
+                    return;
+                }
+                loginListener.setBanManager(banManager);
+                server.getEventManager().register(this, new MuteListener(muteManager));
+                registerCommands();
+                configManager.writeIndexImage();
+                logger.info("Full ban store loaded in " + (System.currentTimeMillis() - started) + " ms");
+            });
+        }
+
+        logger.info("===================================");
+        logger.info("BanTools v1.4.0 loaded");
+        logger.info("Authors: NSrank & Qwen2.5-Max & Augment");
+        logger.info("===================================");
+    }
+
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        if (replicationLeader != null) {
+            replicationLeader.shutdown();
+        }
+        if (replicationFollower != null) {
+            replicationFollower.shutdown();
+        }
+        if (fakeBanManager != null) {
+            fakeBanManager.shutdown();
+        }
+        if (muteManager != null) {
+            muteManager.shutdown();
+        }
+        if (banManager != null) {
+            banManager.shutdown();
+        }
+        // Let pending writes finish before the final index image is taken
+        tasks.shutdown();
+        if (auditLog != null) {
+            auditLog.close();
+        }
+        if (altGraph != null) {
+            altGraph.close();
+        }
+        if (configManager != null) {
+            configManager.writeIndexImage();
+        }
+    }
+
+    /**
+     * Copy the Flight Recorder profile out of the jar, so recordings can be started with a file path
+     */
+    private void exportFlightProfile() {
+        Path profile = Paths.get("plugins/BanTools/bantools.jfc");
+        if (Files.exists(profile)) {
+            return;
+        }
+        try (InputStream in = getClass().getResourceAsStream("/bantools.jfc")) {
+            if (in != null) {
+                Files.createDirectories(profile.getParent());
+                Files.copy(in, profile);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to export Flight Recorder profile: " + e.getMessage());
+        }
+    }
+
+    private void loadManagers() {
         // Initialize configuration manager
-        configManager = new ConfigManager();
+        configManager = new ConfigManager(tasks);
+
+        // Initialize audit log
+        auditLog = new AuditLog(Paths.get("plugins/BanTools/audit"), tasks, logger);
+
+        // Initialize alt account graph
+        altGraph = new AltGraph(Paths.get("plugins/BanTools/alts.dat"), tasks, logger);
 
         // Initialize whitelist manager
         whitelistManager = new WhitelistManager(configManager, logger);
 
+        // Initialize ASN / country lookups
+        GeoLookup geoLookup = new GeoLookup(configManager, tasks, logger);
+
+        // Initialize external IP blocklists
+        Blocklists blocklists = new Blocklists(configManager, tasks, logger);
+
+        // Initialize ban change events for other plugins
+        BanEventPublisher events = new BanEventPublisher(server.getEventManager(), tasks, logger);
+
+        // Bans and temporary bans share one index, so a login is decided by a single lookup
+        PunishmentIndex punishments = new PunishmentIndex();
+
         // Initialize ban manager
-        banManager = new BanManager(server, logger, configManager, whitelistManager);
+        banManager = new BanManager(server, logger, configManager, whitelistManager, tasks, auditLog, altGraph, geoLookup,
+                blocklists, events, punishments);
 
         // Initialize fake ban manager
-        fakeBanManager = new FakeBanManager(configManager, whitelistManager, server, logger);
+        fakeBanManager = new FakeBanManager(configManager, whitelistManager, server, logger, tasks, auditLog, events,
+                punishments);
+
+        // Initialize mute manager; mutes never affect logins, so they stay out of the punishment index
+        muteManager = new MuteManager(configManager, whitelistManager, server, logger, tasks, auditLog);
 
         // Set cyclic dependency
         banManager.setFakeBanManager(fakeBanManager);
+        banManager.setMuteManager(muteManager);
 
-        // Register event listener
-        server.getEventManager().register(this, new LoginListener(banManager));
+        // Join the replication group once the indexes can take replicated changes
+        startReplication();
 
-        // Register commands
-        registerCommands();
+        // Publish read-only queries for other plugins last, once both managers are complete
+        queryService = new BanQueryService(configManager, banManager);
+    }
 
-        logger.info("===================================");
-        logger.info("BanTools v1.4.0 loaded");
-        logger.info("Authors: NSrank & Qwen2.5-Max & Augment");
-        logger.info("===================================");
+    private void startReplication() {
+        String role = configManager.getReplicationRole();
+        if (role.equals("standalone")) {
+            return;
+        }
+        String secret = configManager.getReplicationSecret();
+        if (secret.isEmpty()) {
+            logger.error("Replication role " + role + " requires replication.secret, running standalone");
+            return;
+        }
+        try {
+            if (role.equals("leader")) {
+                ReplicationJournal journal = new ReplicationJournal(ReplicationJournal.DEFAULT_CAPACITY);
+                configManager.setJournal(journal);
+                replicationLeader = new ReplicationLeader(configManager, journal,
+                        ReplicationProtocol.parseAddress(configManager.getReplicationListen(), "127.0.0.1"),
+                        secret, tasks, logger, banManager::applyReplicated);
+            } else if (role.equals("follower")) {
+                replicationFollower = new ReplicationFollower(configManager,
+                        ReplicationProtocol.parseAddress(configManager.getReplicationLeader(), "127.0.0.1"),
+                        secret, configManager.getReplicationNodeName(), logger, banManager::applyReplicated);
+                configManager.setForwarder(replicationFollower);
+            } else {
+                logger.error("Unknown replication role \"" + role + "\", running standalone");
+            }
+        } catch (IOException | RuntimeException e) {
+            configManager.setJournal(null);
+            logger.error("Failed to start replication as " + role + ", running standalone", e);
+        }
+    }
+
+    private String getReplicationStatus() {
+        if (replicationLeader != null) {
+            return replicationLeader.getStatus();
+        }
+        if (replicationFollower != null) {
+            return replicationFollower.getStatus();
+        }
+        return "standalone";
+    }
+
+    /**
+     * Read-only ban queries for other plugins
+     * @return the query service, or null while the ban store is still loading after startup
+     */
+    public BanQueryService getQueryService() {
+        return queryService;
     }
 
     private void registerCommands() {
@@ -62,6 +233,8 @@ public class BanToolsPlugin {
         CommandMeta meta = commandManager.metaBuilder("bantools")
                 .aliases("bt")
                 .build();
-        commandManager.register(meta, new BanToolsCommand(banManager, configManager, fakeBanManager, server));
+        commandManager.register(meta, new BanToolsCommand(banManager, configManager, fakeBanManager, muteManager, whitelistManager,
+                server, tasks,
+                this::getReplicationStatus));
     }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * External IP blocklists configured in the "blocklists" section
+ * Each list file is loaded into an {@link IpIntervalSet}; the loaded lists are published as one
+ * immutable snapshot and replaced with a single reference write when a file changes, so logins
+ * never wait for a load. Lists are kept apart from the ban store and never written back.
+ */
+public class Blocklists {
+    private final ConfigManager configManager;
+    private final Logger logger;
+    private final AtomicReference<List<Loaded>> lists = new AtomicReference<>(Collections.emptyList());
+    // Keyed by list name so counts survive reloads of the same list
+    private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+    // Missing files already reported, so the periodic refresh does not repeat the warning
+    private final Set<Path> missing = new HashSet<>();
+    private final ScheduledFuture<?> refreshTask;
+
+    private static final class Loaded {
+        final String name;
+        final Path path;
+        final long modified;
+        final long size;
+        final IpIntervalSet set;
+        final LongAdder hits;
+
+        Loaded(String name, Path path, long modified, long size, IpIntervalSet set, LongAdder hits) {
+            this.name = name;
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+            this.set = set;
+            this.hits = hits;
+        }
+
+        boolean isCurrent(Path configured) throws IOException {
+            return path.equals(configured) && Files.getLastModifiedTime(configured).toMillis() == modified
+                    && Files.size(configured) == size;
+        }
+    }
+
+    /**
+     * Counters of one loaded list, for staff
+     */
+    public static final class Stats {
+        private final String name;
+        private final String file;
+        private final int entries;
+        private final int intervals;
+        private final long ipv4Addresses;
+        private final long hits;
+
+        Stats(Loaded loaded) {
+            this.name = loaded.name;
+            this.file = loaded.path.getFileName().toString();
+            this.entries = loaded.set.entries();
+            this.intervals = loaded.set.intervals();
+            this.ipv4Addresses = loaded.set.ipv4Addresses();
+            this.hits = loaded.hits.sum();
+        }
+
+        public String getName() { return name; }
+        public String getFile() { return file; }
+        public int getEntries() { return entries; }
+        public int getIntervals() { return intervals; }
+        public long getIpv4Addresses() { return ipv4Addresses; }
+        public long getHits() { return hits; }
+    }
+
+    public Blocklists(ConfigManager configManager, TaskExecutor tasks, Logger logger) {
+        this.configManager = configManager;
+        this.logger = logger;
+        refresh();
+        // Pick up list files replaced on disk without a reload
+        this.refreshTask = tasks.scheduleAtFixedRate(() -> tasks.execute(this::refresh), 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Load configured lists that are new or changed on disk and publish them together
+     * A list that fails to load keeps its previous contents; lists removed from the config are dropped.
+     */
+    public synchronized void refresh() {
+        List<Loaded> current = lists.get();
+        Map<String, Loaded> previous = new HashMap<>();
+        for (Loaded loaded : current) {
+            previous.put(loaded.name, loaded);
+        }
+
+        List<Loaded> updated = new ArrayList<>();
+        boolean changed = false;
+        for (Map.Entry<String, Path> entry : configManager.getBlocklistFiles().entrySet()) {
+            Loaded old = previous.get(entry.getKey());
+            Loaded loaded = load(entry.getKey(), entry.getValue(), old);
+            if (loaded != null) {
+                updated.add(loaded);
+            }
+            changed |= loaded != old;
+        }
+        if (changed || updated.size() != current.size()) {
+            hits.keySet().retainAll(configManager.getBlocklistFiles().keySet());
+            lists.set(Collections.unmodifiableList(updated));
+            configManager.bumpStateEpoch();
+        }
+    }
+
+    private Loaded load(String name, Path configured, Loaded previous) {
+        try {
+            if (previous != null && previous.isCurrent(configured)) {
+                return previous;
+            }
+            long started = System.nanoTime();
+            long modified = Files.getLastModifiedTime(configured).toMillis();
+            long size = Files.size(configured);
+            IpIntervalSet set = IpIntervalSet.load(configured);
+            missing.remove(configured);
+            logger.info("Loaded blocklist " + name + " (" + set.entries() + " entries, " + set.intervals()
+                    + " merged ranges" + (set.skipped() > 0 ? ", " + set.skipped() + " lines skipped" : "") + ") in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms");
+            return new Loaded(name, configured, modified, size, set, hits.computeIfAbsent(name, key -> new LongAdder()));
+        } catch (NoSuchFileException e) {
+            if (missing.add(configured)) {
+                logger.warn("Blocklist " + name + " file not found: " + configured);
+            }
+            return previous;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to load blocklist " + name + " from " + configured
+                    + (previous != null ? ", keeping the previous contents" : ""), e);
+            return previous;
+        }
+    }
+
+    /**
+     * Find the first list containing an address and count the hit
+     * @return the list name, or null if no list contains the address
+     */
+    public String check(InetAddress address) {
+        List<Loaded> current = lists.get();
+        if (current.isEmpty() || address == null) {
+            return null;
+        }
+        byte[] bytes = address.getAddress();
+        for (Loaded loaded : current) {
+            if (loaded.set.contains(bytes)) {
+                loaded.hits.increment();
+                return loaded.name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Names of every list containing an address, without counting hits
+     */
+    public List<String> find(InetAddress address) {
+        List<String> names = new ArrayList<>();
+        byte[] bytes = address.getAddress();
+        for (Loaded loaded : lists.get()) {
+            if (loaded.set.contains(bytes)) {
+                names.add(loaded.name);
+            }
+        }
+        return names;
+    }
+
+    public List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>();
+        for (Loaded loaded : lists.get()) {
+            stats.add(new Stats(loaded));
+        }
+        return stats;
+    }
+
+    public void shutdown() {
+        refreshTask.cancel(false);
+    }
+}
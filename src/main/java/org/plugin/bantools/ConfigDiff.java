@@ -0,0 +1,159 @@
+package org.plugin.bantools;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a configuration reload
+ * Describes which entries were added, removed or changed compared to the live state
+ */
+public class ConfigDiff {
+    // Actor reported for changes picked up from a hand-edited config file
+    public static final String RELOAD_ACTOR = "Config reload";
+    // Actor reported for changes received from the replication leader or forwarded by a follower
+    public static final String REPLICATION_ACTOR = "Replication";
+
+    private final boolean unchanged;
+    private final MapDiff<BanEntry> bans;
+    private final MapDiff<FakeBanEntry> fakeBans;
+    private final MapDiff<MuteEntry> mutes;
+    private final boolean settingsChanged;
+    private final long elapsedNanos;
+
+    public ConfigDiff(MapDiff<BanEntry> bans, MapDiff<FakeBanEntry> fakeBans, MapDiff<MuteEntry> mutes,
+                      boolean settingsChanged, long elapsedNanos) {
+        this(false, bans, fakeBans, mutes, settingsChanged, elapsedNanos);
+    }
+
+    private ConfigDiff(boolean unchanged, MapDiff<BanEntry> bans, MapDiff<FakeBanEntry> fakeBans,
+                       MapDiff<MuteEntry> mutes, boolean settingsChanged, long elapsedNanos) {
+        this.unchanged = unchanged;
+        this.bans = bans;
+        this.fakeBans = fakeBans;
+        this.mutes = mutes;
+        this.settingsChanged = settingsChanged;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Diff for a reload that found the file identical to the live state
+     */
+    public static ConfigDiff unchanged(long elapsedNanos) {
+        return new ConfigDiff(true, MapDiff.empty(), MapDiff.empty(), MapDiff.empty(), false, elapsedNanos);
+    }
+
+    public boolean isUnchanged() { return unchanged; }
+    public MapDiff<BanEntry> getBans() { return bans; }
+    public MapDiff<FakeBanEntry> getFakeBans() { return fakeBans; }
+    public MapDiff<MuteEntry> getMutes() { return mutes; }
+    public boolean isSettingsChanged() { return settingsChanged; }
+    public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+
+    /**
+     * The same diff without the given ban, temporary ban and mute keys
+     */
+    public ConfigDiff without(Set<String> banKeys, Set<String> fakeBanKeys, Set<String> muteKeys) {
+        return new ConfigDiff(unchanged, bans.without(banKeys), fakeBans.without(fakeBanKeys), mutes.without(muteKeys),
+                settingsChanged, elapsedNanos);
+    }
+
+    /**
+     * Format the diff sizes for command feedback
+     */
+    public String summary() {
+        if (unchanged) {
+            return "Configuration unchanged, nothing to reload (" + getElapsedMillis() + " ms)";
+        }
+        return "Configuration reloaded in " + getElapsedMillis() + " ms"
+                + " | bans " + bans.summary()
+                + " | fakebans " + fakeBans.summary()
+                + " | mutes " + mutes.summary()
+                + " | settings " + (settingsChanged ? "changed" : "unchanged");
+    }
+
+    /**
+     * Added, removed and changed entries of one keyed section
+     */
+    public static class MapDiff<V> {
+        private final Map<String, V> added;
+        private final Map<String, V> changed;
+        private final Set<String> removed;
+
+        private MapDiff(Map<String, V> added, Map<String, V> changed, Set<String> removed) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        static <V> MapDiff<V> empty() {
+            return new MapDiff<>(Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet());
+        }
+
+        /**
+         * Compare the live entries with freshly parsed ones
+         */
+        public static <V> MapDiff<V> compute(Map<String, V> current, Map<String, V> updated) {
+            Map<String, V> added = new HashMap<>();
+            Map<String, V> changed = new HashMap<>();
+            Set<String> removed = new HashSet<>();
+
+            for (Map.Entry<String, V> entry : updated.entrySet()) {
+                V previous = current.get(entry.getKey());
+                if (previous == null) {
+                    added.put(entry.getKey(), entry.getValue());
+                } else if (!previous.equals(entry.getValue())) {
+                    changed.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (String key : current.keySet()) {
+                if (!updated.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+            return new MapDiff<>(added, changed, removed);
+        }
+
+        /**
+         * Describe the given keys by their current entries: present keys as changed, absent ones as removed
+         * Consumers compare with what they have indexed, so a key that did not really change is harmless.
+         */
+        static <V> MapDiff<V> of(Map<String, V> current, Set<String> keys) {
+            Map<String, V> changed = new HashMap<>();
+            Set<String> removed = new HashSet<>();
+            for (String key : keys) {
+                V entry = current.get(key);
+                if (entry != null) {
+                    changed.put(key, entry);
+                } else {
+                    removed.add(key);
+                }
+            }
+            return new MapDiff<>(Collections.emptyMap(), changed, removed);
+        }
+
+        MapDiff<V> without(Set<String> keys) {
+            if (keys.isEmpty()) {
+                return this;
+            }
+            Map<String, V> keptAdded = new HashMap<>(added);
+            Map<String, V> keptChanged = new HashMap<>(changed);
+            Set<String> keptRemoved = new HashSet<>(removed);
+            keptAdded.keySet().removeAll(keys);
+            keptChanged.keySet().removeAll(keys);
+            keptRemoved.removeAll(keys);
+            return new MapDiff<>(keptAdded, keptChanged, keptRemoved);
+        }
+
+        public Map<String, V> getAdded() { return added; }
+        public Map<String, V> getChanged() { return changed; }
+        public Set<String> getRemoved() { return removed; }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        String summary() {
+            return "+" + added.size() + " -" + removed.size() + " ~" + changed.size();
+        }
+    }
+}
@@ -3,18 +3,113 @@ package org.plugin.bantools;
 import com.typesafe.config.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ConfigManager {
-    private Config config;
+    // Settings of config.conf, without the entry sections; swapped as a whole reference
+    private volatile Config config;
     private final File configFile;
-    private final Map<String, BanEntry> bans = new HashMap<>();
-    private final Map<String, FakeBanEntry> fakeBans = new HashMap<>();
+    // Bans, temporary bans and mutes live in shard files; config.conf only keeps the settings
+    private final Path shardDirectory = Paths.get("plugins/BanTools/shards");
+    private volatile BanShards shards;
+    // Runs the writer's commits and the parallel shard reads of a load
+    private final Executor executor;
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder shardWrites = new LongAdder();
+    private final Path indexImagePath = Paths.get("plugins/BanTools/bans.idx");
+    // Set when bans or temporary bans changed since the index image was last written
+    private final AtomicBoolean indexImageDirty = new AtomicBoolean();
+    private final Object indexImageLock = new Object();
+    private final BanArchive archive = new BanArchive(Paths.get("plugins/BanTools/archive"));
+    // Every ban, temporary ban and mute entry by shard; swapped as a whole reference, so readers
+    // never observe a half-applied save or reload
+    private volatile EntryStore entries;
+    // Rebuilt lazily whenever the published configuration changes
+    private volatile RangeBans rangeBans = RangeBans.EMPTY;
+    // Bumped after every change that can alter a login decision; see getStateEpoch()
+    private final AtomicLong stateEpoch = new AtomicLong();
+
+    // On-disk state of the last load/save, used to skip reloads of an unchanged file
+    private long lastModified = -1;
+    private long lastSize = -1;
+    private byte[] contentHash;
+
+    // Every command-driven change goes through this single writer; maintenance jobs take the same lock
+    private final MutationSequencer<State> writer;
+    // Set on a replication leader: every committed entry change is appended in commit order
+    private volatile ReplicationJournal journal;
+    // Set on a replication follower: ban mutations are sent to the leader instead of the writer
+    private volatile Forwarder forwarder;
 
-    public ConfigManager() {
+    /**
+     * Destination of ban mutations on a replication follower
+     */
+    interface Forwarder {
+        /**
+         * @return completes once the leader committed the changes, as one commit, and they have been applied here
+         */
+        CompletableFuture<Void> forward(List<ReplicationJournal.Record> records);
+    }
+
+    /**
+     * What the writer mutates: the settings and the entries, published together by a commit
+     */
+    private static final class State {
+        final Config settings;
+        final EntryStore entries;
+
+        State(Config settings, EntryStore entries) {
+            this.settings = settings;
+            this.entries = entries;
+        }
+
+        State withSettings(Config settings) {
+            return new State(settings, entries);
+        }
+
+        State withEntries(EntryStore entries) {
+            return new State(settings, entries);
+        }
+    }
+
+    public ConfigManager(Executor executor) {
         configFile = new File("plugins/BanTools/config.conf");
+        this.executor = executor;
+        writer = new MutationSequencer<>(new MutationSequencer.Store<State>() {
+            @Override
+            public State current() {
+                return new State(config, entries);
+            }
+
+            @Override
+            public void commit(State updated) throws IOException {
+                save(updated);
+            }
+        }, this, executor);
         loadConfig();
     }
 
@@ -22,16 +117,37 @@ public class ConfigManager {
         if (!configFile.exists()) {
             createDefaultConfig();
         }
+        Config main;
         try {
-            config = ConfigFactory.parseFile(configFile);
-            loadBans();
-            loadFakeBans();
+            byte[] content = Files.readAllBytes(configFile.toPath());
+            main = parseContent(content);
+            rememberFileState(content);
         } catch (Exception e) {
             System.err.println("Configuration file parsing failed, attempting repair...");
             e.printStackTrace();
             // If the configuration file is corrupted, back up and recreate it
-            backupAndRecreateConfig();
+            main = backupAndRecreateConfig();
+        }
+        // Check if the configuration is flattened (corrupted format)
+        boolean repaired = detectFlattenedConfig(main);
+        if (repaired) {
+            System.out.println("Detected flattened configuration file, attempting to repair...");
+            main = rebuildFlattenedConfig(main);
         }
+        // Unreadable shards stop the load (BanShards throws, leaving the file as it is): running
+        // without their bans would leave them unenforced and let the next save overwrite them
+        shards = new BanShards(shardDirectory, main.hasPath("storage.shards")
+                ? main.getInt("storage.shards") : BanShards.DEFAULT_COUNT, executor);
+        try {
+            entries = loadShards(main, repaired);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load ban shards from " + shardDirectory, e);
+        }
+        config = settingsOf(main);
+        if (repaired) {
+            System.out.println("Configuration repair completed, reloaded " + entries.bans().size() + " player ban records");
+        }
+        bumpStateEpoch();
     }
 
     private void createDefaultConfig() {
@@ -40,6 +156,7 @@ public class ConfigManager {
                 "  ban_reason = \"Violation of server rules\"\n" +
                 "  kick_reason = \"Kicked by an administrator\"\n" +
                 "  fakeban_reason = \"Temporarily kicked, please try again later\"\n" +
+                "  mute_reason = \"Muted by an administrator\"\n" +
                 "}\n" +
                 "\n" +
                 "fakeban {\n" +
@@ -48,14 +165,59 @@ public class ConfigManager {
                 "  confirmation_timeout_minutes = 3\n" +
                 "}\n" +
                 "\n" +
+                "mute {\n" +
+                "  message = \"You are muted: {reason} ({end_time})\"\n" +
+                "  blocked_commands = [\"msg\", \"tell\", \"w\", \"whisper\", \"r\", \"reply\", \"me\"]\n" +
+                "}\n" +
+                "\n" +
                 "whitelist {\n" +
                 "  enabled = true\n" +
                 "  players = [\"Admin\", \"Owner\"]\n" +
                 "  protection_message = \"This player is protected by the whitelist and cannot be modified!\"\n" +
                 "}\n" +
                 "\n" +
-                "bans = {}\n" +
-                "fakebans = {}";
+                "alts {\n" +
+                "  policy = \"flag\"\n" +
+                "  deny_message = \"This account is linked to a banned account.\"\n" +
+                "}\n" +
+                "\n" +
+                "geo {\n" +
+                "  asn_database = \"\"\n" +
+                "  country_database = \"\"\n" +
+                "  cache_size = 65536\n" +
+                "  deny_message = \"Connections from your network are not allowed.\"\n" +
+                "}\n" +
+                "\n" +
+                "range_bans {\n" +
+                "  asn = {}\n" +
+                "  country = {}\n" +
+                "}\n" +
+                "\n" +
+                "blocklists {\n" +
+                "  deny_message = \"Your IP address is on a blocklist.\"\n" +
+                "  lists = {}\n" +
+                "}\n" +
+                "\n" +
+                "login_cache {\n" +
+                "  size = 8192\n" +
+                "  ttl_millis = 2000\n" +
+                "}\n" +
+                "\n" +
+                "history_cache {\n" +
+                "  size = 4096\n" +
+                "}\n" +
+                "\n" +
+                "storage {\n" +
+                "  shards = 16\n" +
+                "}\n" +
+                "\n" +
+                "replication {\n" +
+                "  role = \"standalone\"\n" +
+                "  listen = \"127.0.0.1:25590\"\n" +
+                "  leader = \"127.0.0.1:25590\"\n" +
+                "  secret = \"\"\n" +
+                "  node_name = \"follower\"\n" +
+                "}\n";
         try {
             java.nio.file.Files.write(configFile.toPath(), defaultConfig.getBytes("UTF-8"));
         } catch (Exception e) {
@@ -63,7 +225,10 @@ public class ConfigManager {
         }
     }
 
-    private void backupAndRecreateConfig() {
+    /**
+     * @return the settings of the recreated default configuration
+     */
+    private Config backupAndRecreateConfig() {
         try {
             // Backup corrupted configuration file
             File backupFile = new File(configFile.getParent(), "config.conf.backup." + System.currentTimeMillis());
@@ -72,23 +237,298 @@ public class ConfigManager {
                 System.out.println("Backed up corrupted configuration file to: " + backupFile.getName());
             }
 
-            // Recreate default configuration
+            // Recreate default configuration; the ban shards are kept
             createDefaultConfig();
-            config = ConfigFactory.parseFile(configFile);
-            loadBans();
-
+            byte[] content = Files.readAllBytes(configFile.toPath());
+            rememberFileState(content);
+            return parseContent(content);
         } catch (Exception e) {
             System.err.println("Failed to repair configuration file: " + e.getMessage());
             e.printStackTrace();
+            return ConfigFactory.empty();
         }
     }
 
+    /**
+     * Re-read the configuration file and the ban shards off the calling thread and apply only what changed
+     * Each file is skipped when its size/mtime or content hash matches the last load or save, so only
+     * shards edited by hand are parsed. A file that fails to parse leaves the live state untouched.
+     */
+    public CompletableFuture<ConfigDiff> reloadAsync(Executor executor) {
+        long started = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> reloadFromDisk(started), executor);
+    }
+
+    private ConfigDiff reloadFromDisk(long started) {
+        try {
+            if (!configFile.exists()) {
+                throw new IllegalStateException("Configuration file not found: " + configFile.getPath());
+            }
+
+            // Read under the writer lock, so a shard rewritten by a concurrent save is never applied stale;
+            // logins keep using the old state meanwhile
+            synchronized (this) {
+                long modified = configFile.lastModified();
+                long size = configFile.length();
+                byte[] content = null;
+                Config main = null;
+                if (modified != lastModified || size != lastSize) {
+                    content = Files.readAllBytes(configFile.toPath());
+                    if (!Arrays.equals(hash(content), contentHash)) {
+                        main = parseContent(content);
+                    }
+                }
+                Set<Integer> removed = new HashSet<>();
+                List<BanShards.Shard> changed = shards.loadChanged(removed);
+                if (main == null && changed.isEmpty() && removed.isEmpty()) {
+                    if (content != null) {
+                        rememberFileState(content, modified, size);
+                    }
+                    return ConfigDiff.unchanged(System.nanoTime() - started);
+                }
+
+                boolean repaired = false;
+                if (main != null && detectFlattenedConfig(main)) {
+                    System.out.println("Detected flattened configuration file, attempting to repair...");
+                    main = rebuildFlattenedConfig(main);
+                    repaired = true;
+                }
+
+                // Entries of the replaced shards are dropped and refilled from their files
+                Set<Integer> replaced = new HashSet<>(removed);
+                changed.forEach(shard -> replaced.add(shard.index));
+                EntryStore before = entries;
+                EntryStore.Editor edit = before.edit();
+                for (int index : replaced) {
+                    if (index < shards.count()) {
+                        edit.clearShard(index);
+                    }
+                }
+                Map<String, ConfigValue> banValues = new HashMap<>();
+                Map<String, ConfigValue> fakeBanValues = new HashMap<>();
+                Map<String, ConfigValue> muteValues = new HashMap<>();
+                Set<Integer> dirty = new TreeSet<>();
+                for (BanShards.Shard shard : changed) {
+                    place(shard, banValues, fakeBanValues, muteValues, dirty);
+                }
+                boolean migrated = main != null && takeLegacySections(main, banValues, fakeBanValues, muteValues, dirty);
+                edit.bans().putAll(banValues).report("ban");
+                edit.fakeBans().putAll(fakeBanValues).report("fakeban");
+                edit.mutes().putAll(muteValues).report("mute");
+                EntryStore updated = edit.build();
+                Config settings = main != null ? settingsOf(main) : config;
+
+                Set<String> banKeys = updated.bans().touchedKeys();
+                Set<String> fakeBanKeys = updated.fakeBans().touchedKeys();
+                Set<String> muteKeys = updated.mutes().touchedKeys();
+                ConfigDiff diff = new ConfigDiff(
+                        updated.bans().diffFrom(before.bans(), banKeys),
+                        updated.fakeBans().diffFrom(before.fakeBans(), fakeBanKeys),
+                        updated.mutes().diffFrom(before.mutes(), muteKeys),
+                        !config.root().equals(settings.root()),
+                        System.nanoTime() - started);
+                appendToJournal(before, updated, banKeys, fakeBanKeys, muteKeys);
+                config = settings;
+                entries = updated.committed();
+                bumpStateEpoch();
+                shards.accept(changed);
+                shards.forget(removed);
+                writeShards(updated, dirty);
+                if (repaired || migrated) {
+                    writeMainFile(settings);
+                } else if (content != null) {
+                    rememberFileState(content, modified, size);
+                }
+                if (!diff.getBans().isEmpty() || !diff.getFakeBans().isEmpty()) {
+                    indexImageDirty.set(true);
+                }
+                return diff;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read configuration file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the shard files into a new store
+     * Ban sections still present in the main file (the single-file layout, or entries added there
+     * by hand) are moved into the shards, as are entries found in the wrong shard.
+     * @param repaired rewrite the main file even if it had no ban sections to move
+     */
+    private EntryStore loadShards(Config main, boolean repaired) throws IOException {
+        long started = System.nanoTime();
+        List<BanShards.Shard> loaded = shards.loadAll();
+        Map<String, ConfigValue> banValues = new HashMap<>();
+        Map<String, ConfigValue> fakeBanValues = new HashMap<>();
+        Map<String, ConfigValue> muteValues = new HashMap<>();
+        Set<Integer> dirty = new TreeSet<>();
+        for (BanShards.Shard shard : loaded) {
+            place(shard, banValues, fakeBanValues, muteValues, dirty);
+        }
+        boolean migrated = takeLegacySections(main, banValues, fakeBanValues, muteValues, dirty);
+        EntryStore.Editor edit = EntryStore.empty(shards, this::readBanEntry, this::readFakeBanEntry,
+                this::readMuteEntry).edit();
+        edit.bans().putAll(banValues).report("ban");
+        edit.fakeBans().putAll(fakeBanValues).report("fakeban");
+        edit.mutes().putAll(muteValues).report("mute");
+        EntryStore loadedStore = edit.build().committed();
+        writeShards(loadedStore, dirty);
+        if (migrated || repaired) {
+            writeMainFile(main);
+        }
+        shards.deleteExtra();
+        System.out.println("Loaded " + loaded.size() + " ban shard files (" + banValues.size() + " bans, "
+                + fakeBanValues.size() + " temporary bans, " + muteValues.size() + " mutes) in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        return loadedStore;
+    }
+
+    /**
+     * Add the entries of a shard file, marking the shards of entries stored in the wrong file for rewriting
+     */
+    private void place(BanShards.Shard shard, Map<String, ConfigValue> banValues,
+                       Map<String, ConfigValue> fakeBanValues, Map<String, ConfigValue> muteValues, Set<Integer> dirty) {
+        for (Map.Entry<String, ConfigValue> entry : shard.bans.entrySet()) {
+            placeEntry(shard.index, entry, banValues, dirty);
+        }
+        for (Map.Entry<String, ConfigValue> entry : shard.fakeBans.entrySet()) {
+            placeEntry(shard.index, entry, fakeBanValues, dirty);
+        }
+        for (Map.Entry<String, ConfigValue> entry : shard.mutes.entrySet()) {
+            placeEntry(shard.index, entry, muteValues, dirty);
+        }
+    }
+
+    private void placeEntry(int index, Map.Entry<String, ConfigValue> entry, Map<String, ConfigValue> values,
+                            Set<Integer> dirty) {
+        int home = shards.shardOf(entry.getKey());
+        if (home != index) {
+            dirty.add(index);
+            dirty.add(home);
+        }
+        values.put(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Move "bans", "fakebans" and "mutes" sections found in the main file into the shards
+     * The main file is backed up before its first migration, since it is rewritten without them.
+     * @return true if the main file had such sections and has to be rewritten
+     */
+    private boolean takeLegacySections(Config main, Map<String, ConfigValue> banValues,
+                                       Map<String, ConfigValue> fakeBanValues, Map<String, ConfigValue> muteValues,
+                                       Set<Integer> dirty) {
+        if (!main.root().containsKey("bans") && !main.root().containsKey("fakebans")
+                && !main.root().containsKey("mutes")) {
+            return false;
+        }
+        Map<String, ConfigValue> legacyBans = BanShards.copyOf(section(main, "bans"));
+        Map<String, ConfigValue> legacyFakeBans = BanShards.copyOf(section(main, "fakebans"));
+        Map<String, ConfigValue> legacyMutes = BanShards.copyOf(section(main, "mutes"));
+        takeLegacyEntries(legacyBans, banValues, dirty);
+        takeLegacyEntries(legacyFakeBans, fakeBanValues, dirty);
+        takeLegacyEntries(legacyMutes, muteValues, dirty);
+        if (!legacyBans.isEmpty() || !legacyFakeBans.isEmpty() || !legacyMutes.isEmpty()) {
+            try {
+                File backupFile = new File(configFile.getParent(), "config.conf.backup." + System.currentTimeMillis());
+                Files.copy(configFile.toPath(), backupFile.toPath());
+                System.out.println("Moving " + legacyBans.size() + " bans, " + legacyFakeBans.size()
+                        + " temporary bans and " + legacyMutes.size() + " mutes from config.conf into " + shards.count() + " shard files (backup: "
+                        + backupFile.getName() + ")");
+            } catch (IOException e) {
+                System.err.println("Failed to back up configuration file before moving bans: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void takeLegacyEntries(Map<String, ConfigValue> legacy, Map<String, ConfigValue> values,
+                                   Set<Integer> dirty) {
+        for (Map.Entry<String, ConfigValue> entry : legacy.entrySet()) {
+            values.put(entry.getKey(), entry.getValue());
+            dirty.add(shards.shardOf(entry.getKey()));
+        }
+    }
+
+    private static ConfigObject section(Config source, String name) {
+        return source.root().get(name) instanceof ConfigObject ? (ConfigObject) source.root().get(name)
+                : ConfigValueFactory.fromMap(Collections.emptyMap());
+    }
+
+    private Config parseContent(byte[] content) {
+        return ConfigFactory.parseString(new String(content, StandardCharsets.UTF_8),
+                ConfigParseOptions.defaults().setOriginDescription(configFile.getPath()));
+    }
+
+    /**
+     * Everything except the entry sections, which live in the shards
+     */
+    private static Config settingsOf(Config source) {
+        return source.withoutPath("bans").withoutPath("fakebans").withoutPath("mutes");
+    }
+
+    private void rememberFileState(byte[] content) {
+        rememberFileState(content, configFile.lastModified(), configFile.length());
+    }
+
+    private synchronized void rememberFileState(byte[] content, long modified, long size) {
+        contentHash = hash(content);
+        lastModified = modified;
+        lastSize = size;
+    }
+
+    static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Path getIndexImagePath() {
+        return indexImagePath;
+    }
+
+    /**
+     * Write the lookup-only index image that enforces bans during the next startup
+     * Takes the published entry maps as they are and never holds the writer lock, so saves do not wait for it.
+     */
+    public void writeIndexImage() {
+        synchronized (indexImageLock) {
+            indexImageDirty.set(false);
+            try {
+                EntryStore store = entries;
+                long now = System.currentTimeMillis();
+                BanIndexImage.write(indexImagePath, store.bans().active(now).values(), store.fakeBans().active(now).values(), now);
+            } catch (Exception e) {
+                indexImageDirty.set(true);
+                System.err.println("Failed to write ban index image: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the index image if bans or temporary bans changed since it was last written
+     * Called periodically, so a burst of saves produces a single image.
+     */
+    public void flushIndexImage() {
+        if (indexImageDirty.get()) {
+            writeIndexImage();
+        }
+    }
+
+    /**
+     * Bans in force now, by key
+     */
     public Map<String, BanEntry> getBans() {
-        return new HashMap<>(bans);
+        return entries.bans().active(System.currentTimeMillis());
     }
 
     public Map<String, FakeBanEntry> getFakeBans() {
-        return new HashMap<>(fakeBans);
+        return entries.fakeBans().active(System.currentTimeMillis());
+    }
+
+    public Map<String, MuteEntry> getMutes() {
+        return entries.mutes().active(System.currentTimeMillis());
     }
 
     public String getDefaultBanReason() {
@@ -115,6 +555,26 @@ public class ConfigManager {
         return config.getInt("fakeban.confirmation_timeout_minutes");
     }
 
+    public String getDefaultMuteReason() {
+        return config.hasPath("defaults.mute_reason") ? config.getString("defaults.mute_reason")
+                : "Muted by an administrator";
+    }
+
+    /**
+     * Message shown to a muted player; {reason} and {end_time} are replaced
+     */
+    public String getMuteMessage() {
+        return config.hasPath("mute.message") ? config.getString("mute.message") : "You are muted: {reason} ({end_time})";
+    }
+
+    /**
+     * Commands a muted player may not run, without the leading slash
+     */
+    public List<String> getMuteBlockedCommands() {
+        return config.hasPath("mute.blocked_commands") ? config.getStringList("mute.blocked_commands")
+                : Arrays.asList("msg", "tell", "w", "whisper", "r", "reply", "me");
+    }
+
     public boolean isWhitelistEnabled() {
         return config.getBoolean("whitelist.enabled");
     }
@@ -127,157 +587,491 @@ public class ConfigManager {
         return config.getString("whitelist.protection_message");
     }
 
-    public void addBan(BanEntry entry) {
-        Config updatedConfig = config.withValue("bans." + entry.getName(),
-                ConfigValueFactory.fromMap(entryToMap(entry)));
-        saveConfig(updatedConfig);
-        loadBans(); // Reload ban data into memory
+    /**
+     * What to do with a login linked to a banned account: "off", "flag" or "deny"
+     */
+    public String getAltPolicy() {
+        return config.hasPath("alts.policy") ? config.getString("alts.policy").toLowerCase(Locale.ROOT) : "flag";
+    }
+
+    public String getAltDenyMessage() {
+        return config.hasPath("alts.deny_message") ? config.getString("alts.deny_message")
+                : "This account is linked to a banned account.";
     }
 
-    public void setBanState(String target, boolean state) {
-        Config updatedConfig = config.withValue("bans." + target + ".state",
-                ConfigValueFactory.fromAnyRef(state));
-        saveConfig(updatedConfig);
-        loadBans(); // Reload ban data into memory
+    /**
+     * Configured ASN or country database file, or null if none is set
+     */
+    public Path getGeoDatabase(GeoDatabase.Kind kind) {
+        String path = kind == GeoDatabase.Kind.ASN ? "geo.asn_database" : "geo.country_database";
+        if (!config.hasPath(path) || config.getString(path).trim().isEmpty()) {
+            return null;
+        }
+        return configFile.toPath().resolveSibling(config.getString(path).trim());
+    }
+
+    public int getGeoCacheSize() {
+        return config.hasPath("geo.cache_size") ? config.getInt("geo.cache_size") : 65536;
+    }
+
+    public String getGeoDenyMessage() {
+        return config.hasPath("geo.deny_message") ? config.getString("geo.deny_message")
+                : "Connections from your network are not allowed.";
+    }
+
+    public int getLoginCacheSize() {
+        return config.hasPath("login_cache.size") ? config.getInt("login_cache.size") : 8192;
     }
 
-    public void updateBanEntry(BanEntry entry) {
-        Config updatedConfig = config.withValue("bans." + entry.getName(),
-                ConfigValueFactory.fromMap(entryToMap(entry)));
-        saveConfig(updatedConfig);
-        loadBans(); // Reload ban data into memory
+    public long getLoginCacheTtlMillis() {
+        return config.hasPath("login_cache.ttl_millis") ? config.getLong("login_cache.ttl_millis") : 2000;
     }
 
-    private Map<String, Object> entryToMap(BanEntry entry) {
+    /**
+     * Number of player names whose past bans are cached for admin commands; 0 disables the cache
+     */
+    public int getHistoryCacheSize() {
+        return config.hasPath("history_cache.size") ? config.getInt("history_cache.size") : 4096;
+    }
+
+    /**
+     * Replication role of this proxy: "standalone", "leader" or "follower"; read at startup only
+     */
+    public String getReplicationRole() {
+        return config.hasPath("replication.role") ? config.getString("replication.role").trim().toLowerCase(Locale.ROOT)
+                : "standalone";
+    }
+
+    /**
+     * Address a leader listens on, as "host:port"
+     */
+    public String getReplicationListen() {
+        return config.hasPath("replication.listen") ? config.getString("replication.listen") : "127.0.0.1:25590";
+    }
+
+    /**
+     * Address of the leader a follower connects to, as "host:port"
+     */
+    public String getReplicationLeader() {
+        return config.hasPath("replication.leader") ? config.getString("replication.leader") : "127.0.0.1:25590";
+    }
+
+    public String getReplicationSecret() {
+        return config.hasPath("replication.secret") ? config.getString("replication.secret") : "";
+    }
+
+    /**
+     * Name a follower reports to the leader, shown in the leader's status
+     */
+    public String getReplicationNodeName() {
+        return config.hasPath("replication.node_name") ? config.getString("replication.node_name") : "follower";
+    }
+
+    /**
+     * Counter of changes to anything a login decision depends on
+     * Bans, temporary bans, protection, the configuration, geo databases and blocklists bump it
+     * after their new state is visible, so a decision taken under an older value is stale.
+     */
+    public long getStateEpoch() {
+        return stateEpoch.get();
+    }
+
+    public void bumpStateEpoch() {
+        stateEpoch.incrementAndGet();
+    }
+
+    /**
+     * Configured blocklist files by list name, sorted by name
+     */
+    public Map<String, Path> getBlocklistFiles() {
+        Map<String, Path> files = new TreeMap<>();
+        if (!config.hasPath("blocklists.lists")) {
+            return files;
+        }
+        for (Map.Entry<String, ConfigValue> entry : config.getObject("blocklists.lists").entrySet()) {
+            Object value = entry.getValue().unwrapped();
+            // Entries without a file path are ignored
+            if (value instanceof String && !((String) value).trim().isEmpty()) {
+                files.put(entry.getKey(), configFile.toPath().resolveSibling(((String) value).trim()));
+            }
+        }
+        return files;
+    }
+
+    public String getBlocklistDenyMessage() {
+        return config.hasPath("blocklists.deny_message") ? config.getString("blocklists.deny_message")
+                : "Your IP address is on a blocklist.";
+    }
+
+    /**
+     * ASN and country ban rules of the current configuration
+     */
+    public RangeBans getRangeBans() {
+        Config current = config;
+        RangeBans cached = rangeBans;
+        if (cached.source != current) {
+            cached = RangeBans.parse(current);
+            rangeBans = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Queue an ASN or country ban rule for writing
+     */
+    public CompletableFuture<Void> addRangeBan(GeoDatabase.Kind kind, String key, String reason, String operator) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("reason", reason);
+        map.put("operator", operator);
+        map.put("start_time", System.currentTimeMillis());
+        ConfigValue value = ConfigValueFactory.fromMap(map);
+        return writer.submit(current -> current.withSettings(current.settings.withValue(rangeBanPath(kind, key), value)));
+    }
+
+    public CompletableFuture<Void> removeRangeBan(GeoDatabase.Kind kind, String key) {
+        return writer.submit(current -> current.withSettings(current.settings.withoutPath(rangeBanPath(kind, key))));
+    }
+
+    private static String rangeBanPath(GeoDatabase.Kind kind, String key) {
+        return ConfigUtil.joinPath("range_bans", kind == GeoDatabase.Kind.ASN ? "asn" : "country", key);
+    }
+
+    /**
+     * Queue a new ban record for writing
+     * @return completes once the record is saved to the configuration file
+     */
+    public CompletableFuture<Void> addBan(BanEntry entry) {
+        // Snapshot now: the entry may be edited in place before the batch is applied
+        ConfigValue value = EntryStore.render(entry);
+        return submit(ReplicationJournal.Record.put(ReplicationJournal.SECTION_BANS, entry.getName(), value));
+    }
+
+    public CompletableFuture<Void> setBanState(String target, boolean state) {
+        return submit(ReplicationJournal.Record.state(ReplicationJournal.SECTION_BANS, target, state));
+    }
+
+    public CompletableFuture<Void> updateBanEntry(BanEntry entry) {
+        ConfigValue value = EntryStore.render(entry);
+        return submit(ReplicationJournal.Record.put(ReplicationJournal.SECTION_BANS, entry.getName(), value));
+    }
+
+    /**
+     * Queue a change to one ban or temporary ban entry, or forward it to the replication leader
+     */
+    CompletableFuture<Void> submit(ReplicationJournal.Record record) {
+        Forwarder target = forwarder;
+        return target != null ? target.forward(Collections.singletonList(record))
+                : writer.submit(current -> apply(current, Collections.singletonList(record)));
+    }
+
+    /**
+     * Queue changes to many entries as a single mutation, so they are saved in one commit
+     * On a replication follower they are forwarded together and committed by the leader as one.
+     */
+    CompletableFuture<Void> submitAll(List<ReplicationJournal.Record> records) {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Forwarder target = forwarder;
+        return target != null ? target.forward(records) : writer.submit(current -> apply(current, records));
+    }
+
+    /**
+     * Apply records to the entries; only the shards of their keys are copied
+     */
+    private static State apply(State current, List<ReplicationJournal.Record> records) {
+        EntryStore.Editor edit = current.entries.edit();
+        records.forEach(edit::apply);
+        return current.withEntries(edit.build());
+    }
+
+    /**
+     * Convert a punishment of any type to its stored form
+     */
+    static Map<String, Object> punishmentToMap(Punishment entry) {
         Map<String, Object> map = new HashMap<>();
         map.put("name", entry.getName());
         map.put("uuid", entry.getUuid());
         map.put("ip", entry.getIp());
         map.put("reason", entry.getReason());
+        map.put("operator", entry.getOperator());
         map.put("start_time", entry.getStartTime());
-        map.put("end_time", entry.getEndTime());
+        map.put("end_time", entry.getExpiresAt());
         map.put("state", entry.getState());
         return map;
     }
 
-    private void saveConfig(Config updatedConfig) {
-        try {
-            // Use formatted render options to preserve nested structure
-            ConfigRenderOptions options = ConfigRenderOptions.defaults()
-                    .setOriginComments(false)
-                    .setComments(false)
-                    .setFormatted(true);
-            String configContent = updatedConfig.root().render(options);
-            java.nio.file.Files.write(configFile.toPath(), configContent.getBytes("UTF-8"));
-            config = updatedConfig;
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Persist and publish an updated state, rewriting only the shards holding keys it touched
+     * The main file is only rewritten when the settings changed.
+     * @return the keys touched in each section: bans, temporary bans, mutes
+     */
+    private List<Set<String>> save(State updated) throws IOException {
+        FlightEvents.ConfigSave flight = new FlightEvents.ConfigSave();
+        flight.begin();
+        EntryStore previous = entries;
+        EntryStore store = updated.entries;
+        Set<String> banKeys = store.bans().touchedKeys();
+        Set<String> fakeBanKeys = store.fakeBans().touchedKeys();
+        Set<String> muteKeys = store.mutes().touchedKeys();
+        Set<Integer> dirty = store.touchedShards();
+
+        long bytes = writeShards(store, dirty);
+        boolean settingsWritten = updated.settings != config && !updated.settings.root().equals(config.root());
+        if (settingsWritten) {
+            bytes += writeMainFile(updated.settings);
+        }
+        flight.end();
+        if (flight.shouldCommit()) {
+            flight.bans = banKeys.size();
+            flight.fakeBans = fakeBanKeys.size();
+            flight.mutes = muteKeys.size();
+            flight.shards = dirty.size();
+            flight.settings = settingsWritten;
+            flight.bytes = bytes;
+            flight.commit();
+        }
+        saves.increment();
+        config = updated.settings;
+        entries = store.committed();
+        bumpStateEpoch();
+        appendToJournal(previous, store, banKeys, fakeBanKeys, muteKeys);
+        if (!banKeys.isEmpty() || !fakeBanKeys.isEmpty()) {
+            indexImageDirty.set(true);
         }
+        return Arrays.asList(banKeys, fakeBanKeys, muteKeys);
     }
 
-    private void loadBans() {
-        // Clear existing ban list
-        bans.clear();
+    /**
+     * On a replication leader, record the entries that differ between two states, in commit order
+     * Callers hold the writer lock, so the journal order is the order in which states were published.
+     */
+    private void appendToJournal(EntryStore previous, EntryStore updated, Set<String> banKeys, Set<String> fakeBanKeys,
+                                 Set<String> muteKeys) {
+        ReplicationJournal target = journal;
+        if (target == null) {
+            return;
+        }
+        List<ReplicationJournal.Record> records = new ArrayList<>();
+        addRecords(records, previous.bans(), updated.bans(), banKeys);
+        addRecords(records, previous.fakeBans(), updated.fakeBans(), fakeBanKeys);
+        addRecords(records, previous.mutes(), updated.mutes(), muteKeys);
+        target.append(records);
+    }
 
-        // Ensure the "bans" field exists and is an object
-        if (!config.hasPath("bans")) {
-            return; // If there are no ban records, return
+    private static void addRecords(List<ReplicationJournal.Record> records, EntryStore.Section<?> before,
+                                   EntryStore.Section<?> after, Set<String> keys) {
+        for (String key : new TreeSet<>(keys)) {
+            ConfigValue value = after.value(key);
+            ConfigValue previous = before.value(key);
+            if (value == null) {
+                if (previous != null) {
+                    records.add(ReplicationJournal.Record.remove(after.id, key));
+                }
+            } else if (!value.equals(previous)) {
+                records.add(ReplicationJournal.Record.put(after.id, key, value));
+            }
         }
+    }
 
-        try {
-            // Check if the configuration is flattened (corrupted format)
-            if (detectFlattenedConfig()) {
-                System.out.println("Detected flattened configuration file, attempting to repair...");
-                fixFlattenedConfig();
-                return;
+    /**
+     * Start recording committed entry changes for replication followers
+     */
+    void setJournal(ReplicationJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Send ban mutations to a replication leader instead of writing them locally
+     */
+    void setForwarder(Forwarder forwarder) {
+        this.forwarder = forwarder;
+    }
+
+    /**
+     * Every ban, temporary ban and mute entry together with the journal sequence it reflects
+     */
+    synchronized ReplicationJournal.Snapshot replicationSnapshot() {
+        EntryStore store = entries;
+        return new ReplicationJournal.Snapshot(journal.lastSequence(), store.bans().allValues(),
+                store.fakeBans().allValues(), store.mutes().allValues());
+    }
+
+    /**
+     * Apply a batch of changes received from the replication leader and save them
+     * @return the affected entries, for the indexes
+     */
+    synchronized ConfigDiff applyReplicated(List<ReplicationJournal.Record> records) throws IOException {
+        long started = System.nanoTime();
+        return commitReplicated(apply(new State(config, entries), records), started);
+    }
+
+    /**
+     * Replace every ban, temporary ban and mute entry with the leader's snapshot and save it
+     * Entries equal to the local ones are left alone, so only shards that differ are rewritten.
+     * @return the affected entries, for the indexes
+     */
+    synchronized ConfigDiff applySnapshot(ReplicationJournal.Snapshot snapshot) throws IOException {
+        long started = System.nanoTime();
+        EntryStore.Editor edit = entries.edit();
+        replaceSection(edit.bans(), entries.bans(), snapshot.bans);
+        replaceSection(edit.fakeBans(), entries.fakeBans(), snapshot.fakeBans);
+        replaceSection(edit.mutes(), entries.mutes(), snapshot.mutes);
+        return commitReplicated(new State(config, edit.build()), started);
+    }
+
+    private static void replaceSection(EntryStore.SectionEditor<?> edit, EntryStore.Section<?> current,
+                                       Map<String, ConfigValue> received) {
+        for (String key : current.allValues().keySet()) {
+            if (!received.containsKey(key)) {
+                edit.remove(key);
             }
+        }
+        received.forEach((key, value) -> {
+            if (!value.equals(current.value(key))) {
+                edit.put(key, value);
+            }
+        });
+    }
+
+    private ConfigDiff commitReplicated(State updated, long started) throws IOException {
+        List<Set<String>> touched = save(updated);
+        EntryStore store = entries;
+        return new ConfigDiff(store.bans().diffOf(touched.get(0)), store.fakeBans().diffOf(touched.get(1)),
+                store.mutes().diffOf(touched.get(2)), false, System.nanoTime() - started);
+    }
+
+    /**
+     * The current entries touched by committed changes, for the indexes
+     */
+    ConfigDiff diffOf(List<ReplicationJournal.Record> records) {
+        Set<String> banKeys = new HashSet<>();
+        Set<String> fakeBanKeys = new HashSet<>();
+        Set<String> muteKeys = new HashSet<>();
+        for (ReplicationJournal.Record record : records) {
+            (record.section == ReplicationJournal.SECTION_FAKEBANS ? fakeBanKeys
+                    : record.section == ReplicationJournal.SECTION_MUTES ? muteKeys : banKeys).add(record.key);
+        }
+        EntryStore store = entries;
+        return new ConfigDiff(store.bans().diffOf(banKeys), store.fakeBans().diffOf(fakeBanKeys),
+                store.mutes().diffOf(muteKeys), false, 0);
+    }
 
-            ConfigObject bansObject = config.getObject("bans");
-            if (bansObject.isEmpty()) {
-                return; // Empty ban list
+    /**
+     * Rewrite the given shards from a store; indexes beyond the shard count are skipped
+     * @return the number of bytes written
+     */
+    private long writeShards(EntryStore source, Set<Integer> dirty) throws IOException {
+        long bytes = 0;
+        for (int index : dirty) {
+            if (index < shards.count()) {
+                bytes += shards.write(index, source.bans().shardValues(index), source.fakeBans().shardValues(index),
+                        source.mutes().shardValues(index));
+                shardWrites.increment();
             }
+        }
+        return bytes;
+    }
 
-            for (Map.Entry<String, ConfigValue> entry : bansObject.entrySet()) {
-                String playerName = entry.getKey();
-                ConfigValue value = entry.getValue();
+    /**
+     * Write the settings, without the entry sections, to config.conf
+     * @return the number of bytes written
+     */
+    private int writeMainFile(Config source) throws IOException {
+        // Use formatted render options to preserve nested structure
+        ConfigRenderOptions options = ConfigRenderOptions.defaults()
+                .setOriginComments(false)
+                .setComments(false)
+                .setFormatted(true);
+        String configContent = settingsOf(source).root().render(options);
+        byte[] content = configContent.getBytes(StandardCharsets.UTF_8);
+        Files.write(configFile.toPath(), content);
+        rememberFileState(content);
+        return content.length;
+    }
 
-                // Check whether ConfigValue is a ConfigObject
-                if (!(value instanceof ConfigObject)) {
-                    System.err.println("Invalid data type for player '" + playerName + "'. Expected ConfigObject, got " + value.getClass().getSimpleName() + ". Skipping...");
-                    continue;
-                }
+    /**
+     * Shard layout and write counters, for /bt status
+     */
+    public String getStorageStatus() {
+        return shards.count() + " shard files, " + shardWrites.sum() + " shard writes for " + saves.sum() + " saves";
+    }
 
-                try {
-                    ConfigObject playerObject = (ConfigObject) value;
+    private BanEntry readBanEntry(String playerName, ConfigValue value, List<String> errors) {
+        return readPunishment(new BanEntry(), playerName, value, errors);
+    }
 
-                    // Create BanEntry and populate data
-                    BanEntry banEntry = new BanEntry();
-                    banEntry.setName(playerName);
+    /**
+     * Read the fields every punishment type stores into a new entry
+     * The reason, start time and state are required; the end time is required unless the type
+     * allows permanent entries. The UUID, IP and issuing administrator may be absent.
+     * @return the entry, or null with a message added to errors if it is invalid
+     */
+    private <P extends Punishment> P readPunishment(P entry, String playerName, ConfigValue value, List<String> errors) {
+        // Check whether ConfigValue is a ConfigObject
+        if (!(value instanceof ConfigObject)) {
+            errors.add("Invalid data type for player '" + playerName + "'. Expected ConfigObject, got " + value.getClass().getSimpleName());
+            return null;
+        }
 
-                    // Safely retrieve each field
-                    ConfigValue uuidValue = playerObject.get("uuid");
-                    if (uuidValue != null && uuidValue.valueType() == ConfigValueType.STRING) {
-                        banEntry.setUuid((String) uuidValue.unwrapped());
-                    } else {
-                        banEntry.setUuid(null);
-                    }
+        ConfigObject playerObject = (ConfigObject) value;
+        entry.setName(playerName);
 
-                    ConfigValue ipValue = playerObject.get("ip");
-                    if (ipValue != null && ipValue.valueType() == ConfigValueType.STRING) {
-                        banEntry.setIp((String) ipValue.unwrapped());
-                    } else {
-                        banEntry.setIp(null);
-                    }
+        // Safely retrieve each field
+        ConfigValue uuidValue = playerObject.get("uuid");
+        entry.setUuid(uuidValue != null && uuidValue.valueType() == ConfigValueType.STRING ? (String) uuidValue.unwrapped() : null);
 
-                    // Get required fields
-                    ConfigValue reasonValue = playerObject.get("reason");
-                    if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
-                        banEntry.setReason((String) reasonValue.unwrapped());
-                    } else {
-                        System.err.println("Missing or invalid reason for player '" + playerName + "'. Skipping...");
-                        continue;
-                    }
+        ConfigValue ipValue = playerObject.get("ip");
+        entry.setIp(ipValue != null && ipValue.valueType() == ConfigValueType.STRING ? (String) ipValue.unwrapped() : null);
 
-                    ConfigValue startTimeValue = playerObject.get("start_time");
-                    if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        banEntry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
-                    } else {
-                        System.err.println("Missing or invalid start_time for player '" + playerName + "'. Skipping...");
-                        continue;
-                    }
+        // Get required fields
+        ConfigValue reasonValue = playerObject.get("reason");
+        if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
+            entry.setReason((String) reasonValue.unwrapped());
+        } else {
+            errors.add("Missing or invalid reason for player '" + playerName + "'");
+            return null;
+        }
 
-                    ConfigValue stateValue = playerObject.get("state");
-                    if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
-                        banEntry.setState((Boolean) stateValue.unwrapped());
-                    } else {
-                        System.err.println("Missing or invalid state for player '" + playerName + "'. Skipping...");
-                        continue;
-                    }
+        ConfigValue startTimeValue = playerObject.get("start_time");
+        if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
+            entry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
+        } else {
+            errors.add("Missing or invalid start_time for player '" + playerName + "'");
+            return null;
+        }
 
-                    // Handle possibly null end_time
-                    ConfigValue endTimeValue = playerObject.get("end_time");
-                    if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        banEntry.setEndTime(((Number) endTimeValue.unwrapped()).longValue());
-                    } else {
-                        banEntry.setEndTime(null); // Permanent ban
-                    }
+        ConfigValue stateValue = playerObject.get("state");
+        if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
+            entry.setState((Boolean) stateValue.unwrapped());
+        } else {
+            errors.add("Missing or invalid state for player '" + playerName + "'");
+            return null;
+        }
 
-                    bans.put(playerName, banEntry);
+        // A missing end_time means a permanent ban; temporary bans always end
+        ConfigValue endTimeValue = playerObject.get("end_time");
+        if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
+            entry.setEndTimeMillis(((Number) endTimeValue.unwrapped()).longValue());
+        } else if (entry.getType() == Punishment.Type.FAKEBAN) {
+            errors.add("Missing or invalid end_time for player '" + playerName + "'");
+            return null;
+        } else {
+            entry.setEndTimeMillis(Punishment.PERMANENT);
+        }
 
-                } catch (Exception e) {
-                    System.err.println("Error loading ban data for player '" + playerName + "': " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error loading bans configuration: " + e.getMessage());
-            e.printStackTrace();
+        // Issuing administrator, absent on records created before it was stored
+        ConfigValue operatorValue = playerObject.get("operator");
+        if (operatorValue != null && operatorValue.valueType() == ConfigValueType.STRING) {
+            entry.setOperator((String) operatorValue.unwrapped());
         }
+
+        return entry;
     }
 
-    private boolean detectFlattenedConfig() {
+    private boolean detectFlattenedConfig(Config source) {
         // Check for keys like "player.field" which indicate the config has been flattened
-        for (String key : config.root().keySet()) {
+        for (String key : source.root().keySet()) {
             if (key.contains(".") && (key.endsWith(".name") || key.endsWith(".uuid") ||
                 key.endsWith(".ip") || key.endsWith(".reason") ||
                 key.endsWith(".start_time") || key.endsWith(".end_time") ||
@@ -288,168 +1082,190 @@ public class ConfigManager {
         return false;
     }
 
-    private void fixFlattenedConfig() {
-        try {
-            // Collect all flattened data
-            Map<String, Map<String, Object>> playerData = new HashMap<>();
-
-            for (Map.Entry<String, ConfigValue> entry : config.root().entrySet()) {
-                String key = entry.getKey();
-                if (key.contains(".")) {
-                    String[] parts = key.split("\\.", 2);
-                    if (parts.length == 2) {
-                        String playerName = parts[0];
-                        String fieldName = parts[1];
-
-                        playerData.computeIfAbsent(playerName, k -> new HashMap<>())
-                                  .put(fieldName, entry.getValue().unwrapped());
-                    }
-                }
-            }
-
-            // Rebuild configuration
-            Map<String, Object> newConfig = new HashMap<>();
-            newConfig.put("defaults", Map.of(
-                "ban_reason", "Violation of server rules",
-                "kick_reason", "Kicked by an administrator"
-            ));
-            newConfig.put("bans", playerData);
+    private Config rebuildFlattenedConfig(Config source) {
+        // Collect all flattened data
+        Map<String, Map<String, Object>> playerData = new HashMap<>();
 
-            // Save the repaired configuration
-            Config fixedConfig = ConfigFactory.parseMap(newConfig);
-            saveConfig(fixedConfig);
+        for (Map.Entry<String, ConfigValue> entry : source.root().entrySet()) {
+            String key = entry.getKey();
+            if (key.contains(".")) {
+                String[] parts = key.split("\\.", 2);
+                if (parts.length == 2) {
+                    String playerName = parts[0];
+                    String fieldName = parts[1];
 
-            // Reload
-            config = fixedConfig;
-            loadBans();
+                    playerData.computeIfAbsent(playerName, k -> new HashMap<>())
+                              .put(fieldName, entry.getValue().unwrapped());
+                }
+            }
+        }
 
-            System.out.println("Configuration repair completed, reloaded " + playerData.size() + " player ban records");
+        // Rebuild configuration
+        Map<String, Object> newConfig = new HashMap<>();
+        newConfig.put("defaults", Map.of(
+            "ban_reason", "Violation of server rules",
+            "kick_reason", "Kicked by an administrator"
+        ));
+        newConfig.put("bans", playerData);
+        return ConfigFactory.parseMap(newConfig);
+    }
 
-        } catch (Exception e) {
-            System.err.println("Failed to repair flattened configuration: " + e.getMessage());
-            e.printStackTrace();
-        }
+    private FakeBanEntry readFakeBanEntry(String playerName, ConfigValue value, List<String> errors) {
+        return readPunishment(new FakeBanEntry(), playerName, value, errors);
     }
 
     /**
-     * Load temporary ban data
+     * Add temporary ban record
      */
-    public void loadFakeBans() {
-        fakeBans.clear();
-        try {
-            if (!config.hasPath("fakebans")) {
-                return;
-            }
-
-            ConfigObject fakeBansObject = config.getObject("fakebans");
-            for (Map.Entry<String, ConfigValue> entry : fakeBansObject.entrySet()) {
-                String playerName = entry.getKey();
-                try {
-                    ConfigObject playerObject = (ConfigObject) entry.getValue();
-
-                    FakeBanEntry fakeBanEntry = new FakeBanEntry();
-                    fakeBanEntry.setName(playerName);
-
-                    // Handle possibly null UUID and IP
-                    ConfigValue uuidValue = playerObject.get("uuid");
-                    if (uuidValue != null && uuidValue.valueType() != ConfigValueType.NULL) {
-                        fakeBanEntry.setUuid((String) uuidValue.unwrapped());
-                    }
+    public CompletableFuture<Void> addFakeBan(FakeBanEntry entry) {
+        ConfigValue value = EntryStore.render(entry);
+        return submit(ReplicationJournal.Record.put(ReplicationJournal.SECTION_FAKEBANS, entry.getName(), value));
+    }
 
-                    ConfigValue ipValue = playerObject.get("ip");
-                    if (ipValue != null && ipValue.valueType() != ConfigValueType.NULL) {
-                        fakeBanEntry.setIp((String) ipValue.unwrapped());
-                    }
+    /**
+     * Set temporary ban state
+     */
+    public CompletableFuture<Void> setFakeBanState(String playerName, boolean state) {
+        return submit(ReplicationJournal.Record.state(ReplicationJournal.SECTION_FAKEBANS, playerName, state));
+    }
 
-                    ConfigValue reasonValue = playerObject.get("reason");
-                    if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
-                        fakeBanEntry.setReason((String) reasonValue.unwrapped());
-                    }
+    private MuteEntry readMuteEntry(String playerName, ConfigValue value, List<String> errors) {
+        return readPunishment(new MuteEntry(), playerName, value, errors);
+    }
 
-                    ConfigValue startTimeValue = playerObject.get("start_time");
-                    if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        fakeBanEntry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
-                    }
+    /**
+     * Queue a new mute record for writing
+     */
+    public CompletableFuture<Void> addMute(MuteEntry entry) {
+        ConfigValue value = EntryStore.render(entry);
+        return submit(ReplicationJournal.Record.put(ReplicationJournal.SECTION_MUTES, entry.getName(), value));
+    }
 
-                    ConfigValue endTimeValue = playerObject.get("end_time");
-                    if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        fakeBanEntry.setEndTime(((Number) endTimeValue.unwrapped()).longValue());
-                    }
+    public CompletableFuture<Void> setMuteState(String playerName, boolean state) {
+        return submit(ReplicationJournal.Record.state(ReplicationJournal.SECTION_MUTES, playerName, state));
+    }
 
-                    ConfigValue stateValue = playerObject.get("state");
-                    if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
-                        fakeBanEntry.setState((Boolean) stateValue.unwrapped());
-                    }
+    public CompletableFuture<Void> updateMute(MuteEntry entry) {
+        ConfigValue value = EntryStore.render(entry);
+        return submit(ReplicationJournal.Record.put(ReplicationJournal.SECTION_MUTES, entry.getName(), value));
+    }
 
-                    // Only load valid and non-expired temporary bans
-                    if (fakeBanEntry.getState() && !fakeBanEntry.isExpired()) {
-                        fakeBans.put(playerName, fakeBanEntry);
-                    }
+    /**
+     * Move revoked and expired bans, temporary bans and mutes from the configuration file to the archive
+     * The archive segment is written before the entries are removed, so a failed compaction
+     * never loses a record. The removal goes through the write sequencer like any other change
+     * and only drops entries that are still the ones archived.
+     * @return completes once the entries are removed, with the number archived, or exceptionally
+     * if the archive or the configuration could not be written
+     */
+    public CompletableFuture<Integer> compact() {
+        if (forwarder != null) {
+            // The leader compacts and replicates the removals
+            return CompletableFuture.completedFuture(0);
+        }
+        long now = System.currentTimeMillis();
+        EntryStore snapshot = entries;
+        List<BanArchive.Archived> archived = new ArrayList<>();
+        Map<String, ConfigValue> bans = new HashMap<>();
+        Map<String, ConfigValue> fakeBans = new HashMap<>();
+        Map<String, ConfigValue> mutes = new HashMap<>();
+        for (int shard = 0; shard < snapshot.layout().count(); shard++) {
+            collectInactive(snapshot.bans(), shard, now, BanArchive.KIND_BAN, archived, bans);
+            collectInactive(snapshot.fakeBans(), shard, now, BanArchive.KIND_FAKEBAN, archived, fakeBans);
+            collectInactive(snapshot.mutes(), shard, now, BanArchive.KIND_MUTE, archived, mutes);
+        }
+        if (archived.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
 
-                } catch (Exception e) {
-                    System.err.println("Error loading fakeban data for player '" + playerName + "': " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error loading fakebans configuration: " + e.getMessage());
+        try {
+            archive.append(archived);
+        } catch (IOException e) {
+            CompletableFuture<Integer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
+        return writer.submit(current -> {
+            EntryStore.Editor edit = current.entries.edit();
+            bans.forEach(edit.bans()::removeIfSame);
+            fakeBans.forEach(edit.fakeBans()::removeIfSame);
+            mutes.forEach(edit.mutes()::removeIfSame);
+            return current.withEntries(edit.build());
+        }).thenApply(ignored -> archived.size());
     }
 
     /**
-     * Add temporary ban record
+     * Add the entries of one shard that are no longer in force to an archive batch
+     * The stored values are remembered, so the removal skips entries rewritten since.
      */
-    public void addFakeBan(FakeBanEntry entry) {
-        Config updatedConfig = config.withValue("fakebans." + entry.getName(),
-                ConfigValueFactory.fromMap(fakeBanEntryToMap(entry)));
-        saveConfig(updatedConfig);
-        loadFakeBans();
+    private static void collectInactive(EntryStore.Section<?> section, int shard, long now, String kind,
+                                        List<BanArchive.Archived> archived, Map<String, ConfigValue> removed) {
+        section.shardEntries(shard).forEach((key, entry) -> {
+            if (!entry.isActiveAt(now)) {
+                archived.add(new BanArchive.Archived(kind, key, renderEntry(punishmentToMap(entry))));
+                removed.put(key, section.value(key));
+            }
+        });
     }
 
     /**
-     * Set temporary ban state
+     * Read a player's archived bans from disk, oldest first
      */
-    public void setFakeBanState(String playerName, boolean state) {
-        if (config.hasPath("fakebans." + playerName)) {
-            Config updatedConfig = config.withValue("fakebans." + playerName + ".state",
-                    ConfigValueFactory.fromAnyRef(state));
-            saveConfig(updatedConfig);
-            loadFakeBans();
+    public List<BanEntry> getArchivedBans(String playerName) {
+        List<BanEntry> entries = new ArrayList<>();
+        for (BanArchive.Archived record : readArchive(playerName)) {
+            if (BanArchive.KIND_BAN.equals(record.getKind())) {
+                BanEntry entry = readBanEntry(record.getName(), ConfigFactory.parseString(record.getData()).root(), new ArrayList<>());
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
         }
+        return entries;
     }
 
     /**
-     * Convert FakeBanEntry to Map
+     * Read a player's archived temporary bans from disk, oldest first
      */
-    private Map<String, Object> fakeBanEntryToMap(FakeBanEntry entry) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("name", entry.getName());
-        map.put("uuid", entry.getUuid());
-        map.put("ip", entry.getIp());
-        map.put("reason", entry.getReason());
-        map.put("start_time", entry.getStartTime());
-        map.put("end_time", entry.getEndTime());
-        map.put("state", entry.getState());
-        return map;
+    public List<FakeBanEntry> getArchivedFakeBans(String playerName) {
+        List<FakeBanEntry> entries = new ArrayList<>();
+        for (BanArchive.Archived record : readArchive(playerName)) {
+            if (BanArchive.KIND_FAKEBAN.equals(record.getKind())) {
+                FakeBanEntry entry = readFakeBanEntry(record.getName(), ConfigFactory.parseString(record.getData()).root(), new ArrayList<>());
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
     }
 
     /**
-     * Clean up expired temporary ban records
+     * Find a player's latest revoked or expired ban: among the entries not yet compacted, then in the archive
+     * Entries not yet compacted are found in memory, by name and then by UUID; the archive is searched by name.
+     * @param uuid the player's UUID, or null if unknown
+     * @return the ban that started last, or null if the player has no inactive ban on record
      */
-    public void cleanupExpiredFakeBans() {
-        boolean hasChanges = false;
-        Config updatedConfig = config;
-
-        for (Map.Entry<String, FakeBanEntry> entry : new HashMap<>(fakeBans).entrySet()) {
-            if (entry.getValue().isExpired()) {
-                updatedConfig = updatedConfig.withValue("fakebans." + entry.getKey() + ".state",
-                        ConfigValueFactory.fromAnyRef(false));
-                hasChanges = true;
-            }
+    public BanEntry readInactiveBan(String playerName, UUID uuid) {
+        BanEntry latest = entries.bans().latestInactive(playerName, uuid, System.currentTimeMillis());
+        if (latest != null) {
+            return latest;
         }
+        // Compacted records only live in the archive
+        List<BanEntry> archived = getArchivedBans(playerName);
+        return archived.isEmpty() ? null : archived.get(archived.size() - 1);
+    }
 
-        if (hasChanges) {
-            saveConfig(updatedConfig);
-            loadFakeBans();
+    private List<BanArchive.Archived> readArchive(String playerName) {
+        try {
+            return archive.find(playerName);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to read ban archive for " + playerName + ": " + e.getMessage());
+            return Collections.emptyList();
         }
     }
+
+    private static String renderEntry(Map<String, Object> entry) {
+        return ConfigValueFactory.fromMap(entry).render(ConfigRenderOptions.concise());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+package org.plugin.bantools;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * IP range database loaded from a CSV file of "network,value" rows
+ * The network is a CIDR block; the value is an ASN (optionally prefixed with "AS") or a
+ * two-letter country code. Extra columns and rows that do not start with a network (headers)
+ * are ignored, so the GeoLite2 ASN block files load as-is. Blocks are expected not to overlap.
+ * The file is read through a memory mapping into sorted primitive arrays; a lookup is one
+ * binary search.
+ */
+final class CsvRangeDatabase implements GeoDatabase {
+    // IPv4 ranges as unsigned ints in longs, sorted by start
+    private final long[] v4Start;
+    private final long[] v4End;
+    private final int[] v4Value;
+    // IPv6 ranges as (high, low) pairs, sorted by start
+    private final long[] v6StartHigh;
+    private final long[] v6StartLow;
+    private final long[] v6EndHigh;
+    private final long[] v6EndLow;
+    private final int[] v6Value;
+
+    private CsvRangeDatabase(Ranges v4, Ranges v6) {
+        Integer[] order4 = v4.sortedOrder();
+        v4Start = new long[order4.length];
+        v4End = new long[order4.length];
+        v4Value = new int[order4.length];
+        for (int i = 0; i < order4.length; i++) {
+            int row = order4[i];
+            v4Start[i] = v4.startLow[row];
+            v4End[i] = v4.endLow[row];
+            v4Value[i] = v4.value[row];
+        }
+        Integer[] order6 = v6.sortedOrder();
+        v6StartHigh = new long[order6.length];
+        v6StartLow = new long[order6.length];
+        v6EndHigh = new long[order6.length];
+        v6EndLow = new long[order6.length];
+        v6Value = new int[order6.length];
+        for (int i = 0; i < order6.length; i++) {
+            int row = order6[i];
+            v6StartHigh[i] = v6.startHigh[row];
+            v6StartLow[i] = v6.startLow[row];
+            v6EndHigh[i] = v6.endHigh[row];
+            v6EndLow[i] = v6.endLow[row];
+            v6Value[i] = v6.value[row];
+        }
+    }
+
+    static CsvRangeDatabase open(Path file, Kind kind) throws IOException {
+        Ranges v4 = new Ranges();
+        Ranges v6 = new Ranges();
+        int skipped = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] line = new byte[256];
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    skipped += parseRow(line, length, kind, v4, v6) ? 0 : 1;
+                    length = 0;
+                } else if (b != '\r' && length < line.length) {
+                    line[length++] = b;
+                }
+            }
+            if (length > 0) {
+                skipped += parseRow(line, length, kind, v4, v6) ? 0 : 1;
+            }
+        }
+        if (v4.size + v6.size == 0) {
+            throw new IOException("No network rows found in " + file + " (" + skipped + " rows skipped)");
+        }
+        return new CsvRangeDatabase(v4, v6);
+    }
+
+    private static boolean parseRow(byte[] line, int length, Kind kind, Ranges v4, Ranges v6) {
+        int first = indexOf(line, length, 0);
+        if (first <= 0) {
+            return false;
+        }
+        int second = indexOf(line, length, first + 1);
+        String network = new String(line, 0, first, StandardCharsets.US_ASCII).trim();
+        String value = unquote(new String(line, first + 1, (second < 0 ? length : second) - first - 1,
+                StandardCharsets.US_ASCII).trim());
+
+        int parsed = parseValue(value, kind);
+        int slash = network.indexOf('/');
+        if (parsed == NOT_FOUND || slash <= 0 || !GeoDatabase.isAddressLiteral(network.substring(0, slash))) {
+            return false;
+        }
+        byte[] address;
+        int prefix;
+        try {
+            address = InetAddress.getByName(network.substring(0, slash)).getAddress();
+            prefix = Integer.parseInt(network.substring(slash + 1));
+        } catch (UnknownHostException | NumberFormatException e) {
+            return false;
+        }
+        if (prefix < 0 || prefix > address.length * 8) {
+            return false;
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < address.length; i++) {
+            if (address.length == 16 && i < 8) {
+                high = high << 8 | (address[i] & 0xFF);
+            } else {
+                low = low << 8 | (address[i] & 0xFF);
+            }
+        }
+        if (address.length == 4) {
+            long mask = prefix == 0 ? 0 : 0xFFFFFFFFL << (32 - prefix) & 0xFFFFFFFFL;
+            v4.add(0, low & mask, 0, (low & mask) | (~mask & 0xFFFFFFFFL), parsed);
+        } else {
+            long highMask = prefix >= 64 ? -1L : prefix == 0 ? 0 : -1L << (64 - prefix);
+            long lowMask = prefix <= 64 ? 0 : prefix == 128 ? -1L : -1L << (128 - prefix);
+            v6.add(high & highMask, low & lowMask, high | ~highMask, low | ~lowMask, parsed);
+        }
+        return true;
+    }
+
+    private static int parseValue(String value, Kind kind) {
+        if (kind == Kind.COUNTRY) {
+            return GeoDatabase.packCountry(value);
+        }
+        String digits = value.regionMatches(true, 0, "AS", 0, 2) ? value.substring(2) : value;
+        try {
+            int asn = Integer.parseInt(digits);
+            return asn < 0 ? NOT_FOUND : asn;
+        } catch (NumberFormatException e) {
+            return NOT_FOUND;
+        }
+    }
+
+    private static int indexOf(byte[] line, int length, int from) {
+        for (int i = from; i < length; i++) {
+            if (line[i] == ',') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1).trim() : value;
+    }
+
+    @Override
+    public int lookup(byte[] address) {
+        if (address.length == 4) {
+            long ip = (address[0] & 0xFFL) << 24 | (address[1] & 0xFF) << 16 | (address[2] & 0xFF) << 8 | address[3] & 0xFF;
+            int index = floor(v4Start, ip);
+            return index >= 0 && ip <= v4End[index] ? v4Value[index] : NOT_FOUND;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = high << 8 | (address[i] & 0xFF);
+            low = low << 8 | (address[i + 8] & 0xFF);
+        }
+        int index = floor6(high, low);
+        if (index < 0) {
+            return NOT_FOUND;
+        }
+        int cmp = compare(high, low, v6EndHigh[index], v6EndLow[index]);
+        return cmp <= 0 ? v6Value[index] : NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return v4Start.length + v6StartHigh.length;
+    }
+
+    /**
+     * Index of the last start not greater than the key, or -1
+     */
+    private static int floor(long[] starts, long key) {
+        int index = Arrays.binarySearch(starts, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int floor6(long high, long low) {
+        int lo = 0;
+        int hi = v6StartHigh.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(v6StartHigh[mid], v6StartLow[mid], high, low) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        int cmp = Long.compareUnsigned(aHigh, bHigh);
+        return cmp != 0 ? cmp : Long.compareUnsigned(aLow, bLow);
+    }
+
+    /**
+     * Growable columns used while loading
+     */
+    private static final class Ranges {
+        long[] startHigh = new long[1024];
+        long[] startLow = new long[1024];
+        long[] endHigh = new long[1024];
+        long[] endLow = new long[1024];
+        int[] value = new int[1024];
+        int size;
+
+        void add(long sHigh, long sLow, long eHigh, long eLow, int v) {
+            if (size == value.length) {
+                int capacity = size * 2;
+                startHigh = Arrays.copyOf(startHigh, capacity);
+                startLow = Arrays.copyOf(startLow, capacity);
+                endHigh = Arrays.copyOf(endHigh, capacity);
+                endLow = Arrays.copyOf(endLow, capacity);
+                value = Arrays.copyOf(value, capacity);
+            }
+            startHigh[size] = sHigh;
+            startLow[size] = sLow;
+            endHigh[size] = eHigh;
+            endLow[size] = eLow;
+            value[size] = v;
+            size++;
+        }
+
+        Integer[] sortedOrder() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> compare(startHigh[a], startLow[a], startHigh[b], startLow[b]));
+            return order;
+        }
+    }
+}
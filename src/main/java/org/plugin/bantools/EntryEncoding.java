@@ -0,0 +1,135 @@
+package org.plugin.bantools;
+
+import java.lang.ref.WeakReference;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+/**
+ * Compact field encodings shared by ban and temporary ban entries
+ * Reasons and administrator names repeat across most entries, so they go through a weak
+ * dictionary and every entry holds a reference to one shared instance. Canonical UUIDs are
+ * packed into two longs and IPv4 addresses into an int; values in any other form are kept
+ * as text so they round-trip unchanged.
+ */
+final class EntryEncoding {
+    static final byte UUID_PACKED = 1;
+    static final byte IP_PACKED = 2;
+
+    // Striped so the parallel section parser does not serialize on a single lock
+    private static final int STRIPES = 16;
+    private static final Stripe[] DICTIONARY = new Stripe[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            DICTIONARY[i] = new Stripe();
+        }
+    }
+
+    /**
+     * One lock stripe of the dictionary; a named type so the stripes fit in a typed array
+     */
+    private static final class Stripe extends WeakHashMap<String, WeakReference<String>> {
+    }
+
+    private EntryEncoding() {
+    }
+
+    /**
+     * Get the shared instance of a repeated value such as a reason or an administrator name
+     * Entries that no longer reference a value let it be collected.
+     */
+    static String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        Stripe stripe = DICTIONARY[value.hashCode() & (STRIPES - 1)];
+        synchronized (stripe) {
+            WeakReference<String> ref = stripe.get(value);
+            String shared = ref == null ? null : ref.get();
+            if (shared == null) {
+                shared = value;
+                stripe.put(shared, new WeakReference<>(shared));
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Check for the canonical lower-case 8-4-4-4-12 form, the only one packing reproduces exactly
+     */
+    static boolean isCanonicalUuid(String uuid) {
+        if (uuid == null || uuid.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = uuid.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pack one half of a canonical UUID
+     * @param high true for the first 64 bits, false for the last
+     */
+    static long uuidBits(String uuid, boolean high) {
+        long bits = 0;
+        int digits = 0;
+        for (int i = high ? 0 : 19; digits < 16; i++) {
+            char c = uuid.charAt(i);
+            if (c != '-') {
+                bits = bits << 4 | Character.digit(c, 16);
+                digits++;
+            }
+        }
+        return bits;
+    }
+
+    static String uuidText(long most, long least) {
+        return new UUID(most, least).toString();
+    }
+
+    /**
+     * Pack a dotted-quad IPv4 address in its canonical form (no leading zeros)
+     * @return the address as an int widened to long, or -1 if the text is anything else
+     */
+    static long packIpv4(String ip) {
+        if (ip == null || ip.isEmpty() || ip.length() > 15) {
+            return -1;
+        }
+        int packed = 0;
+        int octets = 0;
+        int value = -1;
+        int digits = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                if (digits > 0 && value == 0) {
+                    return -1;
+                }
+                value = (digits == 0 ? 0 : value * 10) + (c - '0');
+                digits++;
+                if (value > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && octets < 4) {
+                packed = packed << 8 | value;
+                octets++;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? packed & 0xFFFFFFFFL : -1;
+    }
+
+    static String ipv4Text(int packed) {
+        return (packed >>> 24) + "." + (packed >>> 16 & 0xFF) + "." + (packed >>> 8 & 0xFF) + "." + (packed & 0xFF);
+    }
+}
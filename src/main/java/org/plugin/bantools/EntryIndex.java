@@ -0,0 +1,67 @@
+package org.plugin.bantools;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * One punishment type's view of the shared {@link PunishmentIndex}
+ * Each manager owns the entries of its slot and edits them through this view; lookups that should
+ * see every type go through the shared index instead.
+ * Entries are mutable beans: re-{@link #put} an entry after changing its UUID or IP.
+ */
+class EntryIndex<E extends Punishment> {
+    private final PunishmentIndex index;
+    private final int slot;
+
+    EntryIndex(PunishmentIndex index, int slot) {
+        this.index = index;
+        this.slot = slot;
+    }
+
+    void put(PlayerName name, E entry) {
+        index.put(slot, name, entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    E remove(PlayerName name) {
+        return (E) index.remove(slot, name);
+    }
+
+    void retainAll(Set<PlayerName> names) {
+        for (PlayerName name : index.names(slot)) {
+            if (!names.contains(name)) {
+                index.remove(slot, name);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    E get(PlayerName name) {
+        return (E) index.get(slot, name);
+    }
+
+    E getByName(String name) {
+        return get(PlayerName.lookup(name));
+    }
+
+    /**
+     * Find the first active entry of this type matching the name, then the UUID, then the IP
+     */
+    @SuppressWarnings("unchecked")
+    E find(String uuid, String ip, String username, Predicate<Punishment> active) {
+        return (E) index.find(uuid, ip, username, slot, active);
+    }
+
+    @SuppressWarnings("unchecked")
+    Collection<E> values() {
+        return (Collection<E>) (Collection<?>) index.values(slot);
+    }
+
+    Collection<PlayerName> names() {
+        return index.names(slot);
+    }
+
+    int size() {
+        return index.size(slot);
+    }
+}
@@ -0,0 +1,552 @@
+package org.plugin.bantools;
+
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+/**
+ * Every ban, temporary ban and mute entry, split by shard
+ * A store is never modified once built. An edit copies the maps of the shards it touches and shares
+ * the others, so a mutation costs one shard rather than the whole store. The keys an edit touched
+ * are carried along until the store is committed, so a save writes and reports only those.
+ * Only the parsed entries are kept; their stored form is rendered from them when a shard is written.
+ */
+final class EntryStore {
+    private final BanShards layout;
+    private final Section<BanEntry> bans;
+    private final Section<FakeBanEntry> fakeBans;
+    private final Section<MuteEntry> mutes;
+
+    private EntryStore(BanShards layout, Section<BanEntry> bans, Section<FakeBanEntry> fakeBans,
+                       Section<MuteEntry> mutes) {
+        this.layout = layout;
+        this.bans = bans;
+        this.fakeBans = fakeBans;
+        this.mutes = mutes;
+    }
+
+    /**
+     * An empty store; the parsers build an entry from a stored value, or return null if it is invalid
+     */
+    static EntryStore empty(BanShards layout, SectionParser.EntryParser<BanEntry> banParser,
+                            SectionParser.EntryParser<FakeBanEntry> fakeBanParser,
+                            SectionParser.EntryParser<MuteEntry> muteParser) {
+        return new EntryStore(layout,
+                new Section<>(ReplicationJournal.SECTION_BANS, layout, banParser),
+                new Section<>(ReplicationJournal.SECTION_FAKEBANS, layout, fakeBanParser),
+                new Section<>(ReplicationJournal.SECTION_MUTES, layout, muteParser));
+    }
+
+    BanShards layout() {
+        return layout;
+    }
+
+    Section<BanEntry> bans() {
+        return bans;
+    }
+
+    Section<FakeBanEntry> fakeBans() {
+        return fakeBans;
+    }
+
+    Section<MuteEntry> mutes() {
+        return mutes;
+    }
+
+    Section<?> section(byte id) {
+        return id == ReplicationJournal.SECTION_FAKEBANS ? fakeBans : id == ReplicationJournal.SECTION_MUTES ? mutes : bans;
+    }
+
+    /**
+     * Shards holding a key touched since the last commit
+     */
+    Set<Integer> touchedShards() {
+        Set<Integer> dirty = new TreeSet<>();
+        for (Section<?> section : Arrays.asList(bans, fakeBans, mutes)) {
+            for (Touched touched = section.touched; touched != null; touched = touched.next) {
+                dirty.add(layout.shardOf(touched.key));
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * The same entries with no keys marked as touched
+     */
+    EntryStore committed() {
+        return new EntryStore(layout, bans.committed(), fakeBans.committed(), mutes.committed());
+    }
+
+    Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Stored form of an entry, as written to its shard file
+     */
+    static ConfigValue render(Punishment entry) {
+        return ConfigValueFactory.fromMap(ConfigManager.punishmentToMap(entry));
+    }
+
+    /**
+     * Entries of one shard of one section
+     * Values that could not be parsed are kept as they are, so writing the shard does not drop them.
+     */
+    private static final class Part<E extends Punishment> {
+        final Map<String, E> entries;
+        final Map<String, ConfigValue> invalid;
+        // Keys of the entries that are or can go out of force (revoked or temporary), by the hash of
+        // their folded name and by the hash of their UUID, so a player's past entries are found
+        // without a scan; hashes keep the index small, and lookups check the entries they find
+        final Map<Integer, String[]> lapsingKeys;
+
+        Part() {
+            this(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        private Part(Map<String, E> entries, Map<String, ConfigValue> invalid, Map<Integer, String[]> lapsingKeys) {
+            this.entries = entries;
+            this.invalid = invalid;
+            this.lapsingKeys = lapsingKeys;
+        }
+
+        Part<E> copy() {
+            return new Part<>(new HashMap<>(entries), new HashMap<>(invalid), new HashMap<>(lapsingKeys));
+        }
+
+        void putEntry(String key, E entry) {
+            E previous = entries.put(key, entry);
+            if (previous != null) {
+                index(key, previous, false);
+            }
+            index(key, entry, true);
+        }
+
+        void removeEntry(String key) {
+            E previous = entries.remove(key);
+            if (previous != null) {
+                index(key, previous, false);
+            }
+        }
+
+        private void index(String key, E entry, boolean add) {
+            if (entry.getState() && entry.isPermanent()) {
+                return;
+            }
+            index(PlayerName.foldedHash(key), key, add);
+            if (entry.hasPackedUuid()) {
+                index(Long.hashCode(entry.uuidMost() ^ entry.uuidLeast()), key, add);
+            }
+        }
+
+        private void index(int by, String key, boolean add) {
+            String[] keys = lapsingKeys.get(by);
+            if (add) {
+                if (keys == null) {
+                    lapsingKeys.put(by, new String[]{key});
+                } else if (!Arrays.asList(keys).contains(key)) {
+                    String[] grown = Arrays.copyOf(keys, keys.length + 1);
+                    grown[keys.length] = key;
+                    lapsingKeys.put(by, grown);
+                }
+            } else if (keys != null) {
+                String[] kept = Arrays.stream(keys).filter(other -> !other.equals(key)).toArray(String[]::new);
+                if (kept.length == 0) {
+                    lapsingKeys.remove(by);
+                } else {
+                    lapsingKeys.put(by, kept);
+                }
+            }
+        }
+
+        /**
+         * Among the entries indexed under a hash that match, the one not in force that started last
+         */
+        E latestInactive(int hash, BiPredicate<String, E> matches, long now) {
+            String[] keys = lapsingKeys.get(hash);
+            E latest = null;
+            if (keys != null) {
+                for (String key : keys) {
+                    E entry = entries.get(key);
+                    if (matches.test(key, entry) && !entry.isActiveAt(now)
+                            && (latest == null || entry.getStartTime() > latest.getStartTime())) {
+                        latest = entry;
+                    }
+                }
+            }
+            return latest;
+        }
+
+        ConfigValue value(String key) {
+            E entry = entries.get(key);
+            return entry != null ? render(entry) : invalid.get(key);
+        }
+
+        boolean contains(String key) {
+            return entries.containsKey(key) || invalid.containsKey(key);
+        }
+
+        void addValues(Map<String, ConfigValue> values) {
+            entries.forEach((key, entry) -> values.put(key, render(entry)));
+            values.putAll(invalid);
+        }
+    }
+
+    /**
+     * Key touched by an edit, newest first
+     */
+    private static final class Touched {
+        final String key;
+        final Touched next;
+
+        Touched(String key, Touched next) {
+            this.key = key;
+            this.next = next;
+        }
+    }
+
+    /**
+     * One section ("bans", "fakebans" or "mutes") across all shards
+     */
+    static final class Section<E extends Punishment> {
+        final byte id;
+        private final BanShards layout;
+        private final SectionParser.EntryParser<E> parser;
+        private final List<Part<E>> parts;
+        private final Touched touched;
+        private final int size;
+
+        Section(byte id, BanShards layout, SectionParser.EntryParser<E> parser) {
+            this.id = id;
+            this.layout = layout;
+            this.parser = parser;
+            this.parts = new ArrayList<>(layout.count());
+            for (int i = 0; i < layout.count(); i++) {
+                parts.add(new Part<>());
+            }
+            this.touched = null;
+            this.size = 0;
+        }
+
+        private Section(Section<E> source, List<Part<E>> parts, Touched touched, int size) {
+            this.id = source.id;
+            this.layout = source.layout;
+            this.parser = source.parser;
+            this.parts = parts;
+            this.touched = touched;
+            this.size = size;
+        }
+
+        Section<E> committed() {
+            return touched == null ? this : new Section<>(this, parts, null, size);
+        }
+
+        /**
+         * The parsed entry stored under exactly this key, whether active or not
+         */
+        E get(String key) {
+            return parts.get(layout.shardOf(key)).entries.get(key);
+        }
+
+        /**
+         * The stored form of the entry under exactly this key, also for entries that are invalid
+         */
+        ConfigValue value(String key) {
+            return parts.get(layout.shardOf(key)).value(key);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Stored form of one shard's entries, rendered for writing its file
+         */
+        Map<String, ConfigValue> shardValues(int shard) {
+            Map<String, ConfigValue> values = new HashMap<>();
+            parts.get(shard).addValues(values);
+            return values;
+        }
+
+        /**
+         * Parsed entries of one shard
+         */
+        Map<String, E> shardEntries(int shard) {
+            return Collections.unmodifiableMap(parts.get(shard).entries);
+        }
+
+        /**
+         * Keys touched since the last commit
+         */
+        Set<String> touchedKeys() {
+            Set<String> keys = new HashSet<>();
+            for (Touched next = touched; next != null; next = next.next) {
+                keys.add(next.key);
+            }
+            return keys;
+        }
+
+        /**
+         * Stored form of every entry, e.g. for a replication snapshot
+         */
+        Map<String, ConfigValue> allValues() {
+            Map<String, ConfigValue> all = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+            for (Part<E> part : parts) {
+                part.addValues(all);
+            }
+            return all;
+        }
+
+        /**
+         * Every parsed entry that is in force at a time, by key
+         */
+        Map<String, E> active(long now) {
+            Map<String, E> active = new HashMap<>();
+            for (Part<E> part : parts) {
+                part.entries.forEach((key, entry) -> {
+                    if (entry.isActiveAt(now)) {
+                        active.put(key, entry);
+                    }
+                });
+            }
+            return active;
+        }
+
+        /**
+         * A player's entry that is not in force at a time and started last, stored under any case of
+         * the name or, if there is none, found by UUID
+         * @param uuid the player's UUID, or null if unknown
+         */
+        E latestInactive(String name, UUID uuid, long now) {
+            String folded = PlayerName.fold(name);
+            E latest = parts.get(layout.shardOf(name)).latestInactive(PlayerName.foldedHash(name),
+                    (key, entry) -> PlayerName.fold(key).equals(folded), now);
+            if (latest == null && uuid != null) {
+                long most = uuid.getMostSignificantBits();
+                long least = uuid.getLeastSignificantBits();
+                BiPredicate<String, E> sameUuid = (key, entry) -> entry.hasPackedUuid()
+                        && entry.uuidMost() == most && entry.uuidLeast() == least;
+                // Entries are sharded by name, so an entry stored under another name can be in any shard
+                for (Part<E> part : parts) {
+                    E found = part.latestInactive(Long.hashCode(most ^ least), sameUuid, now);
+                    if (found != null && (latest == null || found.getStartTime() > latest.getStartTime())) {
+                        latest = found;
+                    }
+                }
+            }
+            return latest;
+        }
+
+        /**
+         * Describe the given keys by their entries in force now: active ones as changed, others as removed
+         */
+        ConfigDiff.MapDiff<E> diffOf(Set<String> keys) {
+            long now = System.currentTimeMillis();
+            Map<String, E> current = new HashMap<>();
+            for (String key : keys) {
+                E entry = get(key);
+                if (entry != null && entry.isActiveAt(now)) {
+                    current.put(key, entry);
+                }
+            }
+            return ConfigDiff.MapDiff.of(current, keys);
+        }
+
+        /**
+         * Compare the entries in force under the given keys with those of an earlier store
+         */
+        ConfigDiff.MapDiff<E> diffFrom(Section<E> before, Set<String> keys) {
+            long now = System.currentTimeMillis();
+            Map<String, E> previous = new HashMap<>();
+            Map<String, E> current = new HashMap<>();
+            for (String key : keys) {
+                E old = before.get(key);
+                if (old != null && old.isActiveAt(now)) {
+                    previous.put(key, old);
+                }
+                E entry = get(key);
+                if (entry != null && entry.isActiveAt(now)) {
+                    current.put(key, entry);
+                }
+            }
+            return ConfigDiff.MapDiff.compute(previous, current);
+        }
+    }
+
+    /**
+     * Builds the next store; shard maps are copied the first time the edit touches them
+     */
+    final class Editor {
+        private final SectionEditor<BanEntry> banEditor = new SectionEditor<>(bans);
+        private final SectionEditor<FakeBanEntry> fakeBanEditor = new SectionEditor<>(fakeBans);
+        private final SectionEditor<MuteEntry> muteEditor = new SectionEditor<>(mutes);
+
+        SectionEditor<BanEntry> bans() {
+            return banEditor;
+        }
+
+        SectionEditor<FakeBanEntry> fakeBans() {
+            return fakeBanEditor;
+        }
+
+        SectionEditor<MuteEntry> mutes() {
+            return muteEditor;
+        }
+
+        SectionEditor<?> section(byte id) {
+            return id == ReplicationJournal.SECTION_FAKEBANS ? fakeBanEditor
+                    : id == ReplicationJournal.SECTION_MUTES ? muteEditor : banEditor;
+        }
+
+        /**
+         * Apply one change received from a command, a follower or the replication leader
+         */
+        void apply(ReplicationJournal.Record record) {
+            SectionEditor<?> section = section(record.section);
+            switch (record.op) {
+                case PUT:
+                    section.put(record.key, record.value);
+                    break;
+                case REMOVE:
+                    section.remove(record.key);
+                    break;
+                default:
+                    ConfigValue entry = section.value(record.key);
+                    if (entry instanceof ConfigObject) {
+                        section.put(record.key, ((ConfigObject) entry).withValue("state", record.value));
+                    }
+            }
+        }
+
+        /**
+         * Drop every entry of one shard
+         */
+        void clearShard(int index) {
+            banEditor.clearShard(index);
+            fakeBanEditor.clearShard(index);
+            muteEditor.clearShard(index);
+        }
+
+        EntryStore build() {
+            return new EntryStore(layout, banEditor.build(), fakeBanEditor.build(), muteEditor.build());
+        }
+    }
+
+    /**
+     * Edits one section; every put or remove marks its key as touched
+     */
+    static final class SectionEditor<E extends Punishment> {
+        private final Section<E> source;
+        private final List<Part<E>> parts;
+        private final boolean[] copied;
+        private Touched touched;
+        private int size;
+
+        private SectionEditor(Section<E> source) {
+            this.source = source;
+            this.parts = new ArrayList<>(source.parts);
+            this.copied = new boolean[parts.size()];
+            this.touched = source.touched;
+            this.size = source.size;
+        }
+
+        ConfigValue value(String key) {
+            return parts.get(source.layout.shardOf(key)).value(key);
+        }
+
+        /**
+         * Store a value, parsing it into an entry
+         */
+        void put(String key, ConfigValue value) {
+            List<String> errors = new ArrayList<>();
+            E entry = null;
+            try {
+                entry = source.parser.parse(key, value, errors);
+            } catch (RuntimeException e) {
+                errors.add("'" + key + "': " + e);
+            }
+            for (String error : errors) {
+                System.err.println("Invalid " + ReplicationJournal.Record.sectionName(source.id) + " entry: " + error);
+            }
+            put(key, value, entry);
+        }
+
+        /**
+         * Parse values in parallel and store them
+         * @return the parse result, for reporting
+         */
+        SectionParser.Result<E> putAll(Map<String, ConfigValue> values) {
+            SectionParser.Result<E> parsed = SectionParser.parse(values, source.parser);
+            values.forEach((key, value) -> put(key, value, parsed.entries.get(key)));
+            return parsed;
+        }
+
+        /**
+         * Store the entry parsed from a value; the value itself is only kept if it is invalid (entry is null)
+         */
+        void put(String key, ConfigValue value, E entry) {
+            Part<E> part = own(source.layout.shardOf(key));
+            if (!part.contains(key)) {
+                size++;
+            }
+            if (entry != null) {
+                part.putEntry(key, entry);
+                part.invalid.remove(key);
+            } else {
+                part.removeEntry(key);
+                part.invalid.put(key, value);
+            }
+            touched = new Touched(key, touched);
+        }
+
+        void remove(String key) {
+            int shard = source.layout.shardOf(key);
+            if (!parts.get(shard).contains(key)) {
+                return;
+            }
+            Part<E> part = own(shard);
+            part.removeEntry(key);
+            part.invalid.remove(key);
+            size--;
+            touched = new Touched(key, touched);
+        }
+
+        /**
+         * Remove a key only while it still holds the given value
+         */
+        void removeIfSame(String key, ConfigValue value) {
+            ConfigValue current = value(key);
+            if (current != null && current.equals(value)) {
+                remove(key);
+            }
+        }
+
+        private void clearShard(int index) {
+            Part<E> part = parts.get(index);
+            for (String key : part.entries.keySet()) {
+                touched = new Touched(key, touched);
+            }
+            for (String key : part.invalid.keySet()) {
+                touched = new Touched(key, touched);
+            }
+            size -= part.entries.size() + part.invalid.size();
+            parts.set(index, new Part<>());
+            copied[index] = true;
+        }
+
+        private Part<E> own(int shard) {
+            if (!copied[shard]) {
+                parts.set(shard, parts.get(shard).copy());
+                copied[shard] = true;
+            }
+            return parts.get(shard);
+        }
+
+        private Section<E> build() {
+            return new Section<>(source, parts, touched, size);
+        }
+    }
+}
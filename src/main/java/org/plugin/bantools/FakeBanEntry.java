@@ -1,67 +1,47 @@
 package org.plugin.bantools;
 
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 /**
  * Temporary ban record entity
  * Used to manage temporary ban data for the fakeban feature
+ * Always has an end time; see {@link Punishment} for the stored fields.
  */
-public class FakeBanEntry {
-    private String name;
-    private String uuid;
-    private String ip;
-    private String reason;
-    private long startTime;
-    private long endTime;
-    private boolean state;
-
+public class FakeBanEntry extends Punishment {
     public FakeBanEntry() {
-        this.state = true;
-        this.startTime = System.currentTimeMillis();
+        setStartTime(System.currentTimeMillis());
+        setEndTimeMillis(0);
     }
 
     public FakeBanEntry(String name, String reason, long duration) {
         this();
-        this.name = name;
-        this.reason = reason;
-        this.endTime = this.startTime + duration;
+        setName(name);
+        setReason(reason);
+        setEndTimeMillis(getStartTime() + duration);
     }
 
-    // Getters and Setters
-    public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
-
-    public String getUuid() { return uuid; }
-    public void setUuid(String uuid) { this.uuid = uuid; }
-
-    public String getIp() { return ip; }
-    public void setIp(String ip) { this.ip = ip; }
-
-    public String getReason() { return reason; }
-    public void setReason(String reason) { this.reason = reason; }
-
-    public long getStartTime() { return startTime; }
-    public void setStartTime(long startTime) { this.startTime = startTime; }
-
-    public long getEndTime() { return endTime; }
-    public void setEndTime(long endTime) { this.endTime = endTime; }
+    @Override
+    public Type getType() {
+        return Type.FAKEBAN;
+    }
 
-    public boolean getState() { return state; }
-    public void setState(boolean state) { this.state = state; }
+    public long getEndTime() { return endTimeMillis(); }
+    public void setEndTime(long endTime) { setEndTimeMillis(endTime); }
 
     /**
      * Check whether the temporary ban has expired
      */
     public boolean isExpired() {
-        return System.currentTimeMillis() > endTime;
+        return hasExpired(System.currentTimeMillis());
     }
 
     /**
      * Get remaining time (minutes)
      */
     public long getRemainingMinutes() {
-        long remaining = endTime - System.currentTimeMillis();
+        long remaining = endTimeMillis() - System.currentTimeMillis();
         return Math.max(0, remaining / (1000 * 60));
     }
 
@@ -69,15 +49,15 @@ public class FakeBanEntry {
      * Get formatted end time
      */
     public String getEndTimeFormatted() {
-        return DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm")
-                .format(Instant.ofEpochMilli(endTime));
+        return DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm").withZone(ZoneId.systemDefault())
+                .format(Instant.ofEpochMilli(endTimeMillis()));
     }
 
     /**
      * Get formatted remaining time
      */
     public String getRemainingTimeFormatted() {
-        long remaining = endTime - System.currentTimeMillis();
+        long remaining = endTimeMillis() - System.currentTimeMillis();
         if (remaining <= 0) {
             return "Expired";
         }
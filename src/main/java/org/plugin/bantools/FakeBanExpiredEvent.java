@@ -0,0 +1,18 @@
+package org.plugin.bantools;
+
+/**
+ * A temporary ban ran out and was marked inactive by the cleanup job
+ */
+public final class FakeBanExpiredEvent extends BanChangeEvent {
+    private final String reason;
+    private final long endTime;
+
+    public FakeBanExpiredEvent(FakeBanEntry entry) {
+        super("System", entry.getName(), entry.getUuid(), entry.getIp());
+        this.reason = entry.getReason();
+        this.endTime = entry.getEndTime();
+    }
+
+    public String getReason() { return reason; }
+    public long getEndTime() { return endTime; }
+}
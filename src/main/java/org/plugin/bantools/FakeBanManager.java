@@ -5,11 +5,12 @@ import com.velocitypowered.api.proxy.ProxyServer;
 import net.kyori.adventure.text.Component;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -22,25 +23,60 @@ public class FakeBanManager {
     private final WhitelistManager whitelistManager;
     private final ProxyServer server;
     private final Logger logger;
-    private final ScheduledExecutorService scheduler;
+    private final TaskExecutor tasks;
+    private final AuditLog auditLog;
+    private final BanEventPublisher events;
+    private ScheduledFuture<?> cleanupTask;
     
     // Stores pending fakeban operations awaiting confirmation
-    private final Map<String, PendingFakeBan> pendingFakeBans = new ConcurrentHashMap<>();
-    // Stores active temporary ban records
-    private final Map<String, FakeBanEntry> activeFakeBans = new ConcurrentHashMap<>();
+    private final Map<PendingKey, PendingFakeBan> pendingFakeBans = new ConcurrentHashMap<>();
+    // Stores active temporary ban records, in their slot of the index shared with normal bans
+    private final EntryIndex<FakeBanEntry> activeFakeBans;
+    private final SlotUpdater<FakeBanEntry> fakeBanSlot;
 
     public FakeBanManager(ConfigManager configManager, WhitelistManager whitelistManager, 
-                         ProxyServer server, Logger logger) {
+                         ProxyServer server, Logger logger, TaskExecutor tasks, AuditLog auditLog,
+                         BanEventPublisher events, PunishmentIndex punishments) {
         this.configManager = configManager;
         this.whitelistManager = whitelistManager;
         this.server = server;
         this.logger = logger;
-        this.scheduler = Executors.newScheduledThreadPool(2);
+        this.tasks = tasks;
+        this.auditLog = auditLog;
+        this.events = events;
+        this.activeFakeBans = punishments.slot(PunishmentIndex.SLOT_FAKEBANS);
+        this.fakeBanSlot = new SlotUpdater<>(activeFakeBans, configManager, true);
         
         loadActiveFakeBans();
         startCleanupTask();
     }
 
+    /**
+     * Key of a pending confirmation: one per administrator and target player
+     */
+    private static final class PendingKey {
+        final String adminName;
+        final PlayerName target;
+
+        PendingKey(String adminName, PlayerName target) {
+            this.adminName = adminName;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PendingKey)) return false;
+            PendingKey other = (PendingKey) o;
+            return target == other.target && adminName.equals(other.adminName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * adminName.hashCode() + target.hashCode();
+        }
+    }
+
     /**
      * Pending fakeban operation
      */
@@ -74,12 +110,14 @@ public class FakeBanManager {
         if (targetPlayer == null || targetPlayer.trim().isEmpty()) {
             return "Player name cannot be empty";
         }
-        if (targetPlayer.length() > 16 || !targetPlayer.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        if (!PlayerName.isValid(targetPlayer)) {
             return "Invalid player name format";
         }
 
         // Whitelist protection check
-        String protectionCheck = whitelistManager.checkProtection(targetPlayer);
+        String onlineUuid = server.getPlayer(targetPlayer)
+                .map(player -> player.getUniqueId().toString()).orElse(null);
+        String protectionCheck = whitelistManager.checkProtection(onlineUuid, targetPlayer);
         if (protectionCheck != null) {
             return protectionCheck;
         }
@@ -94,7 +132,7 @@ public class FakeBanManager {
         // This would require integration with BanManager; skipping for now
 
         // Create pending operation
-        String pendingKey = adminName + ":" + targetPlayer;
+        PendingKey pendingKey = new PendingKey(adminName, PlayerName.of(targetPlayer));
         long timeoutMinutes = configManager.getFakeBanConfirmationTimeoutMinutes();
         long expireTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeoutMinutes);
         
@@ -104,7 +142,7 @@ public class FakeBanManager {
         pendingFakeBans.put(pendingKey, new PendingFakeBan(adminName, targetPlayer, finalReason, expireTime));
         
         // Schedule automatic cleanup
-        scheduler.schedule(() -> {
+        tasks.schedule(() -> {
             pendingFakeBans.remove(pendingKey);
             logger.info("Fakeban confirmation for admin " + adminName + " timed out: " + targetPlayer);
         }, timeoutMinutes, TimeUnit.MINUTES);
@@ -117,191 +155,236 @@ public class FakeBanManager {
      * @param adminName administrator name
      * @param targetPlayer target player
      * @param reason ban reason
-     * @return execution result message
+     * @return completes with the result message; a confirmed fakeban completes once it is saved
      */
-    public String confirmFakeBan(String adminName, String targetPlayer, String reason) {
-        String pendingKey = adminName + ":" + targetPlayer;
-        PendingFakeBan pending = pendingFakeBans.get(pendingKey);
+    public CompletableFuture<String> confirmFakeBan(String adminName, String targetPlayer, String reason) {
+        PlayerName target = PlayerName.isValid(targetPlayer) ? PlayerName.of(targetPlayer) : null;
+        PendingFakeBan pending = target == null ? null : pendingFakeBans.get(new PendingKey(adminName, target));
         
         if (pending == null) {
-            return initiateFakeBan(adminName, targetPlayer, reason);
+            return CompletableFuture.completedFuture(initiateFakeBan(adminName, targetPlayer, reason));
         }
 
+        PendingKey pendingKey = new PendingKey(adminName, target);
         if (pending.isExpired()) {
             pendingFakeBans.remove(pendingKey);
-            return initiateFakeBan(adminName, targetPlayer, reason);
+            return CompletableFuture.completedFuture(initiateFakeBan(adminName, targetPlayer, reason));
         }
 
         // Execute fakeban
         pendingFakeBans.remove(pendingKey);
-        return executeFakeBan(targetPlayer, pending.reason);
+        return executeFakeBan(adminName, targetPlayer, pending.reason);
     }
 
     /**
      * Execute a temporary ban
      */
-    private String executeFakeBan(String targetPlayer, String reason) {
-        try {
-            // Create temporary ban entry
-            long durationMinutes = configManager.getFakeBanDurationMinutes();
-            long durationMs = TimeUnit.MINUTES.toMillis(durationMinutes);
-            
-            FakeBanEntry fakeBanEntry = new FakeBanEntry(targetPlayer, reason, durationMs);
-            
-            // If the player is online, capture UUID and IP
-            server.getPlayer(targetPlayer).ifPresent(player -> {
-                fakeBanEntry.setUuid(player.getUniqueId().toString());
-                fakeBanEntry.setIp(player.getRemoteAddress().getAddress().getHostAddress());
-            });
+    private CompletableFuture<String> executeFakeBan(String adminName, String targetPlayer, String reason) {
+        // Create temporary ban entry
+        long durationMinutes = configManager.getFakeBanDurationMinutes();
+        long durationMs = TimeUnit.MINUTES.toMillis(durationMinutes);
+
+        FakeBanEntry fakeBanEntry = new FakeBanEntry(targetPlayer, reason, durationMs);
+        fakeBanEntry.setOperator(adminName);
+
+        // If the player is online, capture UUID and IP
+        server.getPlayer(targetPlayer).ifPresent(player -> {
+            fakeBanEntry.setUuid(player.getUniqueId().toString());
+            fakeBanEntry.setIp(player.getRemoteAddress().getAddress().getHostAddress());
+        });
+
+        // Save to configuration, then apply once the write is durable
+        return configManager.addFakeBan(fakeBanEntry).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to execute temporary ban: " + targetPlayer, error);
+                return "Failed to execute temporary ban, check logs";
+            }
 
-            // Save to configuration
-            configManager.addFakeBan(fakeBanEntry);
-            
             // Add to active list
-            activeFakeBans.put(targetPlayer, fakeBanEntry);
+            fakeBanSlot.apply(targetPlayer, fakeBanEntry);
+            events.publish(BanAddedEvent.of(adminName, fakeBanEntry));
+
+            auditLog.record(AuditRecord.now(AuditRecord.Action.FAKEBAN, adminName, targetPlayer,
+                    fakeBanEntry.getUuid(), fakeBanEntry.getIp(), reason, fakeBanEntry.getEndTime()));
 
             // Kick online player
-            kickPlayer(targetPlayer, reason);
+            FlightEvents.KickBatch flight = new FlightEvents.KickBatch();
+            flight.begin();
+            flight.finish("fakeban", 1, kickPlayer(targetPlayer, reason) ? 1 : 0);
 
             logger.info("Successfully temporarily banned player: " + targetPlayer + ", duration: " + durationMinutes + " minutes");
             return "Successfully temporarily banned player: " + targetPlayer + ", duration: " + durationMinutes + " minutes";
-            
-        } catch (Exception e) {
-            logger.error("Failed to execute temporary ban: " + targetPlayer, e);
-            return "Failed to execute temporary ban, check logs";
-        }
+        });
     }
 
     /**
      * Remove temporary ban
+     * @return completes with the result message once the change is saved
      */
-    public String unFakeBan(String targetPlayer) {
+    public CompletableFuture<String> unFakeBan(String actor, String targetPlayer) {
         // Input validation
         if (targetPlayer == null || targetPlayer.trim().isEmpty()) {
-            return "Player name cannot be empty";
+            return CompletableFuture.completedFuture("Player name cannot be empty");
         }
-        if (targetPlayer.length() > 16 || !targetPlayer.matches("^[a-zA-Z0-9_]{1,16}$")) {
-            return "Invalid player name format";
+        if (!PlayerName.isValid(targetPlayer)) {
+            return CompletableFuture.completedFuture("Invalid player name format");
         }
 
         FakeBanEntry fakeBan = findActiveFakeBan(targetPlayer);
         if (fakeBan == null) {
-            return "This player does not have an active temporary ban record!";
+            return CompletableFuture.completedFuture("This player does not have an active temporary ban record!");
         }
 
         // Set to inactive state
-        configManager.setFakeBanState(targetPlayer, false);
-        activeFakeBans.remove(targetPlayer);
+        // Use the stored key so the record is found whatever case was typed
+        return configManager.setFakeBanState(fakeBan.getName(), false).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to remove temporary ban: " + targetPlayer, error);
+                return "Failed to remove temporary ban, check logs";
+            }
+            fakeBanSlot.remove(fakeBan.getName());
+            events.publish(new BanRemovedEvent(actor, fakeBan.getName(), fakeBan.getUuid(), fakeBan.getIp(), true));
+            auditLog.record(AuditRecord.now(AuditRecord.Action.UNFAKEBAN, actor, fakeBan.getName(),
+                    fakeBan.getUuid(), fakeBan.getIp(), null, null));
+
+            logger.info("Successfully removed temporary ban: " + targetPlayer);
+            return "Successfully removed temporary ban: " + targetPlayer;
+        });
+    }
 
-        logger.info("Successfully removed temporary ban: " + targetPlayer);
-        return "Successfully removed temporary ban: " + targetPlayer;
+    /**
+     * Active temporary bans an operator issued at or after a time
+     * They are few and short-lived, so a scan replaces a dedicated index.
+     */
+    public List<FakeBanEntry> getFakeBansIssuedBy(String operator, long since) {
+        return activeFakeBans.values().stream()
+                .filter(entry -> entry.isActiveAt(System.currentTimeMillis()) && entry.getStartTime() >= since
+                        && operator.equalsIgnoreCase(entry.getOperator()))
+                .collect(Collectors.toList());
     }
 
     /**
      * Check whether a player is temporarily banned
      */
     public boolean isFakeBanned(String uuid, String ip, String username) {
-        return activeFakeBans.values().stream()
-                .filter(entry -> !entry.isExpired())
-                .anyMatch(entry -> {
-                    // Prefer checking player name first
-                    if (entry.getName().equalsIgnoreCase(username)) {
-                        return true;
-                    }
-                    // Check UUID and IP (if not empty)
-                    return (!entry.getUuid().isEmpty() && entry.getUuid().equals(uuid)) ||
-                           (!entry.getIp().isEmpty() && entry.getIp().equals(ip));
-                });
+        return getFakeBanInfo(uuid, ip, username) != null;
     }
 
     /**
      * Get temporary ban information
+     * Checks the player name first, then UUID and IP
      */
     public FakeBanEntry getFakeBanInfo(String uuid, String ip, String username) {
-        return activeFakeBans.values().stream()
-                .filter(entry -> !entry.isExpired())
-                .filter(entry -> {
-                    if (entry.getName().equalsIgnoreCase(username)) {
-                        return true;
-                    }
-                    return (!entry.getUuid().isEmpty() && entry.getUuid().equals(uuid)) ||
-                           (!entry.getIp().isEmpty() && entry.getIp().equals(ip));
-                })
-                .findFirst()
-                .orElse(null);
+        long now = System.currentTimeMillis();
+        return activeFakeBans.find(uuid, ip, username, entry -> entry.isActiveAt(now));
     }
 
     /**
      * Find an active temporary ban record
      */
     private FakeBanEntry findActiveFakeBan(String targetPlayer) {
-        return activeFakeBans.values().stream()
-                .filter(entry -> entry.getName().equalsIgnoreCase(targetPlayer))
-                .filter(entry -> !entry.isExpired())
-                .findFirst()
-                .orElse(null);
+        FakeBanEntry entry = activeFakeBans.getByName(targetPlayer);
+        return entry != null && entry.isActiveAt(System.currentTimeMillis()) ? entry : null;
     }
 
     /**
      * Kick a player
+     * @return whether the player was online
      */
-    private void kickPlayer(String targetPlayer, String reason) {
-        server.getPlayer(targetPlayer).ifPresent(player -> {
-            Component kickMessage = Component.text(reason);
-            player.disconnect(kickMessage);
-            logger.info("Kicked player: " + targetPlayer + ", reason: " + reason);
-        });
+    private boolean kickPlayer(String targetPlayer, String reason) {
+        Player player = server.getPlayer(targetPlayer).orElse(null);
+        if (player == null) {
+            return false;
+        }
+        Component kickMessage = Component.text(reason);
+        player.disconnect(kickMessage);
+        logger.info("Kicked player: " + targetPlayer + ", reason: " + reason);
+        return true;
     }
 
     /**
-     * Load active temporary ban records
+     * Load active temporary ban records at startup
      */
     private void loadActiveFakeBans() {
-        activeFakeBans.clear();
-        Map<String, FakeBanEntry> fakeBans = configManager.getFakeBans();
-        
-        for (FakeBanEntry entry : fakeBans.values()) {
-            if (entry.getState() && !entry.isExpired()) {
-                activeFakeBans.put(entry.getName(), entry);
+        long now = System.currentTimeMillis();
+        for (FakeBanEntry entry : configManager.getFakeBans().values()) {
+            if (entry.isActiveAt(now)) {
+                activeFakeBans.put(PlayerName.of(entry.getName()), entry);
             }
         }
         
         logger.info("Loaded " + activeFakeBans.size() + " active temporary ban records");
     }
 
+    /**
+     * Apply the temporary ban changes found by a configuration reload
+     * @param actor reported in the published events
+     * @return the entries that became active
+     */
+    public List<FakeBanEntry> applyFakeBanDiff(ConfigDiff.MapDiff<FakeBanEntry> diff, String actor) {
+        List<BanChangeEvent> changes = new ArrayList<>();
+        List<FakeBanEntry> banned = fakeBanSlot.applyDiff(diff, actor, changes);
+        events.publishAll(changes);
+        return banned;
+    }
+
+    /**
+     * Apply temporary ban changes received through replication and kick newly banned players on this proxy
+     */
+    public void applyReplicatedDiff(ConfigDiff.MapDiff<FakeBanEntry> diff) {
+        List<FakeBanEntry> banned = applyFakeBanDiff(diff, ConfigDiff.REPLICATION_ACTOR);
+        if (banned.isEmpty()) {
+            return;
+        }
+        FlightEvents.KickBatch flight = new FlightEvents.KickBatch();
+        flight.begin();
+        int disconnected = 0;
+        for (FakeBanEntry entry : banned) {
+            if (kickPlayer(entry.getName(), entry.getReason())) {
+                disconnected++;
+            }
+        }
+        flight.finish("replication", banned.size(), disconnected);
+    }
+
     /**
      * Start cleanup task
+     * Every minute, drops expired confirmations and expired temporary bans from memory. Nothing is
+     * written: expired entries are inactive on disk already and compaction archives them.
      */
     private void startCleanupTask() {
-        // Clean up expired temporary bans every minute
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                // Clean up expired pending operations
-                pendingFakeBans.entrySet().removeIf(entry -> entry.getValue().isExpired());
-                
-                // Clean up expired temporary bans
-                configManager.cleanupExpiredFakeBans();
-                loadActiveFakeBans();
-                
-            } catch (Exception e) {
-                logger.error("Error occurred while cleaning up expired temporary bans", e);
-            }
+        cleanupTask = tasks.scheduleAtFixedRate(() -> {
+            // Clean up expired pending operations
+            pendingFakeBans.entrySet().removeIf(entry -> entry.getValue().isExpired());
+
+            tasks.execute(() -> {
+                try {
+                    FlightEvents.FakeBanSweep flight = new FlightEvents.FakeBanSweep();
+                    flight.begin();
+                    List<FakeBanEntry> expired = fakeBanSlot.expire(System.currentTimeMillis());
+                    events.publishAll(expired.stream().map(FakeBanExpiredEvent::new).collect(Collectors.toList()));
+                    flight.end();
+                    if (flight.shouldCommit()) {
+                        flight.expired = expired.size();
+                        flight.active = activeFakeBans.size();
+                        flight.commit();
+                    }
+                } catch (Exception e) {
+                    logger.error("Error occurred while cleaning up expired temporary bans", e);
+                }
+            });
         }, 1, 1, TimeUnit.MINUTES);
     }
 
     /**
      * Shutdown the manager
+     * Stops the periodic cleanup; the shared executor is drained by the plugin
      */
     public void shutdown() {
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+        if (cleanupTask != null) {
+            cleanupTask.cancel(false);
         }
+        pendingFakeBans.clear();
     }
 
     /**
@@ -309,7 +392,7 @@ public class FakeBanManager {
      */
     public List<String> getFakeBannedPlayers() {
         return activeFakeBans.values().stream()
-                .filter(entry -> !entry.isExpired())
+                .filter(entry -> entry.isActiveAt(System.currentTimeMillis()))
                 .map(FakeBanEntry::getName)
                 .collect(Collectors.toList());
     }
@@ -0,0 +1,154 @@
+package org.plugin.bantools;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the login, persistence and reload paths
+ * Every event is disabled unless a recording turns it on, for example with the bantools.jfc
+ * profile shipped in the jar, so an unrecorded event costs a begin and a shouldCommit check.
+ * Fields are only filled in after shouldCommit returns true.
+ */
+final class FlightEvents {
+    private FlightEvents() {
+    }
+
+    // Lookup paths of a login decision
+    static final String PATH_STARTUP_IMAGE = "startup-image";
+    static final String PATH_CACHE = "cache";
+    static final String PATH_BAN = "ban";
+    static final String PATH_RANGE_BAN = "range-ban";
+    static final String PATH_BLOCKLIST = "blocklist";
+    static final String PATH_LINKED_ACCOUNT = "linked-account";
+    static final String PATH_ALLOWED = "allowed";
+
+    @Name("bantools.LoginDecision")
+    @Label("Login Decision")
+    @Category({"BanTools", "Login"})
+    @Description("Handling of one login by BanTools and the lookup that decided it")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class LoginDecision extends Event {
+        @Label("Player")
+        String username;
+
+        @Label("Lookup Path")
+        @Description("startup-image, cache, ban, range-ban, blocklist, linked-account or allowed")
+        String path;
+
+        @Label("Denied")
+        boolean denied;
+
+        void finish(String username, boolean denied) {
+            end();
+            if (shouldCommit()) {
+                this.username = username;
+                this.denied = denied;
+                commit();
+            }
+        }
+    }
+
+    @Name("bantools.ConfigSave")
+    @Label("Ban Store Save")
+    @Category({"BanTools", "Persistence"})
+    @Description("One commit of the ban store: shard files and settings written to disk")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ConfigSave extends Event {
+        @Label("Changed Bans")
+        int bans;
+
+        @Label("Changed Temporary Bans")
+        int fakeBans;
+
+        @Label("Changed Mutes")
+        int mutes;
+
+        @Label("Shards Written")
+        int shards;
+
+        @Label("Settings Written")
+        boolean settings;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("bantools.Reload")
+    @Label("Ban Reload")
+    @Category({"BanTools", "Reload"})
+    @Description("Initial load or reload of bans into the in-memory indexes")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Reload extends Event {
+        @Label("Kind")
+        @Description("load or reload")
+        String kind;
+
+        @Label("Active Bans")
+        int entries;
+
+        @Label("Changed Bans")
+        int bans;
+
+        @Label("Changed Temporary Bans")
+        int fakeBans;
+
+        @Label("Changed Mutes")
+        int mutes;
+
+        @Label("Settings Changed")
+        boolean settings;
+    }
+
+    @Name("bantools.FakeBanSweep")
+    @Label("Temporary Ban Sweep")
+    @Category({"BanTools", "Reload"})
+    @Description("Periodic removal of expired temporary bans")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class FakeBanSweep extends Event {
+        @Label("Expired")
+        int expired;
+
+        @Label("Active")
+        int active;
+    }
+
+    @Name("bantools.KickBatch")
+    @Label("Kick Batch")
+    @Category({"BanTools", "Login"})
+    @Description("Players disconnected together after a ban, kick or replicated change")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class KickBatch extends Event {
+        @Label("Cause")
+        @Description("ban, kick, fakeban or replication")
+        String cause;
+
+        @Label("Targets")
+        int targets;
+
+        @Label("Disconnected")
+        @Description("Targets that were online on this proxy")
+        int disconnected;
+
+        void finish(String cause, int targets, int disconnected) {
+            end();
+            if (shouldCommit()) {
+                this.cause = cause;
+                this.targets = targets;
+                this.disconnected = disconnected;
+                commit();
+            }
+        }
+    }
+}
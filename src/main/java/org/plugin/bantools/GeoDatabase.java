@@ -0,0 +1,83 @@
+package org.plugin.bantools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Read-only IP range database answering one value per address
+ * The value is an ASN, or a country code packed by {@link #packCountry}. Implementations are
+ * immutable after loading and safe for concurrent lookups.
+ */
+interface GeoDatabase {
+    int NOT_FOUND = -1;
+
+    enum Kind { ASN, COUNTRY }
+
+    /**
+     * Look up a 4-byte IPv4 or 16-byte IPv6 address
+     * @return the value, or {@link #NOT_FOUND}
+     */
+    int lookup(byte[] address);
+
+    /**
+     * Number of ranges or tree nodes, for logging
+     */
+    int size();
+
+    /**
+     * Open a database by file extension: .mmdb (MaxMind format) or .csv (network,value rows)
+     */
+    static GeoDatabase open(Path file, Kind kind) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".mmdb")) {
+            return MmdbDatabase.open(file, kind);
+        }
+        if (name.endsWith(".csv")) {
+            return CsvRangeDatabase.open(file, kind);
+        }
+        throw new IOException("Unsupported database format (expected .mmdb or .csv): " + file);
+    }
+
+    /**
+     * Pack a two-letter country code into an int, or return {@link #NOT_FOUND} if it is not one
+     */
+    static int packCountry(CharSequence code) {
+        if (code == null || code.length() != 2) {
+            return NOT_FOUND;
+        }
+        return packCountry(code.charAt(0), code.charAt(1));
+    }
+
+    static int packCountry(char first, char second) {
+        first = Character.toUpperCase(first);
+        second = Character.toUpperCase(second);
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z') {
+            return NOT_FOUND;
+        }
+        return (first - 'A') * 26 + (second - 'A');
+    }
+
+    /**
+     * Check for IPv4 digits and dots or an IPv6 literal with colons
+     * Text that passes can be given to InetAddress.getByName without triggering a DNS lookup.
+     */
+    static boolean isAddressLiteral(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        boolean ipv6 = text.indexOf(':') >= 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean allowed = ipv6 ? Character.digit(c, 16) >= 0 || c == ':' || c == '.' : (c >= '0' && c <= '9') || c == '.';
+            if (!allowed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String countryText(int packed) {
+        return new String(new char[]{(char) ('A' + packed / 26), (char) ('A' + packed % 26)});
+    }
+}
@@ -0,0 +1,202 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ASN and country lookups for login addresses, with a bounded per-IP cache
+ * The loaded databases and the cache are published together as one immutable state, so a
+ * database that changed on disk is opened in the background and swapped in with a single
+ * reference write; logins keep using the previous state until then and never wait for a load.
+ * The cache is direct-mapped: a slot holds the result for the last address that hashed to it.
+ */
+public class GeoLookup {
+    private static final int MIN_CACHE_SIZE = 256;
+
+    private final ConfigManager configManager;
+    private final Logger logger;
+    private final AtomicReference<State> state = new AtomicReference<>(new State(null, null, 0));
+    private final ScheduledFuture<?> refreshTask;
+
+    private static final class Loaded {
+        final Path path;
+        final long modified;
+        final long size;
+        final GeoDatabase database;
+
+        Loaded(Path path, long modified, long size, GeoDatabase database) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+            this.database = database;
+        }
+
+        boolean isCurrent(Path configured) throws IOException {
+            return path.equals(configured) && Files.getLastModifiedTime(configured).toMillis() == modified
+                    && Files.size(configured) == size;
+        }
+    }
+
+    private static final class State {
+        final Loaded asn;
+        final Loaded country;
+        final Slot[] cache;
+
+        State(Loaded asn, Loaded country, int cacheSize) {
+            this.asn = asn;
+            this.country = country;
+            this.cache = cacheSize > 0 ? new Slot[cacheSize] : null;
+        }
+    }
+
+    private static final class Slot {
+        final long high;
+        final long low;
+        final int asn;
+        final int country;
+
+        Slot(long high, long low, int asn, int country) {
+            this.high = high;
+            this.low = low;
+            this.asn = asn;
+            this.country = country;
+        }
+    }
+
+    public GeoLookup(ConfigManager configManager, TaskExecutor tasks, Logger logger) {
+        this.configManager = configManager;
+        this.logger = logger;
+        refresh();
+        // Pick up database files replaced on disk without a reload
+        this.refreshTask = tasks.scheduleAtFixedRate(() -> tasks.execute(this::refresh), 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Open configured databases that are new or changed on disk and publish them with a fresh cache
+     * A database that fails to open keeps the previously loaded one in use.
+     */
+    public synchronized void refresh() {
+        State current = state.get();
+        Loaded asn = load(GeoDatabase.Kind.ASN, current.asn);
+        Loaded country = load(GeoDatabase.Kind.COUNTRY, current.country);
+        int cacheSize = cacheSize();
+        int currentSize = current.cache == null ? 0 : current.cache.length;
+        if (asn != current.asn || country != current.country || cacheSize != currentSize) {
+            state.set(new State(asn, country, cacheSize));
+            configManager.bumpStateEpoch();
+        }
+    }
+
+    private Loaded load(GeoDatabase.Kind kind, Loaded previous) {
+        Path configured = configManager.getGeoDatabase(kind);
+        if (configured == null) {
+            return null;
+        }
+        try {
+            if (previous != null && previous.isCurrent(configured)) {
+                return previous;
+            }
+            long started = System.nanoTime();
+            long modified = Files.getLastModifiedTime(configured).toMillis();
+            long size = Files.size(configured);
+            GeoDatabase database = GeoDatabase.open(configured, kind);
+            logger.info("Loaded " + kind.name().toLowerCase() + " database " + configured.getFileName() + " ("
+                    + database.size() + " entries) in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+            return new Loaded(configured, modified, size, database);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to load " + kind.name().toLowerCase() + " database " + configured
+                    + (previous != null ? ", keeping the previous one" : ""), e);
+            return previous;
+        }
+    }
+
+    private int cacheSize() {
+        int configured = configManager.getGeoCacheSize();
+        if (configured <= 0) {
+            return 0;
+        }
+        // Round up to a power of two so a slot is a mask away
+        int size = Integer.highestOneBit(Math.max(MIN_CACHE_SIZE, Math.min(configured, 1 << 24)) - 1) << 1;
+        return Math.max(size, MIN_CACHE_SIZE);
+    }
+
+    /**
+     * Find the range ban rule matching an address
+     * @return the rule, or null if no rule applies or no database is loaded
+     */
+    public RangeBans.Rule check(InetAddress address) {
+        RangeBans rules = configManager.getRangeBans();
+        if (rules.isEmpty() || address == null) {
+            return null;
+        }
+        State current = state.get();
+        if (current.asn == null && current.country == null) {
+            return null;
+        }
+        Slot slot = resolve(current, address.getAddress());
+        return rules.match(slot.asn, slot.country);
+    }
+
+    /**
+     * Describe what the databases know about an address, for staff
+     */
+    public String describe(InetAddress address) {
+        State current = state.get();
+        if (current.asn == null && current.country == null) {
+            return "No ASN or country database is loaded";
+        }
+        Slot slot = resolve(current, address.getAddress());
+        return address.getHostAddress() + ": "
+                + (current.asn == null ? "no ASN database" : slot.asn < 0 ? "ASN unknown" : "AS" + slot.asn) + ", "
+                + (current.country == null ? "no country database"
+                : slot.country < 0 ? "country unknown" : "country " + GeoDatabase.countryText(slot.country));
+    }
+
+    public void shutdown() {
+        refreshTask.cancel(false);
+    }
+
+    private static Slot resolve(State current, byte[] address) {
+        long high = 0;
+        long low;
+        if (address.length == 4) {
+            // Same key as the IPv4-mapped IPv6 form
+            low = 0xFFFF00000000L | (address[0] & 0xFFL) << 24 | (address[1] & 0xFF) << 16
+                    | (address[2] & 0xFF) << 8 | address[3] & 0xFF;
+        } else {
+            low = 0;
+            for (int i = 0; i < 8; i++) {
+                high = high << 8 | (address[i] & 0xFF);
+                low = low << 8 | (address[i + 8] & 0xFF);
+            }
+        }
+
+        Slot[] cache = current.cache;
+        int index = 0;
+        if (cache != null) {
+            long mixed = (high * 0x9E3779B97F4A7C15L) ^ low;
+            mixed *= 0xBF58476D1CE4E5B9L;
+            index = (int) (mixed ^ (mixed >>> 31)) & (cache.length - 1);
+            Slot cached = cache[index];
+            if (cached != null && cached.high == high && cached.low == low) {
+                return cached;
+            }
+        }
+
+        int asn = current.asn == null ? GeoDatabase.NOT_FOUND : current.asn.database.lookup(address);
+        int country = current.country == null ? GeoDatabase.NOT_FOUND : current.country.database.lookup(address);
+        Slot resolved = new Slot(high, low, asn, country);
+        if (cache != null) {
+            // A racing writer may replace the slot; either result is correct for its own key
+            cache[index] = resolved;
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,372 @@
+package org.plugin.bantools;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Immutable set of IP addresses stored as merged, disjoint intervals in primitive arrays
+ * IPv4 intervals are kept in Eytzinger (breadth-first) order, so the top levels of the search
+ * share a few cache lines and a lookup touches one line per level further down. IPv6 intervals
+ * are few in practice and use a plain binary search over sorted (high, low) pairs.
+ */
+final class IpIntervalSet {
+    // Eytzinger order, 1-based; values have the sign bit flipped so signed order is address order
+    private final int[] v4Start;
+    private final int[] v4End;
+    private final long[] v6StartHigh;
+    private final long[] v6StartLow;
+    private final long[] v6EndHigh;
+    private final long[] v6EndLow;
+    private final int entries;
+    private final int skipped;
+
+    private IpIntervalSet(int[] v4Start, int[] v4End, long[] v6StartHigh, long[] v6StartLow,
+                          long[] v6EndHigh, long[] v6EndLow, int entries, int skipped) {
+        this.v4Start = v4Start;
+        this.v4End = v4End;
+        this.v6StartHigh = v6StartHigh;
+        this.v6StartLow = v6StartLow;
+        this.v6EndHigh = v6EndHigh;
+        this.v6EndLow = v6EndLow;
+        this.entries = entries;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Load a list file with one address, CIDR block or "first-last" range per line
+     * Text after '#' or ';' is a comment, as is anything after a tab (extra columns); lines that
+     * do not parse are counted and skipped.
+     */
+    static IpIntervalSet load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] line = new byte[256];
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    builder.addLine(line, length);
+                    length = 0;
+                } else if (length < line.length) {
+                    line[length++] = b;
+                }
+            }
+            builder.addLine(line, length);
+        }
+        return builder.build();
+    }
+
+    boolean contains(byte[] address) {
+        if (address.length == 4) {
+            int key = ((address[0] & 0xFF) << 24 | (address[1] & 0xFF) << 16 | (address[2] & 0xFF) << 8
+                    | address[3] & 0xFF) ^ Integer.MIN_VALUE;
+            // Floor search: the last node where the descent went right holds the greatest start <= key
+            int[] starts = v4Start;
+            int n = starts.length - 1;
+            int k = 1;
+            int found = 0;
+            while (k <= n) {
+                boolean right = starts[k] <= key;
+                found = right ? k : found;
+                k = 2 * k + (right ? 1 : 0);
+            }
+            return found != 0 && key <= v4End[found];
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = high << 8 | (address[i] & 0xFF);
+            low = low << 8 | (address[i + 8] & 0xFF);
+        }
+        int lo = 0;
+        int hi = v6StartHigh.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(v6StartHigh[mid], v6StartLow[mid], high, low) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found >= 0 && compare(high, low, v6EndHigh[found], v6EndLow[found]) <= 0;
+    }
+
+    /**
+     * Number of lines that parsed as an address, block or range
+     */
+    int entries() {
+        return entries;
+    }
+
+    int skipped() {
+        return skipped;
+    }
+
+    /**
+     * Number of merged intervals
+     */
+    int intervals() {
+        return v4Start.length - 1 + v6StartHigh.length;
+    }
+
+    /**
+     * Number of IPv4 addresses covered
+     */
+    long ipv4Addresses() {
+        long total = 0;
+        for (int k = 1; k < v4Start.length; k++) {
+            total += ((v4End[k] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL) - ((v4Start[k] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL) + 1;
+        }
+        return total;
+    }
+
+    private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        int cmp = Long.compareUnsigned(aHigh, bHigh);
+        return cmp != 0 ? cmp : Long.compareUnsigned(aLow, bLow);
+    }
+
+    private static final class Builder {
+        // IPv4 intervals packed as (start << 32 | end) with the sign bit flipped for sorting
+        private long[] v4 = new long[4096];
+        private int v4Size;
+        private long[] v6 = new long[256];
+        private int v6Size;
+        private int entries;
+        private int skipped;
+
+        void addLine(byte[] line, int length) {
+            int start = 0;
+            int end = length;
+            for (int i = 0; i < length; i++) {
+                if (line[i] == '#' || line[i] == ';' || line[i] == '\t') {
+                    end = i;
+                    break;
+                }
+            }
+            while (start < end && line[start] <= ' ') {
+                start++;
+            }
+            while (end > start && line[end - 1] <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            if (addIpv4(line, start, end) || addOther(new String(line, start, end - start, StandardCharsets.US_ASCII))) {
+                entries++;
+            } else {
+                skipped++;
+            }
+        }
+
+        /**
+         * Parse "a.b.c.d", "a.b.c.d/n" or "a.b.c.d-e.f.g.h" without allocating
+         */
+        private boolean addIpv4(byte[] line, int from, int to) {
+            long first = parseIpv4(line, from, to);
+            if (first < 0) {
+                return false;
+            }
+            int position = (int) (first >>> 32);
+            long startAddress = first & 0xFFFFFFFFL;
+            if (position == to) {
+                addV4(startAddress, startAddress);
+                return true;
+            }
+            if (line[position] == '/') {
+                int prefix = 0;
+                int digits = 0;
+                for (int i = position + 1; i < to; i++) {
+                    int digit = line[i] - '0';
+                    if (digit < 0 || digit > 9 || ++digits > 2) {
+                        return false;
+                    }
+                    prefix = prefix * 10 + digit;
+                }
+                if (digits == 0 || prefix > 32) {
+                    return false;
+                }
+                long mask = prefix == 0 ? 0 : 0xFFFFFFFFL << (32 - prefix) & 0xFFFFFFFFL;
+                addV4(startAddress & mask, startAddress & mask | ~mask & 0xFFFFFFFFL);
+                return true;
+            }
+            if (line[position] == '-') {
+                int next = position + 1;
+                while (next < to && line[next] == ' ') {
+                    next++;
+                }
+                long last = parseIpv4(line, next, to);
+                if (last < 0 || (int) (last >>> 32) != to || (last & 0xFFFFFFFFL) < startAddress) {
+                    return false;
+                }
+                addV4(startAddress, last & 0xFFFFFFFFL);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parse a dotted quad at the start of a range
+         * @return the position after it in the high half and the address in the low half, or -1
+         */
+        private static long parseIpv4(byte[] line, int from, int to) {
+            long address = 0;
+            int position = from;
+            for (int part = 0; part < 4; part++) {
+                if (part > 0) {
+                    if (position >= to || line[position] != '.') {
+                        return -1;
+                    }
+                    position++;
+                }
+                int value = 0;
+                int digits = 0;
+                while (position < to && line[position] >= '0' && line[position] <= '9' && digits < 4) {
+                    value = value * 10 + line[position] - '0';
+                    position++;
+                    digits++;
+                }
+                if (digits == 0 || digits > 3 || value > 255) {
+                    return -1;
+                }
+                address = address << 8 | value;
+            }
+            while (position < to && line[position] == ' ') {
+                position++;
+            }
+            return (long) position << 32 | address;
+        }
+
+        /**
+         * IPv6 addresses and blocks; IPv4-mapped addresses are stored as IPv4
+         */
+        private boolean addOther(String text) {
+            int slash = text.indexOf('/');
+            String literal = (slash < 0 ? text : text.substring(0, slash)).trim();
+            if (literal.indexOf(':') < 0 || !GeoDatabase.isAddressLiteral(literal)) {
+                return false;
+            }
+            byte[] address;
+            int prefix;
+            try {
+                address = InetAddress.getByName(literal).getAddress();
+                prefix = slash < 0 ? address.length * 8 : Integer.parseInt(text.substring(slash + 1).trim());
+            } catch (UnknownHostException | NumberFormatException e) {
+                return false;
+            }
+            if (prefix < 0 || prefix > address.length * 8) {
+                return false;
+            }
+            if (address.length == 4) {
+                long ip = (address[0] & 0xFFL) << 24 | (address[1] & 0xFF) << 16 | (address[2] & 0xFF) << 8 | address[3] & 0xFF;
+                long mask = prefix == 0 ? 0 : 0xFFFFFFFFL << (32 - prefix) & 0xFFFFFFFFL;
+                addV4(ip & mask, ip & mask | ~mask & 0xFFFFFFFFL);
+                return true;
+            }
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < 8; i++) {
+                high = high << 8 | (address[i] & 0xFF);
+                low = low << 8 | (address[i + 8] & 0xFF);
+            }
+            long highMask = prefix >= 64 ? -1L : prefix == 0 ? 0 : -1L << (64 - prefix);
+            long lowMask = prefix <= 64 ? 0 : prefix == 128 ? -1L : -1L << (128 - prefix);
+            if (v6Size + 4 > v6.length) {
+                v6 = Arrays.copyOf(v6, v6.length * 2);
+            }
+            v6[v6Size++] = high & highMask;
+            v6[v6Size++] = low & lowMask;
+            v6[v6Size++] = high | ~highMask;
+            v6[v6Size++] = low | ~lowMask;
+            return true;
+        }
+
+        private void addV4(long start, long end) {
+            if (v4Size == v4.length) {
+                v4 = Arrays.copyOf(v4, v4.length * 2);
+            }
+            v4[v4Size++] = (start << 32 | end) ^ Long.MIN_VALUE;
+        }
+
+        IpIntervalSet build() {
+            // Sort by start and merge overlapping or adjacent intervals in place
+            long[] sorted = Arrays.copyOf(v4, v4Size);
+            Arrays.sort(sorted);
+            int merged = 0;
+            long[] starts = new long[sorted.length];
+            long[] ends = new long[sorted.length];
+            for (long packed : sorted) {
+                long interval = packed ^ Long.MIN_VALUE;
+                long start = interval >>> 32;
+                long end = interval & 0xFFFFFFFFL;
+                if (merged > 0 && start <= ends[merged - 1] + 1) {
+                    ends[merged - 1] = Math.max(ends[merged - 1], end);
+                } else {
+                    starts[merged] = start;
+                    ends[merged] = end;
+                    merged++;
+                }
+            }
+            int[] eytzingerStart = new int[merged + 1];
+            int[] eytzingerEnd = new int[merged + 1];
+            fill(starts, ends, eytzingerStart, eytzingerEnd, 0, 1);
+
+            int count = v6Size / 4;
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> compare(v6[a * 4], v6[a * 4 + 1], v6[b * 4], v6[b * 4 + 1]));
+            long[] startHigh = new long[count];
+            long[] startLow = new long[count];
+            long[] endHigh = new long[count];
+            long[] endLow = new long[count];
+            int merged6 = 0;
+            for (int row : order) {
+                long sHigh = v6[row * 4];
+                long sLow = v6[row * 4 + 1];
+                long eHigh = v6[row * 4 + 2];
+                long eLow = v6[row * 4 + 3];
+                if (merged6 > 0 && compare(sHigh, sLow, endHigh[merged6 - 1], endLow[merged6 - 1]) <= 0) {
+                    if (compare(eHigh, eLow, endHigh[merged6 - 1], endLow[merged6 - 1]) > 0) {
+                        endHigh[merged6 - 1] = eHigh;
+                        endLow[merged6 - 1] = eLow;
+                    }
+                } else {
+                    startHigh[merged6] = sHigh;
+                    startLow[merged6] = sLow;
+                    endHigh[merged6] = eHigh;
+                    endLow[merged6] = eLow;
+                    merged6++;
+                }
+            }
+            return new IpIntervalSet(eytzingerStart, eytzingerEnd,
+                    Arrays.copyOf(startHigh, merged6), Arrays.copyOf(startLow, merged6),
+                    Arrays.copyOf(endHigh, merged6), Arrays.copyOf(endLow, merged6), entries, skipped);
+        }
+
+        /**
+         * Lay out sorted intervals in Eytzinger order by an in-order walk of the implicit tree
+         * @return the next sorted index to place
+         */
+        private static int fill(long[] starts, long[] ends, int[] outStart, int[] outEnd, int next, int k) {
+            if (k < outStart.length) {
+                next = fill(starts, ends, outStart, outEnd, next, 2 * k);
+                outStart[k] = (int) starts[next] ^ Integer.MIN_VALUE;
+                outEnd[k] = (int) ends[next] ^ Integer.MIN_VALUE;
+                next = fill(starts, ends, outStart, outEnd, next + 1, 2 * k + 1);
+            }
+            return next;
+        }
+    }
+}
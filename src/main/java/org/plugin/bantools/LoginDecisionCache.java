@@ -0,0 +1,140 @@
+package org.plugin.bantools;
+
+import net.kyori.adventure.text.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived cache of login decisions keyed by (UUID, IP, name), for clients that reconnect in a loop
+ * Each decision is tagged with the state epoch read before it was taken and is only reused while
+ * the epoch is unchanged, so a ban, unban or setting change is honoured by the very next login.
+ * Like the GeoLookup cache it is direct-mapped: a slot holds the last key that hashed to it, and
+ * a slot overwritten while still live counts as an eviction.
+ */
+public class LoginDecisionCache {
+    private static final int MIN_SIZE = 256;
+
+    private volatile Slot[] slots;
+    private volatile long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Slot {
+        final String uuid;
+        final String ip;
+        final String username;
+        final long epoch;
+        final long expiresAt;
+        final Decision decision;
+
+        Slot(String uuid, String ip, String username, long epoch, long expiresAt, Decision decision) {
+            this.uuid = uuid;
+            this.ip = ip;
+            this.username = username;
+            this.epoch = epoch;
+            this.expiresAt = expiresAt;
+            this.decision = decision;
+        }
+
+        boolean matches(String uuid, String ip, String username) {
+            return this.uuid.equals(uuid) && this.ip.equals(ip) && this.username.equals(username);
+        }
+    }
+
+    /**
+     * A cached verdict; a null message means the login was allowed
+     */
+    public static final class Decision {
+        static final Decision ALLOW = new Decision(null);
+
+        private final Component message;
+
+        Decision(Component message) {
+            this.message = message;
+        }
+
+        public Component getMessage() { return message; }
+    }
+
+    public LoginDecisionCache(int size, long ttlMillis) {
+        configure(size, ttlMillis);
+    }
+
+    /**
+     * Apply new settings; a size change starts from an empty cache
+     * @param size number of slots, rounded up to a power of two; 0 disables the cache
+     */
+    public synchronized void configure(int size, long ttlMillis) {
+        int slotCount = 0;
+        if (size > 0 && ttlMillis > 0) {
+            slotCount = Math.max(MIN_SIZE, Integer.highestOneBit(Math.min(size, 1 << 20) - 1) << 1);
+        }
+        Slot[] current = slots;
+        if (current == null || current.length != slotCount) {
+            slots = new Slot[slotCount];
+        }
+        ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /**
+     * Find a decision taken under the given epoch that has not expired
+     * @return the decision, or null if it has to be taken again
+     */
+    public Decision get(String uuid, String ip, String username, long epoch) {
+        Slot[] table = slots;
+        if (table.length == 0) {
+            return null;
+        }
+        Slot slot = table[index(table, uuid, ip, username)];
+        if (slot != null && slot.epoch == epoch && slot.matches(uuid, ip, username)
+                && System.nanoTime() - slot.expiresAt < 0) {
+            hits.increment();
+            return slot.decision;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Remember a decision taken under an epoch read before the decision was made
+     */
+    public void put(String uuid, String ip, String username, long epoch, Component message) {
+        Slot[] table = slots;
+        if (table.length == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        int index = index(table, uuid, ip, username);
+        Slot previous = table[index];
+        if (previous != null && previous.epoch == epoch && now - previous.expiresAt < 0
+                && !previous.matches(uuid, ip, username)) {
+            evictions.increment();
+        }
+        // Racing writers may replace each other's slot; every slot is correct for its own key and epoch
+        table[index] = new Slot(uuid, ip, username, epoch, now + ttlNanos,
+                message == null ? Decision.ALLOW : new Decision(message));
+    }
+
+    private static int index(Slot[] table, String uuid, String ip, String username) {
+        int hash = (uuid.hashCode() * 31 + ip.hashCode()) * 31 + username.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        hash ^= hash >>> 16;
+        return hash & (table.length - 1);
+    }
+
+    /**
+     * Hit ratio and counters, for /bt status
+     */
+    public String getStatus() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        if (slots.length == 0) {
+            return "disabled";
+        }
+        return String.format("%d slots, %d hits / %d misses (%.1f%% hit ratio), %d evictions",
+                slots.length, hitCount, missCount, total == 0 ? 0.0 : hitCount * 100.0 / total, evictions.sum());
+    }
+}
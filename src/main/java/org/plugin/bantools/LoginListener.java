@@ -8,27 +8,79 @@ import com.velocitypowered.api.proxy.Player;
 import net.kyori.adventure.text.Component;
 
 public class LoginListener {
-    private final BanManager banManager;
+    // Null until the full ban store has loaded; the startup image answers logins until then
+    private volatile BanManager banManager;
+    private volatile BanIndexImage startupImage;
 
     public LoginListener(BanManager banManager) {
         this.banManager = banManager;
     }
 
+    /**
+     * Create a listener that enforces bans from a prebuilt index image while the full store loads
+     */
+    public LoginListener(BanIndexImage startupImage) {
+        this.startupImage = startupImage;
+    }
+
+    /**
+     * Switch over from the startup image to the fully loaded ban manager
+     */
+    public void setBanManager(BanManager banManager) {
+        this.banManager = banManager;
+        this.startupImage = null;
+    }
+
     @Subscribe(order = PostOrder.FIRST)
     public void onPlayerLogin(LoginEvent event) {
+        FlightEvents.LoginDecision flight = new FlightEvents.LoginDecision();
+        flight.begin();
         Player player = event.getPlayer();
-        if (banManager.isBanned(
+        BanManager manager = banManager;
+        if (manager == null) {
+            flight.path = FlightEvents.PATH_STARTUP_IMAGE;
+            flight.finish(player.getUsername(), checkStartupImage(event, player));
+            return;
+        }
+
+        String uuid = player.getUniqueId().toString();
+        String ip = player.getRemoteAddress().getAddress().getHostAddress();
+        String username = player.getUsername();
+        // Record every attempt, banned ones included: a banned player's new address is what links alts
+        manager.recordLogin(uuid, ip, username);
+
+        // Bans, temporary bans, range bans and blocklists; reconnect loops are answered from a short-lived cache
+        Component denial = manager.checkLogin(uuid, ip, username, player.getRemoteAddress().getAddress(), flight);
+        if (denial != null) {
+            event.setResult(ResultedEvent.ComponentResult.denied(denial));
+            flight.finish(username, true);
+            return;
+        }
+
+        String altMessage = manager.checkLinkedBan(uuid, ip, username);
+        if (altMessage != null) {
+            event.setResult(ResultedEvent.ComponentResult.denied(Component.text(altMessage)));
+            flight.path = FlightEvents.PATH_LINKED_ACCOUNT;
+        }
+        flight.finish(username, altMessage != null);
+    }
+
+    /**
+     * @return whether the login was denied
+     */
+    private boolean checkStartupImage(LoginEvent event, Player player) {
+        BanIndexImage image = startupImage;
+        if (image == null) {
+            return false;
+        }
+        String message = image.findBanMessage(
                 player.getUniqueId().toString(),
                 player.getRemoteAddress().getAddress().getHostAddress(),
                 player.getUsername()
-        )) {
-            event.setResult(ResultedEvent.ComponentResult.denied(
-                    Component.text(banManager.getBanMessage(
-                            player.getUniqueId().toString(),
-                            player.getRemoteAddress().getAddress().getHostAddress(),
-                            player.getUsername()
-                    ))
-            ));
+        );
+        if (message != null) {
+            event.setResult(ResultedEvent.ComponentResult.denied(Component.text(message)));
         }
+        return message != null;
     }
 }
\ No newline at end of file
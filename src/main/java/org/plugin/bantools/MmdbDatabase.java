@@ -0,0 +1,347 @@
+package org.plugin.bantools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MaxMind DB (MMDB) reader over a memory-mapped file
+ * A lookup walks the binary search tree bit by bit with absolute reads on the mapped buffer and
+ * then decodes only the one field it needs from the data section (the ASN, or the country ISO
+ * code), comparing map keys in place. Nothing is allocated per lookup.
+ */
+final class MmdbDatabase implements GeoDatabase {
+    private static final byte[] METADATA_MARKER = {
+            (byte) 0xAB, (byte) 0xCD, (byte) 0xEF, 'M', 'a', 'x', 'M', 'i', 'n', 'd', '.', 'c', 'o', 'm'};
+    private static final int METADATA_MAX_SIZE = 128 * 1024;
+    private static final int DATA_SECTION_SEPARATOR = 16;
+
+    private static final int TYPE_POINTER = 1;
+    private static final int TYPE_STRING = 2;
+    private static final int TYPE_DOUBLE = 3;
+    private static final int TYPE_UINT16 = 5;
+    private static final int TYPE_UINT32 = 6;
+    private static final int TYPE_MAP = 7;
+    private static final int TYPE_INT32 = 8;
+    private static final int TYPE_UINT64 = 9;
+    private static final int TYPE_UINT128 = 10;
+    private static final int TYPE_ARRAY = 11;
+    private static final int TYPE_BOOLEAN = 14;
+    private static final int TYPE_FLOAT = 15;
+
+    private static final byte[] KEY_ASN = ascii("autonomous_system_number");
+    private static final byte[] KEY_COUNTRY = ascii("country");
+    private static final byte[] KEY_REGISTERED_COUNTRY = ascii("registered_country");
+    private static final byte[] KEY_ISO_CODE = ascii("iso_code");
+
+    private final ByteBuffer buffer;
+    private final Kind kind;
+    private final int nodeCount;
+    private final int recordSize;
+    private final int dataStart;
+    private final int ipv4Start;
+    private final int ipVersion;
+
+    // Scratch for decoding a control byte: [type, size, offset of payload]
+    private static final ThreadLocal<int[]> CONTROL = ThreadLocal.withInitial(() -> new int[3]);
+
+    private MmdbDatabase(ByteBuffer buffer, Kind kind) throws IOException {
+        this.buffer = buffer;
+        this.kind = kind;
+
+        int metadata = findMetadata(buffer);
+        if (metadata < 0) {
+            throw new IOException("MaxMind metadata marker not found");
+        }
+        long nodes = metadataUnsigned(metadata, "node_count");
+        long record = metadataUnsigned(metadata, "record_size");
+        long version = metadataUnsigned(metadata, "ip_version");
+        if (nodes <= 0 || nodes > Integer.MAX_VALUE || (record != 24 && record != 28 && record != 32)) {
+            throw new IOException("Unsupported MaxMind metadata: node_count=" + nodes + ", record_size=" + record);
+        }
+        this.nodeCount = (int) nodes;
+        this.recordSize = (int) record;
+        this.ipVersion = (int) version;
+        long treeSize = (long) recordSize * 2 / 8 * nodeCount;
+        if (treeSize + DATA_SECTION_SEPARATOR > metadata) {
+            throw new IOException("Truncated MaxMind search tree");
+        }
+        this.dataStart = (int) treeSize + DATA_SECTION_SEPARATOR;
+
+        // IPv4 addresses live under ::/96 in an IPv6 tree
+        int node = 0;
+        if (ipVersion == 6) {
+            for (int i = 0; i < 96 && node < nodeCount; i++) {
+                node = readRecord(node, 0);
+            }
+        }
+        this.ipv4Start = node;
+    }
+
+    static MmdbDatabase open(Path file, Kind kind) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("MaxMind database larger than 2 GB: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new MmdbDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), kind);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed MaxMind database " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int lookup(byte[] address) {
+        int node;
+        int bits = address.length * 8;
+        if (address.length == 4) {
+            node = ipv4Start;
+        } else if (ipVersion == 6) {
+            node = 0;
+        } else {
+            return NOT_FOUND;
+        }
+
+        for (int i = 0; i < bits && node < nodeCount; i++) {
+            int bit = (address[i >> 3] >>> (7 - (i & 7))) & 1;
+            node = readRecord(node, bit);
+        }
+        if (node <= nodeCount) {
+            // Equal to the node count means "no data"; below it the address ran out of bits
+            return NOT_FOUND;
+        }
+        int offset = dataStart + (node - nodeCount - DATA_SECTION_SEPARATOR);
+        try {
+            return kind == Kind.ASN ? readAsn(offset) : readCountry(offset);
+        } catch (RuntimeException e) {
+            // A corrupt record answers "unknown" instead of failing the login
+            return NOT_FOUND;
+        }
+    }
+
+    @Override
+    public int size() {
+        return nodeCount;
+    }
+
+    private int readRecord(int node, int bit) {
+        switch (recordSize) {
+            case 24: {
+                int base = node * 6 + bit * 3;
+                return (buffer.get(base) & 0xFF) << 16 | (buffer.get(base + 1) & 0xFF) << 8 | buffer.get(base + 2) & 0xFF;
+            }
+            case 28: {
+                int base = node * 7;
+                int middle = buffer.get(base + 3) & 0xFF;
+                if (bit == 0) {
+                    return (middle & 0xF0) << 20 | (buffer.get(base) & 0xFF) << 16
+                            | (buffer.get(base + 1) & 0xFF) << 8 | buffer.get(base + 2) & 0xFF;
+                }
+                return (middle & 0x0F) << 24 | (buffer.get(base + 4) & 0xFF) << 16
+                        | (buffer.get(base + 5) & 0xFF) << 8 | buffer.get(base + 6) & 0xFF;
+            }
+            default:
+                return buffer.getInt(node * 8 + bit * 4);
+        }
+    }
+
+    private int readAsn(int record) {
+        int value = findKey(record, KEY_ASN);
+        if (value < 0) {
+            return NOT_FOUND;
+        }
+        long asn = readUnsigned(value);
+        return asn < 0 || asn > Integer.MAX_VALUE ? NOT_FOUND : (int) asn;
+    }
+
+    private int readCountry(int record) {
+        int country = findKey(record, KEY_COUNTRY);
+        if (country < 0) {
+            country = findKey(record, KEY_REGISTERED_COUNTRY);
+        }
+        int code = country < 0 ? -1 : findKey(country, KEY_ISO_CODE);
+        if (code < 0) {
+            return NOT_FOUND;
+        }
+        int[] control = decode(code);
+        if (control[0] != TYPE_STRING || control[1] != 2) {
+            return NOT_FOUND;
+        }
+        return GeoDatabase.packCountry((char) (buffer.get(control[2]) & 0xFF), (char) (buffer.get(control[2] + 1) & 0xFF));
+    }
+
+    /**
+     * Find a key in the map at an offset
+     * @return the offset of the value, or -1 if the value is not a map or has no such key
+     */
+    private int findKey(int offset, byte[] key) {
+        int[] control = decode(offset);
+        if (control[0] != TYPE_MAP) {
+            return -1;
+        }
+        int entries = control[1];
+        int position = control[2];
+        for (int i = 0; i < entries; i++) {
+            boolean match = keyEquals(position, key);
+            position = skip(position);
+            if (match) {
+                return position;
+            }
+            position = skip(position);
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        int[] control = decode(offset);
+        if (control[0] != TYPE_STRING || control[1] != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(control[2] + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Offset just past the value at an offset; a pointer counts as its own encoded bytes
+     */
+    private int skip(int offset) {
+        int ctrl = buffer.get(offset) & 0xFF;
+        if (ctrl >>> 5 == TYPE_POINTER) {
+            return offset + 2 + ((ctrl >>> 3) & 0x3);
+        }
+        int[] control = decodeHeader(offset);
+        int type = control[0];
+        int size = control[1];
+        int position = control[2];
+        switch (type) {
+            case TYPE_MAP:
+                for (int i = 0; i < size * 2; i++) {
+                    position = skip(position);
+                }
+                return position;
+            case TYPE_ARRAY:
+                for (int i = 0; i < size; i++) {
+                    position = skip(position);
+                }
+                return position;
+            case TYPE_DOUBLE:
+                return position + 8;
+            case TYPE_FLOAT:
+                return position + 4;
+            case TYPE_BOOLEAN:
+                return position;
+            default:
+                return position + size;
+        }
+    }
+
+    /**
+     * Decode the control bytes at an offset, following pointers to the value they reference
+     */
+    private int[] decode(int offset) {
+        int ctrl = buffer.get(offset) & 0xFF;
+        if (ctrl >>> 5 == TYPE_POINTER) {
+            int pointerSize = (ctrl >>> 3) & 0x3;
+            int high = ctrl & 0x7;
+            int target;
+            switch (pointerSize) {
+                case 0:
+                    target = high << 8 | buffer.get(offset + 1) & 0xFF;
+                    break;
+                case 1:
+                    target = (high << 16 | (buffer.get(offset + 1) & 0xFF) << 8 | buffer.get(offset + 2) & 0xFF) + 2048;
+                    break;
+                case 2:
+                    target = (high << 24 | (buffer.get(offset + 1) & 0xFF) << 16 | (buffer.get(offset + 2) & 0xFF) << 8
+                            | buffer.get(offset + 3) & 0xFF) + 526336;
+                    break;
+                default:
+                    target = buffer.getInt(offset + 1);
+                    break;
+            }
+            // Pointers never point at pointers
+            return decodeHeader(dataStart + target);
+        }
+        return decodeHeader(offset);
+    }
+
+    private int[] decodeHeader(int offset) {
+        int[] control = CONTROL.get();
+        int ctrl = buffer.get(offset) & 0xFF;
+        int position = offset + 1;
+        int type = ctrl >>> 5;
+        if (type == 0) {
+            type = 7 + (buffer.get(position++) & 0xFF);
+        }
+        int size = ctrl & 0x1F;
+        if (size == 29) {
+            size = 29 + (buffer.get(position++) & 0xFF);
+        } else if (size == 30) {
+            size = 285 + ((buffer.get(position) & 0xFF) << 8 | buffer.get(position + 1) & 0xFF);
+            position += 2;
+        } else if (size == 31) {
+            size = 65821 + ((buffer.get(position) & 0xFF) << 16 | (buffer.get(position + 1) & 0xFF) << 8
+                    | buffer.get(position + 2) & 0xFF);
+            position += 3;
+        }
+        control[0] = type;
+        control[1] = size;
+        control[2] = position;
+        return control;
+    }
+
+    /**
+     * Read an unsigned integer value (uint16/32/64, or a non-negative int32)
+     * @return the value, or -1 for other types or values that do not fit in a long
+     */
+    private long readUnsigned(int offset) {
+        int[] control = decode(offset);
+        int type = control[0];
+        if (type != TYPE_UINT16 && type != TYPE_UINT32 && type != TYPE_UINT64 && type != TYPE_UINT128 && type != TYPE_INT32) {
+            return -1;
+        }
+        if (control[1] > 8 || (control[1] == 8 && (buffer.get(control[2]) & 0x80) != 0)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < control[1]; i++) {
+            value = value << 8 | buffer.get(control[2] + i) & 0xFF;
+        }
+        return value;
+    }
+
+    private long metadataUnsigned(int metadata, String key) throws IOException {
+        int value = findKey(metadata, ascii(key));
+        long result = value < 0 ? -1 : readUnsigned(value);
+        if (result < 0) {
+            throw new IOException("MaxMind metadata has no " + key);
+        }
+        return result;
+    }
+
+    private static int findMetadata(ByteBuffer buffer) {
+        int limit = buffer.capacity();
+        int stop = Math.max(0, limit - METADATA_MAX_SIZE);
+        for (int start = limit - METADATA_MARKER.length; start >= stop; start--) {
+            boolean match = true;
+            for (int i = 0; i < METADATA_MARKER.length && match; i++) {
+                match = buffer.get(start + i) == METADATA_MARKER[i];
+            }
+            if (match) {
+                return start + METADATA_MARKER.length;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
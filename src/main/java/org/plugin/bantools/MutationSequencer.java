@@ -0,0 +1,129 @@
+package org.plugin.bantools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * Single writer for a persisted state
+ * Mutations submitted concurrently are queued and applied in submission order by one drain task.
+ * Each drain applies everything queued to one working copy, persists it with a single commit and
+ * then completes the batch, so callers learn about success only once their change is durable and
+ * no change can overwrite another.
+ */
+class MutationSequencer<T> {
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * Source of the current state and sink for the updated one
+     */
+    interface Store<T> {
+        T current();
+
+        /**
+         * Persist and publish the updated state
+         */
+        void commit(T updated) throws Exception;
+    }
+
+    private static final class Pending<T> {
+        final UnaryOperator<T> mutation;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(UnaryOperator<T> mutation) {
+            this.mutation = mutation;
+        }
+    }
+
+    private final Store<T> store;
+    private final Object lock;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Pending<T>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * @param lock held while a batch is applied, so writers outside the sequencer serialize with it
+     */
+    MutationSequencer(Store<T> store, Object lock, Executor executor) {
+        this.store = store;
+        this.lock = lock;
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a mutation
+     * @return completes once the batch containing the mutation has been committed
+     */
+    CompletableFuture<Void> submit(UnaryOperator<T> mutation) {
+        Pending<T> pending = new Pending<>(mutation);
+        queue.add(pending);
+        scheduleDrain();
+        return pending.future;
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            Pending<T> pending;
+            while ((pending = queue.poll()) != null) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            List<Pending<T>> batch = new ArrayList<>();
+            Pending<T> next;
+            while (batch.size() < MAX_BATCH && (next = queue.poll()) != null) {
+                batch.add(next);
+            }
+            if (!batch.isEmpty()) {
+                apply(batch);
+            }
+        } finally {
+            draining.set(false);
+            // Pick up whatever arrived while this batch was being written
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void apply(List<Pending<T>> batch) {
+        List<Pending<T>> applied = new ArrayList<>(batch.size());
+        synchronized (lock) {
+            T state = store.current();
+            for (Pending<T> pending : batch) {
+                try {
+                    state = pending.mutation.apply(state);
+                    applied.add(pending);
+                } catch (RuntimeException e) {
+                    // A failing mutation is dropped on its own; the rest of the batch still commits
+                    pending.future.completeExceptionally(e);
+                }
+            }
+            if (applied.isEmpty()) {
+                return;
+            }
+            try {
+                store.commit(state);
+            } catch (Exception e) {
+                applied.forEach(pending -> pending.future.completeExceptionally(e));
+                return;
+            }
+        }
+        // Complete outside the lock so follow-up work never runs while holding it
+        applied.forEach(pending -> pending.future.complete(null));
+    }
+}
@@ -0,0 +1,25 @@
+package org.plugin.bantools;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Chat mute record
+ * A mute without an end time is permanent; see {@link Punishment} for the stored fields.
+ */
+public class MuteEntry extends Punishment {
+    @Override
+    public Type getType() {
+        return Type.MUTE;
+    }
+
+    public Long getEndTime() { return getExpiresAt(); }
+    public void setEndTime(Long endTime) { setEndTimeMillis(endTime == null ? PERMANENT : endTime); }
+
+    public String getEndTimeFormatted() {
+        if (isPermanent()) return "Permanently muted";
+        return DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm").withZone(ZoneId.systemDefault())
+                .format(Instant.ofEpochMilli(endTimeMillis()));
+    }
+}
@@ -0,0 +1,54 @@
+package org.plugin.bantools;
+
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.command.CommandExecuteEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.player.PlayerChatEvent;
+import com.velocitypowered.api.proxy.Player;
+import net.kyori.adventure.text.Component;
+
+/**
+ * Enforces mutes on chat and on the configured commands
+ * Both checks look the player up by UUID first; the message is only built for muted players.
+ */
+public class MuteListener {
+    private final MuteManager muteManager;
+
+    public MuteListener(MuteManager muteManager) {
+        this.muteManager = muteManager;
+    }
+
+    @Subscribe(order = PostOrder.FIRST)
+    public void onPlayerChat(PlayerChatEvent event) {
+        MuteEntry mute = muteManager.getMute(event.getPlayer().getUniqueId());
+        if (mute != null) {
+            event.setResult(PlayerChatEvent.ChatResult.denied());
+            event.getPlayer().sendMessage(Component.text(muteManager.getMuteMessage(mute)));
+        }
+    }
+
+    @Subscribe(order = PostOrder.FIRST)
+    public void onCommandExecute(CommandExecuteEvent event) {
+        if (!(event.getCommandSource() instanceof Player)) {
+            return;
+        }
+        Player player = (Player) event.getCommandSource();
+        MuteEntry mute = muteManager.getMute(player.getUniqueId());
+        if (mute != null && muteManager.isBlockedCommand(event.getCommand())) {
+            event.setResult(CommandExecuteEvent.CommandResult.denied());
+            player.sendMessage(Component.text(muteManager.getMuteMessage(mute)));
+        }
+    }
+
+    /**
+     * Runs after the ban checks, so only players who actually join bind a name-only mute to their UUID
+     */
+    @Subscribe(order = PostOrder.LAST)
+    public void onPlayerLogin(LoginEvent event) {
+        if (event.getResult().isAllowed()) {
+            Player player = event.getPlayer();
+            muteManager.recordLogin(player.getUniqueId().toString(), player.getUsername());
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.plugin.bantools;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import net.kyori.adventure.text.Component;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Chat mute manager
+ * Mutes are stored, replicated and audited like bans. Chat and command checks read an immutable
+ * {@link MuteTable} keyed by the player's UUID bits and never look at the clock; a once-a-second
+ * sweep drops expired mutes and republishes the table when the earliest end time has passed.
+ */
+public class MuteManager {
+    private final ConfigManager configManager;
+    private final WhitelistManager whitelistManager;
+    private final ProxyServer server;
+    private final Logger logger;
+    private final TaskExecutor tasks;
+    private final AuditLog auditLog;
+    private ScheduledFuture<?> expiryTask;
+
+    // Active mutes by name, including those whose UUID is not known yet
+    private final Map<PlayerName, MuteEntry> activeMutes = new ConcurrentHashMap<>();
+    private volatile MuteTable table = MuteTable.EMPTY;
+    // Earliest end time among active mutes; the sweep does nothing before it
+    private volatile long nextExpiry = Long.MAX_VALUE;
+    private volatile Set<String> blockedCommands = Collections.emptySet();
+
+    public MuteManager(ConfigManager configManager, WhitelistManager whitelistManager,
+                       ProxyServer server, Logger logger, TaskExecutor tasks, AuditLog auditLog) {
+        this.configManager = configManager;
+        this.whitelistManager = whitelistManager;
+        this.server = server;
+        this.logger = logger;
+        this.tasks = tasks;
+        this.auditLog = auditLog;
+
+        refreshSettings();
+        loadMutes();
+        startExpiryTask();
+    }
+
+    /**
+     * Find the active mute of an online player
+     * Called for every chat message: one probe of the UUID table, without allocating.
+     */
+    public MuteEntry getMute(UUID uuid) {
+        return table.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Check whether a command, as typed without the leading slash, is one a muted player may not run
+     */
+    public boolean isBlockedCommand(String command) {
+        int end = command.indexOf(' ');
+        String label = (end < 0 ? command : command.substring(0, end)).toLowerCase(Locale.ROOT);
+        // "minecraft:msg" is the same command as "msg"
+        int namespace = label.indexOf(':');
+        return blockedCommands.contains(namespace < 0 ? label : label.substring(namespace + 1));
+    }
+
+    /**
+     * Message shown to a muted player who tries to chat
+     */
+    public String getMuteMessage(MuteEntry entry) {
+        return configManager.getMuteMessage()
+                .replace("{reason}", entry.getReason() == null ? "" : entry.getReason())
+                .replace("{end_time}", entry.getEndTimeFormatted());
+    }
+
+    /**
+     * Mute a player
+     * @param endTime epoch milliseconds, or null for a permanent mute
+     * @return completes once the mute is saved, with null on success or an error message
+     */
+    public CompletableFuture<String> mute(String actor, String target, Long endTime, String reason) {
+        if (target == null || target.trim().isEmpty()) {
+            return CompletableFuture.completedFuture("Player name cannot be empty");
+        }
+        if (!PlayerName.isValid(target)) {
+            return CompletableFuture.completedFuture("Invalid player name format");
+        }
+
+        Player player = server.getPlayer(target).orElse(null);
+        String protectionCheck = whitelistManager.checkProtection(
+                player == null ? null : player.getUniqueId().toString(), target);
+        if (protectionCheck != null) {
+            return CompletableFuture.completedFuture(protectionCheck);
+        }
+
+        MuteEntry existing = findActiveMute(target);
+        if (existing != null) {
+            return CompletableFuture.completedFuture("Player is already muted! Until: " + existing.getEndTimeFormatted());
+        }
+
+        MuteEntry entry = new MuteEntry();
+        entry.setName(target);
+        // Offline players are muted by name; the UUID is filled in on their next login
+        if (player != null) {
+            entry.setUuid(player.getUniqueId().toString());
+            entry.setIp(player.getRemoteAddress().getAddress().getHostAddress());
+        }
+        entry.setReason(reason == null || reason.trim().isEmpty() ? configManager.getDefaultMuteReason() : reason.trim());
+        entry.setStartTime(System.currentTimeMillis());
+        entry.setEndTime(endTime);
+        entry.setOperator(actor);
+
+        return configManager.addMute(entry).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save mute for " + target, error);
+                return "Failed to save the mute, check logs";
+            }
+            activeMutes.put(PlayerName.of(entry.getName()), entry);
+            rebuild();
+            auditLog.record(AuditRecord.now(AuditRecord.Action.MUTE, actor, entry.getName(),
+                    entry.getUuid(), entry.getIp(), entry.getReason(), entry.getEndTime()));
+            if (player != null) {
+                player.sendMessage(Component.text(getMuteMessage(entry)));
+            }
+            logger.info("Muted player: " + target + " until " + entry.getEndTimeFormatted());
+            return null;
+        });
+    }
+
+    /**
+     * Lift a player's mute
+     * @return completes once the change is saved, with null on success or an error message
+     */
+    public CompletableFuture<String> unmute(String actor, String target) {
+        if (target == null || target.trim().isEmpty()) {
+            return CompletableFuture.completedFuture("Player name cannot be empty");
+        }
+        if (!PlayerName.isValid(target)) {
+            return CompletableFuture.completedFuture("Invalid player name format");
+        }
+
+        MuteEntry mute = findActiveMute(target);
+        if (mute == null) {
+            return CompletableFuture.completedFuture("This player is not muted!");
+        }
+
+        // Use the stored key so the state change lands on the existing record whatever case was typed
+        return configManager.setMuteState(mute.getName(), false).handle((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save unmute for " + target, error);
+                return "Failed to save the unmute, check logs";
+            }
+            removeMuteEntry(mute.getName());
+            rebuild();
+            auditLog.record(AuditRecord.now(AuditRecord.Action.UNMUTE, actor, mute.getName(),
+                    mute.getUuid(), mute.getIp(), null, null));
+            server.getPlayer(mute.getName()).ifPresent(player -> player.sendMessage(Component.text("You are no longer muted.")));
+            logger.info("Unmuted player: " + target);
+            return null;
+        });
+    }
+
+    /**
+     * Bind the UUID of a player muted by name only, so the chat check can find them
+     * Called for allowed logins; does nothing unless such a mute exists.
+     */
+    public void recordLogin(String uuid, String username) {
+        PlayerName name = PlayerName.lookup(username);
+        MuteEntry stored = name == null ? null : activeMutes.get(name);
+        if (stored == null || (stored.getUuid() != null && !stored.getUuid().isEmpty())) {
+            return;
+        }
+        MuteEntry entry = (MuteEntry) stored.copy();
+        entry.setUuid(uuid);
+        activeMutes.replace(name, stored, entry);
+        rebuild();
+        configManager.updateMute(entry).whenComplete((saved, error) -> {
+            if (error != null) {
+                logger.error("Failed to save the UUID of muted player " + username, error);
+            }
+        });
+        logger.info("Updated UUID of muted player " + username);
+    }
+
+    /**
+     * Load active mutes from the configuration
+     */
+    public void loadMutes() {
+        long now = System.currentTimeMillis();
+        Set<PlayerName> active = new HashSet<>();
+        for (MuteEntry entry : configManager.getMutes().values()) {
+            if (entry.isActiveAt(now)) {
+                PlayerName name = PlayerName.of(entry.getName());
+                activeMutes.put(name, entry);
+                active.add(name);
+            }
+        }
+        activeMutes.keySet().retainAll(active);
+        rebuild();
+        logger.info("Loaded " + activeMutes.size() + " active mutes");
+    }
+
+    /**
+     * Apply the mute changes found by a configuration reload or received through replication
+     */
+    public void applyMuteDiff(ConfigDiff.MapDiff<MuteEntry> diff) {
+        if (diff.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (MuteEntry entry : diff.getAdded().values()) {
+            applyMuteEntry(entry, now);
+        }
+        for (MuteEntry entry : diff.getChanged().values()) {
+            applyMuteEntry(entry, now);
+        }
+        for (String key : diff.getRemoved()) {
+            removeMuteEntry(key);
+        }
+        rebuild();
+    }
+
+    /**
+     * Re-read the command list after a settings change
+     */
+    public void refreshSettings() {
+        Set<String> commands = new HashSet<>();
+        for (String command : configManager.getMuteBlockedCommands()) {
+            String label = command.trim().toLowerCase(Locale.ROOT);
+            commands.add(label.startsWith("/") ? label.substring(1) : label);
+        }
+        blockedCommands = commands;
+    }
+
+    /**
+     * Get the names of all muted players
+     */
+    public List<String> getMutedPlayers() {
+        long now = System.currentTimeMillis();
+        return activeMutes.values().stream()
+                .filter(entry -> entry.isActiveAt(now))
+                .map(MuteEntry::getName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Stop the expiry sweep; the shared executor is drained by the plugin
+     */
+    public void shutdown() {
+        if (expiryTask != null) {
+            expiryTask.cancel(false);
+        }
+    }
+
+    private MuteEntry findActiveMute(String target) {
+        PlayerName name = PlayerName.lookup(target);
+        MuteEntry entry = name == null ? null : activeMutes.get(name);
+        return entry != null && entry.isActiveAt(System.currentTimeMillis()) ? entry : null;
+    }
+
+    private void applyMuteEntry(MuteEntry entry, long now) {
+        if (entry.isActiveAt(now)) {
+            activeMutes.put(PlayerName.of(entry.getName()), entry);
+        } else {
+            removeMuteEntry(entry.getName());
+        }
+    }
+
+    private void removeMuteEntry(String key) {
+        // Config keys are case-sensitive; only drop the active entry if it came from this key
+        PlayerName name = PlayerName.lookup(key);
+        MuteEntry active = name == null ? null : activeMutes.get(name);
+        if (active != null && key.equals(active.getName())) {
+            activeMutes.remove(name);
+        }
+    }
+
+    /**
+     * Drop expired mutes and publish a new table of the rest
+     */
+    private synchronized void rebuild() {
+        long now = System.currentTimeMillis();
+        long earliest = Long.MAX_VALUE;
+        List<MuteEntry> active = new ArrayList<>(activeMutes.size());
+        for (Iterator<MuteEntry> it = activeMutes.values().iterator(); it.hasNext(); ) {
+            MuteEntry entry = it.next();
+            if (!entry.isActiveAt(now)) {
+                it.remove();
+                continue;
+            }
+            active.add(entry);
+            if (!entry.isPermanent()) {
+                earliest = Math.min(earliest, entry.endTimeMillis());
+            }
+        }
+        table = MuteTable.of(active);
+        nextExpiry = earliest;
+    }
+
+    private void startExpiryTask() {
+        expiryTask = tasks.scheduleAtFixedRate(() -> {
+            if (System.currentTimeMillis() > nextExpiry) {
+                rebuild();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+}
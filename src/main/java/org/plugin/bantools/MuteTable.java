@@ -0,0 +1,72 @@
+package org.plugin.bantools;
+
+import java.util.Collection;
+
+/**
+ * Immutable open-addressing table of active mutes keyed by the two halves of a player UUID
+ * Built once per mute change and published by replacing the whole table, so the per-message
+ * {@link #get} needs no lock, boxes nothing and allocates nothing.
+ */
+final class MuteTable {
+    static final MuteTable EMPTY = new MuteTable(new long[2], new MuteEntry[1]);
+
+    // Interleaved most and least significant bits; a null value marks an empty slot
+    private final long[] keys;
+    private final MuteEntry[] values;
+    private final int mask;
+
+    private MuteTable(long[] keys, MuteEntry[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = values.length - 1;
+    }
+
+    /**
+     * Build a table of the entries with a canonical UUID; entries without one are skipped
+     */
+    static MuteTable of(Collection<MuteEntry> entries) {
+        int capacity = 2;
+        while (capacity < entries.size() * 2) {
+            capacity <<= 1;
+        }
+        long[] keys = new long[capacity * 2];
+        MuteEntry[] values = new MuteEntry[capacity];
+        int mask = capacity - 1;
+        int size = 0;
+        for (MuteEntry entry : entries) {
+            if (!entry.hasPackedUuid()) {
+                continue;
+            }
+            long most = entry.uuidMost();
+            long least = entry.uuidLeast();
+            int slot = mix(most, least) & mask;
+            while (values[slot] != null && (keys[slot * 2] != most || keys[slot * 2 + 1] != least)) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == null) {
+                size++;
+            }
+            keys[slot * 2] = most;
+            keys[slot * 2 + 1] = least;
+            values[slot] = entry;
+        }
+        return size == 0 ? EMPTY : new MuteTable(keys, values);
+    }
+
+    MuteEntry get(long most, long least) {
+        for (int slot = mix(most, least) & mask; ; slot = (slot + 1) & mask) {
+            MuteEntry entry = values[slot];
+            if (entry == null) {
+                return null;
+            }
+            if (keys[slot * 2] == most && keys[slot * 2 + 1] == least) {
+                return entry;
+            }
+        }
+    }
+
+    private static int mix(long most, long least) {
+        long key = most ^ least;
+        return (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    }
+}
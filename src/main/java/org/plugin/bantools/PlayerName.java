@@ -0,0 +1,232 @@
+package org.plugin.bantools;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonical, case-insensitive player name key
+ * Instances are interned in a weak canonical table, so two names that differ only in case
+ * share one instance with a precomputed hash. {@link #lookup} finds the canonical instance
+ * for a raw string without allocating, which keeps name lookups on the login path to a
+ * single hash probe.
+ */
+public final class PlayerName {
+    public static final int MAX_LENGTH = 16;
+
+    private static final Interner INTERNER = new Interner();
+
+    private final String name;
+    private final String folded;
+    private final int hash;
+
+    private PlayerName(String name, int hash) {
+        this.name = name;
+        this.folded = fold(name);
+        this.hash = hash;
+    }
+
+    /**
+     * Check the Minecraft username format: 1-16 characters of [a-zA-Z0-9_]
+     */
+    public static boolean isValid(CharSequence name) {
+        if (name == null) {
+            return false;
+        }
+        int length = name.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the canonical instance for a name, creating it if needed
+     * Names from the configuration are accepted as-is; validate user input with {@link #isValid} first.
+     */
+    public static PlayerName of(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Player name cannot be empty");
+        }
+        return INTERNER.intern(name, foldedHash(name));
+    }
+
+    /**
+     * Find the canonical instance for a name without allocating
+     * @return the interned name, or null if no live key uses this name (so no map can contain it)
+     */
+    public static PlayerName lookup(CharSequence name) {
+        if (name == null || name.length() == 0) {
+            return null;
+        }
+        return INTERNER.lookup(name, foldedHash(name));
+    }
+
+    /**
+     * The name in the case it was first seen with
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The case-folded form used for comparisons
+     */
+    public String getFolded() {
+        return folded;
+    }
+
+    public boolean matches(CharSequence other) {
+        if (other == null || other.length() != folded.length()) {
+            return false;
+        }
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.toLowerCase(other.charAt(i)) != folded.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        // Canonical instances make identity the common case
+        if (this == o) return true;
+        if (!(o instanceof PlayerName)) return false;
+        PlayerName other = (PlayerName) o;
+        return hash == other.hash && folded.equals(other.folded);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    static String fold(String name) {
+        char[] chars = new char[name.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(name.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    static int foldedHash(CharSequence name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + Character.toLowerCase(name.charAt(i));
+        }
+        return h;
+    }
+
+    /**
+     * Chained hash table of weak references to canonical names
+     * Lookups read the published table without locking: chain nodes are immutable, a bucket is
+     * replaced by a single write and a resize publishes a new table. Only interning locks, and
+     * cleared references are purged through the reference queue on every intern.
+     */
+    private static final class Interner {
+        private final ReferenceQueue<PlayerName> queue = new ReferenceQueue<>();
+        private volatile AtomicReferenceArray<Node> table = new AtomicReferenceArray<>(256);
+        private int size;
+
+        private static final class Ref extends WeakReference<PlayerName> {
+            final int hash;
+
+            Ref(PlayerName referent, ReferenceQueue<PlayerName> queue) {
+                super(referent, queue);
+                this.hash = referent.hash;
+            }
+        }
+
+        private static final class Node {
+            final Ref ref;
+            final Node next;
+
+            Node(Ref ref, Node next) {
+                this.ref = ref;
+                this.next = next;
+            }
+        }
+
+        PlayerName lookup(CharSequence name, int hash) {
+            AtomicReferenceArray<Node> current = table;
+            for (Node node = current.get(hash & (current.length() - 1)); node != null; node = node.next) {
+                if (node.ref.hash == hash) {
+                    PlayerName candidate = node.ref.get();
+                    if (candidate != null && candidate.matches(name)) {
+                        return candidate;
+                    }
+                }
+            }
+            return null;
+        }
+
+        synchronized PlayerName intern(String name, int hash) {
+            PlayerName existing = lookup(name, hash);
+            if (existing != null) {
+                return existing;
+            }
+            purge();
+            if (size >= table.length() * 3 / 4) {
+                resize();
+            }
+            PlayerName created = new PlayerName(name, hash);
+            AtomicReferenceArray<Node> current = table;
+            int index = hash & (current.length() - 1);
+            current.set(index, new Node(new Ref(created, queue), current.get(index)));
+            size++;
+            return created;
+        }
+
+        private void purge() {
+            AtomicReferenceArray<Node> current = table;
+            Object cleared;
+            while ((cleared = queue.poll()) != null) {
+                Ref dead = (Ref) cleared;
+                int index = dead.hash & (current.length() - 1);
+                Node head = current.get(index);
+                for (Node node = head; node != null; node = node.next) {
+                    if (node.ref == dead) {
+                        // Copy the nodes in front of the dead one; readers keep walking the old chain
+                        Node rebuilt = node.next;
+                        for (Node prefix = head; prefix != node; prefix = prefix.next) {
+                            rebuilt = new Node(prefix.ref, rebuilt);
+                        }
+                        current.set(index, rebuilt);
+                        size--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void resize() {
+            AtomicReferenceArray<Node> old = table;
+            AtomicReferenceArray<Node> resized = new AtomicReferenceArray<>(old.length() * 2);
+            int live = 0;
+            for (int i = 0; i < old.length(); i++) {
+                for (Node node = old.get(i); node != null; node = node.next) {
+                    // Cleared references are left behind; purge will not find them any more
+                    if (node.ref.get() != null) {
+                        int index = node.ref.hash & (resized.length() - 1);
+                        resized.set(index, new Node(node.ref, resized.get(index)));
+                        live++;
+                    }
+                }
+            }
+            size = live;
+            table = resized;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.plugin.bantools;
+
+import java.util.Objects;
+
+/**
+ * Common model of every per-player punishment
+ * Fields are stored compactly (see {@link EntryEncoding}): the reason and administrator name are
+ * shared instances, a canonical UUID is two longs, an IPv4 address is an int and the end time is
+ * a primitive with a sentinel for permanent punishments. Expiry and activity are decided here for
+ * every type, so the login path never needs to know which type it found.
+ */
+public abstract class Punishment implements Cloneable {
+    /**
+     * Kind of punishment; the order is the precedence when several apply to the same key
+     * Mutes never decide a login; they are looked up by UUID when a player chats.
+     */
+    public enum Type {
+        BAN, TEMP_BAN, FAKEBAN, MUTE
+    }
+
+    static final long PERMANENT = Long.MIN_VALUE;
+
+    private String name;
+    private String reason;
+    private String operator;
+    private long startTime;
+    private long endTime = PERMANENT;
+    private long uuidMost;
+    private long uuidLeast;
+    // Set only for values that could not be packed
+    private String uuidText;
+    private String ipText;
+    private int ip;
+    private byte packed;
+    private boolean state = true;
+
+    public abstract Type getType();
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public String getUuid() {
+        return (packed & EntryEncoding.UUID_PACKED) != 0 ? EntryEncoding.uuidText(uuidMost, uuidLeast) : uuidText;
+    }
+    public void setUuid(String uuid) {
+        if (EntryEncoding.isCanonicalUuid(uuid)) {
+            this.uuidMost = EntryEncoding.uuidBits(uuid, true);
+            this.uuidLeast = EntryEncoding.uuidBits(uuid, false);
+            this.uuidText = null;
+            this.packed |= EntryEncoding.UUID_PACKED;
+        } else {
+            this.uuidMost = 0;
+            this.uuidLeast = 0;
+            this.uuidText = uuid;
+            this.packed &= ~EntryEncoding.UUID_PACKED;
+        }
+    }
+
+    /**
+     * Whether the UUID is stored as two longs, readable through {@link #uuidMost()} and {@link #uuidLeast()}
+     */
+    boolean hasPackedUuid() { return (packed & EntryEncoding.UUID_PACKED) != 0; }
+    long uuidMost() { return uuidMost; }
+    long uuidLeast() { return uuidLeast; }
+
+    public String getIp() {
+        return (packed & EntryEncoding.IP_PACKED) != 0 ? EntryEncoding.ipv4Text(ip) : ipText;
+    }
+    public void setIp(String ip) {
+        long ipv4 = EntryEncoding.packIpv4(ip);
+        if (ipv4 >= 0) {
+            this.ip = (int) ipv4;
+            this.ipText = null;
+            this.packed |= EntryEncoding.IP_PACKED;
+        } else {
+            this.ip = 0;
+            this.ipText = ip;
+            this.packed &= ~EntryEncoding.IP_PACKED;
+        }
+    }
+
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = EntryEncoding.share(reason); }
+
+    public String getOperator() { return operator; }
+    public void setOperator(String operator) { this.operator = EntryEncoding.share(operator); }
+
+    public long getStartTime() { return startTime; }
+    public void setStartTime(long startTime) { this.startTime = startTime; }
+
+    public boolean getState() { return state; }
+    public void setState(boolean state) { this.state = state; }
+
+    /**
+     * End time in epoch milliseconds, or null for a permanent punishment
+     */
+    public Long getExpiresAt() { return endTime == PERMANENT ? null : endTime; }
+
+    long endTimeMillis() { return endTime; }
+    void setEndTimeMillis(long endTime) { this.endTime = endTime; }
+
+    public boolean isPermanent() { return endTime == PERMANENT; }
+
+    /**
+     * Check whether the punishment ended before the given time, without boxing the end time
+     */
+    public boolean hasExpired(long now) { return endTime != PERMANENT && endTime < now; }
+
+    /**
+     * Check whether the punishment is in force at the given time: not revoked and not expired
+     */
+    public boolean isActiveAt(long now) { return state && !hasExpired(now); }
+
+    /**
+     * A copy with the same fields
+     * Entries held by the configuration are shared with readers, so they are changed through a copy.
+     */
+    Punishment copy() {
+        try {
+            return (Punishment) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || o.getClass() != getClass()) return false;
+        Punishment other = (Punishment) o;
+        // Packing is deterministic, so equal values have equal packed fields
+        return startTime == other.startTime && endTime == other.endTime && state == other.state
+                && packed == other.packed && uuidMost == other.uuidMost && uuidLeast == other.uuidLeast
+                && ip == other.ip && Objects.equals(uuidText, other.uuidText) && Objects.equals(ipText, other.ipText)
+                && Objects.equals(name, other.name) && Objects.equals(reason, other.reason)
+                && Objects.equals(operator, other.operator);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, uuidMost ^ uuidLeast, uuidText, ip, ipText, reason, operator, startTime, endTime, state);
+    }
+}
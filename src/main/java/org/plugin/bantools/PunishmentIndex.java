@@ -0,0 +1,217 @@
+package org.plugin.bantools;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent index of active punishments of every type by player name, UUID and IP
+ * The primary map is keyed by canonical {@link PlayerName} and holds one slot per stored section
+ * (bans, temporary bans); UUID and IP map to the names that use them in any slot. A login check
+ * is therefore the same handful of hash probes whatever the number of punishment types, and
+ * adding a type adds a slot, not a lookup.
+ * Slot arrays are copied on write, so readers never see a half-updated name.
+ * Entries are mutable beans: re-{@link #put} an entry after changing its UUID or IP.
+ */
+class PunishmentIndex {
+    static final int SLOT_BANS = 0;
+    static final int SLOT_FAKEBANS = 1;
+    private static final int SLOTS = 2;
+
+    private final Map<PlayerName, Punishment[]> byName = new ConcurrentHashMap<>();
+    // Secondary keys remembered per name and slot (uuid, ip pairs), so re-indexing works after an in-place edit
+    private final Map<PlayerName, String[]> keysByName = new ConcurrentHashMap<>();
+    private final Map<String, Set<PlayerName>> byUuid = new ConcurrentHashMap<>();
+    private final Map<String, Set<PlayerName>> byIp = new ConcurrentHashMap<>();
+    private final int[] sizes = new int[SLOTS];
+
+    /**
+     * The entries of one slot, with the map-like operations the owning manager needs
+     */
+    <E extends Punishment> EntryIndex<E> slot(int slot) {
+        return new EntryIndex<>(this, slot);
+    }
+
+    synchronized void put(int slot, PlayerName name, Punishment entry) {
+        unlink(slot, name);
+        Punishment[] entries = byName.get(name);
+        Punishment[] updated = entries == null ? new Punishment[SLOTS] : entries.clone();
+        if (updated[slot] == null) {
+            sizes[slot]++;
+        }
+        updated[slot] = entry;
+        String uuid = normalize(entry.getUuid());
+        String ip = normalize(entry.getIp());
+        String[] keys = keysByName.computeIfAbsent(name, n -> new String[SLOTS * 2]);
+        keys[slot * 2] = uuid;
+        keys[slot * 2 + 1] = ip;
+        link(byUuid, uuid, name);
+        link(byIp, ip, name);
+        byName.put(name, updated);
+    }
+
+    synchronized Punishment remove(int slot, PlayerName name) {
+        Punishment[] entries = byName.get(name);
+        if (entries == null || entries[slot] == null) {
+            return null;
+        }
+        unlink(slot, name);
+        sizes[slot]--;
+        Punishment removed = entries[slot];
+        Punishment[] updated = entries.clone();
+        updated[slot] = null;
+        if (isEmpty(updated)) {
+            byName.remove(name);
+            keysByName.remove(name);
+        } else {
+            byName.put(name, updated);
+        }
+        return removed;
+    }
+
+    Punishment get(int slot, PlayerName name) {
+        Punishment[] entries = name == null ? null : byName.get(name);
+        return entries == null ? null : entries[slot];
+    }
+
+    /**
+     * Find the first active punishment of any type matching the name, then the UUID, then the IP
+     * Within a key, slots are checked in order, so a ban takes precedence over a temporary ban.
+     */
+    Punishment find(String uuid, String ip, String username, Predicate<Punishment> active) {
+        return find(uuid, ip, username, -1, active);
+    }
+
+    /**
+     * @param slot only consider this slot, or -1 for all of them
+     */
+    Punishment find(String uuid, String ip, String username, int slot, Predicate<Punishment> active) {
+        PlayerName name = username == null ? null : PlayerName.lookup(username);
+        Punishment entry = name == null ? null : firstActive(byName.get(name), slot, active);
+        if (entry != null) {
+            return entry;
+        }
+        entry = findVia(byUuid, uuid, slot, active);
+        if (entry != null) {
+            return entry;
+        }
+        return findVia(byIp, ip, slot, active);
+    }
+
+    /**
+     * Names with an entry in the slot; a snapshot, so it can be iterated while the index changes
+     */
+    List<PlayerName> names(int slot) {
+        List<PlayerName> names = new ArrayList<>();
+        byName.forEach((name, entries) -> {
+            if (entries[slot] != null) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+
+    List<Punishment> values(int slot) {
+        List<Punishment> values = new ArrayList<>();
+        for (Punishment[] entries : byName.values()) {
+            if (entries[slot] != null) {
+                values.add(entries[slot]);
+            }
+        }
+        return values;
+    }
+
+    synchronized int size(int slot) {
+        return sizes[slot];
+    }
+
+    private Punishment findVia(Map<String, Set<PlayerName>> index, String key, int slot, Predicate<Punishment> active) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        Set<PlayerName> names = index.get(key);
+        if (names == null) {
+            return null;
+        }
+        for (PlayerName name : names) {
+            Punishment entry = firstActive(byName.get(name), slot, active);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static Punishment firstActive(Punishment[] entries, int slot, Predicate<Punishment> active) {
+        if (entries == null) {
+            return null;
+        }
+        if (slot >= 0) {
+            Punishment entry = entries[slot];
+            return entry != null && active.test(entry) ? entry : null;
+        }
+        for (Punishment entry : entries) {
+            if (entry != null && active.test(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget the secondary keys of one slot, keeping links another slot of the same name still uses
+     */
+    private void unlink(int slot, PlayerName name) {
+        String[] keys = keysByName.get(name);
+        if (keys == null) {
+            return;
+        }
+        String uuid = keys[slot * 2];
+        String ip = keys[slot * 2 + 1];
+        keys[slot * 2] = null;
+        keys[slot * 2 + 1] = null;
+        if (!contains(keys, uuid, 0)) {
+            unlink(byUuid, uuid, name);
+        }
+        if (!contains(keys, ip, 1)) {
+            unlink(byIp, ip, name);
+        }
+    }
+
+    private static boolean contains(String[] keys, String key, int offset) {
+        for (int i = offset; i < keys.length; i += 2) {
+            if (key != null && key.equals(keys[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(Punishment[] entries) {
+        for (Punishment entry : entries) {
+            if (entry != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void link(Map<String, Set<PlayerName>> index, String key, PlayerName name) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(name);
+        }
+    }
+
+    private static void unlink(Map<String, Set<PlayerName>> index, String key, PlayerName name) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, names) -> {
+                names.remove(name);
+                return names.isEmpty() ? null : names;
+            });
+        }
+    }
+
+    private static String normalize(String key) {
+        return key == null || key.isEmpty() ? null : key;
+    }
+}
@@ -0,0 +1,159 @@
+package org.plugin.bantools;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueType;
+
+import java.util.*;
+
+/**
+ * ASN and country ban rules from the "range_bans" section
+ * An immutable snapshot built once per configuration; ASN rules are a sorted int array and
+ * country rules an array indexed by packed country code, so checking a login never boxes.
+ */
+public final class RangeBans {
+    static final RangeBans EMPTY = new RangeBans(null, Collections.emptyList());
+
+    /**
+     * One rule; the key is an ASN number or an upper-case country code
+     */
+    public static final class Rule {
+        private final GeoDatabase.Kind kind;
+        private final String key;
+        private final String reason;
+        private final String operator;
+        private final long startTime;
+
+        Rule(GeoDatabase.Kind kind, String key, String reason, String operator, long startTime) {
+            this.kind = kind;
+            this.key = key;
+            this.reason = reason;
+            this.operator = operator;
+            this.startTime = startTime;
+        }
+
+        public boolean isAsn() { return kind == GeoDatabase.Kind.ASN; }
+        public String getKey() { return key; }
+        public String getReason() { return reason; }
+        public String getOperator() { return operator; }
+        public long getStartTime() { return startTime; }
+
+        /**
+         * The rule as shown to staff, e.g. "AS16509" or "country CN"
+         */
+        public String describe() {
+            return isAsn() ? "AS" + key : "country " + key;
+        }
+    }
+
+    // Identity of the configuration this snapshot was built from
+    final Config source;
+    private final int[] asns;
+    private final Rule[] asnRules;
+    private final Rule[] countryRules = new Rule[26 * 26];
+    private final List<Rule> rules;
+
+    private RangeBans(Config source, List<Rule> rules) {
+        this.source = source;
+        this.rules = Collections.unmodifiableList(rules);
+        List<Rule> asnList = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.isAsn()) {
+                asnList.add(rule);
+            } else {
+                countryRules[GeoDatabase.packCountry(rule.key)] = rule;
+            }
+        }
+        asnList.sort(Comparator.comparingInt(rule -> Integer.parseInt(rule.key)));
+        asns = new int[asnList.size()];
+        asnRules = asnList.toArray(new Rule[0]);
+        for (int i = 0; i < asns.length; i++) {
+            asns[i] = Integer.parseInt(asnRules[i].key);
+        }
+    }
+
+    /**
+     * Build the rules of a configuration, skipping malformed entries with a warning
+     */
+    static RangeBans parse(Config config) {
+        List<Rule> rules = new ArrayList<>();
+        if (config.hasPath("range_bans")) {
+            ConfigObject section = config.getObject("range_bans");
+            parseKind(section.get("asn"), GeoDatabase.Kind.ASN, rules);
+            parseKind(section.get("country"), GeoDatabase.Kind.COUNTRY, rules);
+        }
+        return new RangeBans(config, rules);
+    }
+
+    private static void parseKind(ConfigValue value, GeoDatabase.Kind kind, List<Rule> rules) {
+        if (!(value instanceof ConfigObject)) {
+            return;
+        }
+        for (Map.Entry<String, ConfigValue> entry : ((ConfigObject) value).entrySet()) {
+            String key = normalizeKey(kind, entry.getKey());
+            if (key == null || !(entry.getValue() instanceof ConfigObject)) {
+                System.err.println("Skipping invalid " + kind.name().toLowerCase(Locale.ROOT) + " range ban: " + entry.getKey());
+                continue;
+            }
+            ConfigObject fields = (ConfigObject) entry.getValue();
+            rules.add(new Rule(kind, key, string(fields.get("reason")), string(fields.get("operator")),
+                    fields.get("start_time") != null && fields.get("start_time").valueType() == ConfigValueType.NUMBER
+                            ? ((Number) fields.get("start_time").unwrapped()).longValue() : 0));
+        }
+    }
+
+    private static String string(ConfigValue value) {
+        return value != null && value.valueType() == ConfigValueType.STRING ? (String) value.unwrapped() : null;
+    }
+
+    /**
+     * Canonical rule key: an ASN without the "AS" prefix, or an upper-case country code
+     * @return the key, or null if the input is not a valid ASN or country code
+     */
+    static String normalizeKey(GeoDatabase.Kind kind, String input) {
+        if (input == null) {
+            return null;
+        }
+        String trimmed = input.trim();
+        if (kind == GeoDatabase.Kind.COUNTRY) {
+            return GeoDatabase.packCountry(trimmed) < 0 ? null : trimmed.toUpperCase(Locale.ROOT);
+        }
+        String digits = trimmed.regionMatches(true, 0, "AS", 0, 2) ? trimmed.substring(2) : trimmed;
+        try {
+            long asn = Long.parseLong(digits);
+            return asn < 0 || asn > Integer.MAX_VALUE ? null : Long.toString(asn);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    boolean hasAsnRules() {
+        return asns.length > 0;
+    }
+
+    boolean hasCountryRules() {
+        return asns.length < rules.size();
+    }
+
+    /**
+     * Find the rule for an ASN or packed country code; either may be {@link GeoDatabase#NOT_FOUND}
+     */
+    Rule match(int asn, int country) {
+        if (asn >= 0) {
+            int index = Arrays.binarySearch(asns, asn);
+            if (index >= 0) {
+                return asnRules[index];
+            }
+        }
+        return country >= 0 ? countryRules[country] : null;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+}
@@ -0,0 +1,332 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Follower side of ban replication
+ * Keeps one connection to the leader, applies the snapshot and record batches it receives to the
+ * local ban store and indexes, and reports each applied sequence back. After a disconnect it
+ * reconnects with backoff and resumes after the last applied sequence.
+ * Ban mutations made on this proxy are forwarded to the leader instead of being written locally;
+ * their futures complete once the leader has committed the change and this follower has applied
+ * it, so callers read their own writes.
+ */
+public class ReplicationFollower implements ConfigManager.Forwarder {
+    private static final int MAX_PENDING = 1024;
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final ConfigManager configManager;
+    private final InetSocketAddress leader;
+    private final String secret;
+    private final String nodeName;
+    private final Logger logger;
+    // Applies replicated changes to the local indexes
+    private final Consumer<ConfigDiff> applier;
+    private final Thread thread;
+
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private volatile DataOutputStream out;
+    private volatile Socket socket;
+    private volatile boolean running = true;
+    // Position in the leader's journal; only changed by the connection thread
+    private volatile long journalId;
+    private volatile long applied = -1;
+    private volatile long leaderSequence;
+
+    /**
+     * A forwarded mutation waiting for the leader's answer and then for its sequence to be applied
+     */
+    private static final class Pending {
+        final List<ReplicationJournal.Record> records;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        // Sequence to apply before completing, set once the leader answered
+        volatile long sequence = -1;
+
+        Pending(List<ReplicationJournal.Record> records) {
+            this.records = records;
+        }
+    }
+
+    public ReplicationFollower(ConfigManager configManager, InetSocketAddress leader, String secret, String nodeName,
+                               Logger logger, Consumer<ConfigDiff> applier) {
+        this.configManager = configManager;
+        this.leader = leader;
+        this.secret = secret;
+        this.nodeName = nodeName;
+        this.logger = logger;
+        this.applier = applier;
+        this.thread = new Thread(this::connectLoop, "BanTools-Replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Send a mutation to the leader
+     * Fails at once while the leader is unreachable; a mutation in flight when the connection drops
+     * fails too, although the leader may still have committed it.
+     */
+    @Override
+    public CompletableFuture<Void> forward(List<ReplicationJournal.Record> records) {
+        DataOutputStream current = out;
+        if (current == null) {
+            return CompletableFuture.failedFuture(new IOException("Not connected to replication leader " + leader));
+        }
+        if (pending.size() >= MAX_PENDING) {
+            return CompletableFuture.failedFuture(new IOException("Too many mutations waiting for the replication leader"));
+        }
+        if (records.size() > ReplicationProtocol.MAX_FORWARD) {
+            return CompletableFuture.failedFuture(new IOException("A single change may affect at most "
+                    + ReplicationProtocol.MAX_FORWARD + " entries on a replication follower"));
+        }
+        long requestId = requestIds.incrementAndGet();
+        Pending request = new Pending(records);
+        pending.put(requestId, request);
+        try {
+            synchronized (current) {
+                current.writeByte(ReplicationProtocol.FORWARD);
+                current.writeLong(requestId);
+                current.writeInt(records.size());
+                for (ReplicationJournal.Record record : records) {
+                    ReplicationProtocol.writeRecord(current, record);
+                }
+                current.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            request.future.completeExceptionally(e);
+            disconnect();
+        }
+        return request.future;
+    }
+
+    /**
+     * Connection state and lag, for /bt status
+     */
+    public String getStatus() {
+        if (out == null) {
+            return "follower of " + leader + ", disconnected, applied sequence " + Math.max(applied, 0);
+        }
+        return "follower of " + leader + ", applied sequence " + applied + " ("
+                + Math.max(0, leaderSequence - applied) + " behind), " + pending.size() + " forwarded pending";
+    }
+
+    public void shutdown() {
+        running = false;
+        disconnect();
+        thread.interrupt();
+    }
+
+    private void connectLoop() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(leader, ReplicationProtocol.READ_TIMEOUT_MILLIS);
+                connection.setSoTimeout(ReplicationProtocol.READ_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 65536));
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                if (!handshake(in, output)) {
+                    backoff = MAX_BACKOFF_MILLIS;
+                } else {
+                    out = output;
+                    backoff = MIN_BACKOFF_MILLIS;
+                    logger.info("Connected to replication leader " + leader + (applied < 0 ? ""
+                            : ", resuming after sequence " + applied));
+                    readLoop(in, output);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication leader " + leader + " unreachable: " + e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to apply replicated changes from " + leader, e);
+            } finally {
+                disconnect();
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+        }
+    }
+
+    private boolean handshake(DataInputStream in, DataOutputStream output) throws IOException {
+        if (in.readInt() != ReplicationProtocol.MAGIC) {
+            throw new IOException("not a BanTools replication leader");
+        }
+        in.readInt();
+        byte[] leaderChallenge = ReplicationProtocol.readChallenge(in);
+        byte[] challenge = ReplicationProtocol.challenge();
+        output.writeInt(ReplicationProtocol.MAGIC);
+        output.writeInt(ReplicationProtocol.VERSION);
+        ReplicationProtocol.writeProof(output, ReplicationProtocol.prove(secret, "follower", leaderChallenge));
+        ReplicationProtocol.writeChallenge(output, challenge);
+        ReplicationProtocol.writeName(output, nodeName);
+        output.writeLong(journalId);
+        output.writeLong(applied);
+        output.flush();
+
+        byte type = in.readByte();
+        if (type == ReplicationProtocol.REFUSED) {
+            logger.error("Replication leader " + leader + " refused this follower: " + ReplicationProtocol.readString(in));
+            return false;
+        }
+        if (type != ReplicationProtocol.WELCOME
+                || !ReplicationProtocol.verify(secret, "leader", challenge, ReplicationProtocol.readProof(in))) {
+            logger.error("Replication leader " + leader + " failed authentication, check replication.secret");
+            return false;
+        }
+        return true;
+    }
+
+    private void readLoop(DataInputStream in, DataOutputStream output) throws IOException {
+        while (running) {
+            byte type = in.readByte();
+            switch (type) {
+                case ReplicationProtocol.SNAPSHOT: {
+                    long id = in.readLong();
+                    long sequence = in.readLong();
+                    ReplicationJournal.Snapshot snapshot = new ReplicationJournal.Snapshot(sequence,
+                            ReplicationProtocol.readEntries(in), ReplicationProtocol.readEntries(in),
+                            ReplicationProtocol.readEntries(in));
+                    long started = System.nanoTime();
+                    apply(configManager.applySnapshot(snapshot));
+                    journalId = id;
+                    advance(sequence, output);
+                    logger.info("Applied replication snapshot of " + snapshot.bans.size() + " bans, "
+                            + snapshot.fakeBans.size() + " temporary bans and " + snapshot.mutes.size()
+                            + " mutes at sequence " + sequence + " in "
+                            + (System.nanoTime() - started) / 1_000_000 + " ms");
+                    break;
+                }
+                case ReplicationProtocol.BATCH: {
+                    int count = in.readInt();
+                    List<ReplicationJournal.Record> records = new ArrayList<>(Math.min(count, ReplicationProtocol.MAX_BATCH));
+                    for (int i = 0; i < count; i++) {
+                        records.add(ReplicationProtocol.readRecord(in));
+                    }
+                    if (records.isEmpty() || records.get(0).sequence != applied + 1) {
+                        throw new IOException("Replication stream out of order, expected sequence " + (applied + 1));
+                    }
+                    apply(configManager.applyReplicated(records));
+                    advance(records.get(records.size() - 1).sequence, output);
+                    break;
+                }
+                case ReplicationProtocol.RESULT: {
+                    long requestId = in.readLong();
+                    long sequence = in.readLong();
+                    String error = ReplicationProtocol.readString(in);
+                    Pending request = pending.get(requestId);
+                    if (request == null) {
+                        break;
+                    }
+                    if (!error.isEmpty()) {
+                        pending.remove(requestId);
+                        request.future.completeExceptionally(new IOException(error));
+                    } else {
+                        request.sequence = sequence;
+                        completeApplied();
+                    }
+                    break;
+                }
+                case ReplicationProtocol.HEARTBEAT:
+                    leaderSequence = Math.max(leaderSequence, in.readLong());
+                    sendApplied(output);
+                    break;
+                default:
+                    throw new IOException("Unexpected replication frame " + type);
+            }
+        }
+    }
+
+    /**
+     * Apply a replicated diff to the indexes, leaving out entries with a forwarded mutation in flight
+     * Their caller updates the indexes and publishes the change itself once the future completes.
+     */
+    private void apply(ConfigDiff diff) {
+        Set<String> bans = new HashSet<>();
+        Set<String> fakeBans = new HashSet<>();
+        Set<String> mutes = new HashSet<>();
+        for (Pending request : pending.values()) {
+            for (ReplicationJournal.Record record : request.records) {
+                (record.section == ReplicationJournal.SECTION_FAKEBANS ? fakeBans
+                        : record.section == ReplicationJournal.SECTION_MUTES ? mutes : bans).add(record.key);
+            }
+        }
+        applier.accept(pending.isEmpty() ? diff : diff.without(bans, fakeBans, mutes));
+    }
+
+    private void advance(long sequence, DataOutputStream output) throws IOException {
+        applied = sequence;
+        leaderSequence = Math.max(leaderSequence, sequence);
+        sendApplied(output);
+        completeApplied();
+    }
+
+    private void sendApplied(DataOutputStream output) throws IOException {
+        synchronized (output) {
+            output.writeByte(ReplicationProtocol.APPLIED);
+            output.writeLong(applied);
+            output.flush();
+        }
+    }
+
+    private void completeApplied() {
+        Iterator<Pending> requests = pending.values().iterator();
+        while (requests.hasNext()) {
+            Pending request = requests.next();
+            if (request.sequence >= 0 && request.sequence <= applied) {
+                requests.remove();
+                request.future.complete(null);
+            }
+        }
+    }
+
+    private void disconnect() {
+        boolean connected = out != null;
+        out = null;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+        for (Iterator<Pending> requests = pending.values().iterator(); requests.hasNext(); ) {
+            Pending request = requests.next();
+            requests.remove();
+            request.future.completeExceptionally(new IOException("Connection to replication leader " + leader
+                    + " was lost; the change may still have been saved there"));
+        }
+        if (connected && running) {
+            logger.warn("Disconnected from replication leader " + leader + ", reconnecting");
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.plugin.bantools;
+
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered log of ban and temporary ban changes kept by a replication leader
+ * Every commit of the ban store appends one record per changed entry, in commit order, and each
+ * record gets the next sequence number. Only the most recent records are retained; a follower
+ * that fell further behind is sent a snapshot instead. Sequence numbers restart with the process,
+ * so each journal carries a random id and a follower resumes only against the same id.
+ */
+class ReplicationJournal {
+    static final int DEFAULT_CAPACITY = 65536;
+
+    static final byte SECTION_BANS = 0;
+    static final byte SECTION_FAKEBANS = 1;
+    static final byte SECTION_MUTES = 2;
+
+    /**
+     * One change to one entry of the "bans", "fakebans" or "mutes" section
+     * Records shipped by the leader are PUT or REMOVE; STATE is only forwarded by followers.
+     */
+    static final class Record {
+        enum Op { PUT, REMOVE, STATE }
+
+        final long sequence;
+        final Op op;
+        final byte section;
+        final String key;
+        // Entry for PUT, boolean for STATE, null for REMOVE
+        final ConfigValue value;
+
+        Record(long sequence, Op op, byte section, String key, ConfigValue value) {
+            this.sequence = sequence;
+            this.op = op;
+            this.section = section;
+            this.key = key;
+            this.value = value;
+        }
+
+        static Record put(byte section, String key, ConfigValue value) {
+            return new Record(0, Op.PUT, section, key, value);
+        }
+
+        static Record remove(byte section, String key) {
+            return new Record(0, Op.REMOVE, section, key, null);
+        }
+
+        /**
+         * Change only the "state" field, if the entry exists when the record is applied
+         */
+        static Record state(byte section, String key, boolean state) {
+            return new Record(0, Op.STATE, section, key, ConfigValueFactory.fromAnyRef(state));
+        }
+
+        static String sectionName(byte section) {
+            return section == SECTION_FAKEBANS ? "fakebans" : section == SECTION_MUTES ? "mutes" : "bans";
+        }
+
+        Record withSequence(long sequence) {
+            return new Record(sequence, op, section, key, value);
+        }
+    }
+
+    /**
+     * Every entry of all sections as of one sequence number
+     */
+    static final class Snapshot {
+        final long sequence;
+        final Map<String, ConfigValue> bans;
+        final Map<String, ConfigValue> fakeBans;
+        final Map<String, ConfigValue> mutes;
+
+        Snapshot(long sequence, Map<String, ConfigValue> bans, Map<String, ConfigValue> fakeBans,
+                 Map<String, ConfigValue> mutes) {
+            this.sequence = sequence;
+            this.bans = bans;
+            this.fakeBans = fakeBans;
+            this.mutes = mutes;
+        }
+    }
+
+    private final long id = new SecureRandom().nextLong();
+    private final Record[] ring;
+    // Sequence of the newest record; the ring holds the records after lastSequence - ring.length
+    private long lastSequence;
+
+    ReplicationJournal(int capacity) {
+        this.ring = new Record[Math.max(1024, capacity)];
+    }
+
+    long id() {
+        return id;
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Number the records and append them, waking senders waiting for new records
+     */
+    synchronized void append(List<Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (Record record : records) {
+            lastSequence++;
+            ring[(int) (lastSequence % ring.length)] = record.withSequence(lastSequence);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Whether every record after the given sequence is still retained
+     */
+    synchronized boolean covers(long sequence) {
+        return sequence <= lastSequence && sequence >= lastSequence - ring.length;
+    }
+
+    /**
+     * Records following a sequence number, waiting up to the given time if there are none yet
+     * @return up to max records, empty if none arrived in time, or null if some were already dropped
+     */
+    synchronized List<Record> readAfter(long sequence, int max, long waitMillis) throws InterruptedException {
+        if (sequence == lastSequence && waitMillis > 0) {
+            wait(waitMillis);
+        }
+        if (!covers(sequence)) {
+            return null;
+        }
+        if (sequence == lastSequence) {
+            return Collections.emptyList();
+        }
+        int count = (int) Math.min(max, lastSequence - sequence);
+        List<Record> records = new ArrayList<>(count);
+        for (long next = sequence + 1; next <= sequence + count; next++) {
+            records.add(ring[(int) (next % ring.length)]);
+        }
+        return records;
+    }
+}
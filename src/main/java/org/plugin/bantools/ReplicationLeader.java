@@ -0,0 +1,357 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Leader side of ban replication
+ * Accepts follower connections and streams the {@link ReplicationJournal} to each of them in
+ * batches, resuming after the follower's last applied sequence or starting with a snapshot.
+ * A sender never runs more than MAX_UNACKNOWLEDGED records ahead of what its follower reported
+ * as applied. Mutations forwarded by followers go through the local ban store writer like any
+ * other, and are answered once committed.
+ * Connections are long-lived and block on the socket, so each one gets its own daemon threads
+ * instead of occupying the bounded task executor. At most MAX_SESSIONS connections are served at
+ * once, and one that does not complete the handshake within HANDSHAKE_TIMEOUT_MILLIS is dropped.
+ */
+public class ReplicationLeader {
+    private final ConfigManager configManager;
+    private final ReplicationJournal journal;
+    private final String secret;
+    private final TaskExecutor tasks;
+    private final Logger logger;
+    // Applies forwarded changes to the local indexes once they are committed
+    private final Consumer<ConfigDiff> applier;
+    private final ServerSocket serverSocket;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    // Connections being served, including those still in the handshake
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public ReplicationLeader(ConfigManager configManager, ReplicationJournal journal, InetSocketAddress listen,
+                             String secret, TaskExecutor tasks, Logger logger, Consumer<ConfigDiff> applier)
+            throws IOException {
+        this.configManager = configManager;
+        this.journal = journal;
+        this.secret = secret;
+        this.tasks = tasks;
+        this.logger = logger;
+        this.applier = applier;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(listen);
+        thread("accept", this::acceptLoop).start();
+        logger.info("Replication leader listening on " + listen);
+    }
+
+    private Thread thread(String name, Runnable task) {
+        Thread thread = new Thread(task, "BanTools-Replication-" + name + "-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (connections.incrementAndGet() > ReplicationProtocol.MAX_SESSIONS) {
+                    connections.decrementAndGet();
+                    logger.warn("Rejected replication connection from " + socket.getRemoteSocketAddress()
+                            + ": " + ReplicationProtocol.MAX_SESSIONS + " connections already open");
+                    socket.close();
+                    continue;
+                }
+                thread("session", () -> {
+                    try {
+                        new Session(socket).run();
+                    } finally {
+                        connections.decrementAndGet();
+                    }
+                }).start();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication leader failed to accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Connected followers and how far each has applied, for /bt status
+     */
+    public String getStatus() {
+        long last = journal.lastSequence();
+        if (sessions.isEmpty()) {
+            return "leader at sequence " + last + ", no followers connected";
+        }
+        return "leader at sequence " + last + ", followers: " + sessions.stream()
+                .map(session -> session.name + " (" + (last - session.applied) + " behind)")
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+        sessions.forEach(Session::close);
+    }
+
+    /**
+     * One connected follower
+     * The session thread performs the handshake and then reads APPLIED and FORWARD frames; a second
+     * thread sends the journal. Frames are written whole while holding the output stream.
+     */
+    private final class Session {
+        private final Socket socket;
+        private final String address;
+        private DataOutputStream out;
+        private volatile String name;
+        // Last sequence sent and last one the follower reported as applied, guarded by this
+        private long sent;
+        private volatile long applied;
+        private volatile boolean open = true;
+
+        Session(Socket socket) {
+            this.socket = socket;
+            this.address = socket.getRemoteSocketAddress().toString();
+            this.name = address;
+        }
+
+        void run() {
+            try {
+                socket.setSoTimeout(ReplicationProtocol.HANDSHAKE_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+                if (!handshake(in)) {
+                    return;
+                }
+                socket.setSoTimeout(ReplicationProtocol.READ_TIMEOUT_MILLIS);
+                sessions.add(this);
+                thread("send", this::sendLoop).start();
+                readLoop(in);
+            } catch (IOException e) {
+                if (open && running) {
+                    logger.warn("Replication follower " + name + " disconnected: " + e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private boolean handshake(DataInputStream in) throws IOException {
+            byte[] challenge = ReplicationProtocol.challenge();
+            synchronized (out) {
+                out.writeInt(ReplicationProtocol.MAGIC);
+                out.writeInt(ReplicationProtocol.VERSION);
+                ReplicationProtocol.writeChallenge(out, challenge);
+                out.flush();
+            }
+            if (in.readInt() != ReplicationProtocol.MAGIC) {
+                logger.warn("Rejected replication connection from " + address + ": not a BanTools follower");
+                return false;
+            }
+            int version = in.readInt();
+            byte[] proof = ReplicationProtocol.readProof(in);
+            byte[] followerChallenge = ReplicationProtocol.readChallenge(in);
+            String followerName = ReplicationProtocol.readName(in);
+            long journalId = in.readLong();
+            long resumeAfter = in.readLong();
+            if (version != ReplicationProtocol.VERSION) {
+                return refuse("protocol version " + version + " is not supported, leader uses "
+                        + ReplicationProtocol.VERSION);
+            }
+            if (!ReplicationProtocol.verify(secret, "follower", challenge, proof)) {
+                return refuse("authentication failed");
+            }
+            name = followerName + " (" + address + ")";
+
+            synchronized (out) {
+                out.writeByte(ReplicationProtocol.WELCOME);
+                ReplicationProtocol.writeProof(out, ReplicationProtocol.prove(secret, "leader", followerChallenge));
+                out.flush();
+            }
+            synchronized (this) {
+                sent = journalId == journal.id() && journal.covers(resumeAfter) ? resumeAfter : -1;
+                applied = Math.max(sent, 0);
+            }
+            logger.info("Replication follower " + name + " connected, "
+                    + (sent < 0 ? "sending a snapshot" : "resuming after sequence " + resumeAfter));
+            return true;
+        }
+
+        private boolean refuse(String reason) throws IOException {
+            logger.warn("Refused replication follower " + address + ": " + reason);
+            synchronized (out) {
+                out.writeByte(ReplicationProtocol.REFUSED);
+                ReplicationProtocol.writeString(out, reason);
+                out.flush();
+            }
+            return false;
+        }
+
+        private void readLoop(DataInputStream in) throws IOException {
+            while (open) {
+                byte type = in.readByte();
+                if (type == ReplicationProtocol.APPLIED) {
+                    long sequence = in.readLong();
+                    synchronized (this) {
+                        applied = Math.max(applied, sequence);
+                        notifyAll();
+                    }
+                } else if (type == ReplicationProtocol.FORWARD) {
+                    long requestId = in.readLong();
+                    int count = in.readInt();
+                    if (count <= 0 || count > ReplicationProtocol.MAX_FORWARD) {
+                        throw new IOException("Forwarded mutation of " + count + " records exceeds the limit");
+                    }
+                    List<ReplicationJournal.Record> records = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        records.add(ReplicationProtocol.readRecord(in));
+                    }
+                    forward(requestId, records);
+                } else {
+                    throw new IOException("Unexpected replication frame " + type);
+                }
+            }
+        }
+
+        /**
+         * Commit a follower's mutation and report the sequence the follower must reach to see it
+         */
+        private void forward(long requestId, List<ReplicationJournal.Record> records) {
+            configManager.submitAll(records).whenComplete((saved, error) -> {
+                // Answer off the writer thread: a slow follower socket must not hold up other commits
+                try {
+                    tasks.execute(() -> {
+                        if (error == null) {
+                            applier.accept(configManager.diffOf(records));
+                        }
+                        sendResult(requestId, journal.lastSequence(), error == null ? ""
+                                : "Leader failed to save the change: " + error.getMessage());
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Dropped replication result for " + name + ": " + e.getMessage());
+                    close();
+                }
+            });
+        }
+
+        private void sendResult(long requestId, long sequence, String error) {
+            try {
+                synchronized (out) {
+                    out.writeByte(ReplicationProtocol.RESULT);
+                    out.writeLong(requestId);
+                    out.writeLong(sequence);
+                    ReplicationProtocol.writeString(out, error);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void sendLoop() {
+            try {
+                while (open) {
+                    long from;
+                    synchronized (this) {
+                        // Backpressure: wait until the follower has applied most of what was sent
+                        while (open && sent - applied >= ReplicationProtocol.MAX_UNACKNOWLEDGED) {
+                            wait(ReplicationProtocol.HEARTBEAT_MILLIS);
+                        }
+                        from = sent;
+                    }
+                    if (from < 0) {
+                        sendSnapshot();
+                        continue;
+                    }
+                    List<ReplicationJournal.Record> records = journal.readAfter(from,
+                            ReplicationProtocol.MAX_BATCH, ReplicationProtocol.HEARTBEAT_MILLIS);
+                    if (records == null) {
+                        logger.info("Replication follower " + name + " fell behind the journal, sending a snapshot");
+                        sendSnapshot();
+                    } else if (records.isEmpty()) {
+                        synchronized (out) {
+                            out.writeByte(ReplicationProtocol.HEARTBEAT);
+                            out.writeLong(journal.lastSequence());
+                            out.flush();
+                        }
+                    } else {
+                        synchronized (out) {
+                            out.writeByte(ReplicationProtocol.BATCH);
+                            out.writeInt(records.size());
+                            for (ReplicationJournal.Record record : records) {
+                                ReplicationProtocol.writeRecord(out, record);
+                            }
+                            out.flush();
+                        }
+                        synchronized (this) {
+                            sent = records.get(records.size() - 1).sequence;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (open && running) {
+                    logger.warn("Replication follower " + name + " disconnected: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private void sendSnapshot() throws IOException {
+            ReplicationJournal.Snapshot snapshot = configManager.replicationSnapshot();
+            synchronized (out) {
+                out.writeByte(ReplicationProtocol.SNAPSHOT);
+                out.writeLong(journal.id());
+                out.writeLong(snapshot.sequence);
+                ReplicationProtocol.writeEntries(out, snapshot.bans);
+                ReplicationProtocol.writeEntries(out, snapshot.fakeBans);
+                ReplicationProtocol.writeEntries(out, snapshot.mutes);
+                out.flush();
+            }
+            synchronized (this) {
+                sent = snapshot.sequence;
+                applied = Math.min(applied, snapshot.sequence);
+            }
+        }
+
+        void close() {
+            open = false;
+            sessions.remove(this);
+            synchronized (this) {
+                notifyAll();
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+}
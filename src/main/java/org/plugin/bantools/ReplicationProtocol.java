@@ -0,0 +1,227 @@
+package org.plugin.bantools;
+
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wire format shared by the replication leader and its followers
+ * The leader opens with a hello carrying a random challenge; both sides prove knowledge of the
+ * shared secret with an HMAC over the other side's challenge before anything else is sent.
+ * After that every message is a one-byte frame type followed by its fields. Entries travel as
+ * concise HOCON, so a follower stores exactly what the leader stores.
+ */
+final class ReplicationProtocol {
+    static final int MAGIC = 0x42545250; // "BTRP"
+    static final int VERSION = 3;
+
+    // Leader to follower
+    static final byte WELCOME = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte BATCH = 3;
+    static final byte RESULT = 4;
+    static final byte HEARTBEAT = 5;
+    static final byte REFUSED = 6;
+
+    // Follower to leader
+    static final byte APPLIED = 11;
+    static final byte FORWARD = 12;
+
+    static final int MAX_BATCH = 512;
+    // Records in one forwarded mutation, such as a rollback
+    static final int MAX_FORWARD = 1 << 16;
+    // Records the leader sends ahead of the follower's last APPLIED before waiting
+    static final int MAX_UNACKNOWLEDGED = 4096;
+    static final long HEARTBEAT_MILLIS = 5000;
+    static final int READ_TIMEOUT_MILLIS = 30000;
+    // A connection that has not completed the handshake by then is dropped
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    // Connections the leader serves at once, authenticated or not
+    static final int MAX_SESSIONS = 16;
+    // A follower name is read before the proof is checked, so it is kept short
+    static final int MAX_NAME_CHARS = 32;
+    private static final int MAX_NAME_BYTES = MAX_NAME_CHARS * 4;
+
+    private static final int CHALLENGE_BYTES = 16;
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ReplicationProtocol() {
+    }
+
+    static byte[] challenge() {
+        byte[] challenge = new byte[CHALLENGE_BYTES];
+        RANDOM.nextBytes(challenge);
+        return challenge;
+    }
+
+    static void writeChallenge(DataOutputStream out, byte[] challenge) throws IOException {
+        out.write(challenge);
+    }
+
+    static byte[] readChallenge(DataInputStream in) throws IOException {
+        byte[] challenge = new byte[CHALLENGE_BYTES];
+        in.readFully(challenge);
+        return challenge;
+    }
+
+    /**
+     * Proof that the sender knows the secret; the role is mixed in so a proof cannot be reflected back
+     */
+    static byte[] prove(String secret, String role, byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update(role.getBytes(StandardCharsets.UTF_8));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            // Every JVM is required to provide HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean verify(String secret, String role, byte[] challenge, byte[] proof) {
+        return MessageDigest.isEqual(prove(secret, role, challenge), proof);
+    }
+
+    static void writeProof(DataOutputStream out, byte[] proof) throws IOException {
+        out.writeShort(proof.length);
+        out.write(proof);
+    }
+
+    static byte[] readProof(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length > 64) {
+            throw new IOException("Malformed replication handshake");
+        }
+        byte[] proof = new byte[length];
+        in.readFully(proof);
+        return proof;
+    }
+
+    /**
+     * Length-prefixed UTF-8, without the 64 KiB limit of writeUTF
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return readString(in, MAX_STRING_BYTES);
+    }
+
+    /**
+     * Write a follower name, cut to MAX_NAME_CHARS
+     */
+    static void writeName(DataOutputStream out, String name) throws IOException {
+        writeString(out, name.length() > MAX_NAME_CHARS ? name.substring(0, MAX_NAME_CHARS) : name);
+    }
+
+    static String readName(DataInputStream in) throws IOException {
+        return readString(in, MAX_NAME_BYTES);
+    }
+
+    private static String readString(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxBytes) {
+            throw new IOException("Replication string of " + length + " bytes exceeds the limit");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeRecord(DataOutputStream out, ReplicationJournal.Record record) throws IOException {
+        out.writeLong(record.sequence);
+        out.writeByte(record.op.ordinal());
+        out.writeByte(record.section);
+        writeString(out, record.key);
+        if (record.op == ReplicationJournal.Record.Op.PUT) {
+            writeString(out, render(record.value));
+        } else if (record.op == ReplicationJournal.Record.Op.STATE) {
+            out.writeBoolean((Boolean) record.value.unwrapped());
+        }
+    }
+
+    static ReplicationJournal.Record readRecord(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        int op = in.readUnsignedByte();
+        byte section = in.readByte();
+        if (op >= ReplicationJournal.Record.Op.values().length
+                || section < ReplicationJournal.SECTION_BANS || section > ReplicationJournal.SECTION_MUTES) {
+            throw new IOException("Malformed replication record");
+        }
+        String key = readString(in);
+        ReplicationJournal.Record.Op type = ReplicationJournal.Record.Op.values()[op];
+        ConfigValue value = null;
+        if (type == ReplicationJournal.Record.Op.PUT) {
+            value = parse(readString(in));
+        } else if (type == ReplicationJournal.Record.Op.STATE) {
+            value = ConfigValueFactory.fromAnyRef(in.readBoolean());
+        }
+        return new ReplicationJournal.Record(sequence, type, section, key, value);
+    }
+
+    static void writeEntries(DataOutputStream out, Map<String, ConfigValue> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, ConfigValue> entry : entries.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, render(entry.getValue()));
+        }
+    }
+
+    static Map<String, ConfigValue> readEntries(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Malformed replication snapshot");
+        }
+        Map<String, ConfigValue> entries = new LinkedHashMap<>(Math.min(count, 1 << 16) * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            entries.put(key, parse(readString(in)));
+        }
+        return entries;
+    }
+
+    private static String render(ConfigValue value) {
+        return value.render(ConfigRenderOptions.concise());
+    }
+
+    private static ConfigValue parse(String text) throws IOException {
+        try {
+            return ConfigFactory.parseString(text).root();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed replicated entry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parse "host:port"; a bare port means all interfaces when listening
+     */
+    static InetSocketAddress parseAddress(String address, String defaultHost) {
+        String value = address.trim();
+        int colon = value.lastIndexOf(':');
+        String host = colon < 0 ? defaultHost : value.substring(0, colon);
+        int port = Integer.parseInt(colon < 0 ? value : value.substring(colon + 1));
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return new InetSocketAddress(host.isEmpty() ? defaultHost : host, port);
+    }
+}
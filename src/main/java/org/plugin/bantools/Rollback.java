@@ -0,0 +1,59 @@
+package org.plugin.bantools;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bans and temporary bans issued by one operator within a time window, found or reverted by a rollback
+ */
+public class Rollback {
+    private final String operator;
+    private final long since;
+    private final List<BanEntry> bans;
+    private final List<FakeBanEntry> fakeBans;
+    private final boolean dryRun;
+    private final long elapsedNanos;
+    private final String error;
+
+    public Rollback(String operator, long since, List<BanEntry> bans, List<FakeBanEntry> fakeBans,
+                    boolean dryRun, long elapsedNanos, String error) {
+        this.operator = operator;
+        this.since = since;
+        this.bans = bans;
+        this.fakeBans = fakeBans;
+        this.dryRun = dryRun;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+    }
+
+    public String getOperator() { return operator; }
+    public long getSince() { return since; }
+    public List<BanEntry> getBans() { return bans; }
+    public List<FakeBanEntry> getFakeBans() { return fakeBans; }
+    public boolean isDryRun() { return dryRun; }
+    public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+
+    /**
+     * Error message if saving failed, otherwise null
+     */
+    public String getError() { return error; }
+
+    public int getCount() {
+        return bans.size() + fakeBans.size();
+    }
+
+    /**
+     * Format the counts and timing for command feedback
+     */
+    public String summary() {
+        String window = "issued by " + operator + " since "
+                + new SimpleDateFormat("yyyy/MM/dd HH:mm").format(new Date(since));
+        String counts = bans.size() + " bans and " + fakeBans.size() + " temporary bans";
+        if (dryRun) {
+            return "Dry run: would roll back " + counts + " " + window + " (" + getElapsedMillis() + " ms)";
+        }
+        return "Rolled back " + counts + " " + window + " in " + getElapsedMillis() + " ms";
+    }
+}
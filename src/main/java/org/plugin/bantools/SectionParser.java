@@ -0,0 +1,140 @@
+package org.plugin.bantools;
+
+import com.typesafe.config.ConfigValue;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parallel parser for keyed configuration sections (bans, fakebans, mutes)
+ * The section is split into chunks that are parsed on the fork-join pool; every chunk
+ * fills its own map and error list, which are merged once so the caller can publish the
+ * finished index in a single step.
+ */
+class SectionParser {
+    // Below this many entries a chunk is parsed directly instead of being split further
+    private static final int CHUNK_SIZE = 1024;
+    // Maximum number of individual validation errors printed after a load
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    /**
+     * Builds one entry from its config value
+     * Returns null to skip the entry; validation problems are appended to the error list
+     */
+    interface EntryParser<T> {
+        T parse(String key, ConfigValue value, List<String> errors);
+    }
+
+    /**
+     * Parsed entries of one section together with the collected validation errors
+     */
+    static class Result<T> {
+        final Map<String, T> entries;
+        final List<String> errors;
+        final int total;
+        final long elapsedNanos;
+
+        Result(Map<String, T> entries, List<String> errors, int total, long elapsedNanos) {
+            this.entries = entries;
+            this.errors = errors;
+            this.total = total;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        long getEntriesPerSecond() {
+            return elapsedNanos == 0 ? total : total * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * Print load statistics and the collected validation errors in one block
+         */
+        void report(String section) {
+            System.out.println("Parsed " + entries.size() + "/" + total + " " + section + " entries in "
+                    + getElapsedMillis() + " ms (" + getEntriesPerSecond() + " entries/s)");
+            reportErrors(section);
+        }
+
+        /**
+         * Print only the collected validation errors, for saves that re-parse a few entries
+         */
+        void reportErrors(String section) {
+            if (errors.isEmpty()) {
+                return;
+            }
+            System.err.println("Skipped " + errors.size() + " invalid " + section + " entries:");
+            errors.stream().limit(MAX_REPORTED_ERRORS).forEach(error -> System.err.println("  " + error));
+            if (errors.size() > MAX_REPORTED_ERRORS) {
+                System.err.println("  ... and " + (errors.size() - MAX_REPORTED_ERRORS) + " more");
+            }
+        }
+    }
+
+    static <T> Result<T> parse(Map<String, ConfigValue> section, EntryParser<T> parser) {
+        long started = System.nanoTime();
+        String[] keys = section.keySet().toArray(new String[0]);
+
+        Chunk<T> chunk = ForkJoinPool.commonPool().invoke(new ChunkTask<>(section, keys, 0, keys.length, parser));
+        return new Result<>(chunk.entries, chunk.errors, keys.length, System.nanoTime() - started);
+    }
+
+    private static class Chunk<T> {
+        final Map<String, T> entries;
+        final List<String> errors = new ArrayList<>();
+
+        Chunk(int expectedSize) {
+            entries = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+        }
+    }
+
+    private static class ChunkTask<T> extends RecursiveTask<Chunk<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Map<String, ConfigValue> section;
+        private final String[] keys;
+        private final int from;
+        private final int to;
+        private final transient EntryParser<T> parser;
+
+        ChunkTask(Map<String, ConfigValue> section, String[] keys, int from, int to, EntryParser<T> parser) {
+            this.section = section;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.parser = parser;
+        }
+
+        @Override
+        protected Chunk<T> compute() {
+            if (to - from <= CHUNK_SIZE) {
+                Chunk<T> chunk = new Chunk<>(to - from);
+                for (int i = from; i < to; i++) {
+                    String key = keys[i];
+                    try {
+                        T parsed = parser.parse(key, section.get(key), chunk.errors);
+                        if (parsed != null) {
+                            chunk.entries.put(key, parsed);
+                        }
+                    } catch (Exception e) {
+                        chunk.errors.add("'" + key + "': " + e);
+                    }
+                }
+                return chunk;
+            }
+
+            int middle = (from + to) >>> 1;
+            ChunkTask<T> left = new ChunkTask<>(section, keys, from, middle, parser);
+            left.fork();
+            Chunk<T> right = new ChunkTask<>(section, keys, middle, to, parser).compute();
+            Chunk<T> merged = left.join();
+            merged.entries.putAll(right.entries);
+            merged.errors.addAll(right.errors);
+            return merged;
+        }
+    }
+}
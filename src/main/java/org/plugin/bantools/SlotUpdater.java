@@ -0,0 +1,131 @@
+package org.plugin.bantools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies reloaded, replicated or expired entries to one punishment type's slot of the index
+ * Shared by the ban and temporary ban managers, so both decide enforcement with
+ * {@link Punishment#isActiveAt} and report changes the same way. Managers supply what else
+ * has to follow an index change (search index, alt graph, caches).
+ */
+class SlotUpdater<E extends Punishment> {
+    private final EntryIndex<E> slot;
+    private final ConfigManager configManager;
+    private final boolean fakeBan;
+
+    SlotUpdater(EntryIndex<E> slot, ConfigManager configManager, boolean fakeBan) {
+        this.slot = slot;
+        this.configManager = configManager;
+        this.fakeBan = fakeBan;
+    }
+
+    /**
+     * Called before the entry stored under a key is applied or removed
+     * @param entry the entry being applied or expired, or null if the key is being removed
+     */
+    void touched(String key, E entry) {
+    }
+
+    /**
+     * Called after an active entry was put in the slot
+     */
+    void indexed(PlayerName name, E entry) {
+    }
+
+    /**
+     * Called after an entry was dropped from the slot
+     */
+    void removed(PlayerName name, E entry) {
+    }
+
+    /**
+     * The enforced entry stored under exactly this config key, or null
+     */
+    E indexedEntry(String key) {
+        E indexed = slot.getByName(key);
+        return indexed != null && key.equals(indexed.getName()) ? indexed : null;
+    }
+
+    /**
+     * Index an entry if it is active at the current time, otherwise drop what its key enforced
+     */
+    void apply(String key, E entry) {
+        if (entry.isActiveAt(System.currentTimeMillis())) {
+            PlayerName name = PlayerName.of(key);
+            slot.put(name, entry);
+            indexed(name, entry);
+            configManager.bumpStateEpoch();
+        } else {
+            remove(key);
+        }
+    }
+
+    /**
+     * Drop the entry indexed under a key
+     * Config keys are case-sensitive; only the indexed entry that came from this key is dropped.
+     * @return the dropped entry, or null if the key enforced nothing
+     */
+    E remove(String key) {
+        PlayerName name = PlayerName.lookup(key);
+        E indexed = slot.get(name);
+        if (indexed == null || !key.equals(indexed.getName())) {
+            return null;
+        }
+        slot.remove(name);
+        removed(name, indexed);
+        configManager.bumpStateEpoch();
+        return indexed;
+    }
+
+    /**
+     * Apply a reload or replication diff
+     * Only entries whose enforcement changed produce an event; they are added to the given list.
+     * @return the entries that became active
+     */
+    List<E> applyDiff(ConfigDiff.MapDiff<E> diff, String actor, List<BanChangeEvent> changes) {
+        List<E> banned = new ArrayList<>();
+        diff.getAdded().forEach((key, entry) -> applyDiffEntry(key, entry, actor, changes, banned));
+        diff.getChanged().forEach((key, entry) -> applyDiffEntry(key, entry, actor, changes, banned));
+        for (String key : diff.getRemoved()) {
+            applyDiffEntry(key, null, actor, changes, banned);
+        }
+        return banned;
+    }
+
+    /**
+     * Drop every indexed entry that is no longer active at a time
+     * Nothing is written: the entries stay in the configuration until compaction archives them.
+     * @return the dropped entries
+     */
+    List<E> expire(long now) {
+        List<E> expired = new ArrayList<>();
+        for (E entry : new ArrayList<>(slot.values())) {
+            if (!entry.isActiveAt(now)) {
+                touched(entry.getName(), entry);
+                E dropped = remove(entry.getName());
+                if (dropped != null) {
+                    expired.add(dropped);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void applyDiffEntry(String key, E entry, String actor, List<BanChangeEvent> changes, List<E> banned) {
+        touched(key, entry);
+        E before = indexedEntry(key);
+        if (entry == null) {
+            remove(key);
+        } else {
+            apply(key, entry);
+        }
+        E after = indexedEntry(key);
+        if (before == null && after != null) {
+            changes.add(BanAddedEvent.of(actor, after));
+            banned.add(after);
+        } else if (before != null && after == null) {
+            changes.add(new BanRemovedEvent(actor, key, before.getUuid(), before.getIp(), fakeBan));
+        }
+    }
+}
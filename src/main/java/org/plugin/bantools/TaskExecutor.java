@@ -0,0 +1,183 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single execution layer for all BanTools background work
+ * Blocking work (file writes, reparses, kicks) runs on virtual threads when the runtime
+ * provides them, otherwise on a small fixed pool. Timed work runs on one scheduler thread
+ * and must hand blocking work back to {@link #execute}. Pending blocking tasks are bounded;
+ * once the bound is reached new work is rejected instead of piling up.
+ */
+public class TaskExecutor implements Executor {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int FALLBACK_THREADS = 4;
+    private static final long DRAIN_TIMEOUT_SECONDS = 10;
+
+    private final Logger logger;
+    private final ExecutorService blockingExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Semaphore permits;
+    private final int capacity;
+    private final boolean virtualThreads;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger peakPending = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public TaskExecutor(Logger logger) {
+        this(logger, DEFAULT_CAPACITY);
+    }
+
+    public TaskExecutor(Logger logger, int capacity) {
+        this.logger = logger;
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+
+        ExecutorService virtual = createVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.blockingExecutor = virtual != null ? virtual
+                : Executors.newFixedThreadPool(FALLBACK_THREADS, namedThreads("BanTools-IO"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(namedThreads("BanTools-Scheduler"));
+    }
+
+    /**
+     * Run blocking work off the calling thread
+     * @throws RejectedExecutionException when the pending queue is full or the executor is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("BanTools task queue is full (" + capacity + " pending)");
+        }
+        submitted.incrementAndGet();
+        peakPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+        try {
+            blockingExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    failed.incrementAndGet();
+                    logger.error("BanTools background task failed", t);
+                } finally {
+                    pending.decrementAndGet();
+                    completed.incrementAndGet();
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            permits.release();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Run blocking work off the calling thread and complete with its result
+     * Rejection is reported through the returned future rather than thrown.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Run a task repeatedly on the scheduler thread
+     * Tasks that block should submit their blocking part through {@link #execute}.
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(guarded(task), initialDelay, period, unit);
+    }
+
+    /**
+     * Run a task once on the scheduler thread after a delay
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduler.schedule(guarded(task), delay, unit);
+    }
+
+    private Runnable guarded(Runnable task) {
+        // An uncaught exception would silently cancel a periodic task
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                logger.error("BanTools scheduled task failed", t);
+            }
+        };
+    }
+
+    /**
+     * Stop accepting work, cancel timed tasks and wait for pending blocking work to finish
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        blockingExecutor.shutdown();
+        try {
+            if (!blockingExecutor.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("BanTools tasks did not finish within " + DRAIN_TIMEOUT_SECONDS
+                        + " seconds, " + pending.get() + " abandoned");
+                blockingExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            blockingExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("BanTools task executor stopped: " + getStatus());
+    }
+
+    /**
+     * Queue and throughput counters for status output
+     */
+    public String getStatus() {
+        return (virtualThreads ? "virtual threads" : FALLBACK_THREADS + " platform threads")
+                + ", pending " + pending.get() + "/" + capacity
+                + " (peak " + peakPending.get() + ")"
+                + ", submitted " + submitted.get()
+                + ", completed " + completed.get()
+                + ", rejected " + rejected.get()
+                + ", failed " + failed.get();
+    }
+
+    public int getPending() { return pending.get(); }
+    public long getRejected() { return rejected.get(); }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        // Compiled for Java 11; virtual threads are picked up reflectively on Java 21+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
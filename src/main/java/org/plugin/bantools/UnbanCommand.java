@@ -2,6 +2,7 @@ package org.plugin.bantools;
 
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.proxy.Player;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
@@ -28,13 +29,19 @@ public class UnbanCommand implements SimpleCommand {
             source.sendMessage(Component.text("Player name cannot be empty", NamedTextColor.RED));
             return;
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        if (!PlayerName.isValid(target)) {
             source.sendMessage(Component.text("Invalid player name format", NamedTextColor.RED));
             return;
         }
 
-        banManager.unbanPlayer(target);
-        source.sendMessage(Component.text("Player unbanned: " + target, NamedTextColor.GREEN));
+        String actor = source instanceof Player ? ((Player) source).getUsername() : "Console";
+        banManager.unbanPlayer(actor, target).thenAccept(result -> {
+            if (result != null) {
+                source.sendMessage(Component.text(result, NamedTextColor.RED));
+            } else {
+                source.sendMessage(Component.text("Player unbanned: " + target, NamedTextColor.GREEN));
+            }
+        });
     }
 
     @Override
@@ -2,66 +2,144 @@ package org.plugin.bantools;
 
 import org.slf4j.Logger;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Whitelist manager
- * Manages the protected players list to prevent administrators from being maliciously banned
+ * Manages the protected players list to prevent administrators from being maliciously banned.
+ * The list is an immutable snapshot swapped atomically, so checks are lock-free hash lookups by
+ * canonical name or UUID. Players added or removed at runtime are appended to a small journal
+ * (whitelist.journal) replayed over the configured list, instead of rewriting the configuration.
  */
 public class WhitelistManager {
+    private static final Path JOURNAL = Paths.get("plugins/BanTools/whitelist.journal");
+    private static final int JOURNAL_SLACK = 64;
+
     private final ConfigManager configManager;
     private final Logger logger;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    // Runtime changes replayed over the configured list, guarded by this
+    private final Map<PlayerName, Protected> journalAdds = new LinkedHashMap<>();
+    private final Set<PlayerName> journalRemoves = new LinkedHashSet<>();
+    private Set<PlayerName> configured = Collections.emptySet();
+    private int journalLines;
+
+    /**
+     * A protected player; the UUID is null until the player has been seen online
+     */
+    public static final class Protected {
+        private final PlayerName name;
+        private final String uuid;
+
+        Protected(PlayerName name, String uuid) {
+            this.name = name;
+            this.uuid = uuid;
+        }
 
-    private boolean enabled;
-    private Set<String> whitelist;
-    private String protectionMessage;
+        public String getName() { return name.getName(); }
+        public String getUuid() { return uuid; }
+    }
+
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(false, "This player is protected by the whitelist and cannot be modified!",
+                Collections.emptyMap());
+
+        final boolean enabled;
+        final String protectionMessage;
+        final Map<PlayerName, Protected> byName;
+        final Map<String, Protected> byUuid;
+
+        Snapshot(boolean enabled, String protectionMessage, Map<PlayerName, Protected> byName) {
+            this.enabled = enabled;
+            this.protectionMessage = protectionMessage;
+            this.byName = Collections.unmodifiableMap(new HashMap<>(byName));
+            Map<String, Protected> uuids = new HashMap<>();
+            for (Protected player : byName.values()) {
+                if (player.uuid != null) {
+                    uuids.put(player.uuid, player);
+                }
+            }
+            this.byUuid = Collections.unmodifiableMap(uuids);
+        }
+    }
 
     public WhitelistManager(ConfigManager configManager, Logger logger) {
         this.configManager = configManager;
         this.logger = logger;
-        this.whitelist = new HashSet<>();
-        this.protectionMessage = "This player is protected by the whitelist and cannot be modified!";
 
         loadWhitelist();
     }
 
     /**
-     * Load whitelist configuration (from main configuration file)
+     * Load whitelist configuration (from main configuration file) and replay the runtime journal
+     * On failure the previous list stays in effect.
      */
-    public void loadWhitelist() {
+    public synchronized void loadWhitelist() {
         try {
-            enabled = configManager.isWhitelistEnabled();
-            protectionMessage = configManager.getWhitelistProtectionMessage();
-
+            boolean enabled = configManager.isWhitelistEnabled();
+            String protectionMessage = configManager.getWhitelistProtectionMessage();
             List<String> whitelistPlayers = configManager.getWhitelistPlayers();
-            whitelist.clear();
+
+            readJournal();
+            Map<PlayerName, Protected> players = new HashMap<>();
             if (whitelistPlayers != null) {
-                whitelist.addAll(whitelistPlayers);
+                for (String player : whitelistPlayers) {
+                    if (player != null && !player.trim().isEmpty()) {
+                        PlayerName name = PlayerName.of(player.trim());
+                        players.put(name, new Protected(name, null));
+                    }
+                }
             }
+            configured = new HashSet<>(players.keySet());
+            players.keySet().removeAll(journalRemoves);
+            players.putAll(journalAdds);
 
+            snapshot.set(new Snapshot(enabled, protectionMessage, players));
+            configManager.bumpStateEpoch();
             logger.info("Whitelist configuration loaded, status: " + (enabled ? "enabled" : "disabled") +
-                       ", protected players: " + whitelist.size());
+                       ", protected players: " + players.size());
 
         } catch (Exception e) {
-            logger.error("Failed to load whitelist configuration", e);
-            // Use default configuration
-            enabled = true;
-            protectionMessage = "This player is protected by the whitelist and cannot be modified!";
-            whitelist.clear();
-            whitelist.addAll(Arrays.asList("Admin", "Owner"));
+            logger.error("Failed to load whitelist configuration, keeping the previous list", e);
         }
     }
 
-
-
     /**
      * Check whether a player is on the whitelist
      */
     public boolean isWhitelisted(String playerName) {
-        if (!enabled || playerName == null) {
+        return isWhitelisted(null, playerName);
+    }
+
+    /**
+     * Check whether a player is on the whitelist by UUID or name
+     * The UUID keeps a protected player covered after a name change.
+     */
+    public boolean isWhitelisted(String uuid, String playerName) {
+        Snapshot current = snapshot.get();
+        if (!current.enabled) {
             return false;
         }
-        return whitelist.contains(playerName);
+        if (uuid != null && current.byUuid.containsKey(uuid)) {
+            return true;
+        }
+        PlayerName name = playerName == null ? null : PlayerName.lookup(playerName);
+        return name != null && current.byName.containsKey(name);
+    }
+
+    /**
+     * Check whether a protected name has no UUID bound yet
+     */
+    public boolean isAwaitingUuid(String playerName) {
+        PlayerName name = PlayerName.lookup(playerName);
+        Protected player = name == null ? null : snapshot.get().byName.get(name);
+        return player != null && player.uuid == null;
     }
 
     /**
@@ -70,42 +148,140 @@ public class WhitelistManager {
      * @return null if operation is allowed, otherwise the protection message
      */
     public String checkProtection(String playerName) {
-        if (isWhitelisted(playerName)) {
-            return protectionMessage;
+        return checkProtection(null, playerName);
+    }
+
+    /**
+     * Check whether an operation can be performed on a player, matching by UUID or name
+     * @return null if operation is allowed, otherwise the protection message
+     */
+    public String checkProtection(String uuid, String playerName) {
+        if (isWhitelisted(uuid, playerName)) {
+            return snapshot.get().protectionMessage;
         }
         return null;
     }
 
     /**
-     * Add a player to the whitelist
-     * Note: this only updates the in-memory whitelist; edit the configuration file to persist
+     * Add a player to the whitelist and record it in the journal
+     * @param uuid the player's UUID if known, otherwise null
+     * @return false if the player was already protected or the journal could not be written
      */
-    public boolean addToWhitelist(String playerName) {
+    public synchronized boolean addToWhitelist(String playerName, String uuid) {
         if (playerName == null || playerName.trim().isEmpty()) {
             return false;
         }
+        PlayerName name = PlayerName.of(playerName.trim());
+        Snapshot current = snapshot.get();
+        Protected existing = current.byName.get(name);
+        if (existing != null && (uuid == null || uuid.equals(existing.uuid))) {
+            return false;
+        }
 
-        boolean added = whitelist.add(playerName.trim());
-        if (added) {
-            logger.info("Player " + playerName + " added to in-memory whitelist (edit configuration file to persist)");
+        Protected added = new Protected(name, uuid != null ? uuid : existing == null ? null : existing.uuid);
+        if (!appendJournal("+", added)) {
+            return false;
         }
-        return added;
+        journalRemoves.remove(name);
+        journalAdds.put(name, added);
+
+        Map<PlayerName, Protected> players = new HashMap<>(current.byName);
+        players.put(name, added);
+        snapshot.set(new Snapshot(current.enabled, current.protectionMessage, players));
+        configManager.bumpStateEpoch();
+        logger.info("Player " + playerName + " added to the whitelist");
+        return true;
     }
 
     /**
-     * Remove a player from the whitelist
-     * Note: this only updates the in-memory whitelist; edit the configuration file to persist
+     * Remove a player from the whitelist and record it in the journal
+     * @return false if the player was not protected or the journal could not be written
      */
-    public boolean removeFromWhitelist(String playerName) {
-        boolean removed = whitelist.remove(playerName);
-        if (removed) {
-            logger.info("Player " + playerName + " removed from in-memory whitelist (edit configuration file to persist)");
+    public synchronized boolean removeFromWhitelist(String playerName) {
+        PlayerName name = PlayerName.lookup(playerName);
+        Snapshot current = snapshot.get();
+        Protected existing = name == null ? null : current.byName.get(name);
+        if (existing == null || !appendJournal("-", existing)) {
+            return false;
+        }
+        journalAdds.remove(name);
+        // Only names from the configuration need a removal kept in the journal
+        if (configured.contains(name)) {
+            journalRemoves.add(name);
+        }
+
+        Map<PlayerName, Protected> players = new HashMap<>(current.byName);
+        players.remove(name);
+        snapshot.set(new Snapshot(current.enabled, current.protectionMessage, players));
+        configManager.bumpStateEpoch();
+        logger.info("Player " + playerName + " removed from the whitelist");
+        return true;
+    }
+
+    private void readJournal() throws IOException {
+        journalAdds.clear();
+        journalRemoves.clear();
+        journalLines = 0;
+        if (!Files.exists(JOURNAL)) {
+            return;
+        }
+        for (String line : Files.readAllLines(JOURNAL, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3 || fields[1].isEmpty()) {
+                continue;
+            }
+            PlayerName name = PlayerName.of(fields[1]);
+            if (fields[0].equals("+")) {
+                journalRemoves.remove(name);
+                journalAdds.put(name, new Protected(name, fields[2].isEmpty() ? null : fields[2]));
+            } else if (fields[0].equals("-")) {
+                journalAdds.remove(name);
+                journalRemoves.add(name);
+            }
+            journalLines++;
         }
-        return removed;
+    }
+
+    private boolean appendJournal(String operation, Protected player) {
+        try {
+            Files.createDirectories(JOURNAL.getParent());
+            if (journalLines >= 2 * (journalAdds.size() + journalRemoves.size()) + JOURNAL_SLACK) {
+                rewriteJournal();
+            }
+            String line = operation + "\t" + player.getName() + "\t" + (player.uuid == null ? "" : player.uuid) + "\n";
+            Files.write(JOURNAL, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            journalLines++;
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to write whitelist journal", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replace the journal with one line per player whose state differs from the configuration
+     */
+    private void rewriteJournal() throws IOException {
+        Path temp = JOURNAL.resolveSibling("whitelist.journal.tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Protected player : journalAdds.values()) {
+                out.write("+\t" + player.getName() + "\t" + (player.uuid == null ? "" : player.uuid) + "\n");
+            }
+            for (PlayerName name : journalRemoves) {
+                out.write("-\t" + name.getName() + "\t\n");
+            }
+        }
+        Files.move(temp, JOURNAL, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        journalLines = journalAdds.size() + journalRemoves.size();
     }
 
     // Getters
-    public boolean isEnabled() { return enabled; }
-    public Set<String> getWhitelist() { return new HashSet<>(whitelist); }
-    public String getProtectionMessage() { return protectionMessage; }
+    public boolean isEnabled() { return snapshot.get().enabled; }
+    public Set<String> getWhitelist() {
+        Set<String> names = new HashSet<>();
+        snapshot.get().byName.keySet().forEach(name -> names.add(name.getName()));
+        return names;
+    }
+    public Collection<Protected> getProtectedPlayers() { return snapshot.get().byName.values(); }
+    public String getProtectionMessage() { return snapshot.get().protectionMessage; }
 }
@@ -0,0 +1,187 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Offline check of the ASN and country database readers against the fixtures in src/test/resources/geo
+ * The fixtures use documentation address ranges only:
+ *   asn-24.mmdb      IPv6 tree, 24-bit records: 192.0.2.0/24 AS64500, 198.51.100.0/25 AS64501,
+ *                    198.51.100.128/25 AS64502, 2001:db8::/32 AS64510
+ *   country-28.mmdb  IPv6 tree, 28-bit records: 192.0.2.0/24 DE (after fields that must be skipped),
+ *                    198.51.100.0/24 FR and 2001:db8:1::/48 DE (through data pointers),
+ *                    203.0.113.0/24 NL (registered_country only)
+ *   asn-32.mmdb      IPv4 tree, 32-bit records: 10.0.0.0/8 AS64520, 10.1.0.0/16 AS64521,
+ *                    10.1.255.255/32 AS64522 (uint16, uint32 and uint64 values)
+ *   asn.csv          GeoLite2 ASN block layout with CRLF line endings, quoted and "AS"-prefixed values
+ *   country.csv      network,country_iso_code rows
+ * It then swaps the database behind a running {@link GeoLookup} and checks that lookups follow.
+ *
+ * The swap writes plugins/BanTools under the working directory, so run it from an empty scratch
+ * directory with the test resources on the class path (see README, "Load testing").
+ * The exit code is 1 if any lookup returned something else than expected.
+ */
+public class GeoFixtureCheck {
+    private static final Path DATA_DIR = Paths.get("plugins/BanTools");
+    private static final int NONE = GeoDatabase.NOT_FOUND;
+
+    private int checks;
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        if (Files.exists(DATA_DIR)) {
+            System.err.println(DATA_DIR.toAbsolutePath() + " already exists; run the check from an empty directory");
+            System.exit(2);
+        }
+        System.exit(new GeoFixtureCheck().run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        Path fixtures = Files.createTempDirectory("bantools-geo");
+
+        GeoDatabase asn24 = GeoDatabase.open(fixture(fixtures, "asn-24.mmdb"), GeoDatabase.Kind.ASN);
+        expect("asn-24", asn24, "192.0.2.0", 64500);
+        expect("asn-24", asn24, "192.0.2.255", 64500);
+        expect("asn-24", asn24, "192.0.1.255", NONE);
+        expect("asn-24", asn24, "198.51.100.127", 64501);
+        expect("asn-24", asn24, "198.51.100.128", 64502);
+        expect("asn-24", asn24, "198.51.101.0", NONE);
+        expect("asn-24", asn24, "2001:db8::1", 64510);
+        expect("asn-24", asn24, "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff", 64510);
+        expect("asn-24", asn24, "2001:db9::", NONE);
+        expect("asn-24", asn24, "10.0.0.1", NONE);
+
+        GeoDatabase country28 = GeoDatabase.open(fixture(fixtures, "country-28.mmdb"), GeoDatabase.Kind.COUNTRY);
+        expect("country-28", country28, "192.0.2.10", country("DE"));
+        expect("country-28", country28, "198.51.100.200", country("FR"));
+        expect("country-28", country28, "203.0.113.255", country("NL"));
+        expect("country-28", country28, "203.0.114.0", NONE);
+        expect("country-28", country28, "2001:db8:1::1", country("DE"));
+        expect("country-28", country28, "2001:db8:2::1", NONE);
+
+        GeoDatabase asn32 = GeoDatabase.open(fixture(fixtures, "asn-32.mmdb"), GeoDatabase.Kind.ASN);
+        expect("asn-32", asn32, "9.255.255.255", NONE);
+        expect("asn-32", asn32, "10.0.0.0", 64520);
+        expect("asn-32", asn32, "10.0.255.255", 64520);
+        expect("asn-32", asn32, "10.1.0.0", 64521);
+        expect("asn-32", asn32, "10.1.255.254", 64521);
+        expect("asn-32", asn32, "10.1.255.255", 64522);
+        expect("asn-32", asn32, "10.2.0.0", 64520);
+        expect("asn-32", asn32, "11.0.0.0", NONE);
+        // An IPv4-only tree knows nothing about IPv6 addresses
+        expect("asn-32", asn32, "2001:db8::1", NONE);
+
+        GeoDatabase asnCsv = GeoDatabase.open(fixture(fixtures, "asn.csv"), GeoDatabase.Kind.ASN);
+        expect("asn.csv", asnCsv, "192.0.2.1", 64500);
+        expect("asn.csv", asnCsv, "198.51.100.127", 64501);
+        expect("asn.csv", asnCsv, "198.51.100.128", 64502);
+        expect("asn.csv", asnCsv, "198.51.100.255", 64502);
+        expect("asn.csv", asnCsv, "198.51.101.0", NONE);
+        expect("asn.csv", asnCsv, "2001:db8:7fff:ffff:ffff:ffff:ffff:ffff", 64510);
+        expect("asn.csv", asnCsv, "2001:db8:8000::", 64511);
+        expect("asn.csv", asnCsv, "2001:db9::", NONE);
+        expect("asn.csv", asnCsv, "203.0.113.1", NONE);
+
+        GeoDatabase countryCsv = GeoDatabase.open(fixture(fixtures, "country.csv"), GeoDatabase.Kind.COUNTRY);
+        expect("country.csv", countryCsv, "192.0.2.1", country("DE"));
+        expect("country.csv", countryCsv, "198.51.100.1", country("FR"));
+        expect("country.csv", countryCsv, "203.0.113.254", NONE);
+        expect("country.csv", countryCsv, "203.0.113.255", country("NL"));
+        expect("country.csv", countryCsv, "2001:db8:1:ffff::", country("DE"));
+
+        hotSwap(fixtures);
+
+        System.out.printf("Checks: %d, failures: %d%n", checks, failures);
+        return failures == 0;
+    }
+
+    /**
+     * Replace the ASN database behind a running lookup, then replace it with a corrupt file
+     */
+    private void hotSwap(Path fixtures) throws Exception {
+        Logger logger = LoggerFactory.getLogger("BanToolsGeoCheck");
+        TaskExecutor tasks = new TaskExecutor(logger);
+        ConfigManager configManager = new ConfigManager(tasks);
+        Path database = DATA_DIR.resolve("geo/asn.mmdb");
+        Files.createDirectories(database.getParent());
+        replace(fixtures.resolve("asn-24.mmdb"), database);
+        Files.write(DATA_DIR.resolve("config.conf"), "\ngeo.asn_database = \"geo/asn.mmdb\"\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        configManager.loadConfig();
+
+        GeoLookup lookup = new GeoLookup(configManager, tasks, logger);
+        expect("swap before", lookup, "192.0.2.1", "AS64500");
+        expect("swap before", lookup, "10.1.0.1", "ASN unknown");
+
+        // Swapped by rename, as a database updater should: the old mapping stays readable
+        replace(fixtures.resolve("asn-32.mmdb"), database);
+        lookup.refresh();
+        expect("swap after", lookup, "192.0.2.1", "ASN unknown");
+        expect("swap after", lookup, "10.1.0.1", "AS64521");
+
+        Path corrupt = fixtures.resolve("corrupt.mmdb");
+        Files.write(corrupt, "not a MaxMind database".getBytes(StandardCharsets.US_ASCII));
+        replace(corrupt, database);
+        lookup.refresh();
+        expect("swap corrupt", lookup, "10.1.0.1", "AS64521");
+
+        lookup.shutdown();
+        tasks.shutdown();
+    }
+
+    private void expect(String label, GeoDatabase database, String address, int expected) throws IOException {
+        int actual = database.lookup(InetAddress.getByName(address).getAddress());
+        check(label + " " + address, actual == expected, describe(label, expected), describe(label, actual));
+    }
+
+    private void expect(String label, GeoLookup lookup, String address, String expected) throws IOException {
+        String actual = lookup.describe(InetAddress.getByName(address));
+        check(label + " " + address, actual.contains(expected), expected, actual);
+    }
+
+    private void check(String what, boolean passed, String expected, String actual) {
+        checks++;
+        if (!passed) {
+            failures++;
+            System.out.println("FAIL " + what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    private static String describe(String label, int value) {
+        if (value == NONE) {
+            return "not found";
+        }
+        return label.startsWith("country") ? GeoDatabase.countryText(value) : "AS" + value;
+    }
+
+    private static int country(String code) {
+        return GeoDatabase.packCountry(code);
+    }
+
+    private static Path fixture(Path directory, String name) throws IOException {
+        Path target = directory.resolve(name);
+        try (InputStream in = GeoFixtureCheck.class.getResourceAsStream("/geo/" + name)) {
+            if (in == null) {
+                throw new IOException("Fixture geo/" + name + " is not on the class path");
+            }
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        Path staged = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.copy(source, staged, StandardCopyOption.REPLACE_EXISTING);
+        // Make the change visible even on file systems with coarse timestamps
+        FileTime previous = Files.exists(target) ? Files.getLastModifiedTime(target) : FileTime.fromMillis(0);
+        Files.setLastModifiedTime(staged, FileTime.fromMillis(previous.toMillis() + 2000));
+        Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,468 @@
+package org.plugin.bantools;
+
+import com.velocitypowered.api.event.EventManager;
+import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offline login-storm load harness
+ * Drives {@link LoginListener} with stubbed players from several threads at a fixed arrival rate
+ * while admin threads ban, unban, fakeban and reload. After every mutation's future completes,
+ * the harness logs the target in and counts an inconsistency if the decision does not match.
+ * Decision latency is measured from each login's scheduled start, so a stalled listener shows up
+ * as queueing delay instead of silently lowering the arrival rate.
+ *
+ * The managers use plugins/BanTools relative to the working directory, so run it from an empty
+ * scratch directory (see README, "Load testing"). Options, all optional:
+ *   --rate=2000 --seconds=30 --threads=8 --admins=2 --preload=0 --reload-seconds=5 --reconnect=0
+ */
+public class LoginStormHarness {
+    private static final Path DATA_DIR = Paths.get("plugins/BanTools");
+
+    private final int rate;
+    private final int seconds;
+    private final int threads;
+    private final int admins;
+    private final int preload;
+    private final int reloadSeconds;
+    private final int reconnect;
+
+    private TaskExecutor tasks;
+    private ConfigManager configManager;
+    private BanManager banManager;
+    private FakeBanManager fakeBanManager;
+    private BanQueryService queryService;
+    private AuditLog auditLog;
+    private AltGraph altGraph;
+    private LoginListener listener;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong denied = new AtomicLong();
+    private final Map<String, AtomicLong> mutations = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicLong> inconsistencies = new ConcurrentSkipListMap<>();
+    private final List<Long> commitNanos = Collections.synchronizedList(new ArrayList<>());
+
+    private LoginStormHarness(Map<String, String> options) {
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "2000"));
+        this.seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        this.admins = Integer.parseInt(options.getOrDefault("admins", "2"));
+        this.preload = Integer.parseInt(options.getOrDefault("preload", "0"));
+        this.reloadSeconds = Integer.parseInt(options.getOrDefault("reload-seconds", "5"));
+        this.reconnect = Integer.parseInt(options.getOrDefault("reconnect", "0"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Unknown argument: " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        if (Files.exists(DATA_DIR)) {
+            System.err.println(DATA_DIR.toAbsolutePath() + " already exists; run the harness from an empty directory");
+            System.exit(2);
+        }
+        System.exit(new LoginStormHarness(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        Logger logger = LoggerFactory.getLogger("BanToolsHarness");
+        tasks = new TaskExecutor(logger);
+        if (preload > 0) {
+            writePreloadedBans();
+        }
+
+        long loadStarted = System.nanoTime();
+        // Events are accepted and completed at once, like a proxy with no subscribers
+        EventManager eventManager = stub(EventManager.class,
+                Collections.singletonMap("fire", CompletableFuture.completedFuture(null)));
+        ProxyServer server = stub(ProxyServer.class, Collections.singletonMap("getEventManager", eventManager));
+        configManager = new ConfigManager(tasks);
+        auditLog = new AuditLog(DATA_DIR.resolve("audit"), tasks, logger);
+        altGraph = new AltGraph(DATA_DIR.resolve("alts.dat"), tasks, logger);
+        WhitelistManager whitelistManager = new WhitelistManager(configManager, logger);
+        GeoLookup geoLookup = new GeoLookup(configManager, tasks, logger);
+        Blocklists blocklists = new Blocklists(configManager, tasks, logger);
+        BanEventPublisher events = new BanEventPublisher(server.getEventManager(), tasks, logger);
+        PunishmentIndex punishments = new PunishmentIndex();
+        banManager = new BanManager(server, logger, configManager, whitelistManager, tasks, auditLog, altGraph, geoLookup,
+                blocklists, events, punishments);
+        fakeBanManager = new FakeBanManager(configManager, whitelistManager, server, logger, tasks, auditLog, events,
+                punishments);
+        banManager.setFakeBanManager(fakeBanManager);
+        queryService = new BanQueryService(configManager, banManager);
+        listener = new LoginListener(banManager);
+        System.out.printf("Loaded %d bans in %d ms%n", configManager.getBans().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStarted));
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < admins; i++) {
+            int admin = i;
+            workers.add(start("admin-" + i, () -> adminLoop(admin)));
+        }
+        if (reloadSeconds > 0) {
+            workers.add(start("reload", this::reloadLoop));
+        }
+
+        LoginWorker[] loginWorkers = new LoginWorker[threads];
+        CountDownLatch finished = new CountDownLatch(threads);
+        long startAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (int i = 0; i < threads; i++) {
+            loginWorkers[i] = new LoginWorker(i, startAt, finished);
+            start("login-" + i, loginWorkers[i]);
+        }
+        finished.await();
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        fakeBanManager.shutdown();
+        banManager.shutdown();
+        tasks.shutdown();
+        auditLog.close();
+        altGraph.close();
+        return report(loginWorkers);
+    }
+
+    /**
+     * One login thread: fires its share of the arrival rate on a fixed schedule
+     */
+    private final class LoginWorker implements Runnable {
+        private final int index;
+        private final long startAt;
+        private final CountDownLatch finished;
+        private final long[] latencies;
+        private int samples;
+        private long allocatedBytes;
+        private long elapsedNanos;
+
+        LoginWorker(int index, long startAt, CountDownLatch finished) {
+            this.index = index;
+            this.startAt = startAt;
+            this.finished = finished;
+            this.latencies = new long[(int) Math.min(Integer.MAX_VALUE - 8, (long) rate * seconds / threads + 1)];
+        }
+
+        @Override
+        public void run() {
+            try {
+                StubPlayer player = new StubPlayer();
+                Random random = new Random(index);
+                long interval = TimeUnit.SECONDS.toNanos(1) * threads / rate;
+                long allocatedBefore = allocatedBytes();
+                for (int i = 0; i < latencies.length; i++) {
+                    long scheduled = startAt + i * interval + index * interval / threads;
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (random.nextInt(100) < reconnect) {
+                        // A small pool of clients reconnecting in a loop with the same identity
+                        int client = random.nextInt(64);
+                        player.set("Retry" + client, new UUID(-1, client), "10.255.0." + client);
+                    } else {
+                        // Mostly fresh bots, with some reused names so linked and banned paths are exercised
+                        int bot = random.nextInt(20) == 0 ? random.nextInt(1000) : index * latencies.length + i;
+                        player.set("Bot" + bot, new UUID(index, i), "10." + (bot >> 16 & 0xFF) + "." + (bot >> 8 & 0xFF) + "." + (bot & 0xFF));
+                    }
+                    if (!decide(player.proxy)) {
+                        denied.incrementAndGet();
+                    }
+                    latencies[samples++] = System.nanoTime() - scheduled;
+                }
+                allocatedBytes = allocatedBytes() - allocatedBefore;
+                elapsedNanos = System.nanoTime() - startAt;
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    private void adminLoop(int admin) {
+        String actor = "HarnessAdmin" + admin;
+        Random random = new Random(1000 + admin);
+        int round = 0;
+        while (running.get()) {
+            String target = "Target" + admin + "_" + round;
+            String fakeTarget = "Fake" + admin + "_" + round;
+            round++;
+
+            // Decide once before each mutation so a cached decision from before it would be caught
+            check("allowed before ban", target, true);
+            long version = queryService.getVersion();
+            expectSuccess("ban", banManager.banPlayer(actor, target, "Harness ban " + round % 7,
+                    random.nextBoolean() ? null : "7d"), Objects::isNull);
+            check("ban not enforced", target, false);
+            if (queryService.getVersion() <= version || !queryService.isNameBanned(target)) {
+                count(inconsistencies, "query missed ban");
+            }
+
+            check("allowed before fakeban", fakeTarget, true);
+            // The first call asks for confirmation, the second one executes
+            fakeBanManager.confirmFakeBan(actor, fakeTarget, "Harness fakeban").join();
+            expectSuccess("fakeban", fakeBanManager.confirmFakeBan(actor, fakeTarget, "Harness fakeban"),
+                    result -> result.startsWith("Successfully"));
+            check("fakeban not enforced", fakeTarget, false);
+
+            expectSuccess("unban", banManager.unbanPlayer(actor, target), Objects::isNull);
+            check("unban not lifted", target, true);
+            if (queryService.isNameBanned(target)) {
+                count(inconsistencies, "query still reports unban");
+            }
+
+            expectSuccess("unfakeban", fakeBanManager.unFakeBan(actor, fakeTarget),
+                    result -> result.startsWith("Successfully"));
+            check("unfakeban not lifted", fakeTarget, true);
+        }
+    }
+
+    private void reloadLoop() {
+        int edit = 0;
+        while (running.get()) {
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(reloadSeconds));
+            if (!running.get()) {
+                break;
+            }
+            try {
+                // Touch a ban shard like an admin editing it by hand, so the reload does not short-circuit
+                Files.write(DATA_DIR.resolve("shards/shard-" + edit % BanShards.DEFAULT_COUNT + ".conf"), ("\n# harness edit " + edit++ + "\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+                long started = System.nanoTime();
+                banManager.reload().join();
+                commitNanos.add(System.nanoTime() - started);
+                count(mutations, "reload");
+            } catch (Exception e) {
+                count(inconsistencies, "reload failed");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private <T> void expectSuccess(String operation, CompletableFuture<T> future, java.util.function.Predicate<T> success) {
+        long started = System.nanoTime();
+        try {
+            T result = future.join();
+            commitNanos.add(System.nanoTime() - started);
+            count(mutations, operation);
+            if (!success.test(result)) {
+                count(inconsistencies, operation + " rejected");
+                System.err.println(operation + " rejected: " + result);
+            }
+        } catch (CompletionException e) {
+            count(inconsistencies, operation + " failed");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Log a player in right after a mutation returned and compare the decision with the expected one
+     * A name always logs in with the same UUID and IP, like a client reconnecting. The IP is spread
+     * over 10.0.0.0/8 so that bans, which also match by IP, do not leak onto other targets.
+     */
+    private void check(String inconsistency, String name, boolean expectAllowed) {
+        StubPlayer player = new StubPlayer();
+        int hash = name.hashCode() * 0x9E3779B1;
+        player.set(name, UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)),
+                "10." + (hash >>> 24) + "." + (hash >>> 16 & 0xFF) + "." + (hash >>> 8 & 0xFF));
+        if (decide(player.proxy) != expectAllowed) {
+            count(inconsistencies, inconsistency);
+        }
+    }
+
+    private boolean decide(Player player) {
+        LoginEvent event = new LoginEvent(player);
+        listener.onPlayerLogin(event);
+        return event.getResult().isAllowed();
+    }
+
+    /**
+     * Append preloaded bans to a fresh default configuration, as a large existing install would have
+     */
+    private void writePreloadedBans() throws Exception {
+        new ConfigManager(tasks);
+        StringBuilder bans = new StringBuilder("\nbans {\n");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < preload; i++) {
+            bans.append("  Pre").append(i).append(" { name = \"Pre").append(i)
+                    .append("\", reason = \"").append(i % 10 == 0 ? "Spam" : "Cheating")
+                    .append("\", operator = \"Console\", start_time = ").append(now - i)
+                    .append(i % 2 == 0 ? "" : ", end_time = " + (now + TimeUnit.DAYS.toMillis(30)))
+                    .append(", state = true }\n");
+        }
+        bans.append("}\n");
+        Files.write(DATA_DIR.resolve("config.conf"), bans.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private boolean report(LoginWorker[] workers) {
+        int total = 0;
+        long allocated = 0;
+        long elapsed = 0;
+        for (LoginWorker worker : workers) {
+            total += worker.samples;
+            allocated += worker.allocatedBytes;
+            elapsed = Math.max(elapsed, worker.elapsedNanos);
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (LoginWorker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.samples);
+            offset += worker.samples;
+        }
+        Arrays.sort(latencies);
+        double elapsedSeconds = elapsed / 1e9;
+
+        System.out.printf("Logins: %d in %.1f s (%.0f/s, target %d/s), denied %d%n",
+                total, elapsedSeconds, total / elapsedSeconds, rate, denied.get());
+        System.out.printf("Decision latency from scheduled start: p50 %s, p99 %s, p99.9 %s, max %s%n",
+                micros(percentile(latencies, 0.50)), micros(percentile(latencies, 0.99)),
+                micros(percentile(latencies, 0.999)), micros(total == 0 ? 0 : latencies[total - 1]));
+        if (allocated >= 0) {
+            // Includes the harness's own per-login stub and string allocation
+            System.out.printf("Allocation on login threads: %d bytes/login, %.1f MB/s%n",
+                    total == 0 ? 0 : allocated / total, allocated / elapsedSeconds / (1 << 20));
+        }
+
+        System.out.println("Login decision cache: " + banManager.getLoginCacheStatus());
+        System.out.println("Ban events: " + banManager.getEventStatus());
+
+        long[] commits;
+        synchronized (commitNanos) {
+            commits = commitNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        System.out.println("Mutations: " + mutations);
+        System.out.printf("Mutation completion: p50 %s, p99 %s%n",
+                micros(percentile(commits, 0.50)), micros(percentile(commits, 0.99)));
+        System.out.println("Inconsistencies: " + (inconsistencies.isEmpty() ? "none" : inconsistencies));
+        return inconsistencies.isEmpty();
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static String micros(long nanos) {
+        return nanos >= 10_000_000 ? nanos / 1_000_000 + " ms" : nanos / 1_000 + " us";
+    }
+
+    /**
+     * Bytes allocated by the current thread, or -1 when the JVM does not expose it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void count(Map<String, AtomicLong> counters, String key) {
+        counters.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static Thread start(String name, Runnable body) {
+        Thread thread = new Thread(body, "harness-" + name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Reusable player stub; the harness only reads identity from it
+     */
+    private static final class StubPlayer {
+        private volatile String name;
+        private volatile UUID uuid;
+        private volatile InetSocketAddress address;
+        final Player proxy = stub(Player.class, Collections.emptyMap(), this);
+
+        void set(String name, UUID uuid, String ip) {
+            this.name = name;
+            this.uuid = uuid;
+            this.address = new InetSocketAddress(ip, 25565);
+        }
+
+        Object answer(Method method) {
+            switch (method.getName()) {
+                case "getUsername":
+                    return name;
+                case "getUniqueId":
+                    return uuid;
+                case "getRemoteAddress":
+                    return address;
+                default:
+                    return NO_ANSWER;
+            }
+        }
+    }
+
+    private static final Object NO_ANSWER = new Object();
+
+    private static <T> T stub(Class<T> type, Map<String, Object> answers) {
+        return stub(type, answers, null);
+    }
+
+    /**
+     * Dynamic stub of a Velocity interface: fixed answers by method name, empty values otherwise
+     */
+    private static <T> T stub(Class<T> type, Map<String, Object> answers, StubPlayer player) {
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (player != null) {
+                Object answer = player.answer(method);
+                if (answer != NO_ANSWER) {
+                    return answer;
+                }
+            }
+            if (answers.containsKey(method.getName())) {
+                return answers.get(method.getName());
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + " stub";
+                default:
+                    return emptyValue(method.getReturnType());
+            }
+        });
+        return type.cast(stub);
+    }
+
+    private static Object emptyValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0.0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return '\0';
+        if (type == Optional.class) return Optional.empty();
+        if (type == Collection.class || type == List.class) return Collections.emptyList();
+        if (type == Set.class) return Collections.emptySet();
+        if (type == Map.class) return Collections.emptyMap();
+        return null;
+    }
+}